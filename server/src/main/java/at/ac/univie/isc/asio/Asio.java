@@ -28,6 +28,7 @@ import at.ac.univie.isc.asio.insight.Emitter;
 import at.ac.univie.isc.asio.metadata.AtosMetadataRepository;
 import at.ac.univie.isc.asio.metadata.DescriptorConversion;
 import at.ac.univie.isc.asio.metadata.DescriptorService;
+import at.ac.univie.isc.asio.metadata.GuardedDescriptorService;
 import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import at.ac.univie.isc.asio.platform.CurrentTime;
 import at.ac.univie.isc.asio.platform.Launcher;
@@ -40,8 +41,10 @@ import at.ac.univie.isc.asio.tool.Timeout;
 import com.google.common.base.Ticker;
 import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
+import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.actuate.autoconfigure.ManagementSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -110,21 +113,35 @@ public class Asio {
 
   @Bean
   @ConditionalOnProperty(AsioFeatures.VPH_METADATA)
-  public DescriptorService descriptorService(final Client http) {
+  public DescriptorService descriptorService(
+      final Client http, final Timeout globalTimeout,
+      @Value("${asio.metadata.failure-threshold:5}") final int failureThreshold,
+      @Value("${asio.metadata.retry-after:30000}") final long retryAfter) {
     final WebTarget endpoint = http.target(config.getMetadataRepository());
     final AtosMetadataRepository atos = new AtosMetadataRepository(endpoint);
-    return new DescriptorService() {
+    final DescriptorService remote = new DescriptorService() {
       @Override
       public Observable<SchemaDescriptor> metadata(final URI identifier) {
         return atos.findByLocalId(identifier.toString()).map(DescriptorConversion.asFunction());
       }
-   };
+    };
+    return GuardedDescriptorService.wrap(remote, globalTimeout, failureThreshold,
+        Timeout.from(retryAfter, TimeUnit.MILLISECONDS));
   }
 
+  // jersey ClientProperties - jersey-client is a runtime only dependency
+  static final String JERSEY_CONNECT_TIMEOUT = "jersey.config.client.connectTimeout";
+  static final String JERSEY_READ_TIMEOUT = "jersey.config.client.readTimeout";
+
+  /** the default connector keeps idle connections alive and reuses them for later requests */
   @Bean(destroyMethod = "close")
   @Lazy
-  public Client httpClient() {
-    return ClientBuilder.newClient();
+  public Client httpClient(final Timeout globalTimeout) {
+    final int timeout = Ints.saturatedCast(globalTimeout.getAs(TimeUnit.MILLISECONDS, 0));
+    return ClientBuilder.newBuilder()
+        .property(JERSEY_CONNECT_TIMEOUT, timeout)
+        .property(JERSEY_READ_TIMEOUT, timeout)
+        .build();
   }
 
   @Bean
@@ -28,6 +28,8 @@ public class AsioFeatures {
   public static final String ALLOW_FEDERATION = "asio.feature.allowFederation";
   public static final String GLOBAL_DATASOURCE = "asio.feature.globalDatasource";
   public static final String MULTI_TENANCY = "asio.feature.multiTenancy";
+  public static final String LAZY_ACTIVATION = "asio.feature.lazyActivation";
+  public static final String LIGHTWEIGHT_ASSEMBLY = "asio.feature.lightweightAssembly";
 
   /**
    * Enable metadata lookup in the vph metadata repository. If enabled, the repository http endpoint
@@ -68,6 +70,19 @@ public class AsioFeatures {
    */
   public boolean multiTenancy = false;
 
+  /**
+   * Deploy stored containers as placeholders on start up. Placeholders are activated one by one in
+   * background, or on their first use. Requests to a container, that is still activating, wait for
+   * at most the global {@code asio.timeout}.
+   */
+  public boolean lazyActivation = false;
+
+  /**
+   * Wire the components of datasets directly in code, instead of creating a spring child context
+   * per dataset. Reduces memory usage and deployment latency of installations with many datasets.
+   */
+  public boolean lightweightAssembly = false;
+
   @Override
   public String toString() {
     return "AsioFeatures{" +
@@ -76,6 +91,8 @@ public class AsioFeatures {
         ", allowFederation=" + allowFederation +
         ", globalDatasource=" + globalDatasource +
         ", multiTenancy=" + multiTenancy +
+        ", lazyActivation=" + lazyActivation +
+        ", lightweightAssembly=" + lightweightAssembly +
         '}';
   }
 
@@ -118,4 +135,20 @@ public class AsioFeatures {
   public void setMultiTenancy(final boolean multiTenancy) {
     this.multiTenancy = multiTenancy;
   }
+
+  public boolean isLazyActivation() {
+    return lazyActivation;
+  }
+
+  public void setLazyActivation(final boolean lazyActivation) {
+    this.lazyActivation = lazyActivation;
+  }
+
+  public boolean isLightweightAssembly() {
+    return lightweightAssembly;
+  }
+
+  public void setLightweightAssembly(final boolean lightweightAssembly) {
+    this.lightweightAssembly = lightweightAssembly;
+  }
 }
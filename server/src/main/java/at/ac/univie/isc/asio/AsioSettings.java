@@ -37,6 +37,12 @@ public class AsioSettings {
    */
   public long timeout = 5_000;
 
+  /**
+   * Idle period in milliseconds, after which a deployed container is hibernated. Hibernation is
+   * disabled if not set.
+   */
+  public long hibernateAfter = -1;
+
   /**
    * Path to asio's working directory.
    */
@@ -64,6 +70,7 @@ public class AsioSettings {
   public String toString() {
     return "AsioSettings{" +
         "timeout=" + timeout +
+        ", hibernateAfter=" + hibernateAfter +
         ", home='" + home + '\'' +
         ", metadataRepository=" + metadataRepository +
         System.lineSeparator() + ", api=" + api +
@@ -80,6 +87,14 @@ public class AsioSettings {
     this.timeout = timeout;
   }
 
+  public long getHibernateAfter() {
+    return hibernateAfter;
+  }
+
+  public void setHibernateAfter(final long hibernateAfter) {
+    this.hibernateAfter = hibernateAfter;
+  }
+
   public String getHome() {
     return home;
   }
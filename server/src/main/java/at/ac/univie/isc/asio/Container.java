@@ -35,6 +35,16 @@ public interface Container extends AutoCloseable, Dataset {
    */
   Set<Engine> engines();
 
+  /**
+   * The engine supporting the given language. Engines are resolved once on activation, selecting
+   * one is a single lookup.
+   *
+   * @param language required query language
+   * @return the matching engine
+   * @throws Language.NotSupported if no engine of this container supports the language
+   */
+  Engine engine(Language language) throws Language.NotSupported;
+
   // === lifecycle =================================================================================
 
   /**
@@ -55,16 +55,17 @@ abstract class BaseContainerRegistry {
     log.debug(Scope.SYSTEM.marker(), "registering container <{}>", event.getName());
     final Container former = registry.put(event.getName(), event.getContainer());
     if (former != null) {
-      log.warn(Scope.SYSTEM.marker(), "replaced <{}> with <{}> on deployment", former.name(), event.getName());
+      log.debug(Scope.SYSTEM.marker(), "replaced <{}> with <{}> on deployment", former.name(), event.getName());
     }
   }
 
   @Subscribe
   public final void onDrop(final ContainerEvent.Dropped event) {
     log.debug(Scope.SYSTEM.marker(), "removing container <{}>", event.getName());
-    final Container removed = registry.remove(event.getName());
-    if (removed == null) {
-      log.warn(Scope.SYSTEM.marker(), "dropped container <{}> was not present", event.getName());
+    // a replaced container must not remove its successor
+    final boolean removed = registry.remove(event.getName(), event.getContainer());
+    if (!removed) {
+      log.debug(Scope.SYSTEM.marker(), "dropped container <{}> was not present or already replaced", event.getName());
     }
   }
 }
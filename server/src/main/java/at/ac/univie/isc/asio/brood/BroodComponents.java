@@ -44,6 +44,7 @@ import org.springframework.web.context.WebApplicationContext;
 
 import javax.sql.DataSource;
 import java.nio.file.Paths;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -60,6 +61,19 @@ class BroodComponents {
     return new FileSystemConfigStore(Paths.get(config.getHome()), timeout);
   }
 
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(prefix = "asio", name = "hibernate-after")
+  public Hibernation hibernation(final ScheduledExecutorService workerPool, final Timeout timeout) {
+    final Timeout idle = Timeout.from(config.getHibernateAfter(), TimeUnit.MILLISECONDS);
+    return Hibernation.create(idle, timeout, workerPool);
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(AsioFeatures.LAZY_ACTIVATION)
+  public LazyActivation lazyActivation(final Timeout timeout) {
+    return LazyActivation.create(timeout);
+  }
+
   @Bean
   @Scope(value = WebApplicationContext.SCOPE_REQUEST, proxyMode = ScopedProxyMode.INTERFACES)
   public DatasetHolder activeDataset() {
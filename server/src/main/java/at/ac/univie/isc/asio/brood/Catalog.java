@@ -29,11 +29,12 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import javax.annotation.concurrent.ThreadSafe;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Objects.requireNonNull;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -41,8 +42,10 @@ import static org.slf4j.LoggerFactory.getLogger;
 /**
  * Central registry to look up and manage deployed {@link Container}.
  * Adding or removing a container will trigger {@code Deployed} and {@code Dropped} events
- * respectively.
+ * respectively. Containers with different names may be deployed and dropped concurrently, but
+ * callers must serialize operations on the same name to keep the emitted events in order.
  */
+@ThreadSafe
 @Component
 /* final */ class Catalog {
   private static final Logger log = getLogger(Catalog.class);
@@ -52,14 +55,16 @@ import static org.slf4j.LoggerFactory.getLogger;
 
   @Autowired
   public Catalog(final Emitter events) {
-    catalog = new HashMap<>();
+    catalog = new ConcurrentHashMap<>();
     this.events = events;
   }
 
   // === public api ================================================================================
 
   /**
-   * Add the given container to this catalog, replacing any schema with the same name.
+   * Add the given container to this catalog, replacing any schema with the same name. The
+   * deployment is published before dropping the replaced container, such that registries switch
+   * from the former to the new container without a gap.
    *
    * @param container schema that will be deployed
    * @return the replaced schema if one existed
@@ -69,8 +74,8 @@ import static org.slf4j.LoggerFactory.getLogger;
     requireNonNull(container);
     final Optional<Container> former =
         Optional.fromNullable(catalog.put(container.name(), container));
-    if (former.isPresent()) { events.emit(dropEvent(former.get())); }
     events.emit(deployEvent(container));
+    if (former.isPresent()) { events.emit(dropEvent(former.get())); }
     return former;
   }
 
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.tool.StatefulMonitor;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guard operations on single containers by a lock per container id, such that operations on
+ * different containers may proceed concurrently. Only the server-wide lifecycle transitions, i.e.
+ * activation and disabling, take an exclusive lock. Like the {@link StatefulMonitor}, container
+ * operations are rejected while not active.
+ */
+@ThreadSafe
+final class ContainerLocks {
+  /** number of lock stripes - containers sharing a stripe are serialized */
+  static final int STRIPES = 64;
+
+  /**
+   * Create an instance, that will wait up to the given amount of time when acquiring locks.
+   *
+   * @param timeout maximal time to wait for a contended lock
+   * @return initialized, inactive locks
+   */
+  static ContainerLocks withMaximalWaitingTime(final Timeout timeout) {
+    return new ContainerLocks(StatefulMonitor.withMaximalWaitingTime(timeout),
+        timeout.getAs(TimeUnit.MILLISECONDS, 0L));
+  }
+
+  private final StatefulMonitor state;
+  private final long maximalWaitingTimeInMilliseconds;
+  private final ReadWriteLock lifecycle = new ReentrantReadWriteLock();
+  private final Striped<Lock> containers = Striped.lazyWeakLock(STRIPES);
+
+  private ContainerLocks(final StatefulMonitor state, final long timeout) {
+    this.state = state;
+    this.maximalWaitingTimeInMilliseconds = timeout;
+  }
+
+  /**
+   * @return true if container operations are accepted
+   */
+  boolean isActive() {
+    return state.isActive();
+  }
+
+  /**
+   * @throws StatefulMonitor.IllegalMonitorState if not active
+   */
+  void ensureActive() {
+    state.ensureActive();
+  }
+
+  /**
+   * Exclusively execute the given action and become active, if it completes normally.
+   *
+   * @param action callback to be executed to activate
+   */
+  void activate(final Callable<Void> action) {
+    final Lock exclusive = acquire(lifecycle.writeLock(), "lifecycle");
+    try {
+      state.activate(action);
+    } finally {
+      exclusive.unlock();
+    }
+  }
+
+  /**
+   * Exclusively execute the given action and become inactive, even if the action fails.
+   *
+   * @param action callback to be executed to disable
+   */
+  void disable(final Callable<Void> action) {
+    final Lock exclusive = acquire(lifecycle.writeLock(), "lifecycle");
+    try {
+      state.disable(action);
+    } finally {
+      exclusive.unlock();
+    }
+  }
+
+  /**
+   * Execute the given callback while holding the lock of the given container. The action is not
+   * executed if not active.
+   *
+   * @param target   id of the container, which is modified by the action
+   * @param action   the callback that should be executed atomically
+   * @param <RESULT> type of return value of the callable
+   * @return the value returned by the callback
+   * @throws RuntimeException            unchecked exceptions are propagated as is from the callback
+   * @throws StatefulMonitor.IllegalMonitorState if not active
+   * @throws UncheckedExecutionException if the callback throws a checked exception
+   * @throws UncheckedTimeoutException   if a lock cannot be acquired in the maximal allowed time
+   */
+  <RESULT> RESULT atomic(final Id target, final Callable<RESULT> action) {
+    final Lock shared = acquire(lifecycle.readLock(), "lifecycle");
+    try {
+      state.ensureActive();
+      final Lock container = acquire(lockOf(target), target.asString());
+      try {
+        return action.call();
+      } catch (final Exception failure) {
+        Throwables.propagateIfPossible(failure);
+        throw new UncheckedExecutionException(failure);
+      } finally {
+        container.unlock();
+      }
+    } finally {
+      shared.unlock();
+    }
+  }
+
+  /**
+   * The lock stripe guarding the given container. Only visible for testing purposes.
+   */
+  @VisibleForTesting
+  Lock lockOf(final Id target) {
+    return containers.get(target);
+  }
+
+  private Lock acquire(final Lock lock, final String name) {
+    try {
+      if (!lock.tryLock(maximalWaitingTimeInMilliseconds, TimeUnit.MILLISECONDS)) {
+        throw new UncheckedTimeoutException("timed out while acquiring " + name + " lock");
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedTimeoutException("interrupted while acquiring " + name + " lock", e);
+    }
+    return lock;
+  }
+
+  @Override
+  public String toString() {
+    return "ContainerLocks{" + "active=" + state.isActive() + ", stripes=" + STRIPES + '}';
+  }
+}
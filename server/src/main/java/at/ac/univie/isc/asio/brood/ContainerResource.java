@@ -22,6 +22,7 @@ package at.ac.univie.isc.asio.brood;
 import at.ac.univie.isc.asio.Container;
 import at.ac.univie.isc.asio.Id;
 import at.ac.univie.isc.asio.jaxrs.Mime;
+import com.google.common.base.Charsets;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +34,7 @@ import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.NotSupportedException;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -42,6 +44,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.File;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Component
 @Path("/")
@@ -82,6 +86,29 @@ public class ContainerResource extends BaseContainerRegistry {
     return Response.status(Response.Status.CREATED).build();
   }
 
+  /**
+   * Deploy many containers at once. The request body maps container ids to d2rq mappings in turtle
+   * format. Containers are activated concurrently and failures do not affect other containers.
+   *
+   * @param mappings d2rq mapping of each container
+   * @return the deployment outcome of each container
+   */
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Map<String, String> createContainers(final Map<String, String> mappings) {
+    final Map<Id, ByteSource> sources = new LinkedHashMap<>();
+    for (final Map.Entry<String, String> mapping : mappings.entrySet()) {
+      sources.put(Id.valueOf(mapping.getKey()), ByteSource.wrap(mapping.getValue().getBytes(Charsets.UTF_8)));
+    }
+    final Map<Id, RuntimeException> failures = warden.deployAllFromD2rqMappings(sources);
+    final Map<String, String> outcome = new LinkedHashMap<>();
+    for (final Id target : sources.keySet()) {
+      final RuntimeException failure = failures.get(target);
+      outcome.put(target.asString(), failure == null ? "deployed" : "failed: " + failure.getMessage());
+    }
+    return outcome;
+  }
+
   @DELETE
   @Path("/{id}")
   public Response deleteContainer(@PathParam("id") final Id target) {
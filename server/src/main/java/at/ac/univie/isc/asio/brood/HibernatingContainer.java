@@ -0,0 +1,627 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.SqlSchema;
+import at.ac.univie.isc.asio.engine.Command;
+import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.FixedSelection;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
+import at.ac.univie.isc.asio.security.Permission;
+import at.ac.univie.isc.asio.tool.Closer;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.slf4j.Logger;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Defer to a container, that can be re-assembled from its configuration at any time. While
+ * {@link #hibernateIfIdle(long) hibernating}, the assembled container is closed and only the raw
+ * configuration is retained. The next access to engines or metadata assembles and activates a
+ * fresh container transparently. Concurrent requests wait for the activation, but at most for the
+ * configured timeout.
+ * <p>
+ * Only containers {@link #allowHibernation() marked} by {@link Hibernation} may hibernate, all
+ * others are merely tracked. Invocations prepared by the exposed engines are tracked. A container
+ * is never hibernated while any of them is still open. A replaced container may be {@link #retire(Container, Timeout) retired},
+ * which routes requests to its successor and drains running invocations before closing.
+ * </p>
+ */
+@ThreadSafe
+final class HibernatingContainer implements Container {
+  private static final Logger log = getLogger(HibernatingContainer.class);
+
+  /**
+   * Assemble the initial, dormant container eagerly, to fail fast on illegal configurations.
+   *
+   * @param name      name of the container
+   * @param config    raw configuration of the container
+   * @param assembler factory of the actual container
+   * @param time      source of access timestamps in nanoseconds
+   * @param wait      maximal time to wait for a concurrent activation
+   * @return a dormant container
+   */
+  static HibernatingContainer create(final Id name, final ByteSource config,
+                                     final Assembler assembler, final Ticker time,
+                                     final Timeout wait) {
+    return wrap(name, config, assembler, time, wait, assembler.assemble(name, config));
+  }
+
+  /**
+   * Wrap a container, that has been assembled from the given configuration, but is not activated.
+   *
+   * @param name      name of the container
+   * @param config    raw configuration of the container
+   * @param assembler factory of the actual container
+   * @param time      source of access timestamps in nanoseconds
+   * @param wait      maximal time to wait for a concurrent activation
+   * @param initial   the dormant container
+   * @return a dormant container
+   */
+  static HibernatingContainer wrap(final Id name, final ByteSource config,
+                                   final Assembler assembler, final Ticker time,
+                                   final Timeout wait, final Container initial) {
+    return new HibernatingContainer(name, config, assembler, time, wait, initial, null);
+  }
+
+  /**
+   * Create an assembler, that wraps each container assembled by the given one.
+   *
+   * @param assembler factory of the actual containers
+   * @param time      source of access timestamps in nanoseconds
+   * @param wait      maximal time to wait for a concurrent activation
+   * @return decorated assembler
+   */
+  static Assembler assembler(final Assembler assembler, final Ticker time, final Timeout wait) {
+    return new WrappingAssembler(assembler, time, wait);
+  }
+
+  /**
+   * Create a placeholder, that assembles the actual container on first access only. Once the
+   * placeholder is activated, the actual activation is started on the given background executor.
+   *
+   * @param name       name of the container
+   * @param config     raw configuration of the container
+   * @param assembler  factory of the actual container
+   * @param time       source of access timestamps in nanoseconds
+   * @param wait       maximal time to wait for a concurrent activation
+   * @param background executor of the initial activation
+   * @return a placeholder container
+   */
+  static HibernatingContainer lazy(final Id name, final ByteSource config,
+                                   final Assembler assembler, final Ticker time,
+                                   final Timeout wait, final Executor background) {
+    return new HibernatingContainer(name, config, assembler, time, wait, null, background);
+  }
+
+  private final Id name;
+  private final ByteSource config;
+  private final Assembler assembler;
+  private final Ticker time;
+  private final long waitNanos;
+  private final Executor background;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final AtomicInteger inFlight = new AtomicInteger(0);
+  private final AtomicLong lastAccess;
+  private final AtomicLong hibernations = new AtomicLong(0);
+  /** notified whenever the last running invocation completes */
+  private final Object idle = new Object();
+
+  /** eagerly assembled but not yet activated container - guarded by lock */
+  private Container dormant;
+  /** null while hibernating - written while holding the lock only */
+  private volatile Active active;
+  /** receives all requests after retiring */
+  private volatile Container successor;
+  /** set by hibernation only */
+  private volatile boolean mayHibernate = false;
+  /** guarded by lock */
+  private boolean activated = false;
+  /** guarded by lock */
+  private boolean closed = false;
+
+  private HibernatingContainer(final Id name, final ByteSource config, final Assembler assembler,
+                               final Ticker time, final Timeout wait,
+                               @Nullable final Container initial,
+                               @Nullable final Executor background) {
+    this.name = name;
+    this.config = config;
+    this.assembler = assembler;
+    this.time = time;
+    this.waitNanos = wait.getAs(TimeUnit.NANOSECONDS, -1);
+    this.dormant = initial;
+    this.background = background;
+    this.lastAccess = new AtomicLong(time.read());
+  }
+
+  // === lifecycle =================================================================================
+
+  /**
+   * Activate the eagerly assembled container or start the activation of a lazy one in background.
+   */
+  @Override
+  public void activate() throws IllegalStateException {
+    lock.lock();
+    try {
+      if (activated || closed) {
+        throw new IllegalStateException(name + " already activated");
+      }
+      if (dormant != null) {
+        dormant.activate();
+        lastAccess.set(time.read());
+        active = new Active(dormant);
+        dormant = null;
+      }
+      activated = true;
+    } finally {
+      lock.unlock();
+    }
+    if (background != null) {
+      background.execute(new Runnable() {
+        @Override
+        public void run() {
+          awaken();
+        }
+      });
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      Closer.quietly(dormant);
+      Closer.quietly(delegate());
+      dormant = null;
+      active = null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Activate the container if it is not yet active, but do not fail if it has been closed.
+   * Errors during activation are logged, the container is left inactive.
+   */
+  void awaken() {
+    try {
+      lock.lock();
+      try {
+        if (!closed) {
+          ensureActive();
+        }
+      } finally {
+        lock.unlock();
+      }
+    } catch (final Exception e) {
+      log.error(Scope.SYSTEM.marker(), "activation of <{}> failed", name, e);
+    }
+  }
+
+  /**
+   * Route all further requests to the given successor, while this container is still open.
+   *
+   * @param next the container replacing this one or null if it is removed without replacement
+   */
+  void routeTo(@Nullable final Container next) {
+    successor = next;
+  }
+
+  /**
+   * Route all further requests to the given successor, then wait until running invocations
+   * completed, but at most for the given period, and close this container.
+   *
+   * @param next    the container replacing this one or null if it is removed without replacement
+   * @param timeout maximal time to wait for running invocations
+   * @return true if all invocations completed before closing
+   */
+  boolean retire(@Nullable final Container next, final Timeout timeout) {
+    routeTo(next);
+    final boolean drained = awaitIdle(timeout.getAs(TimeUnit.NANOSECONDS, Long.MAX_VALUE));
+    if (drained) {
+      log.debug(Scope.SYSTEM.marker(), "retiring drained <{}>", name);
+    } else {
+      log.warn(Scope.SYSTEM.marker(), "retiring <{}> with {} invocations still running",
+          name, inFlight.get());
+    }
+    close();
+    return drained;
+  }
+
+  private boolean awaitIdle(final long timeoutNanos) {
+    final long start = System.nanoTime();
+    synchronized (idle) {
+      while (inFlight.get() > 0) {
+        final long left = timeoutNanos - (System.nanoTime() - start);
+        if (left <= 0) {
+          return false;
+        }
+        try {
+          TimeUnit.NANOSECONDS.timedWait(idle, left);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Allow this container to {@link #hibernateIfIdle(long) hibernate}. Reserved to
+   * {@link Hibernation#wrap(Assembler)}.
+   */
+  void allowHibernation() {
+    mayHibernate = true;
+  }
+
+  /**
+   * @return true if this container may hibernate when idle
+   */
+  boolean mayHibernate() {
+    return mayHibernate;
+  }
+
+  /**
+   * Close the currently active container, if it may hibernate, has not been accessed for at least
+   * the given period and no invocation is currently running. Skipped if the container is busy
+   * activating.
+   *
+   * @param idleNanos minimal idle period in nanoseconds
+   * @return true if the container has been put to hibernation
+   */
+  boolean hibernateIfIdle(final long idleNanos) {
+    if (!mayHibernate || !lock.tryLock()) {
+      return false;
+    }
+    try {
+      final Active current = active;
+      final long idle = time.read() - lastAccess.get();
+      if (current == null || inFlight.get() > 0 || idle < idleNanos) {
+        return false;
+      }
+      // publish hibernation before re-checking usage - engines check for it after claiming use
+      active = null;
+      if (inFlight.get() > 0) {
+        active = current;
+        return false;
+      }
+      log.info(Scope.SYSTEM.marker(), "hibernating <{}> after {}ms idle",
+          name, TimeUnit.NANOSECONDS.toMillis(idle));
+      hibernations.incrementAndGet();
+      Closer.quietly(current.container);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return true if the container has been activated, but is currently hibernating
+   */
+  @JsonProperty("hibernating")
+  boolean isHibernating() {
+    lock.lock();
+    try {
+      return activated && active == null && !closed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The currently active container, if this one is not hibernating.
+   */
+  @JsonProperty
+  @JsonUnwrapped
+  Container delegate() {
+    final Active current = active;
+    return current == null ? null : current.container;
+  }
+
+  /**
+   * Get the successor if retired or the active container otherwise.
+   */
+  private Container current() {
+    final Container next = successor;
+    return next == null ? awake().container : next;
+  }
+
+  /**
+   * Get the active container and re-activate it if necessary.
+   */
+  private Active awake() {
+    lastAccess.set(time.read());
+    final Active current = active;
+    return current == null ? wakeUp() : current;
+  }
+
+  private Active wakeUp() {
+    acquire();
+    try {
+      if (closed) {
+        throw new IllegalStateException(name + " already closed");
+      }
+      if (!activated) {
+        throw new IllegalStateException(name + " not activated");
+      }
+      return ensureActive();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Assemble and activate a fresh container if none is active. Must hold the lock.
+   */
+  private Active ensureActive() {
+    assert lock.isHeldByCurrentThread() : "lock not held";
+    if (active != null) {
+      return active;
+    }
+    log.info(Scope.SYSTEM.marker(), "activating <{}>", name);
+    final Container fresh = assembler.assemble(name, config);
+    try {
+      fresh.activate();
+    } catch (final RuntimeException e) {
+      Closer.quietly(fresh);
+      throw e;
+    }
+    lastAccess.set(time.read());
+    active = new Active(fresh);
+    return active;
+  }
+
+  private void acquire() {
+    try {
+      if (waitNanos < 0) {
+        lock.lockInterruptibly();
+      } else if (!lock.tryLock(waitNanos, TimeUnit.NANOSECONDS)) {
+        throw new UncheckedTimeoutException("timed out while waiting for activation of <" + name + ">");
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedTimeoutException("interrupted while waiting for activation of <" + name + ">", e);
+    }
+  }
+
+  // === container facade ==========================================================================
+
+  @Override
+  public Id name() {
+    return name;
+  }
+
+  @Override
+  public Set<Engine> engines() {
+    final Container next = successor;
+    return next == null ? awake().engines.engines() : next.engines();
+  }
+
+  @Override
+  public Engine engine(final Language language) throws Language.NotSupported {
+    final Container next = successor;
+    return next == null ? awake().engines.select(language) : next.engine(language);
+  }
+
+  @Override
+  public Observable<SchemaDescriptor> metadata() {
+    return current().metadata();
+  }
+
+  @Override
+  public Observable<SqlSchema> definition() {
+    return current().definition();
+  }
+
+  @Override
+  public Observable<Model> mapping() {
+    return current().mapping();
+  }
+
+  @Override
+  public String toString() {
+    return "HibernatingContainer{" +
+        "name=" + name +
+        ", inFlight=" + inFlight.get() +
+        ", hibernations=" + hibernations.get() +
+        ", delegate=" + delegate() +
+        '}';
+  }
+
+  private void release() {
+    lastAccess.set(time.read());
+    if (inFlight.decrementAndGet() == 0) {
+      synchronized (idle) {
+        idle.notifyAll();
+      }
+    }
+  }
+
+  // === usage tracking ============================================================================
+
+  /** an activated container and its tracked engines, resolved once on activation */
+  private final class Active {
+    private final Container container;
+    private final FixedSelection engines;
+
+    private Active(final Container container) {
+      this.container = container;
+      final ImmutableSet.Builder<Engine> tracked = ImmutableSet.builder();
+      for (final Engine engine : container.engines()) {
+        tracked.add(new TrackedEngine(this, engine));
+      }
+      this.engines = FixedSelection.from(tracked.build());
+    }
+  }
+
+  /** claim usage of the container while preparing and until the invocation is closed */
+  private final class TrackedEngine implements Engine {
+    private final Active owner;
+    private final Engine engine;
+
+    private TrackedEngine(final Active owner, final Engine engine) {
+      this.owner = owner;
+      this.engine = engine;
+    }
+
+    @Override
+    public Language language() {
+      return engine.language();
+    }
+
+    @Override
+    public Invocation prepare(final Command command) {
+      lastAccess.set(time.read());
+      inFlight.incrementAndGet();
+      boolean claimed = false;
+      try {
+        if (successor != null || active != owner) { // owner retired or hibernated meanwhile
+          return engine(engine.language()).prepare(command);
+        }
+        final Invocation invocation = new TrackedInvocation(engine.prepare(command));
+        claimed = true;
+        return invocation;
+      } finally {
+        if (!claimed) {
+          release();
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      engine.close();
+    }
+
+    @Override
+    public String toString() {
+      return "TrackedEngine{" + engine + '}';
+    }
+  }
+
+  /** release the claimed usage once, when closed */
+  private final class TrackedInvocation implements Invocation {
+    private final Invocation invocation;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private TrackedInvocation(final Invocation invocation) {
+      this.invocation = invocation;
+    }
+
+    @Override
+    public Permission requires() {
+      return invocation.requires();
+    }
+
+    @Override
+    public Multimap<String, String> properties() {
+      return invocation.properties();
+    }
+
+    @Override
+    public void execute() {
+      invocation.execute();
+    }
+
+    @Override
+    public MediaType produces() {
+      return invocation.produces();
+    }
+
+    @Override
+    public void write(final OutputStream sink) throws IOException {
+      invocation.write(sink);
+    }
+
+    @Override
+    public void cancel() {
+      invocation.cancel();
+    }
+
+    @Override
+    public void close() {
+      try {
+        invocation.close();
+      } finally {
+        if (released.compareAndSet(false, true)) {
+          release();
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "TrackedInvocation{" + invocation + '}';
+    }
+  }
+
+  /** wrap each assembled container */
+  private static final class WrappingAssembler implements Assembler {
+    private final Assembler delegate;
+    private final Ticker time;
+    private final Timeout wait;
+
+    private WrappingAssembler(final Assembler delegate, final Ticker time, final Timeout wait) {
+      this.delegate = delegate;
+      this.time = time;
+      this.wait = wait;
+    }
+
+    @Override
+    public Container assemble(final Id name, final ByteSource source) {
+      return HibernatingContainer.create(name, source, delegate, time, wait);
+    }
+
+    @Override
+    public String toString() {
+      return "HibernatingAssembler{" + delegate + '}';
+    }
+  }
+}
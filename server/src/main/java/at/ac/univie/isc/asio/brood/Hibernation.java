@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Ticker;
+import com.google.common.io.ByteSource;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put deployed containers to sleep, if they have not been used for a configured period. Only
+ * containers created by an assembler {@link #wrap(Assembler) wrapped} by this are affected, other
+ * tracked containers, e.g. of flock datasets, are skipped.
+ * Hibernating containers release their pools and compiled models, but are re-activated on the next
+ * request.
+ */
+@ThreadSafe
+final class Hibernation extends BaseContainerRegistry implements AutoCloseable {
+  /** lower bound of the interval between two sweeps */
+  static final long MINIMAL_SWEEP_INTERVAL_MILLIS = 1_000;
+
+  /**
+   * Periodically hibernate idle containers, using the given scheduler.
+   *
+   * @param idle      period of inactivity, after which a container is hibernated
+   * @param wait      maximal time a request waits for the re-activation of a container
+   * @param scheduler executor used to run sweeps
+   * @return running hibernation service
+   */
+  static Hibernation create(final Timeout idle, final Timeout wait,
+                            final ScheduledExecutorService scheduler) {
+    final Hibernation hibernation = new Hibernation(idle, wait, Ticker.systemTicker());
+    final long interval =
+        Math.max(idle.getAs(TimeUnit.MILLISECONDS, 0) / 2, MINIMAL_SWEEP_INTERVAL_MILLIS);
+    hibernation.schedule = scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        hibernation.sweep();
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+    return hibernation;
+  }
+
+  private final long idleNanos;
+  private final Timeout wait;
+  private final Ticker time;
+  private volatile ScheduledFuture<?> schedule;
+
+  Hibernation(final Timeout idle, final Timeout wait, final Ticker time) {
+    assert idle.isDefined() : "hibernation requires a defined idle period";
+    this.idleNanos = idle.getAs(TimeUnit.NANOSECONDS, Long.MAX_VALUE);
+    this.wait = wait;
+    this.time = time;
+  }
+
+  /**
+   * Decorate an assembler, such that all created containers may hibernate. Containers, that are
+   * not yet {@link HibernatingContainer hibernation capable}, e.g. lazy placeholders, are wrapped.
+   *
+   * @param assembler actual container factory
+   * @return decorated assembler
+   */
+  Assembler wrap(final Assembler assembler) {
+    return new HibernationAssembler(assembler, time, wait);
+  }
+
+  /**
+   * Hibernate all deployed containers, that are idle for at least the configured period.
+   *
+   * @return number of hibernated containers
+   */
+  int sweep() {
+    int hibernated = 0;
+    for (final Container container : registry.values()) {
+      if (container instanceof HibernatingContainer
+          && ((HibernatingContainer) container).mayHibernate()) {
+        try {
+          if (((HibernatingContainer) container).hibernateIfIdle(idleNanos)) {
+            hibernated++;
+          }
+        } catch (final Exception e) {
+          log.warn(Scope.SYSTEM.marker(), "failed to hibernate <{}>", container.name(), e);
+        }
+      }
+    }
+    if (hibernated > 0) {
+      log.debug(Scope.SYSTEM.marker(), "hibernated {} idle containers", hibernated);
+    }
+    return hibernated;
+  }
+
+  @Override
+  public void close() {
+    final ScheduledFuture<?> current = schedule;
+    if (current != null) {
+      current.cancel(false);
+    }
+  }
+
+  /** mark created containers as hibernation capable */
+  private static final class HibernationAssembler implements Assembler {
+    private final Assembler delegate;
+    private final Ticker time;
+    private final Timeout wait;
+
+    private HibernationAssembler(final Assembler delegate, final Ticker time, final Timeout wait) {
+      this.delegate = delegate;
+      this.time = time;
+      this.wait = wait;
+    }
+
+    @Override
+    public Container assemble(final Id name, final ByteSource source) {
+      final Container created = delegate.assemble(name, source);
+      final HibernatingContainer container = created instanceof HibernatingContainer
+          ? (HibernatingContainer) created
+          : HibernatingContainer.wrap(name, source, delegate, time, wait, created);
+      container.allowHibernation();
+      return container;
+    }
+
+    @Override
+    public String toString() {
+      return "HibernationAssembler{" + delegate + '}';
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Hibernation{" +
+        "idle=" + TimeUnit.NANOSECONDS.toMillis(idleNanos) + "ms" +
+        ", deployed=" + registry.size() +
+        '}';
+  }
+}
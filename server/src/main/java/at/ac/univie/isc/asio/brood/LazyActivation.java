@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Ticker;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Deploy containers as lightweight placeholders, which are activated one after the other by a
+ * background worker. A request to a placeholder, that is not yet active, activates it immediately
+ * or waits for the ongoing activation.
+ */
+@ThreadSafe
+final class LazyActivation implements AutoCloseable {
+  /**
+   * Activate placeholders on a single background thread.
+   *
+   * @param wait maximal time a request waits for the activation of a container
+   * @return lazy activation service
+   */
+  static LazyActivation create(final Timeout wait) {
+    final ExecutorService worker = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("container-activation-%d").setDaemon(true).build());
+    return new LazyActivation(worker, wait, Ticker.systemTicker());
+  }
+
+  private final ExecutorService worker;
+  private final Timeout wait;
+  private final Ticker time;
+
+  LazyActivation(final ExecutorService worker, final Timeout wait, final Ticker time) {
+    this.worker = worker;
+    this.wait = wait;
+    this.time = time;
+  }
+
+  /**
+   * Decorate an assembler, such that it creates placeholders instead of assembling eagerly.
+   *
+   * @param assembler actual container factory
+   * @return decorated assembler
+   */
+  Assembler wrap(final Assembler assembler) {
+    return new LazyAssembler(assembler);
+  }
+
+  /**
+   * Abort pending background activations.
+   */
+  @Override
+  public void close() {
+    worker.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "LazyActivation{" + "wait=" + wait + '}';
+  }
+
+  private final class LazyAssembler implements Assembler {
+    private final Assembler delegate;
+
+    private LazyAssembler(final Assembler delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Container assemble(final Id name, final ByteSource source) {
+      return HibernatingContainer.lazy(name, source, delegate, time, wait, worker);
+    }
+
+    @Override
+    public String toString() {
+      return "LazyAssembler{" + delegate + '}';
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Request the metadata of many containers in background, with a limited number of concurrent
+ * lookups. Containers cache their metadata, therefore later requests are served without remote
+ * round trips. Failed lookups are logged and do not affect other containers.
+ */
+@ThreadSafe
+final class MetadataPrefetch {
+  private static final Logger log = getLogger(MetadataPrefetch.class);
+
+  /**
+   * @param concurrency maximal number of concurrent lookups
+   * @return prefetch service performing lookups on the io scheduler
+   */
+  static MetadataPrefetch create(final int concurrency) {
+    return new MetadataPrefetch(concurrency, Schedulers.io());
+  }
+
+  private final int concurrency;
+  private final Scheduler scheduler;
+
+  @VisibleForTesting
+  MetadataPrefetch(final int concurrency, final Scheduler scheduler) {
+    Preconditions.checkArgument(concurrency > 0, "illegal prefetch concurrency %s", concurrency);
+    this.concurrency = concurrency;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Start fetching the metadata of all given containers.
+   *
+   * @param containers targets of the prefetch
+   * @return handle to abort pending lookups
+   */
+  Subscription fetch(final Collection<Container> containers) {
+    log.info(Scope.SYSTEM.marker(), "prefetching metadata of {} containers", containers.size());
+    final List<Observable<SchemaDescriptor>> lookups = new ArrayList<>(containers.size());
+    for (final Container container : containers) {
+      lookups.add(lookup(container));
+    }
+    return Observable.merge(lookups, concurrency).subscribe(new Subscriber<SchemaDescriptor>() {
+      private int found = 0;
+
+      @Override
+      public void onNext(final SchemaDescriptor descriptor) {
+        found++;
+      }
+
+      @Override
+      public void onCompleted() {
+        log.info(Scope.SYSTEM.marker(), "prefetched metadata of {} containers - {} found",
+            containers.size(), found);
+      }
+
+      @Override
+      public void onError(final Throwable e) {
+        log.warn(Scope.SYSTEM.marker(), "metadata prefetch aborted", e);
+      }
+    });
+  }
+
+  private Observable<SchemaDescriptor> lookup(final Container container) {
+    return Observable.defer(new Func0<Observable<SchemaDescriptor>>() {
+      @Override
+      public Observable<SchemaDescriptor> call() {
+        return container.metadata();
+      }
+    }).subscribeOn(scheduler)
+        .onErrorResumeNext(new Func1<Throwable, Observable<SchemaDescriptor>>() {
+          @Override
+          public Observable<SchemaDescriptor> call(final Throwable error) {
+            log.warn(Scope.SYSTEM.marker(), "prefetching metadata of <{}> failed - {}",
+                container.name(), error.toString());
+            return Observable.empty();
+          }
+        });
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataPrefetch{" + "concurrency=" + concurrency + '}';
+  }
+}
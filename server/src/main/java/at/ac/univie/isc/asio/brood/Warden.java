@@ -28,24 +28,43 @@ import at.ac.univie.isc.asio.nest.D2rqNestAssembler;
 import at.ac.univie.isc.asio.tool.Closer;
 import at.ac.univie.isc.asio.tool.StatefulMonitor;
 import at.ac.univie.isc.asio.tool.Timeout;
+import at.ac.univie.isc.asio.tool.ValueOrError;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
+import rx.Subscription;
+import rx.subscriptions.Subscriptions;
 
+import javax.annotation.Nullable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * Orchestrate container creation and destruction. On application start all stored configuration
  * items are scanned for containers, that need to be deployed. On shutdown all deployed containers
- * are dropped (but not disposed).
+ * are dropped (but not disposed). Deployments and disposals of different containers may proceed
+ * concurrently, only start up and shutdown are exclusive.
  */
 @Component
 class Warden implements SmartLifecycle {
@@ -61,7 +80,16 @@ class Warden implements SmartLifecycle {
   private final Assembler d2rqAssembler;
   private final FlockAssembler jsonAssembler;
   private final ConfigStore config;
-  private final StatefulMonitor monitor;
+  private final ContainerLocks locks;
+  private final Timeout timeout;
+
+  private Hibernation hibernation;
+  private LazyActivation lazyActivation;
+  private int concurrency = Runtime.getRuntime().availableProcessors();
+  private MetadataPrefetch prefetch;
+  private Subscription prefetching = Subscriptions.empty();
+  private Executor retirement = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("container-retirement-%d").setDaemon(true).build());
 
   @Autowired
   Warden(final Catalog catalog, final D2rqNestAssembler d2rqAssembler, final FlockAssembler jsonAssembler, final ConfigStore config, final Timeout timeout) {
@@ -70,7 +98,65 @@ class Warden implements SmartLifecycle {
     this.config = config;
     this.d2rqAssembler = d2rqAssembler;
     this.jsonAssembler = jsonAssembler;
-    monitor = StatefulMonitor.withMaximalWaitingTime(timeout);
+    this.timeout = timeout;
+    locks = ContainerLocks.withMaximalWaitingTime(timeout);
+  }
+
+  /**
+   * Let containers assembled from d2rq mappings hibernate when idle. Must be set before starting.
+   *
+   * @param hibernation the hibernation service
+   */
+  @Autowired(required = false)
+  void setHibernation(final Hibernation hibernation) {
+    log.info(Scope.SYSTEM.marker(), "enabling container hibernation {}", hibernation);
+    this.hibernation = hibernation;
+  }
+
+  /**
+   * Deploy stored containers as placeholders on start up and activate them in background.
+   * Must be set before starting.
+   *
+   * @param lazyActivation the lazy activation service
+   */
+  @Autowired(required = false)
+  void setLazyActivation(final LazyActivation lazyActivation) {
+    log.info(Scope.SYSTEM.marker(), "enabling lazy container activation {}", lazyActivation);
+    this.lazyActivation = lazyActivation;
+  }
+
+  /**
+   * Limit the number of containers, that are assembled and activated concurrently during batch
+   * deployments. Defaults to the number of available processors.
+   *
+   * @param concurrency maximal number of concurrent activations, ignored if less than one
+   */
+  @Value("${asio.deployment-concurrency:0}")
+  void setConcurrency(final int concurrency) {
+    if (concurrency > 0) {
+      this.concurrency = concurrency;
+    }
+  }
+
+  /**
+   * Fetch the metadata of all containers deployed on start up in background, with the given
+   * number of concurrent lookups. Placeholders of lazily activated containers are skipped.
+   *
+   * @param concurrency maximal number of concurrent lookups, prefetching is disabled if less than one
+   */
+  @Value("${asio.metadata.prefetch-concurrency:4}")
+  void setPrefetchConcurrency(final int concurrency) {
+    this.prefetch = concurrency > 0 ? MetadataPrefetch.create(concurrency) : null;
+  }
+
+  /**
+   * Drain and close replaced containers on the given executor instead of background threads.
+   *
+   * @param retirement executor of container retirements
+   */
+  @VisibleForTesting
+  void setRetirement(final Executor retirement) {
+    this.retirement = retirement;
   }
 
   @Override
@@ -79,6 +165,8 @@ class Warden implements SmartLifecycle {
         "config=" + config +
         ", d2rqAssembler=" + d2rqAssembler +
         ", jsonAssembler=" + jsonAssembler +
+        ", concurrency=" + concurrency +
+        ", prefetch=" + prefetch +
         '}';
   }
 
@@ -94,22 +182,66 @@ class Warden implements SmartLifecycle {
 
   @Override
   public boolean isRunning() {
-    return monitor.isActive();
+    return locks.isActive();
   }
 
   // === internal api
 
 
   void deployFromD2rqMapping(final Id target, final ByteSource source) {
-    assembleAndDeploy(target, source, d2rqAssembler, D2RQ_SUFFIX);
+    assembleAndDeploy(target, source, d2rq(), D2RQ_SUFFIX);
   }
 
   void deployFromJson(final Id target, final ByteSource source) {
-    assembleAndDeploy(target, source, jsonAssembler, JSON_SUFFIX);
+    assembleAndDeploy(target, source, tracked(jsonAssembler), JSON_SUFFIX);
   }
 
   /**
-   * Assemble a container from the given configuration data and deploy it with the given id.
+   * Assemble, activate and deploy containers from all given d2rq mappings at once. Containers are
+   * activated concurrently. Failing containers are skipped, all others are deployed.
+   *
+   * @param sources d2rq mappings of each deployed container
+   * @return failure for each container, that could not be deployed - empty if all succeeded
+   */
+  Map<Id, RuntimeException> deployAllFromD2rqMappings(final Map<Id, ByteSource> sources) {
+    log.debug(Scope.SYSTEM.marker(), "bulk deploying {}", sources.keySet());
+    locks.ensureActive(); // fail fast before doing a costly assembly
+    final Map<Id, ValueOrError<Container>> activated = activateAll(sources, d2rq());
+    final Map<Id, Container> replaced = new LinkedHashMap<>();
+    final Map<Id, RuntimeException> failures = new LinkedHashMap<>();
+    for (final Map.Entry<Id, ValueOrError<Container>> current : activated.entrySet()) {
+      final Id target = current.getKey();
+      if (current.getValue().hasError()) {
+        failures.put(target, current.getValue().error());
+        continue;
+      }
+      final Container container = current.getValue().get();
+      try {
+        final Optional<Container> former = locks.atomic(target, new Callable<Optional<Container>>() {
+          @Override
+          public Optional<Container> call() throws Exception {
+            return switchTo(container, sources.get(target), D2RQ_SUFFIX);
+          }
+        });
+        if (former.isPresent()) {
+          replaced.put(target, former.get());
+        }
+      } catch (final RuntimeException e) {
+        log.error(Scope.SYSTEM.marker(), "bulk deployment of <{}> failed", target, e);
+        Closer.quietly(container);
+        failures.put(target, e);
+      }
+    }
+    for (final Map.Entry<Id, Container> former : replaced.entrySet()) {
+      retire(former.getValue(), activated.get(former.getKey()).get());
+    }
+    return failures;
+  }
+
+  /**
+   * Assemble a container from the given configuration data and deploy it with the given id. The new
+   * container is activated, before it replaces a container with the same id. The replaced container
+   * is closed in background after running invocations have been drained.
    *
    * @param target  id of the new container
    * @param source  raw configuration data of the deployed container
@@ -118,41 +250,88 @@ class Warden implements SmartLifecycle {
    */
   private void assembleAndDeploy(final Id target, final ByteSource source, final Assembler factory, final String format) {
     log.debug(Scope.SYSTEM.marker(), "creating <{}> from '{}' sources using {}", target, format, factory.getClass());
-    monitor.ensureActive(); // fail fast before doing a costly assembly
+    locks.ensureActive(); // fail fast before doing a costly assembly
     final Container container = factory.assemble(target, source);
-    monitor.atomic(new Callable<Void>() {
+    final Optional<Container> replaced;
+    try {
+      container.activate();
+      log.debug(Scope.SYSTEM.marker(), "activated {} as <{}>", container, target);
+      replaced = locks.atomic(target, new Callable<Optional<Container>>() {
+        @Override
+        public Optional<Container> call() throws Exception {
+          return switchTo(container, source, format);
+        }
+      });
+    } catch (final RuntimeException e) {
+      Closer.quietly(container);
+      throw e;
+    }
+    if (replaced.isPresent()) {
+      retire(replaced.get(), container);
+    }
+  }
+
+  /**
+   * Replace the stored configuration and route requests to the given, active container.
+   * Must be called while holding the lock of the container.
+   *
+   * @return the replaced container if one was present
+   */
+  private Optional<Container> switchTo(final Container container, final ByteSource source, final String format) {
+    final Id target = container.name();
+    config.clear(target.asString());
+    final URI location = config.save(target.asString(), format, source);
+    log.debug(Scope.SYSTEM.marker(), "saved configuration at <{}>", location);
+    return catalog.deploy(container);
+  }
+
+  /**
+   * Close a replaced or dropped container in background. If it tracks its invocations, requests
+   * still holding the replaced container are routed to its successor at once and running
+   * invocations are drained before closing, for at most the global timeout.
+   */
+  private void retire(final Container replaced, @Nullable final Container successor) {
+    log.debug(Scope.SYSTEM.marker(), "retiring {} replaced by {}", replaced, successor);
+    if (replaced instanceof HibernatingContainer) {
+      ((HibernatingContainer) replaced).routeTo(successor);
+    }
+    retirement.execute(new Runnable() {
       @Override
-      public Void call() throws Exception {
-        dispose(target);
-        final URI location = config.save(target.asString(), format, source);
-        log.debug(Scope.SYSTEM.marker(), "saved configuration at <{}>", location);
-        container.activate();
-        log.debug(Scope.SYSTEM.marker(), "activated {} as <{}>", container, target);
-        final Optional<Container> replaced = catalog.deploy(container);
-        cleanUpIfNecessary(replaced);
-        assert !replaced.isPresent() : "container was present on deploying of " + target;
-        return null;
+      public void run() {
+        try {
+          if (replaced instanceof HibernatingContainer) {
+            ((HibernatingContainer) replaced).retire(successor, timeout);
+          } else {
+            Closer.quietly(replaced);
+          }
+        } catch (final RuntimeException e) {
+          log.warn(Scope.SYSTEM.marker(), "retiring {} failed", replaced, e);
+        }
       }
     });
   }
 
   /**
-   * If present undeploy and dispose the container with given name.
+   * If present undeploy and dispose the container with given name. Running invocations on the
+   * disposed container are drained in background before closing it.
    *
    * @param target name of target container
    * @return true if the target container was present and has been dropped, false if not present
    */
   boolean dispose(final Id target) {
     log.debug(Scope.SYSTEM.marker(), "dispose container <{}>", target);
-    return monitor.atomic(new Callable<Boolean>() {
+    final Optional<Container> dropped = locks.atomic(target, new Callable<Optional<Container>>() {
       @Override
-      public Boolean call() throws Exception {
+      public Optional<Container> call() throws Exception {
         final Optional<Container> dropped = catalog.drop(target);
-        cleanUpIfNecessary(dropped);
         config.clear(target.asString());
-        return dropped.isPresent();
+        return dropped;
       }
     });
+    if (dropped.isPresent()) {
+      retire(dropped.get(), null);
+    }
+    return dropped.isPresent();
   }
 
   // === lifecycle implementation ==================================================================
@@ -167,13 +346,17 @@ class Warden implements SmartLifecycle {
   @Override
   public void start() {
     log.info(Scope.SYSTEM.marker(), "starting", this);
-    monitor.activate(new StatefulMonitor.Action() {
+    locks.activate(new StatefulMonitor.Action() {
       @Override
       public void run() throws Exception {
+        final List<Container> deployed = new ArrayList<>();
         final Map<String, ByteSource> d2rqMappings = config.findAllWithIdentifier(D2RQ_SUFFIX);
-        deployBatch(d2rqMappings, d2rqAssembler);
+        deployed.addAll(deployBatch(d2rqMappings, d2rqOnStartup()));
         final Map<String, ByteSource> jsonMappings = config.findAllWithIdentifier(JSON_SUFFIX);
-        deployBatch(jsonMappings, jsonAssembler);
+        deployed.addAll(deployBatch(jsonMappings, onStartup(jsonAssembler, tracked(jsonAssembler))));
+        if (prefetch != null && lazyActivation == null) {
+          prefetching = prefetch.fetch(deployed);
+        }
       }
     });
   }
@@ -188,9 +371,10 @@ class Warden implements SmartLifecycle {
   @Override
   public void stop() {
     log.info(Scope.SYSTEM.marker(), "stopping");
-    monitor.disable(new StatefulMonitor.Action() {
+    locks.disable(new StatefulMonitor.Action() {
       @Override
       public void run() throws Exception {
+        prefetching.unsubscribe();
         for (final Container container : catalog.clear()) {
           log.debug(Scope.SYSTEM.marker(), "closing {} on stop", container.name());
           Closer.quietly(container);
@@ -209,31 +393,107 @@ class Warden implements SmartLifecycle {
     callback.run();
   }
 
+  /**
+   * d2rq containers may hibernate, if enabled
+   */
+  private Assembler d2rq() {
+    return hibernation == null ? tracked(d2rqAssembler) : hibernation.wrap(d2rqAssembler);
+  }
+
+  /**
+   * lazy placeholders of d2rq containers may hibernate as well, if enabled
+   */
+  private Assembler d2rqOnStartup() {
+    if (lazyActivation == null) {
+      return d2rq();
+    }
+    final Assembler placeholders = lazyActivation.wrap(d2rqAssembler);
+    return hibernation == null ? placeholders : hibernation.wrap(placeholders);
+  }
+
+  /**
+   * track usage of assembled containers, to allow draining them on replacement
+   */
+  private Assembler tracked(final Assembler raw) {
+    return HibernatingContainer.assembler(raw, Ticker.systemTicker(), timeout);
+  }
+
+  /**
+   * create placeholders from the raw assembler if lazy activation is enabled
+   */
+  private Assembler onStartup(final Assembler raw, final Assembler eager) {
+    return lazyActivation == null ? eager : lazyActivation.wrap(raw);
+  }
+
   /**
    * Deploy all given id->configurations mappings as container, using the given assembler type.
+   *
+   * @return all successfully deployed containers
    */
-  private void deployBatch(final Map<String, ByteSource> found, final Assembler factory) {
+  private List<Container> deployBatch(final Map<String, ByteSource> found, final Assembler factory) {
     log.debug(Scope.SYSTEM.marker(), "found configurations of {}", found.keySet());
+    final Map<Id, ByteSource> sources = new LinkedHashMap<>();
     for (Map.Entry<String, ByteSource> current : found.entrySet()) {
-      final Id name = Id.valueOf(current.getKey());
-      log.info(Scope.SYSTEM.marker(), "deploying <{}> on startup", name);
-      final Optional<Container> replaced = deployQuietly(name, current.getValue(), factory);
-      cleanUpIfNecessary(replaced);
+      sources.put(Id.valueOf(current.getKey()), current.getValue());
+    }
+    log.info(Scope.SYSTEM.marker(), "deploying {} on startup", sources.keySet());
+    final List<Container> deployed = new ArrayList<>();
+    for (Map.Entry<Id, ValueOrError<Container>> result : activateAll(sources, factory).entrySet()) {
+      if (result.getValue().hasValue()) {
+        final Optional<Container> replaced = catalog.deploy(result.getValue().get());
+        cleanUpIfNecessary(replaced);
+        deployed.add(result.getValue().get());
+      } else {
+        log.error(Scope.SYSTEM.marker(), "quiet deployment of a container <{}> failed",
+            result.getKey(), result.getValue().error());
+      }
     }
+    return deployed;
   }
 
   /**
-   * Attempt to assemble, activate and deploy a container with given name and config,
-   * but suppress any errors. Return any replaced, if one was present.
+   * Assemble and activate containers from all given configurations concurrently on a bounded pool.
+   * Errors are isolated per container, a failing container is closed again.
+   *
+   * @return activated container or error for each given id, in the iteration order of the input
    */
-  private Optional<Container> deployQuietly(final Id name, final ByteSource config, final Assembler factory) {
+  private Map<Id, ValueOrError<Container>> activateAll(final Map<Id, ByteSource> sources,
+                                                       final Assembler factory) {
+    final int threads = Math.max(1, Math.min(concurrency, sources.size()));
+    final ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("container-deployment-%d").setDaemon(true).build());
     try {
-      final Container container = factory.assemble(name, config);
-      container.activate();
-      return catalog.deploy(container);
-    } catch (final Exception cause) {
-      log.error(Scope.SYSTEM.marker(), "quiet deployment of a container <{}> failed", name, cause);
-      return Optional.absent();
+      final Map<Id, Future<Container>> pending = new LinkedHashMap<>();
+      for (final Map.Entry<Id, ByteSource> current : sources.entrySet()) {
+        pending.put(current.getKey(), pool.submit(new Callable<Container>() {
+          @Override
+          public Container call() throws Exception {
+            final Container container = factory.assemble(current.getKey(), current.getValue());
+            try {
+              container.activate();
+            } catch (final RuntimeException e) {
+              Closer.quietly(container);
+              throw e;
+            }
+            log.debug(Scope.SYSTEM.marker(), "activated {} as <{}>", container, current.getKey());
+            return container;
+          }
+        }));
+      }
+      final Map<Id, ValueOrError<Container>> results = new LinkedHashMap<>();
+      for (final Map.Entry<Id, Future<Container>> current : pending.entrySet()) {
+        try {
+          results.put(current.getKey(),
+              ValueOrError.valid(Uninterruptibles.getUninterruptibly(current.getValue())));
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          results.put(current.getKey(), ValueOrError.<Container>invalid(
+              cause instanceof RuntimeException ? (RuntimeException) cause : new UncheckedExecutionException(cause)));
+        }
+      }
+      return results;
+    } finally {
+      pool.shutdown();
     }
   }
 
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+
+/**
+ * RDF constants for asio specific dataset settings. The properties are attached to the
+ * {@link de.fuberlin.wiwiss.d2rq.vocab.D2RConfig#Server server} resource of a d2rq mapping.
+ */
+public final class AsioConfig {
+  private AsioConfig() { /* no instances */ }
+
+  /**
+   * The asio configuration namespace.
+   */
+  public static final String NAMESPACE = "http://isc.univie.ac.at/2014/asio/config#";
+
+  private static final Model HOLDER = ModelFactory.createDefaultModel();
+
+  /**
+   * Expiration period of cached sparql results and resource descriptions in seconds. Nothing is
+   * cached if missing.
+   */
+  public static final Property resultCacheTtl = property("resultCacheTtl");
+
+  /**
+   * Serve sparql queries from a materialized snapshot of the mapped data, that is rebuilt after the
+   * given period in seconds. A period of zero disables scheduled rebuilds. Queries are translated to
+   * sql on the fly if missing.
+   */
+  public static final Property snapshotRefresh = property("snapshotRefresh");
+
+  /**
+   * A named sparql query, that clients may invoke with parameters. The object must be a resource with
+   * a {@link #queryName} and a {@link #queryText}.
+   */
+  public static final Property storedQuery = property("storedQuery");
+
+  /**
+   * Name of a {@link #storedQuery}.
+   */
+  public static final Property queryName = property("queryName");
+
+  /**
+   * Sparql text of a {@link #storedQuery}.
+   */
+  public static final Property queryText = property("queryText");
+
+  /**
+   * A literal-valued property, whose values are added to the full-text index of the dataset. The
+   * object is either the property or a {@code d2rq:PropertyBridge} mapping to it.
+   */
+  public static final Property textIndex = property("textIndex");
+
+  /**
+   * A sparql query, that is executed after the dataset has been deployed, e.g. to prime caches.
+   * May be repeated.
+   */
+  public static final Property warmUpQuery = property("warmUpQuery");
+
+  private static Property property(final String name) {
+    return HOLDER.createProperty(NAMESPACE, name);
+  }
+}
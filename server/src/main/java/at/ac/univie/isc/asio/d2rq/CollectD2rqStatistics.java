@@ -0,0 +1,330 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import at.ac.univie.isc.asio.Scope;
+import com.google.common.base.Optional;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.RDF;
+import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Derive {@link D2rqStatistics} from the class maps and property bridges of a d2rq mapping. Each
+ * mapping element is associated with the first table column it references. Row counts are taken
+ * from the estimates in the information schema or the approximate index statistics in the jdbc
+ * metadata, distinct value counts from the index statistics, if the column is indexed. No table is
+ * scanned. Tables without any statistics are assumed to hold {@link #UNKNOWN_ROWS} rows.
+ */
+public final class CollectD2rqStatistics {
+  private static final Logger log = getLogger(CollectD2rqStatistics.class);
+
+  /** row count estimate of tables without statistics */
+  static final long UNKNOWN_ROWS = 1_000;
+
+  private static final Property CLASS = d2rq("class");
+  private static final Property PROPERTY = d2rq("property");
+  private static final Property BELONGS_TO = d2rq("belongsToClassMap");
+  private static final Property REFERS_TO = d2rq("refersToClassMap");
+  private static final Property[] COLUMN_REFERENCES = new Property[] {
+      d2rq("column"), d2rq("uriColumn"), d2rq("pattern"), d2rq("uriPattern"), d2rq("bNodeIdColumns")
+  };
+
+  /** matches column references in d2rq patterns, e.g. {@code http://example.com/@@table.id|urlify@@} */
+  private static final Pattern PATTERN_COLUMN = Pattern.compile("@@([^@|]+)(?:\\|[^@]*)?@@");
+
+  private static Property d2rq(final String name) {
+    return ResourceFactory.createProperty(D2RQ.NS, name);
+  }
+
+  /**
+   * Collect statistics for the given mapping.
+   *
+   * @param mapping d2rq mapping in rdf format
+   * @return statistics collector
+   */
+  public static CollectD2rqStatistics from(final Model mapping) {
+    return new CollectD2rqStatistics(mapping);
+  }
+
+  private final Model mapping;
+
+  private CollectD2rqStatistics(final Model mapping) {
+    this.mapping = mapping;
+  }
+
+  /**
+   * Read row counts and column cardinality from the metadata of the given database.
+   *
+   * @param connection connection to the mapped database
+   * @return collected statistics
+   * @throws SQLException on any database error
+   */
+  public D2rqStatistics collect(final Connection connection) throws SQLException {
+    final Database database = new Database(connection);
+    final D2rqStatistics.Builder statistics = D2rqStatistics.builder();
+    final ResIterator classMaps = mapping.listResourcesWithProperty(RDF.type, D2RQ.ClassMap);
+    while (classMaps.hasNext()) {
+      final Resource classMap = classMaps.next();
+      final Optional<ColumnReference> key = columnOf(classMap);
+      if (!key.isPresent()) { continue; }
+      final long rows = database.rows(key.get().table);
+      for (final RDFNode clazz : mapping.listObjectsOfProperty(classMap, CLASS).toList()) {
+        statistics.instances(clazz.asNode(), rows);
+      }
+    }
+    final ResIterator bridges = mapping.listResourcesWithProperty(RDF.type, D2RQ.PropertyBridge);
+    while (bridges.hasNext()) {
+      final Resource bridge = bridges.next();
+      final Optional<ColumnReference> subject = subjectOf(bridge);
+      final Optional<ColumnReference> object = columnOf(bridge);
+      final Optional<ColumnReference> referenced = referencedBy(bridge);
+      if (!subject.isPresent() || !(object.isPresent() || referenced.isPresent())) { continue; }
+      // one triple per row of the subject table, unless values are joined from another table
+      final long triples = object.isPresent()
+          ? database.rows(object.get().table)
+          : database.rows(subject.get().table);
+      final long subjects = Math.min(triples,
+          database.distinct(subject.get()).or(database.rows(subject.get().table)));
+      final long objects = Math.min(triples, database.distinct(object.or(referenced).get()).or(triples));
+      for (final RDFNode property : mapping.listObjectsOfProperty(bridge, PROPERTY).toList()) {
+        statistics.predicate(property.asNode(), triples, subjects, objects);
+      }
+    }
+    final D2rqStatistics collected = statistics.build();
+    log.debug(Scope.SYSTEM.marker(), "collected d2rq statistics {}", collected);
+    return collected;
+  }
+
+  private Optional<ColumnReference> subjectOf(final Resource bridge) {
+    final Statement belongsTo = bridge.getProperty(BELONGS_TO);
+    return belongsTo == null || !belongsTo.getObject().isResource()
+        ? Optional.<ColumnReference>absent()
+        : columnOf(belongsTo.getResource());
+  }
+
+  private Optional<ColumnReference> referencedBy(final Resource bridge) {
+    final Statement refersTo = bridge.getProperty(REFERS_TO);
+    return refersTo == null || !refersTo.getObject().isResource()
+        ? Optional.<ColumnReference>absent()
+        : columnOf(refersTo.getResource());
+  }
+
+  /** find the first column referenced by a class map or property bridge */
+  static Optional<ColumnReference> columnOf(final Resource element) {
+    for (final Property reference : COLUMN_REFERENCES) {
+      final Statement statement = element.getProperty(reference);
+      if (statement != null && statement.getObject().isLiteral()) {
+        final String value = statement.getString();
+        final Matcher matcher = PATTERN_COLUMN.matcher(value);
+        final String column = matcher.find() ? matcher.group(1) : value.split(",")[0];
+        final Optional<ColumnReference> parsed = ColumnReference.parse(column.trim());
+        if (parsed.isPresent()) { return parsed; }
+      }
+    }
+    return Optional.absent();
+  }
+
+  /** a qualified column reference, e.g. {@code schema.table.column} */
+  static final class ColumnReference {
+    static Optional<ColumnReference> parse(final String qualified) {
+      final int separator = qualified.lastIndexOf('.');
+      if (separator <= 0 || separator == qualified.length() - 1) {
+        return Optional.absent();
+      }
+      return Optional.of(new ColumnReference(
+          qualified.substring(0, separator), qualified.substring(separator + 1)));
+    }
+
+    final String table;
+    final String column;
+
+    private ColumnReference(final String table, final String column) {
+      this.table = table;
+      this.column = column;
+    }
+
+    @Override
+    public String toString() {
+      return table + "." + column;
+    }
+  }
+
+  /** read and memorize table statistics from the jdbc metadata */
+  private static final class Database {
+    private final Connection connection;
+    private final Map<String, Long> rows = new HashMap<>();
+    private final Map<String, Optional<Long>> distinct = new HashMap<>();
+
+    private Database(final Connection connection) {
+      this.connection = connection;
+    }
+
+    /**
+     * approximate row count of a table, taken from the information schema, the table statistics
+     * or the unique indices in the jdbc metadata
+     */
+    long rows(final String table) throws SQLException {
+      Long count = rows.get(table);
+      if (count == null) {
+        final IndexScan scan = new IndexScan() {
+          @Override
+          public Optional<Long> scan(final ResultSet indices) throws SQLException {
+            return rowsFrom(indices);
+          }
+        };
+        final String upper = table.toUpperCase(Locale.ENGLISH);
+        Optional<Long> estimate = fromInformationSchema(table);
+        if (!estimate.isPresent()) {
+          estimate = fromInformationSchema(upper);
+        }
+        if (!estimate.isPresent()) {
+          estimate = lookup(table, scan);
+        }
+        if (!estimate.isPresent()) {
+          estimate = lookup(upper, scan);
+        }
+        if (!estimate.isPresent()) {
+          log.debug(Scope.SYSTEM.marker(), "no statistics on {} - assuming {} rows", table, UNKNOWN_ROWS);
+        }
+        count = estimate.or(UNKNOWN_ROWS);
+        rows.put(table, count);
+      }
+      return count;
+    }
+
+    /** cardinality of an index on the given column if present */
+    Optional<Long> distinct(final ColumnReference reference) throws SQLException {
+      Optional<Long> count = distinct.get(reference.toString());
+      if (count == null) {
+        final IndexScan scan = new IndexScan() {
+          @Override
+          public Optional<Long> scan(final ResultSet indices) throws SQLException {
+            return distinctFrom(indices, reference.column);
+          }
+        };
+        count = lookup(reference.table, scan);
+        if (!count.isPresent()) {
+          count = lookup(reference.table.toUpperCase(Locale.ENGLISH), scan);
+        }
+        distinct.put(reference.toString(), count);
+      }
+      return count;
+    }
+
+    /** the row count estimate of mysql ({@code TABLE_ROWS}) or h2 ({@code ROW_COUNT_ESTIMATE}) */
+    private Optional<Long> fromInformationSchema(final String qualified) throws SQLException {
+      final int separator = qualified.lastIndexOf('.');
+      final String schema = separator > 0 ? qualified.substring(0, separator) : null;
+      final String table = qualified.substring(separator + 1);
+      final String query = "SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?"
+          + (schema == null ? "" : " AND TABLE_SCHEMA = ?");
+      try (final PreparedStatement statement = connection.prepareStatement(query)) {
+        statement.setString(1, table);
+        if (schema != null) {
+          statement.setString(2, schema);
+        }
+        try (final ResultSet result = statement.executeQuery()) {
+          final int column = estimateColumnOf(result.getMetaData());
+          if (column > 0 && result.next()) {
+            final long estimate = result.getLong(column);
+            return result.wasNull() ? Optional.<Long>absent() : Optional.of(estimate);
+          }
+          return Optional.absent();
+        }
+      }
+    }
+
+    private static int estimateColumnOf(final ResultSetMetaData columns) throws SQLException {
+      for (int i = 1; i <= columns.getColumnCount(); i++) {
+        final String name = columns.getColumnLabel(i);
+        if ("TABLE_ROWS".equalsIgnoreCase(name) || "ROW_COUNT_ESTIMATE".equalsIgnoreCase(name)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /** scan the approximate index information of a possibly qualified table */
+    private Optional<Long> lookup(final String qualified, final IndexScan scan) throws SQLException {
+      final int separator = qualified.lastIndexOf('.');
+      final String qualifier = separator > 0 ? qualified.substring(0, separator) : null;
+      final String table = qualified.substring(separator + 1);
+      final DatabaseMetaData metadata = connection.getMetaData();
+      // the qualifier denotes a catalog in mysql, but a schema in most other databases
+      final Optional<Long> asCatalog = scan(metadata.getIndexInfo(qualifier, null, table, false, true), scan);
+      return asCatalog.isPresent() || qualifier == null
+          ? asCatalog
+          : scan(metadata.getIndexInfo(null, qualifier, table, false, true), scan);
+    }
+
+    private Optional<Long> scan(final ResultSet indices, final IndexScan scan) throws SQLException {
+      try {
+        return scan.scan(indices);
+      } finally {
+        indices.close();
+      }
+    }
+
+    /** the table statistic if reported, else the largest cardinality of a unique index */
+    private static Optional<Long> rowsFrom(final ResultSet indices) throws SQLException {
+      long largest = 0;
+      while (indices.next()) {
+        final long cardinality = indices.getLong("CARDINALITY");
+        if (indices.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+          return Optional.of(cardinality);
+        } else if (!indices.getBoolean("NON_UNIQUE")) {
+          largest = Math.max(largest, cardinality);
+        }
+      }
+      return largest > 0 ? Optional.of(largest) : Optional.<Long>absent();
+    }
+
+    private static Optional<Long> distinctFrom(final ResultSet indices, final String column) throws SQLException {
+      while (indices.next()) {
+        final boolean leading = indices.getShort("ORDINAL_POSITION") == 1;
+        final long cardinality = indices.getLong("CARDINALITY");
+        if (leading && column.equalsIgnoreCase(indices.getString("COLUMN_NAME")) && cardinality > 0) {
+          return Optional.of(cardinality);
+        }
+      }
+      return Optional.absent();
+    }
+  }
+
+  /** extract a statistic from jdbc index information */
+  private interface IndexScan {
+    Optional<Long> scan(ResultSet indices) throws SQLException;
+  }
+}
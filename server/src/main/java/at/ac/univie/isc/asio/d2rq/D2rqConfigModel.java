@@ -34,12 +34,21 @@ import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 import javax.annotation.Nullable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Wrap a d2rq configuration in rdf format and expose its attributes.
  */
 public final class D2rqConfigModel {
+  /** d2rq:property - missing from the d2rq vocabulary class */
+  private static final Property D2RQ_PROPERTY = ResourceFactory.createProperty(D2RQ.NS, "property");
+
   /**
    * Wrap the given d2rq configuration model.
    *
@@ -151,8 +160,119 @@ public final class D2rqConfigModel {
    * @return timeout
    */
   public Timeout getTimeout() {
+    return readSeconds(D2RConfig.sparqlTimeout);
+  }
+
+  /**
+   * Expiration period of cached sparql results. Undefined if missing.
+   *
+   * @return time to live of cached results
+   */
+  public Timeout getResultCacheTtl() {
+    return readSeconds(AsioConfig.resultCacheTtl);
+  }
+
+  /**
+   * Refresh period of materialized snapshots. Undefined if query translation on the fly is used.
+   *
+   * @return snapshot refresh period
+   */
+  public Timeout getSnapshotRefresh() {
+    return readSeconds(AsioConfig.snapshotRefresh);
+  }
+
+  /**
+   * Named sparql queries, that clients may invoke with parameters. Empty if missing.
+   *
+   * @return sparql query texts by name
+   */
+  public Map<String, String> getStoredQueries() {
+    final Map<String, String> queries = new LinkedHashMap<>();
+    final StmtIterator declarations = requireServer().listProperties(AsioConfig.storedQuery);
+    try {
+      while (declarations.hasNext()) {
+        final RDFNode declaration = declarations.next().getObject();
+        if (!declaration.isResource()) {
+          throw new InvalidD2rqConfig(declaration, "stored query must be a resource");
+        }
+        final String name = requireString(declaration.asResource(), AsioConfig.queryName);
+        final String text = requireString(declaration.asResource(), AsioConfig.queryText);
+        if (queries.put(name, text) != null) {
+          throw new InvalidD2rqConfig(declaration, "duplicate stored query name '" + name + "'");
+        }
+      }
+    } finally {
+      declarations.close();
+    }
+    return queries;
+  }
+
+  /**
+   * Uris of literal-valued properties, that are included in the full-text index. Empty if missing.
+   *
+   * @return uris of indexed properties
+   */
+  public Set<URI> getTextIndex() {
+    final Set<URI> properties = new LinkedHashSet<>();
+    final StmtIterator declarations = requireServer().listProperties(AsioConfig.textIndex);
+    try {
+      while (declarations.hasNext()) {
+        final RDFNode declaration = declarations.next().getObject();
+        if (!declaration.isURIResource()) {
+          throw new InvalidD2rqConfig(declaration, "indexed property must be a uri");
+        }
+        Resource property = declaration.asResource();
+        final Statement bridged = property.getProperty(D2RQ_PROPERTY);
+        if (bridged != null) {
+          if (!bridged.getObject().isURIResource()) {
+            throw new InvalidD2rqConfig(declaration, "bridged property must be a uri");
+          }
+          property = bridged.getResource();
+        }
+        properties.add(URI.create(property.getURI()));
+      }
+    } finally {
+      declarations.close();
+    }
+    return properties;
+  }
+
+  /**
+   * Sparql queries, that should be executed after deployment. Empty if missing.
+   *
+   * @return sparql query texts
+   */
+  public List<String> getWarmUpQueries() {
+    final List<String> queries = new ArrayList<>();
+    final StmtIterator declarations = requireServer().listProperties(AsioConfig.warmUpQuery);
+    try {
+      while (declarations.hasNext()) {
+        final RDFNode declaration = declarations.next().getObject();
+        if (!declaration.isLiteral()) {
+          throw new InvalidD2rqConfig(declaration, "warm-up query must be a literal");
+        }
+        queries.add(declaration.asLiteral().getLexicalForm());
+      }
+    } finally {
+      declarations.close();
+    }
+    return queries;
+  }
+
+  private String requireString(final Resource subject, final Property property) {
+    final Statement statement = subject.getProperty(property);
+    if (statement == null || !statement.getObject().isLiteral()) {
+      throw new InvalidD2rqConfig(subject, "missing " + property.getLocalName() + " literal");
+    }
+    return statement.getString();
+  }
+
+  /**
+   * Read a numeric property of the server resource as duration in seconds.
+   */
+  private Timeout readSeconds(final Property property) {
     final Resource server = requireServer();
-    return Optional.fromNullable(server.getProperty(D2RConfig.sparqlTimeout))
+    return Optional.fromNullable(server.getProperty(property))
         .transform(new Function<Statement, Timeout>() {
           @Nullable
           @Override
@@ -161,7 +281,7 @@ public final class D2rqConfigModel {
             try {
               return Timeout.from(value.asLiteral().getLong(), TimeUnit.SECONDS);
             } catch (Exception cause) {
-              throw new InvalidD2rqConfig(D2RConfig.sparqlTimeout,
+              throw new InvalidD2rqConfig(property,
                   "[" + value + "] is not numeric");
             }
           }
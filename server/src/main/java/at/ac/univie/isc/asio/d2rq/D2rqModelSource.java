@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.database.Jdbc;
+import at.ac.univie.isc.asio.tool.Beans;
+import com.google.common.base.Supplier;
+import com.hp.hpl.jena.rdf.model.Model;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Compile a fresh d2rq model, backed by a dedicated jdbc connection, on each invocation.
+ * Closing the model releases its connection.
+ */
+public final class D2rqModelSource implements Supplier<Model> {
+  private static final Logger log = getLogger(D2rqModelSource.class);
+
+  /**
+   * Create models from the given mapping, connecting to the given database.
+   *
+   * @param d2rq mapping configuration
+   * @param jdbc connection settings
+   * @return d2rq model source
+   */
+  public static D2rqModelSource create(final D2rqConfigModel d2rq, final Jdbc jdbc) {
+    return new D2rqModelSource(d2rq, jdbc);
+  }
+
+  private final D2rqConfigModel d2rq;
+  private final Jdbc jdbc;
+
+  private D2rqModelSource(final D2rqConfigModel d2rq, final Jdbc jdbc) {
+    this.d2rq = d2rq;
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Compile a d2rq model, failing fast on any error. Ensure the jdbc connection is cleaned up if
+   * compilation fails.
+   */
+  @Override
+  public Model get() {
+    final ConnectedDB connection = newConnection();
+    try {
+      return d2rq.compile(connection);
+    } catch (final Exception e) {
+      log.warn(Scope.SYSTEM.marker(), "compilation of a d2rq model failed", e);
+      connection.close();
+      throw e;
+    }
+  }
+
+  private ConnectedDB newConnection() {
+    final ConnectedDB connection = D2rqTools.createSqlConnection(jdbc.getUrl(),
+        jdbc.getUsername(), jdbc.getPassword(), Beans.asProperties(jdbc.getProperties()));
+    connection.switchCatalog(jdbc.getSchema());
+    return connection;
+  }
+}
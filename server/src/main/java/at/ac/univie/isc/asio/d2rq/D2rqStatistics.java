@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternTriple;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformationBase;
+import com.hp.hpl.jena.sparql.sse.Item;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cardinality estimates of the triples generated by a d2rq mapping. The statistics are used to
+ * order the triple patterns of basic graph patterns by selectivity. Without them, patterns on d2rq
+ * graphs are evaluated in the order written. D2rq compiles basic graph patterns with its own query
+ * engine, which bypasses ARQ's stage generators, so the order is applied to the query itself.
+ */
+@Immutable
+public final class D2rqStatistics {
+  private static final D2rqStatistics NONE = new D2rqStatistics(
+      ImmutableMap.<Node, PredicateStatistics>of(), ImmutableMap.<Node, Long>of());
+
+  /**
+   * @return statistics without any information, which do not alter evaluation order
+   */
+  public static D2rqStatistics none() {
+    return NONE;
+  }
+
+  /**
+   * @return a builder for statistics
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Map<Node, PredicateStatistics> predicates;
+  private final Map<Node, Long> classes;
+  private final long total;
+
+  private D2rqStatistics(final Map<Node, PredicateStatistics> predicates, final Map<Node, Long> classes) {
+    this.predicates = predicates;
+    this.classes = classes;
+    long sum = 0;
+    for (final PredicateStatistics each : predicates.values()) {
+      sum += each.triples;
+    }
+    for (final Long each : classes.values()) {
+      sum += each;
+    }
+    this.total = sum;
+  }
+
+  /**
+   * @return true if no statistics are available
+   */
+  public boolean isEmpty() {
+    return predicates.isEmpty() && classes.isEmpty();
+  }
+
+  /**
+   * Reorder the basic graph patterns of the given query according to these statistics. The
+   * pattern of the query is replaced by a reordered copy, the original syntax elements are not
+   * modified, as they may be shared with cached queries.
+   *
+   * @param query a private copy of a parsed query
+   * @return the given query
+   */
+  public Query applyTo(final Query query) {
+    if (!isEmpty() && query.getQueryPattern() != null) {
+      query.setQueryPattern(ReorderBasicPatterns.rewrite(query.getQueryPattern(), reordering()));
+    }
+    return query;
+  }
+
+  /**
+   * @return a reorder transformation ranking triple patterns by the estimated number of matches
+   */
+  public ReorderTransformation reordering() {
+    return new WeightedByStatistics(this);
+  }
+
+  /**
+   * Estimate the number of triples matching the given pattern. Variables that are bound by
+   * preceding patterns count as bound terms.
+   *
+   * @param pattern triple pattern
+   * @return estimated number of matches
+   */
+  double estimate(final PatternTriple pattern) {
+    final boolean subjectBound = isBound(pattern.subject);
+    final boolean objectBound = isBound(pattern.object);
+    if (!pattern.predicate.isNode() || pattern.predicate.isVar()) {
+      // unknown predicate - assume a uniform distribution over all triples
+      return Math.max(1, total / (subjectBound ? 100 : 1) / (objectBound ? 10 : 1));
+    }
+    final Node predicate = pattern.predicate.getNode();
+    if (RDF.type.asNode().equals(predicate) && pattern.object.isNode() && !pattern.object.isVar()) {
+      final Long instances = classes.get(pattern.object.getNode());
+      return subjectBound ? 1 : instances == null ? 0 : instances;
+    }
+    final PredicateStatistics stats = predicates.get(predicate);
+    if (stats == null) {  // no mapping generates this predicate
+      return 0;
+    }
+    if (subjectBound && objectBound) {
+      return 1;
+    } else if (subjectBound) {
+      return ratio(stats.triples, stats.subjects);
+    } else if (objectBound) {
+      return ratio(stats.triples, stats.objects);
+    } else {
+      return stats.triples;
+    }
+  }
+
+  private static boolean isBound(final Item item) {
+    return PatternElements.TERM.equals(item) || (item.isNode() && !item.isVar());
+  }
+
+  private static double ratio(final long triples, final long distinct) {
+    return distinct > 0 ? Math.max(1.0, (double) triples / distinct) : triples;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("total", total)
+        .add("predicates", predicates)
+        .add("classes", classes)
+        .toString();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) { return true; }
+    if (o == null || getClass() != o.getClass()) { return false; }
+    final D2rqStatistics that = (D2rqStatistics) o;
+    return predicates.equals(that.predicates) && classes.equals(that.classes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(predicates, classes);
+  }
+
+  /**
+   * Accumulate statistics. Counts of repeatedly registered predicates or classes are summed up.
+   */
+  public static final class Builder {
+    private final Map<Node, PredicateStatistics> predicates = new HashMap<>();
+    private final Map<Node, Long> classes = new HashMap<>();
+
+    private Builder() {}
+
+    /**
+     * Register triples generated for a predicate.
+     *
+     * @param predicate the generated predicate
+     * @param triples   number of generated triples
+     * @param subjects  number of distinct subjects
+     * @param objects   number of distinct objects
+     * @return this builder
+     */
+    public Builder predicate(final Node predicate, final long triples, final long subjects, final long objects) {
+      final PredicateStatistics added = new PredicateStatistics(triples, subjects, objects);
+      final PredicateStatistics existing = predicates.get(predicate);
+      predicates.put(predicate, existing == null ? added : existing.plus(added));
+      return this;
+    }
+
+    /**
+     * Register instances of a class.
+     *
+     * @param clazz     the class
+     * @param instances number of generated instances
+     * @return this builder
+     */
+    public Builder instances(final Node clazz, final long instances) {
+      final Long existing = classes.get(clazz);
+      classes.put(clazz, existing == null ? instances : existing + instances);
+      return this;
+    }
+
+    public D2rqStatistics build() {
+      return new D2rqStatistics(ImmutableMap.copyOf(predicates), ImmutableMap.copyOf(classes));
+    }
+  }
+
+  @Immutable
+  private static final class PredicateStatistics {
+    private final long triples;
+    private final long subjects;
+    private final long objects;
+
+    private PredicateStatistics(final long triples, final long subjects, final long objects) {
+      this.triples = triples;
+      this.subjects = subjects;
+      this.objects = objects;
+    }
+
+    private PredicateStatistics plus(final PredicateStatistics other) {
+      return new PredicateStatistics(triples + other.triples,
+          subjects + other.subjects, objects + other.objects);
+    }
+
+    @Override
+    public String toString() {
+      return "{triples=" + triples + ", subjects=" + subjects + ", objects=" + objects + '}';
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) { return true; }
+      if (o == null || getClass() != o.getClass()) { return false; }
+      final PredicateStatistics that = (PredicateStatistics) o;
+      return triples == that.triples && subjects == that.subjects && objects == that.objects;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(triples, subjects, objects);
+    }
+  }
+
+  /** rank triple patterns by estimated matches */
+  private static final class WeightedByStatistics extends ReorderTransformationBase {
+    private final D2rqStatistics statistics;
+
+    private WeightedByStatistics(final D2rqStatistics statistics) {
+      this.statistics = statistics;
+    }
+
+    @Override
+    protected double weight(final PatternTriple pattern) {
+      return statistics.estimate(pattern);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.TriplePath;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import com.hp.hpl.jena.sparql.syntax.*;
+
+/**
+ * Rebuild a query pattern with all basic graph patterns ordered by a {@link ReorderTransformation}.
+ * Group, optional, union, minus, graph and service elements along the way are recreated, all other
+ * elements, e.g. filters or sub queries, are reused as they are. No element of the input pattern
+ * is modified, as it may be shared with cached queries.
+ */
+final class ReorderBasicPatterns implements ElementVisitor {
+
+  /**
+   * Create a copy of the given pattern with reordered basic graph patterns.
+   *
+   * @param pattern syntax tree of a query
+   * @param reorder ordering of triple patterns
+   * @return reordered copy of the pattern
+   */
+  static Element rewrite(final Element pattern, final ReorderTransformation reorder) {
+    return new ReorderBasicPatterns(reorder).process(pattern);
+  }
+
+  private final ReorderTransformation reorder;
+  private Element result;
+
+  private ReorderBasicPatterns(final ReorderTransformation reorder) {
+    this.reorder = reorder;
+  }
+
+  private Element process(final Element element) {
+    element.visit(this);
+    return result;
+  }
+
+  @Override
+  public void visit(final ElementTriplesBlock el) {
+    result = new ElementTriplesBlock(reorder.reorder(el.getPattern()));
+  }
+
+  @Override
+  public void visit(final ElementPathBlock el) {
+    final BasicPattern triples = new BasicPattern();
+    for (final TriplePath each : el.getPattern()) {
+      if (!each.isTriple()) {  // property paths are not covered by the statistics
+        result = el;
+        return;
+      }
+      triples.add(each.asTriple());
+    }
+    result = new ElementPathBlock(reorder.reorder(triples));
+  }
+
+  @Override
+  public void visit(final ElementUnion el) {
+    final ElementUnion union = new ElementUnion();
+    for (final Element each : el.getElements()) {
+      union.addElement(process(each));
+    }
+    result = union;
+  }
+
+  @Override
+  public void visit(final ElementOptional el) {
+    result = new ElementOptional(process(el.getOptionalElement()));
+  }
+
+  @Override
+  public void visit(final ElementGroup el) {
+    final ElementGroup group = new ElementGroup();
+    for (final Element each : el.getElements()) {
+      group.addElement(process(each));
+    }
+    result = group;
+  }
+
+  @Override
+  public void visit(final ElementNamedGraph el) {
+    result = new ElementNamedGraph(el.getGraphNameNode(), process(el.getElement()));
+  }
+
+  @Override
+  public void visit(final ElementMinus el) {
+    result = new ElementMinus(process(el.getMinusElement()));
+  }
+
+  @Override
+  public void visit(final ElementService el) {
+    result = new ElementService(el.getServiceNode(), process(el.getElement()), el.getSilent());
+  }
+
+  @Override
+  public void visit(final ElementDataset el) {
+    result = new ElementDataset(el.getDataset(), process(el.getPatternElement()));
+  }
+
+  // === reused as they are
+
+  @Override
+  public void visit(final ElementFilter el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementAssign el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementBind el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementData el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementExists el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementNotExists el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementFetch el) {
+    result = el;
+  }
+
+  @Override
+  public void visit(final ElementSubQuery el) {
+    result = el;
+  }
+}
@@ -21,11 +21,10 @@ package at.ac.univie.isc.asio.d2rq.pool;
 
 import at.ac.univie.isc.asio.Scope;
 import at.ac.univie.isc.asio.d2rq.D2rqConfigModel;
+import at.ac.univie.isc.asio.d2rq.D2rqModelSource;
 import at.ac.univie.isc.asio.d2rq.D2rqTools;
 import at.ac.univie.isc.asio.database.Jdbc;
-import at.ac.univie.isc.asio.tool.Beans;
 import com.hp.hpl.jena.rdf.model.Model;
-import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
 import org.slf4j.Logger;
 import stormpot.Reallocator;
 import stormpot.Slot;
@@ -43,12 +42,10 @@ final class D2rqModelAllocator implements Reallocator<PooledModel> {
 
   public static final int VALIDATION_TIMEOUT = 2; // seconds
 
-  private final D2rqConfigModel d2rq;
-  private final Jdbc jdbc;
+  private final D2rqModelSource source;
 
   public D2rqModelAllocator(final D2rqConfigModel d2rq, final Jdbc jdbc) {
-    this.d2rq = d2rq;
-    this.jdbc = jdbc;
+    this.source = D2rqModelSource.create(d2rq, jdbc);
   }
 
   @Override
@@ -58,25 +55,10 @@ final class D2rqModelAllocator implements Reallocator<PooledModel> {
   }
 
   /**
-   * Compile a d2rq model, failing fast on any error. Ensure the jdbc connection is cleaned up if
-   * compilation fails.
+   * Compile a d2rq model, failing fast on any error.
    */
   Model newModel() {
-    final ConnectedDB connection = newConnection();
-    try {
-      return d2rq.compile(connection);
-    } catch (final Exception e) {
-      log.warn(Scope.SYSTEM.marker(), "compilation of a d2rq model failed", e);
-      connection.close();
-      throw e;
-    }
-  }
-
-  private ConnectedDB newConnection() {
-    final ConnectedDB connection = D2rqTools.createSqlConnection(jdbc.getUrl(),
-        jdbc.getUsername(), jdbc.getPassword(), Beans.asProperties(jdbc.getProperties()));
-    connection.switchCatalog(jdbc.getSchema());
-    return connection;
+    return source.get();
   }
 
   @Override
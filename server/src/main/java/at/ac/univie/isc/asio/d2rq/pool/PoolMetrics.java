@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq.pool;
+
+import com.google.common.base.Objects;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Track usage of pooled d2rq models: the time spent waiting for a model, the time a model is held
+ * by a query execution and the number of executions, that held their model suspiciously long.
+ * Holders of models, that are not released yet, are tracked to detect leaks before a release.
+ */
+@ThreadSafe
+public final class PoolMetrics {
+  /**
+   * Create metrics, that consider a model leaked, if it is held longer than the given threshold.
+   *
+   * @param leakThreshold max expected hold duration
+   * @param unit          unit of the threshold
+   * @return new, empty metrics
+   */
+  public static PoolMetrics create(final long leakThreshold, final TimeUnit unit) {
+    return new PoolMetrics(unit.toNanos(leakThreshold));
+  }
+
+  private final long leakThreshold;
+  private final AtomicLong claims = new AtomicLong(0);
+  private final AtomicLong releases = new AtomicLong(0);
+  private final AtomicLong leaks = new AtomicLong(0);
+  private final AtomicLong totalWait = new AtomicLong(0);
+  private final AtomicLong maxWait = new AtomicLong(0);
+  private final AtomicLong totalHold = new AtomicLong(0);
+  private final AtomicLong maxHold = new AtomicLong(0);
+  /** holders of models, that are not released yet, with the time they claimed them */
+  private final ConcurrentMap<Object, Long> holders = new ConcurrentHashMap<>();
+
+  private PoolMetrics(final long leakThreshold) {
+    this.leakThreshold = leakThreshold;
+  }
+
+  /**
+   * Record a successful claim.
+   *
+   * @param waitNanos time spent waiting for a free model
+   */
+  void claimed(final long waitNanos) {
+    claims.incrementAndGet();
+    totalWait.addAndGet(waitNanos);
+    updateMax(maxWait, waitNanos);
+  }
+
+  /**
+   * Record the release of a claimed model.
+   *
+   * @param holdNanos time between claim and release
+   * @return true if the model has been held longer than the leak threshold
+   */
+  boolean released(final long holdNanos) {
+    releases.incrementAndGet();
+    totalHold.addAndGet(holdNanos);
+    updateMax(maxHold, holdNanos);
+    if (holdNanos > leakThreshold) {
+      leaks.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Track a holder of a claimed model until it is released.
+   *
+   * @param holder user of the model
+   * @param since  nano time of the claim
+   */
+  void held(final Object holder, final long since) {
+    holders.put(holder, since);
+  }
+
+  /**
+   * Record the release of a claimed model by a tracked holder.
+   *
+   * @param holder    user of the model
+   * @param holdNanos time between claim and release
+   * @return true if the model has been held longer than the leak threshold
+   */
+  boolean released(final Object holder, final long holdNanos) {
+    holders.remove(holder);
+    return released(holdNanos);
+  }
+
+  /**
+   * Find holders, that have not released their model within the leak threshold. Each holder is
+   * reported once, its release is recorded as usual.
+   *
+   * @param now current nano time
+   * @return each overdue holder with the time it held its model so far
+   */
+  Map<Object, Long> overdue(final long now) {
+    final Map<Object, Long> overdue = new HashMap<>();
+    for (final Map.Entry<Object, Long> each : holders.entrySet()) {
+      final long held = now - each.getValue();
+      if (held > leakThreshold && holders.remove(each.getKey(), each.getValue())) {
+        overdue.put(each.getKey(), held);
+      }
+    }
+    return overdue;
+  }
+
+  private static void updateMax(final AtomicLong max, final long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * @return total number of claimed models
+   */
+  public long getClaims() {
+    return claims.get();
+  }
+
+  /**
+   * @return number of models, that are currently held by query executions
+   */
+  public long getActive() {
+    return claims.get() - releases.get();
+  }
+
+  /**
+   * @return number of releases after exceeding the leak threshold
+   */
+  public long getLeaks() {
+    return leaks.get();
+  }
+
+  /**
+   * @return average time spent waiting for a model in milliseconds
+   */
+  public double getAverageWaitMillis() {
+    return average(totalWait, claims);
+  }
+
+  /**
+   * @return longest time spent waiting for a model in milliseconds
+   */
+  public double getMaxWaitMillis() {
+    return millis(maxWait.get());
+  }
+
+  /**
+   * @return average duration of holding a model in milliseconds
+   */
+  public double getAverageHoldMillis() {
+    return average(totalHold, releases);
+  }
+
+  /**
+   * @return longest duration of holding a model in milliseconds
+   */
+  public double getMaxHoldMillis() {
+    return millis(maxHold.get());
+  }
+
+  private static double average(final AtomicLong total, final AtomicLong count) {
+    final long n = count.get();
+    return n == 0 ? 0 : millis(total.get()) / n;
+  }
+
+  private static double millis(final long nanos) {
+    return nanos / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("claims", getClaims())
+        .add("active", getActive())
+        .add("leaks", getLeaks())
+        .add("avgWaitMs", getAverageWaitMillis())
+        .add("maxWaitMs", getMaxWaitMillis())
+        .add("avgHoldMs", getAverageHoldMillis())
+        .add("maxHoldMs", getMaxHoldMillis())
+        .toString();
+  }
+}
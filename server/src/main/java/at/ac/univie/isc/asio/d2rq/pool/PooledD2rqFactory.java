@@ -19,40 +19,88 @@
  */
 package at.ac.univie.isc.asio.d2rq.pool;
 
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.d2rq.CollectD2rqStatistics;
 import at.ac.univie.isc.asio.d2rq.D2rqConfigModel;
+import at.ac.univie.isc.asio.d2rq.D2rqStatistics;
+import at.ac.univie.isc.asio.d2rq.D2rqTools;
 import at.ac.univie.isc.asio.database.Jdbc;
 import at.ac.univie.isc.asio.engine.sparql.JenaFactory;
+import at.ac.univie.isc.asio.engine.sparql.QueryCache;
 import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryFactory;
-import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.shared.PrefixMapping;
+import org.slf4j.Logger;
 import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.QueryTimeoutException;
 import stormpot.Config;
 import stormpot.LifecycledResizablePool;
+import stormpot.ManagedPool;
 import stormpot.QueuePool;
 import stormpot.TimeSpreadExpiration;
 
 import java.security.Principal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * Maintains an internal pool of d2rq models.
+ * Maintains an internal pool of d2rq models. The pool is inspected periodically, logging its usage
+ * and warning about models, that are held longer than expected or were never released.
  */
 public final class PooledD2rqFactory implements JenaFactory {
+  private static final Logger log = getLogger(PooledD2rqFactory.class);
+
+  /**
+   * Default period between refreshes of the mapping statistics.
+   */
+  public static final Timeout DEFAULT_STATISTICS_REFRESH = Timeout.from(1, TimeUnit.HOURS);
+
+  /** hold duration in milliseconds, after which a model is considered leaked, if there is no timeout */
+  private static final long DEFAULT_LEAK_THRESHOLD = TimeUnit.MINUTES.toMillis(5);
+
+  /** period between inspections of the pool usage in milliseconds */
+  private static final long INSPECTION_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+  /** max wait in milliseconds for a model during warm-up, if there is no timeout */
+  private static final long DEFAULT_WARM_UP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
 
   public static JenaFactory using(final D2rqConfigModel d2rq,
                                   final Jdbc jdbc,
                                   final Timeout timeout,
                                   final int size) {
+    return using(d2rq, jdbc, timeout, size, DEFAULT_STATISTICS_REFRESH);
+  }
+
+  public static JenaFactory using(final D2rqConfigModel d2rq,
+                                  final Jdbc jdbc,
+                                  final Timeout timeout,
+                                  final int size,
+                                  final Timeout statisticsRefresh) {
     final D2rqModelAllocator allocator = new D2rqModelAllocator(d2rq, jdbc);
     // fail fast if d2rq config is corrupt - stormpot may endlessly try to allocate models otherwise
-    allocator.newModel().close(); // this should throw if config is corrupt
+    final Model probe = allocator.newModel(); // this should throw if config is corrupt
+    final StatisticsRefresher statistics =
+        new StatisticsRefresher(allocator, CollectD2rqStatistics.from(d2rq.getDefinition()));
+    try {
+      statistics.refresh(probe);
+    } finally {
+      probe.close();
+    }
     final Config<PooledModel> config = new Config<>()
         // D2rqModelAllocator performs validation checks on #reallocate()
         // set a short expiration period to enable frequent liveness checks
@@ -63,13 +111,22 @@ public final class PooledD2rqFactory implements JenaFactory {
         .setSize(size)
         ;
     final QueuePool<PooledModel> pool = new QueuePool<>(config);
-    return new PooledD2rqFactory(pool, d2rq.getPrefixes(), timeout);
+    final PooledD2rqFactory factory = new PooledD2rqFactory(pool, d2rq.getPrefixes(), timeout);
+    factory.startMaintenance(statistics, statisticsRefresh);
+    return factory;
   }
 
   private final LifecycledResizablePool<PooledModel> pool;
   private final stormpot.Timeout timeout;
   private final PrefixMapping prefixes;
+  private final QueryCache queries;
+  private final PoolMetrics metrics;
   private long executionTimeout;
+  private volatile StatisticsRefresher statistics;
+  private ScheduledExecutorService maintenance;
+  // only accessed by inspections
+  private long inspectedClaims;
+  private long inspectedLeaks;
 
   public PooledD2rqFactory(final LifecycledResizablePool<PooledModel> pool,
                            final PrefixMapping prefixes,
@@ -78,33 +135,196 @@ public final class PooledD2rqFactory implements JenaFactory {
     this.prefixes = prefixes;
     this.executionTimeout = timeout.getAs(TimeUnit.MILLISECONDS, 0);
     this.timeout = new stormpot.Timeout(executionTimeout, TimeUnit.MILLISECONDS);
+    this.queries = QueryCache.create(QueryCache.DEFAULT_SIZE);
+    // queries exceeding the timeout are aborted - allow additional time for result serialization
+    this.metrics = PoolMetrics.create(
+        executionTimeout > 0 ? 2 * executionTimeout : DEFAULT_LEAK_THRESHOLD, MILLISECONDS);
+    this.statistics = null;
+    this.maintenance = null;
+  }
+
+  private void startMaintenance(final StatisticsRefresher statistics, final Timeout interval) {
+    this.statistics = statistics;
+    maintenance = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("d2rq-maintenance-%d").setDaemon(true).build());
+    final long period = interval.getAs(MILLISECONDS, 0);
+    if (period > 0) {
+      maintenance.scheduleWithFixedDelay(statistics, period, period, MILLISECONDS);
+    }
+    maintenance.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          inspect();
+        } catch (final Exception e) {
+          log.warn(Scope.SYSTEM.marker(), "d2rq pool inspection failed", e);
+        }
+      }
+    }, INSPECTION_PERIOD, INSPECTION_PERIOD, MILLISECONDS);
   }
 
   @Override
   public Query parse(final String sparql) {
-    final Query query = QueryFactory.create();
-    query.getPrefixMapping().withDefaultMappings(prefixes);
-    QueryFactory.parse(query, sparql, null, Syntax.syntaxARQ);
-    return query;
+    return queries.parse(sparql, prefixes);
   }
 
   @Override
   public QueryExecution execution(final Query query, final Principal owner) {
     try {
+      final long started = System.nanoTime();
       final PooledModel model = pool.claim(timeout);
       if (model == null) {
         throw new QueryTimeoutException("timed out while claiming a d2rq model");
       }
-      final QueryExecution execution = model.execution(query);
-      execution.setTimeout(executionTimeout, MILLISECONDS);
-      return execution;
+      QueryExecution execution = null;
+      try {
+        final D2rqStatistics current = statistics == null ? D2rqStatistics.none() : statistics.current();
+        execution = model.execution(query, current, metrics);
+        metrics.claimed(System.nanoTime() - started);
+        execution.setTimeout(executionTimeout, MILLISECONDS);
+        return execution;
+      } catch (final RuntimeException | Error e) {
+        // the claimed model is lost for good if it is not returned here
+        if (execution == null) {
+          model.release();
+        } else {
+          execution.close();
+        }
+        throw e;
+      }
     } catch (InterruptedException e) {
       throw new CannotAcquireLockException("interrupted while claiming a d2rq model", e);
     }
   }
 
+  /**
+   * Claim all pooled models at once, forcing the pool to allocate them, and validate the jdbc
+   * connection of each one. Models are released afterwards.
+   *
+   * @throws DataAccessResourceFailureException if a model cannot be claimed or is not valid
+   */
+  public void warmUp() {
+    final int size = pool.getTargetSize();
+    log.debug(Scope.SYSTEM.marker(), "warming up {} pooled d2rq models", size);
+    final long waitMillis = executionTimeout > 0 ? executionTimeout : DEFAULT_WARM_UP_TIMEOUT;
+    final stormpot.Timeout wait = new stormpot.Timeout(waitMillis, MILLISECONDS);
+    final List<PooledModel> claimed = new ArrayList<>(size);
+    try {
+      for (int i = 0; i < size; i++) {
+        final PooledModel model = pool.claim(wait);
+        if (model == null) {
+          throw new DataAccessResourceFailureException("timed out while warming up d2rq pool");
+        }
+        claimed.add(model);
+        final Connection connection =
+            D2rqTools.unwrapDatabaseConnection(model.getModel()).connection();
+        if (!connection.isValid((int) Math.max(1, MILLISECONDS.toSeconds(waitMillis)))) {
+          throw new DataAccessResourceFailureException("invalid d2rq connection " + connection);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessResourceFailureException("interrupted while warming up d2rq pool", e);
+    } catch (final SQLException e) {
+      throw new DataAccessResourceFailureException("d2rq connection validation failed", e);
+    } finally {
+      for (final PooledModel model : claimed) {
+        model.release();
+      }
+    }
+  }
+
+  /**
+   * Warn about models, that are held past the leak threshold, but not released yet, and about
+   * models, that stormpot found leaked, i.e. never released before they were garbage collected.
+   * Log the usage metrics, if models were claimed since the last inspection.
+   */
+  void inspect() {
+    for (final Map.Entry<Object, Long> overdue : metrics.overdue(System.nanoTime()).entrySet()) {
+      log.warn(Scope.SYSTEM.marker(), "d2rq model held for {}ms and not released yet - possible leak"
+          + " of {}", TimeUnit.NANOSECONDS.toMillis(overdue.getValue()), overdue.getKey());
+    }
+    if (pool instanceof ManagedPool) {
+      final long leaked = ((ManagedPool) pool).getLeakedObjectsCount();
+      if (leaked > inspectedLeaks) {
+        log.warn(Scope.SYSTEM.marker(), "{} d2rq models leaked in total - never released", leaked);
+      }
+      inspectedLeaks = leaked;
+    }
+    final long claims = metrics.getClaims();
+    if (claims != inspectedClaims) {
+      log.info(Scope.SYSTEM.marker(), "d2rq pool usage {}", this);
+      inspectedClaims = claims;
+    }
+  }
+
+  @VisibleForTesting
+  PoolMetrics metrics() {
+    return metrics;
+  }
+
   @Override
   public void close() {
+    log.info(Scope.SYSTEM.marker(), "closing d2rq pool {}", this);
+    if (maintenance != null) {
+      maintenance.shutdownNow();
+    }
     pool.shutdown();
   }
+
+  @Override
+  public String toString() {
+    final Objects.ToStringHelper helper = Objects.toStringHelper(this)
+        .add("size", pool.getTargetSize())
+        .add("metrics", metrics);
+    if (pool instanceof ManagedPool) {
+      helper.add("leaked", ((ManagedPool) pool).getLeakedObjectsCount());
+    }
+    return helper.toString();
+  }
+
+  /**
+   * Hold the current statistics and periodically replace them with freshly collected ones.
+   * Failures are logged and the previous statistics are retained.
+   */
+  private static final class StatisticsRefresher implements Runnable {
+    private final D2rqModelAllocator models;
+    private final CollectD2rqStatistics collector;
+    private volatile D2rqStatistics current = D2rqStatistics.none();
+
+    private StatisticsRefresher(final D2rqModelAllocator models, final CollectD2rqStatistics collector) {
+      this.models = models;
+      this.collector = collector;
+    }
+
+    D2rqStatistics current() {
+      return current;
+    }
+
+    @Override
+    public void run() {
+      final Model model;
+      try {
+        model = models.newModel();
+      } catch (final Exception e) {
+        log.warn(Scope.SYSTEM.marker(), "cannot connect to refresh d2rq statistics", e);
+        return;
+      }
+      try {
+        refresh(model);
+      } finally {
+        model.close();
+      }
+    }
+
+    void refresh(final Model model) {
+      try {
+        final Connection connection = D2rqTools.unwrapDatabaseConnection(model).connection();
+        current = collector.collect(connection);
+        log.debug(Scope.SYSTEM.marker(), "refreshed d2rq statistics {}", current);
+      } catch (final Exception e) {
+        log.warn(Scope.SYSTEM.marker(), "failed to collect d2rq statistics - keeping {}", current, e);
+      }
+    }
+  }
 }
@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq.pool;
+
+import at.ac.univie.isc.asio.Scope;
+import com.google.common.base.Ticker;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.util.FileManager;
+import org.slf4j.Logger;
+import stormpot.Poolable;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Delegate to a query execution on a claimed d2rq model and release the model exactly once, as soon
+ * as the execution is closed. Aborting only stops the execution, as the query thread may still be
+ * iterating results over the connection of the model, until it closes the execution. The time
+ * between claim and release is recorded, the execution is tracked as holder until then.
+ */
+final class PooledExecution implements QueryExecution {
+  private static final Logger log = getLogger(PooledExecution.class);
+
+  private final QueryExecution delegate;
+  private final Poolable origin;
+  private final PoolMetrics metrics;
+  private final Ticker time;
+  private final long claimed;
+  private final AtomicBoolean released = new AtomicBoolean(false);
+
+  PooledExecution(final QueryExecution delegate, final Poolable origin,
+                  final PoolMetrics metrics, final Ticker time) {
+    this.delegate = delegate;
+    this.origin = origin;
+    this.metrics = metrics;
+    this.time = time;
+    this.claimed = time.read();
+    metrics.held(this, claimed);
+  }
+
+  @Override
+  public void abort() {
+    delegate.abort();
+  }
+
+  @Override
+  public void close() {
+    try {
+      delegate.close();
+    } finally {
+      release();
+    }
+  }
+
+  private void release() {
+    if (released.compareAndSet(false, true)) {
+      final long held = time.read() - claimed;
+      if (metrics.released(this, held)) {
+        log.warn(Scope.SYSTEM.marker(), "d2rq model held for {}ms - possible leak of {}",
+            TimeUnit.NANOSECONDS.toMillis(held), delegate.getQuery());
+      } else {
+        log.debug(Scope.REQUEST.marker(), "releasing d2rq model after {}ms",
+            TimeUnit.NANOSECONDS.toMillis(held));
+      }
+      origin.release();
+    }
+  }
+
+  // === plain delegation ==========================================================================
+
+  @Override
+  public void setFileManager(final FileManager fm) {
+    delegate.setFileManager(fm);
+  }
+
+  @Override
+  public void setInitialBinding(final QuerySolution binding) {
+    delegate.setInitialBinding(binding);
+  }
+
+  @Override
+  public Dataset getDataset() {
+    return delegate.getDataset();
+  }
+
+  @Override
+  public Context getContext() {
+    return delegate.getContext();
+  }
+
+  @Override
+  public Query getQuery() {
+    return delegate.getQuery();
+  }
+
+  @Override
+  public ResultSet execSelect() {
+    return delegate.execSelect();
+  }
+
+  @Override
+  public Model execConstruct() {
+    return delegate.execConstruct();
+  }
+
+  @Override
+  public Model execConstruct(final Model model) {
+    return delegate.execConstruct(model);
+  }
+
+  @Override
+  public Iterator<Triple> execConstructTriples() {
+    return delegate.execConstructTriples();
+  }
+
+  @Override
+  public Model execDescribe() {
+    return delegate.execDescribe();
+  }
+
+  @Override
+  public Model execDescribe(final Model model) {
+    return delegate.execDescribe(model);
+  }
+
+  @Override
+  public Iterator<Triple> execDescribeTriples() {
+    return delegate.execDescribeTriples();
+  }
+
+  @Override
+  public boolean execAsk() {
+    return delegate.execAsk();
+  }
+
+  @Override
+  public void setTimeout(final long timeout, final TimeUnit timeoutUnits) {
+    delegate.setTimeout(timeout, timeoutUnits);
+  }
+
+  @Override
+  public void setTimeout(final long timeout) {
+    delegate.setTimeout(timeout);
+  }
+
+  @Override
+  public void setTimeout(final long timeout1, final TimeUnit timeUnit1,
+                         final long timeout2, final TimeUnit timeUnit2) {
+    delegate.setTimeout(timeout1, timeUnit1, timeout2, timeUnit2);
+  }
+
+  @Override
+  public void setTimeout(final long timeout1, final long timeout2) {
+    delegate.setTimeout(timeout1, timeout2);
+  }
+
+  @Override
+  public String toString() {
+    return "PooledExecution{" + "released=" + released.get() + ", query=" + delegate.getQuery() + '}';
+  }
+}
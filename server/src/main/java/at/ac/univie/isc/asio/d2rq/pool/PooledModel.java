@@ -20,28 +20,30 @@
 package at.ac.univie.isc.asio.d2rq.pool;
 
 import at.ac.univie.isc.asio.Scope;
-import com.google.common.reflect.AbstractInvocationHandler;
-import com.google.common.reflect.Reflection;
+import at.ac.univie.isc.asio.d2rq.D2rqStatistics;
+import com.google.common.base.Ticker;
 import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.Model;
 import org.slf4j.Logger;
 import stormpot.Poolable;
 import stormpot.Slot;
 
-import javax.annotation.Nonnull;
-import java.lang.reflect.Method;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * Combine a d2rq jena dataset with a pool slot and act as a factory of pool-aware query executions.
  * The expected usage pattern is to obtain a PooledModel from the object pool and use it to create a
- * query execution proxy. The proxy will release the PooledModel on close.
+ * query execution. The execution will release the PooledModel when it is closed, aborting it only
+ * stops the query.
  */
 final class PooledModel implements Poolable {
   private static final Logger log = getLogger(PooledModel.class);
 
+  /** metrics of executions, that are not created by a pool */
+  private static final PoolMetrics UNTRACKED = PoolMetrics.create(1, TimeUnit.DAYS);
+
   private final Slot pool;
   private final Model model;
   // eagerly cached
@@ -66,39 +68,18 @@ final class PooledModel implements Poolable {
 
   /** create an executable query, tied to this model. closing the execution will release this. */
   public QueryExecution execution(final Query query) {
-    log.debug(Scope.REQUEST.marker(), "creating query execution with claimed model");
-    final QueryExecution original = QueryExecutionFactory.create(query, dataset);
-    return Reflection.newProxy(QueryExecution.class, new PoolAwareProxy(original, this));
+    return execution(query, D2rqStatistics.none(), UNTRACKED);
   }
 
-  private static final class PoolAwareProxy extends AbstractInvocationHandler {
-    private final QueryExecution delegate;
-    private final Poolable origin;
-    private final AtomicBoolean released = new AtomicBoolean(false);
-
-    private PoolAwareProxy(final QueryExecution delegate, final Poolable origin) {
-      this.delegate = delegate;
-      this.origin = origin;
-    }
-
-    @Override
-    protected Object handleInvocation(@Nonnull final Object proxy,
-                                      @Nonnull final Method method,
-                                      @Nonnull final Object[] args)
-        throws Throwable {
-      try {
-        return method.invoke(delegate, args);
-      } finally {
-        if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
-          log.debug(Scope.REQUEST.marker(), "releasing d2rq model");
-          origin.release();
-        }
-      }
-    }
-
-    @Override
-    public String toString() {
-      return "PoolAwareProxy";
-    }
+  /**
+   * create an executable query, tied to this model, that orders basic graph patterns according to
+   * the given statistics. closing the execution will release this and record the hold time in the
+   * given metrics. aborting the execution does not release this.
+   */
+  public QueryExecution execution(final Query query, final D2rqStatistics statistics,
+                                  final PoolMetrics metrics) {
+    log.debug(Scope.REQUEST.marker(), "creating query execution with claimed model");
+    final QueryExecution original = QueryExecutionFactory.create(statistics.applyTo(query), dataset);
+    return new PooledExecution(original, this, metrics, Ticker.systemTicker());
   }
 }
@@ -23,6 +23,7 @@ import at.ac.univie.isc.asio.Scope;
 import at.ac.univie.isc.asio.insight.Emitter;
 import at.ac.univie.isc.asio.insight.Event;
 import at.ac.univie.isc.asio.insight.Sql;
+import at.ac.univie.isc.asio.insight.SqlTrace;
 import at.ac.univie.isc.asio.insight.VndError;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
@@ -43,7 +44,8 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * Emit an event for each query sent to the mysql database. The event describes the executed sql
- * command, total time taken and errors or warnings that occurred during execution.
+ * command, total time taken, the number of fetched rows and errors or warnings that occurred during
+ * execution. Events are also recorded in the {@link SqlTrace} active on the executing thread.
  */
 public final class EventfulMysqlInterceptor implements StatementInterceptorV2 {
   private static final Logger log = getLogger(EventfulMysqlInterceptor.class);
@@ -94,6 +96,9 @@ public final class EventfulMysqlInterceptor implements StatementInterceptorV2 {
       event.setBadIndex(noGoodIndexUsed);
       event.setNoIndex(noIndexUsed);
       event.setDuration(time.elapsed(TimeUnit.MILLISECONDS));
+      // buffered result sets report the number of fetched rows as update count
+      event.setRows(originalResultSet == null ? -1 : originalResultSet.getUpdateCount());
+      SqlTrace.record(event);
       events().emit(event);
     }
     return null;
@@ -22,31 +22,73 @@ package at.ac.univie.isc.asio.database;
 import at.ac.univie.isc.asio.Id;
 import at.ac.univie.isc.asio.SqlSchema;
 import at.ac.univie.isc.asio.engine.sql.SqlSchemaBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
+import org.jooq.Condition;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record3;
 import org.jooq.SQLDialect;
+import org.jooq.exception.SQLDialectNotSupportedException;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultDataType;
+import org.jooq.impl.SQLDataType;
 import org.springframework.dao.DataAccessResourceFailureException;
 
+import javax.annotation.concurrent.ThreadSafe;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.jooq.impl.DSL.fieldByName;
+import static org.jooq.impl.DSL.tableByName;
 
 /**
  * Inspect MySQL database metadata. Note: A {@code schema} is called {@code database} in MySQL.
- * This service implementation accesses the database via a fixed connection pool, but changes
- * the database to the requested one before exploring.
+ * This service implementation accesses the database via a fixed connection pool and reads the
+ * {@code INFORMATION_SCHEMA} tables in bulk, instead of issuing metadata requests per table.
+ * The explored tables are kept with a signature of their columns and only tables, whose signature
+ * changed since the last exploration, are inspected again.
  */
+@ThreadSafe
 public final class MysqlSchemaService implements RelationalSchemaService {
 
   /** MySQL system schemas */
   public static final Set<String> INTERNAL_SCHEMA =
       ImmutableSet.of("mysql", "information_schema", "performance_schema");
 
+  /** re-inspect all columns in a single scan, if more than this fraction of tables changed */
+  static final double FULL_SCAN_THRESHOLD = 0.5;
+
+  private static final Field<String> TABLE_SCHEMA = fieldByName(String.class, "TABLE_SCHEMA");
+  private static final Field<String> TABLE_NAME = fieldByName(String.class, "TABLE_NAME");
+  private static final Field<String> COLUMN_NAME = fieldByName(String.class, "COLUMN_NAME");
+  private static final Field<String> DATA_TYPE = fieldByName(String.class, "DATA_TYPE");
+  private static final Field<String> COLUMN_TYPE = fieldByName(String.class, "COLUMN_TYPE");
+  private static final Field<Long> CHARACTER_MAXIMUM_LENGTH =
+      fieldByName(Long.class, "CHARACTER_MAXIMUM_LENGTH");
+  private static final Field<Long> NUMERIC_PRECISION = fieldByName(Long.class, "NUMERIC_PRECISION");
+  private static final Field<Long> NUMERIC_SCALE = fieldByName(Long.class, "NUMERIC_SCALE");
+  private static final Field<Integer> ORDINAL_POSITION =
+      fieldByName(Integer.class, "ORDINAL_POSITION");
+  private static final Field<Integer> COLUMN_COUNT = DSL.count();
+  /** order sensitive checksum over all column properties, that are included in the model */
+  private static final Field<Long> COLUMN_CHECKSUM = DSL.field(
+      "sum(crc32(concat_ws('|', {0}, {1}, {2}, {3}, {4}, {5}, {6})))", Long.class,
+      COLUMN_NAME, ORDINAL_POSITION, DATA_TYPE, COLUMN_TYPE,
+      CHARACTER_MAXIMUM_LENGTH, NUMERIC_PRECISION, NUMERIC_SCALE);
+
   private final DataSource pool;
+  private final ConcurrentMap<Id, SchemaSnapshot> explored = new ConcurrentHashMap<>();
 
   public MysqlSchemaService(final DataSource pool) {
     this.pool = pool;
@@ -54,29 +96,99 @@ public final class MysqlSchemaService implements RelationalSchemaService {
 
   @Override
   public SqlSchema explore(final Id target) throws Id.NotFound {
-    final SqlSchemaBuilder builder = SqlSchemaBuilder.create().noCatalog();
+    final String schemaName = target.asString();
+    if (INTERNAL_SCHEMA.contains(schemaName.toLowerCase(Locale.ENGLISH))) {
+      throw new Id.NotFound(target);
+    }
     try (final Connection connection = pool.getConnection()) {
       final DSLContext jooq = DSL.using(connection, SQLDialect.MYSQL);
-      final org.jooq.Schema schema = findActiveSchema(jooq, target);
-      builder.switchSchema(schema);
-      for (final org.jooq.Table<?> sqlTable : schema.getTables()) {
-        builder.add(sqlTable);
+      final Map<String, Long> versions = fetchTableVersions(jooq, schemaName);
+      if (versions.isEmpty() && !schemaExists(jooq, schemaName)) {
+        explored.remove(target);
+        throw new Id.NotFound(target);
       }
+      final SchemaSnapshot known = explored.get(target);
+      final SchemaSnapshot last = known == null ? SchemaSnapshot.empty() : known;
+      if (last.isCurrent(versions)) {
+        return last.schema();
+      }
+      final Set<String> outdated = last.outdated(versions);
+      final SqlSchema inspected = outdated.size() > versions.size() * FULL_SCAN_THRESHOLD
+          ? inspectColumns(jooq, schemaName, DSL.trueCondition())
+          : inspectColumns(jooq, schemaName, TABLE_NAME.in(outdated));
+      final SchemaSnapshot current = last.update(versions, inspected.getTable());
+      explored.put(target, current);
+      return current.schema();
     } catch (final SQLException e) {
       throw new DataAccessResourceFailureException(e.getMessage(), e);
     }
+  }
+
+  private boolean schemaExists(final DSLContext jooq, final String schemaName) {
+    return jooq.fetchCount(tableByName("INFORMATION_SCHEMA", "SCHEMATA"),
+        fieldByName(String.class, "SCHEMA_NAME").eq(schemaName)) > 0;
+  }
+
+  /**
+   * Derive the version of each table from its column definitions, as neither the creation nor the
+   * update time of a mysql table reliably changes if it is altered, e.g. by an instant alter.
+   */
+  private Map<String, Long> fetchTableVersions(final DSLContext jooq, final String schemaName) {
+    final ImmutableMap.Builder<String, Long> versions = ImmutableMap.builder();
+    for (final Record3<String, Integer, Long> row : jooq
+        .select(TABLE_NAME, COLUMN_COUNT, COLUMN_CHECKSUM)
+        .from(tableByName("INFORMATION_SCHEMA", "COLUMNS"))
+        .where(TABLE_SCHEMA.eq(schemaName))
+        .groupBy(TABLE_NAME)
+        .fetch()) {
+      final Long checksum = row.value3();
+      versions.put(row.value1(), checksum == null
+          ? SchemaSnapshot.UNKNOWN_VERSION
+          : 31 * checksum + row.value2());
+    }
+    return versions.build();
+  }
+
+  /** stream all matching columns ordered by table and build the model in a single pass */
+  private SqlSchema inspectColumns(final DSLContext jooq, final String schemaName,
+                                   final Condition tables) {
+    final SqlSchemaBuilder builder =
+        SqlSchemaBuilder.create().noCatalog().switchSchema(DSL.schemaByName(schemaName));
+    final Cursor<? extends Record> columns = jooq
+        .select(TABLE_NAME, COLUMN_NAME, DATA_TYPE, COLUMN_TYPE,
+            CHARACTER_MAXIMUM_LENGTH, NUMERIC_PRECISION, NUMERIC_SCALE)
+        .from(tableByName("INFORMATION_SCHEMA", "COLUMNS"))
+        .where(TABLE_SCHEMA.eq(schemaName)).and(tables)
+        .orderBy(TABLE_NAME, ORDINAL_POSITION)
+        .fetchSize(Integer.MIN_VALUE) // mysql driver streams results only with this fetch size
+        .fetchLazy();
+    try {
+      for (final Record column : columns) {
+        builder.addColumn(column.getValue(TABLE_NAME), column.getValue(COLUMN_NAME), typeOf(column));
+      }
+    } finally {
+      columns.close();
+    }
     return builder.build();
   }
 
-  private org.jooq.Schema findActiveSchema(final DSLContext jooq, final Id target) throws SQLException {
-    final String activeSchemaName = target.asString();
-    if (INTERNAL_SCHEMA.contains(activeSchemaName.toLowerCase(Locale.ENGLISH))) {
-      throw new Id.NotFound(target);
+  /** mirror the type resolution of jooq's DatabaseMetaData based inspection */
+  private DataType<?> typeOf(final Record column) {
+    String typeName = column.getValue(DATA_TYPE);
+    if (column.getValue(COLUMN_TYPE).toLowerCase(Locale.ENGLISH).contains("unsigned")) {
+      typeName = typeName + " unsigned";
     }
-    final org.jooq.Schema schema = Iterables.getOnlyElement(jooq.meta().getCatalogs()).getSchema(activeSchemaName);
-    if (schema == null) {
-      throw new Id.NotFound(target);
+    final Long characters = column.getValue(CHARACTER_MAXIMUM_LENGTH);
+    final Long precision = column.getValue(NUMERIC_PRECISION);
+    final Long scale = column.getValue(NUMERIC_SCALE);
+    final int size = Ints.saturatedCast(
+        characters != null ? characters : precision != null ? precision : 0);
+    final int digits = scale == null ? 0 : Ints.saturatedCast(scale);
+    try {
+      return DefaultDataType.getDataType(SQLDialect.MYSQL, typeName, size, digits)
+          .precision(size, digits).length(size);
+    } catch (final SQLDialectNotSupportedException unknownType) {
+      return SQLDataType.OTHER;
     }
-    return schema;
   }
 }
@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.database;
+
+import at.ac.univie.isc.asio.ObjectFactory;
+import at.ac.univie.isc.asio.SqlSchema;
+import at.ac.univie.isc.asio.Table;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The explored tables of a schema, together with the version of each table at the time it was
+ * inspected. Used to re-inspect only tables, which changed since the last exploration. Tables with
+ * an {@link #UNKNOWN_VERSION unknown version} are always considered outdated.
+ * The contained jaxb elements must not be modified.
+ */
+@Immutable
+final class SchemaSnapshot {
+  /** marks a table, that cannot be versioned */
+  static final long UNKNOWN_VERSION = -1;
+
+  private static final ObjectFactory JAXB = new ObjectFactory();
+
+  /**
+   * @return a snapshot without any table, which treats all tables as outdated
+   */
+  static SchemaSnapshot empty() {
+    return new SchemaSnapshot(ImmutableMap.<String, Long>of(), ImmutableMap.<String, Table>of());
+  }
+
+  private final ImmutableMap<String, Long> versions;
+  private final ImmutableMap<String, Table> tables;
+  private final SqlSchema schema;
+
+  private SchemaSnapshot(final ImmutableMap<String, Long> versions,
+                         final ImmutableMap<String, Table> tables) {
+    this.versions = versions;
+    this.tables = tables;
+    this.schema = JAXB.createSqlSchema().withTable(tables.values());
+  }
+
+  /**
+   * Find all tables, that are new or changed in the given current versions.
+   *
+   * @param current version of each table in the schema
+   * @return names of tables, that must be inspected again
+   */
+  Set<String> outdated(final Map<String, Long> current) {
+    final ImmutableSet.Builder<String> outdated = ImmutableSet.builder();
+    for (final Map.Entry<String, Long> table : current.entrySet()) {
+      final long version = table.getValue();
+      if (version == UNKNOWN_VERSION || !Long.valueOf(version).equals(versions.get(table.getKey()))) {
+        outdated.add(table.getKey());
+      }
+    }
+    return outdated.build();
+  }
+
+  /**
+   * @param current version of each table in the schema
+   * @return true if no table was added, changed or removed
+   */
+  boolean isCurrent(final Map<String, Long> current) {
+    return versions.keySet().equals(current.keySet()) && outdated(current).isEmpty();
+  }
+
+  /**
+   * Create a snapshot of the current versions, with the re-inspected tables replacing existing
+   * ones. Tables missing from the current versions are removed.
+   *
+   * @param current   version of each table in the schema
+   * @param inspected tables, that were inspected again
+   * @return updated snapshot
+   */
+  SchemaSnapshot update(final Map<String, Long> current, final Iterable<Table> inspected) {
+    final Map<String, Table> fresh = new HashMap<>();
+    for (final Table table : inspected) {
+      fresh.put(table.getName(), table);
+    }
+    final Map<String, Table> merged = new TreeMap<>();
+    final Map<String, Long> known = new HashMap<>();
+    for (final Map.Entry<String, Long> entry : current.entrySet()) {
+      final String name = entry.getKey();
+      final Table table = fresh.containsKey(name) ? fresh.get(name) : tables.get(name);
+      if (table != null) {  // may be missing if created after versions were fetched
+        merged.put(name, table);
+        known.put(name, entry.getValue());
+      }
+    }
+    return new SchemaSnapshot(ImmutableMap.copyOf(known), ImmutableMap.copyOf(merged));
+  }
+
+  /**
+   * @return the explored schema
+   */
+  SqlSchema schema() {
+    return schema;
+  }
+
+  @Override
+  public String toString() {
+    return "SchemaSnapshot{" + "versions=" + versions + '}';
+  }
+}
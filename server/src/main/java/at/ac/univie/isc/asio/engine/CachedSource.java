@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import rx.Observable;
+import rx.Observer;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Retain the single element of an expensive source, e.g. a schema definition or a remote
+ * descriptor. The first subscription loads the element synchronously. Later subscriptions are
+ * served from the cache, while an expired element is reloaded in background. An
+ * {@link #invalidate() invalidated} element is reloaded in background as well.
+ * Failed reloads are logged and the stale element is kept for another period.
+ *
+ * @param <T> type of cached element
+ */
+@ThreadSafe
+public final class CachedSource<T> {
+  private static final Logger log = getLogger(CachedSource.class);
+
+  /**
+   * Cache the given source, reloading it in background on the io scheduler.
+   *
+   * @param source the expensive source, expected to emit zero or one element
+   * @param ttl    minimal time between reloads
+   * @param <T>    type of element
+   * @return caching source
+   */
+  public static <T> CachedSource<T> create(final Observable<? extends T> source, final Timeout ttl) {
+    return new CachedSource<>(source, ttl, Ticker.systemTicker(), Schedulers.io());
+  }
+
+  private final Observable<? extends T> source;
+  private final long ttl;
+  private final Ticker time;
+  private final Scheduler background;
+
+  /** incremented on every invalidation */
+  private final AtomicLong generation = new AtomicLong(0);
+  private final AtomicBoolean reloading = new AtomicBoolean(false);
+  /** null until loaded for the first time */
+  private volatile Snapshot<T> current;
+
+  @VisibleForTesting
+  CachedSource(final Observable<? extends T> source, final Timeout ttl, final Ticker time,
+               final Scheduler background) {
+    this.source = source;
+    this.ttl = ttl.getAs(TimeUnit.NANOSECONDS, Long.MAX_VALUE);
+    this.time = time;
+    this.background = background;
+  }
+
+  /**
+   * @return a sequence of the cached element, which is empty if the source is empty
+   */
+  public Observable<T> observable() {
+    return Observable.defer(new Func0<Observable<? extends T>>() {
+      @Override
+      public Observable<? extends T> call() {
+        try {
+          return serve();
+        } catch (final RuntimeException e) {
+          return Observable.error(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Mark the cached element as outdated and reload it in background. Subscribers are served the
+   * outdated element until the reload completed.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    if (current != null) {
+      reload();
+    }
+  }
+
+  private Observable<T> serve() {
+    Snapshot<T> snapshot = current;
+    if (snapshot == null) {
+      snapshot = load();
+    } else if (isStale(snapshot)) {
+      reload();
+    }
+    return snapshot.value == null ? Observable.<T>empty() : Observable.just(snapshot.value);
+  }
+
+  private boolean isStale(final Snapshot<T> snapshot) {
+    return snapshot.generation != generation.get() || time.read() - snapshot.loaded >= ttl;
+  }
+
+  /** load synchronously on first access - concurrent subscribers wait for the first one */
+  private synchronized Snapshot<T> load() {
+    if (current == null) {
+      final long started = generation.get();
+      final T value = source.toBlocking().singleOrDefault(null);
+      current = new Snapshot<T>(value, time.read(), started);
+    }
+    return current;
+  }
+
+  /** start a background reload, unless one is already running */
+  private void reload() {
+    if (reloading.compareAndSet(false, true)) {
+      log.debug(Scope.SYSTEM.marker(), "reloading {}", source);
+      source.subscribeOn(background).subscribe(new Reload(generation.get()));
+    }
+  }
+
+  /** replace the cached element if the reload succeeds - reload again if invalidated meanwhile */
+  private final class Reload implements Observer<T> {
+    private final long started;
+    private T value = null;
+
+    private Reload(final long started) {
+      this.started = started;
+    }
+
+    @Override
+    public void onNext(final T element) {
+      value = element;
+    }
+
+    @Override
+    public void onCompleted() {
+      current = new Snapshot<T>(value, time.read(), started);
+      reloading.set(false);
+      if (started != generation.get()) {
+        reload();
+      }
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+      log.warn(Scope.SYSTEM.marker(), "reloading cached element failed - keeping stale one", error);
+      final Snapshot<T> stale = current;
+      current = new Snapshot<T>(stale.value, time.read(), started);
+      reloading.set(false);
+    }
+  }
+
+  private static final class Snapshot<T> {
+    private final T value;
+    private final long loaded;
+    private final long generation;
+
+    private Snapshot(@Nullable final T value, final long loaded, final long generation) {
+      this.value = value;
+      this.loaded = loaded;
+      this.generation = generation;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CachedSource{" +
+        "source=" + source +
+        ", ttl=" + ttl +
+        ", generation=" + generation.get() +
+        '}';
+  }
+}
@@ -23,6 +23,7 @@ import at.ac.univie.isc.asio.Dataset;
 import at.ac.univie.isc.asio.Language;
 import at.ac.univie.isc.asio.Scope;
 import at.ac.univie.isc.asio.SqlSchema;
+import at.ac.univie.isc.asio.jaxrs.Mime;
 import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import at.ac.univie.isc.asio.security.AuthTools;
 import at.ac.univie.isc.asio.tool.Reactive;
@@ -32,6 +33,7 @@ import com.hp.hpl.jena.rdf.model.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.stereotype.Component;
@@ -39,14 +41,18 @@ import org.threeten.bp.Instant;
 import org.threeten.bp.ZoneOffset;
 import org.threeten.bp.ZonedDateTime;
 import rx.Observable;
+import rx.Subscriber;
 import rx.Subscription;
 
 import javax.ws.rs.*;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
+import java.io.IOException;
 import java.net.URI;
 import java.security.Principal;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -62,6 +68,8 @@ public class DatasetResource {
   private final Connector connector;
   private final SecurityContext security;
   private final Timeout timeout;
+  private final SerializedForms forms = new SerializedForms();
+  private CacheControl caching = cacheControl(0);
 
   @Autowired
   DatasetResource(final Dataset dataset, final Connector connector,
@@ -72,6 +80,28 @@ public class DatasetResource {
     this.timeout = timeout;
   }
 
+  /**
+   * Allow clients and proxies to reuse metadata and replayed query results for the given period
+   * without revalidation. Responses are always marked as private, as they depend on credentials.
+   *
+   * @param maxAge time in milliseconds, clients must always revalidate if zero or less
+   */
+  @Value("${asio.http.max-age:0}")
+  void setMaxAge(final long maxAge) {
+    this.caching = cacheControl(maxAge);
+  }
+
+  private static CacheControl cacheControl(final long maxAge) {
+    final CacheControl control = new CacheControl();
+    control.setPrivate(true);
+    if (maxAge > 0) {
+      control.setMaxAge((int) Math.min(TimeUnit.MILLISECONDS.toSeconds(maxAge), Integer.MAX_VALUE));
+    } else {
+      control.setNoCache(true);
+    }
+    return control;
+  }
+
   // === metadata ==================================================================================
 
   @GET
@@ -82,20 +112,75 @@ public class DatasetResource {
     return Response.ok().build();
   }
 
+  /** formats of descriptor and definition */
+  static final List<Variant> METADATA_VARIANTS =
+      Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE, MediaType.APPLICATION_XML_TYPE).build();
+
   /**
-   * Retrieve a descriptor of this dataset's metadata.
+   * Retrieve a descriptor of this dataset's metadata. The descriptor may be fetched from a remote
+   * service, therefore the response is resumed asynchronously, once it is available.
+   *
+   * @param request   used to negotiate the format and evaluate preconditions
+   * @param providers used to serialize the descriptor
+   * @param async     response continuation
    */
   @GET
   @Path("/meta")
   @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
   @PreAuthorize("hasAuthority('PERMISSION_ACCESS_METADATA')")
-  public Response fetchMetadata() {
+  @SuppressWarnings("VoidMethodAnnotatedWithGET")
+  public void fetchMetadata(@Context final Request request, @Context final Providers providers,
+                            @Suspended final AsyncResponse async) {
     log.trace(Scope.REQUEST.marker(), "serve descriptor of {}", dataset.name());
-    final Optional<SchemaDescriptor> descriptor =
-        Reactive.asOptional(dataset.metadata().onErrorResumeNext(fallbackMetadata()));
-    return descriptor.isPresent()
-        ? Response.ok(descriptor.get()).build()
-        : Response.status(Response.Status.NOT_FOUND).build();
+    try {
+      final Subscription subscription = dataset.metadata()
+          .onErrorResumeNext(fallbackMetadata())
+          .subscribe(new SendMetadata(async, request, providers));
+      AsyncListener.cleanUp(subscription).listenTo(async);
+      async.setTimeout(timeout.getAs(TimeUnit.NANOSECONDS, 0L), TimeUnit.NANOSECONDS);
+    } catch (final Throwable error) {
+      resumeWithError(async, error);
+      throw error;  // try to trigger uncaught exception handlers
+    }
+  }
+
+  /**
+   * Resume the response with the serialized descriptor, or {@code 404 Not Found} if the dataset
+   * has none.
+   */
+  private final class SendMetadata extends Subscriber<SchemaDescriptor> {
+    private final AsyncResponse async;
+    private final Request request;
+    private final Providers providers;
+    private SchemaDescriptor descriptor;
+
+    private SendMetadata(final AsyncResponse async, final Request request,
+                         final Providers providers) {
+      this.async = async;
+      this.request = request;
+      this.providers = providers;
+    }
+
+    @Override
+    public void onNext(final SchemaDescriptor next) {
+      descriptor = next;
+    }
+
+    @Override
+    public void onCompleted() {
+      try {
+        async.resume(descriptor == null
+            ? Response.status(Response.Status.NOT_FOUND).build()
+            : serve(descriptor, SchemaDescriptor.class, METADATA_VARIANTS, request, providers));
+      } catch (final IOException | RuntimeException error) {
+        resumeWithError(async, error);
+      }
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+      resumeWithError(async, error);
+    }
   }
 
   static final ZonedDateTime UTC_EPOCH = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC);
@@ -117,14 +202,40 @@ public class DatasetResource {
   @Path("/schema")
   @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
   @PreAuthorize("hasAuthority('PERMISSION_ACCESS_METADATA')")
-  public Response fetchDefinition() {
+  public Response fetchDefinition(@Context final Request request,
+                                  @Context final Providers providers) throws IOException {
     log.trace(Scope.REQUEST.marker(), "serve definition of {}", dataset.name());
     final Optional<SqlSchema> definition = Reactive.asOptional(dataset.definition());
     return definition.isPresent()
-        ? Response.ok(definition.get()).build()
+        ? serve(definition.get(), SqlSchema.class, METADATA_VARIANTS, request, providers)
         : Response.status(Response.Status.NOT_FOUND).build();
   }
 
+  /**
+   * Respond with the serialized form of the given element in the negotiated format. Conditional
+   * requests are answered with {@code 304 Not Modified}, if the client holds the current form.
+   * Responses vary on the {@code Accept} header, as each format has its own entity tag.
+   */
+  private Response serve(final Object element, final Class<?> type, final List<Variant> variants,
+                         final Request request, final Providers providers) throws IOException {
+    final Variant variant = request.selectVariant(variants);
+    if (variant == null) {
+      return Response.notAcceptable(variants).build();
+    }
+    final SerializedForms.Form form =
+        forms.encode(element, type, variant.getMediaType(), providers);
+    final Response.ResponseBuilder unchanged =
+        request.evaluatePreconditions(form.lastModified(), form.tag());
+    if (unchanged != null) {
+      log.trace(Scope.REQUEST.marker(), "{} not modified", form);
+      return unchanged.tag(form.tag()).lastModified(form.lastModified()).cacheControl(caching)
+          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+    }
+    return Response.ok(form.content(), form.type())
+        .tag(form.tag()).lastModified(form.lastModified()).cacheControl(caching)
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+  }
+
   @GET
   @Path("/meta/schema")
   public Response redirectFromDeprecatedDefinitionUri(@Context final UriInfo uri) {
@@ -136,14 +247,24 @@ public class DatasetResource {
     return Response.status(Response.Status.MOVED_PERMANENTLY).location(URI.create(redirect)).build();
   }
 
+  /** rdf formats of the mapping - generic types are aliases of the rdf ones */
+  static final List<Variant> MAPPING_VARIANTS = Variant.mediaTypes(
+      Mime.GRAPH_XML.type(), Mime.GRAPH_JSON.type(), Mime.GRAPH_TURTLE.type(),
+      MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE, MediaType.TEXT_PLAIN_TYPE
+  ).build();
+
+  /**
+   * Retrieve the d2rq mapping of this dataset, if it is based on a relational database.
+   */
   @GET
   @Path("/mapping")
   @PreAuthorize("hasAuthority('PERMISSION_ACCESS_METADATA')")
-  public Response fetchMapping() {
+  public Response fetchMapping(@Context final Request request,
+                               @Context final Providers providers) throws IOException {
     log.trace(Scope.REQUEST.marker(), "serve mapping of {}", dataset.name());
     final Optional<Model> mapping = Reactive.asOptional(dataset.mapping());
     return mapping.isPresent()
-        ? Response.ok(mapping.get()).build()
+        ? serve(mapping.get(), Model.class, MAPPING_VARIANTS, request, providers)
         : Response.status(Response.Status.NOT_FOUND).build();
   }
 
@@ -152,16 +273,20 @@ public class DatasetResource {
   /**
    * Process a URI-based protocol request.
    *
-   * @param uri   contains request arguments as query parameters
-   * @param async response continuation
+   * Replayed results are answered with {@code 304 Not Modified}, if the client holds them already.
+   *
+   * @param uri     contains request arguments as query parameters
+   * @param request used to evaluate preconditions
+   * @param async   response continuation
    */
   @GET
   @Path("/{language:(sql|sparql)}")
   @SuppressWarnings("VoidMethodAnnotatedWithGET")
-  public void acceptQuery(@Context final UriInfo uri, @Suspended final AsyncResponse async,
-                          @BeanParam final Params params) {
+  public void acceptQuery(@Context final UriInfo uri, @Context final Request request,
+                          @Suspended final AsyncResponse async, @BeanParam final Params params) {
     log.trace(Scope.REQUEST.marker(), "serve read-only query operation on {}", dataset.name());
-    process(async, parse(params).argumentsFrom(uri.getQueryParameters()).collect());
+    process(SendResults.conditional(async, request, caching), async,
+        parse(params).argumentsFrom(uri.getQueryParameters()).collect());
   }
 
   /**
@@ -176,7 +301,7 @@ public class DatasetResource {
   public void acceptForm(final MultivaluedMap<String, String> form, @Suspended final AsyncResponse async,
                          @BeanParam final Params params) {
     log.trace(Scope.REQUEST.marker(), "serve form operation on {}", dataset.name());
-    process(async, parse(params).argumentsFrom(form).collect());
+    process(SendResults.to(async), async, parse(params).argumentsFrom(form).collect());
   }
 
   /**
@@ -191,7 +316,7 @@ public class DatasetResource {
   public void acceptBody(final String body, @HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType,
                          @Suspended final AsyncResponse async, @BeanParam final Params params) {
     log.trace(Scope.REQUEST.marker(), "serve direct operation on {}", dataset.name());
-    process(async, parse(params).body(body, contentType).collect());
+    process(SendResults.to(async), async, parse(params).body(body, contentType).collect());
   }
 
   /**
@@ -209,12 +334,13 @@ public class DatasetResource {
   /**
    * Invoke request processing and observe the results.
    *
+   * @param sender  subscriber resuming the response
    * @param async   response continuation
    * @param command parsed request
    */
-  private void process(final AsyncResponse async, final Command command) {
+  private void process(final SendResults sender, final AsyncResponse async, final Command command) {
     try {
-      final Subscription subscription = connector.accept(command).subscribe(SendResults.to(async));
+      final Subscription subscription = connector.accept(command).subscribe(sender);
       AsyncListener.cleanUp(subscription).listenTo(async);
       async.setTimeout(timeout.getAs(TimeUnit.NANOSECONDS, 0L), TimeUnit.NANOSECONDS);
     } catch (final Throwable error) {
@@ -21,10 +21,12 @@ package at.ac.univie.isc.asio.engine;
 
 import at.ac.univie.isc.asio.Language;
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 
 import javax.annotation.Nullable;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Select an {@code Engine} from a fixed set of candidates, matching by supported language.
@@ -39,10 +41,12 @@ public final class FixedSelection implements EngineRouter {
         }
       };
 
-  private final Map<Language, Engine> candidates;
+  private final ImmutableMap<Language, Engine> candidates;
+  private final ImmutableSet<Engine> engines;
 
   private FixedSelection(final Iterable<Engine> engines) {
     candidates = Maps.uniqueIndex(engines, GET_LANGUAGE);
+    this.engines = ImmutableSet.copyOf(candidates.values());
   }
 
   public static FixedSelection from(final Iterable<Engine> engines) {
@@ -51,11 +55,33 @@ public final class FixedSelection implements EngineRouter {
 
   @Override
   public Engine select(final Command command) throws Language.NotSupported {
-    final Language requested = command.language();
+    return select(command.language());
+  }
+
+  /**
+   * Find the single candidate, that supports the given language.
+   *
+   * @param requested language of a command
+   * @return the matching engine
+   * @throws Language.NotSupported if no candidate supports the language
+   */
+  public Engine select(final Language requested) throws Language.NotSupported {
     final Engine found = candidates.get(requested);
     if (found == null) {
       throw new Language.NotSupported(requested);
     }
     return found;
   }
+
+  /**
+   * @return all candidates
+   */
+  public Set<Engine> engines() {
+    return engines;
+  }
+
+  @Override
+  public String toString() {
+    return "FixedSelection{" + candidates + '}';
+  }
 }
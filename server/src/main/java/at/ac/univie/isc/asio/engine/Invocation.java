@@ -35,6 +35,12 @@ import java.io.OutputStream;
  */
 public interface Invocation extends AutoCloseable {
 
+  /**
+   * Key of an optional property, holding an entity tag of the serialized results. It is only
+   * present if the results are known before execution, e.g. if they are replayed from a cache.
+   */
+  String RESULTS_TAG = "results-tag";
+
   /**
    * @return role required to execute this.
    */
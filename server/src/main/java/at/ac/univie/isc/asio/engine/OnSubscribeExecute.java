@@ -20,6 +20,8 @@
 package at.ac.univie.isc.asio.engine;
 
 import at.ac.univie.isc.asio.tool.Closer;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
 import rx.Observable;
 import rx.Subscriber;
 import rx.functions.Action0;
@@ -27,7 +29,9 @@ import rx.functions.Func1;
 import rx.subscriptions.Subscriptions;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import javax.ws.rs.core.EntityTag;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicReference;
@@ -119,7 +123,7 @@ public class OnSubscribeExecute implements Observable.OnSubscribe<StreamedResult
 
   private void stream(final Subscriber<? super StreamedResults> subscriber) {
     if (state.get() != State.EXECUTE) { return; }
-    subscriber.onNext(new StreamedResults(delegate.produces()) {
+    subscriber.onNext(new StreamedResults(delegate.produces(), tagOf(delegate)) {
       @Override
       protected void doWrite(final OutputStream output) throws IOException {
         state.compareAndSet(State.EXECUTE, State.STREAM);
@@ -143,6 +147,16 @@ public class OnSubscribeExecute implements Observable.OnSubscribe<StreamedResult
     state.compareAndSet(State.EXECUTE, State.STREAM);
   }
 
+  /** the entity tag of the results, if the invocation knows it */
+  @Nullable
+  private static EntityTag tagOf(final Invocation invocation) {
+    final Multimap<String, String> properties = invocation.properties();
+    if (properties == null || !properties.containsKey(Invocation.RESULTS_TAG)) {
+      return null;
+    }
+    return new EntityTag(Iterables.getOnlyElement(properties.get(Invocation.RESULTS_TAG)));
+  }
+
   private void cancel(State expectedPhase) {
     if (state.compareAndSet(expectedPhase, State.ABORT)) {
       delegate.cancel();
@@ -19,11 +19,17 @@
  */
 package at.ac.univie.isc.asio.engine;
 
+import com.google.common.base.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Subscriber;
 
+import javax.annotation.Nullable;
 import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 /**
@@ -38,13 +44,32 @@ final class SendResults extends Subscriber<StreamedResults> {
    * @return created subscriber
    */
   public static SendResults to(final AsyncResponse async) {
-    return new SendResults(async);
+    return new SendResults(async, null, null);
+  }
+
+  /**
+   * Create an instance, that answers conditional requests with {@code 304 Not Modified}, if the
+   * results carry an entity tag, e.g. if they are replayed from a cache.
+   *
+   * @param async   response continuation
+   * @param request jax-rs request used to evaluate preconditions
+   * @param caching cache control directives of responses with an entity tag
+   * @return created subscriber
+   */
+  public static SendResults conditional(final AsyncResponse async, final Request request,
+                                        final CacheControl caching) {
+    return new SendResults(async, request, caching);
   }
 
   private final AsyncResponse async;
+  private final Request request;
+  private final CacheControl caching;
 
-  private SendResults(final AsyncResponse async) {
+  private SendResults(final AsyncResponse async, @Nullable final Request request,
+                      @Nullable final CacheControl caching) {
     this.async = async;
+    this.request = request;
+    this.caching = caching;
   }
 
   @Override
@@ -68,15 +93,26 @@ final class SendResults extends Subscriber<StreamedResults> {
   public void onNext(final StreamedResults results) {
     if (async.isSuspended()) {
       log.debug("resuming response on thread {}", Thread.currentThread());
-      final Response response = Response
-          .ok()
-          .entity(results)
-          .type(results.format())
-          .build();
-      async.resume(response);
+      async.resume(respond(results));
     } else {
       log.warn("cannot send results - response already resumed");
       unsubscribe();
     }
   }
+
+  private Response respond(final StreamedResults results) {
+    final Optional<EntityTag> tag = results.tag();
+    if (request == null || !tag.isPresent()) {
+      return Response.ok().entity(results).type(results.format()).build();
+    }
+    final Response.ResponseBuilder unchanged = request.evaluatePreconditions(tag.get());
+    if (unchanged != null) {
+      log.debug("results {} not modified", tag.get());
+      results.close();
+      return unchanged.tag(tag.get()).cacheControl(caching)
+          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+    }
+    return Response.ok().entity(results).type(results.format())
+        .tag(tag.get()).cacheControl(caching).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+  }
 }
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keep the serialized forms of metadata elements, e.g. descriptors and schema definitions. An
+ * element is serialized once per media type, as long as the same instance is served, i.e. until
+ * its source is refreshed. Elements are compared by identity and weakly referenced.
+ */
+@ThreadSafe
+final class SerializedForms {
+  private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+  private final Cache<Object, Encodings> cache = CacheBuilder.newBuilder().weakKeys().build();
+
+  /**
+   * Find or create the serialized form of the given element, using the registered jax-rs writers.
+   *
+   * @param element   the element to serialize
+   * @param type      declared type of the element
+   * @param mediaType requested format
+   * @param providers jax-rs writer lookup
+   * @return serialized element with validators
+   * @throws IOException if no writer is available or serialization fails
+   */
+  Form encode(final Object element, final Class<?> type, final MediaType mediaType,
+              final Providers providers) throws IOException {
+    final Encodings encodings = encodingsOf(element);
+    final Form existing = encodings.forms.get(mediaType);
+    if (existing != null) {
+      return existing;
+    }
+    final Form created = serialize(element, type, mediaType, providers, encodings.created);
+    final Form raced = encodings.forms.putIfAbsent(mediaType, created);
+    return raced == null ? created : raced;
+  }
+
+  private Encodings encodingsOf(final Object element) {
+    try {
+      return cache.get(element, new Callable<Encodings>() {
+        @Override
+        public Encodings call() {
+          return new Encodings();
+        }
+      });
+    } catch (final ExecutionException e) {
+      throw new AssertionError("creating empty encodings failed", e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Form serialize(final Object element, final Class<?> type, final MediaType mediaType,
+                         final Providers providers, final Date created) throws IOException {
+    final MessageBodyWriter<Object> writer = (MessageBodyWriter<Object>)
+        providers.getMessageBodyWriter(type, type, NO_ANNOTATIONS, mediaType);
+    if (writer == null) {
+      throw new IOException("no writer for " + type.getName() + " as " + mediaType);
+    }
+    final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    writer.writeTo(element, type, type, NO_ANNOTATIONS, mediaType, headers, sink);
+    return new Form(sink.toByteArray(), actualType(headers, mediaType), created);
+  }
+
+  /** writers may resolve an alias, e.g. application/xml, to the concrete format they produced */
+  private MediaType actualType(final MultivaluedMap<String, Object> headers, final MediaType fallback) {
+    final Object written = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+    if (written == null) {
+      return fallback;
+    }
+    return written instanceof MediaType ? (MediaType) written : MediaType.valueOf(written.toString());
+  }
+
+  /** all forms of a single element - creation time is truncated to http date precision */
+  private static final class Encodings {
+    private final Date created = new Date(System.currentTimeMillis() / 1000 * 1000);
+    private final ConcurrentMap<MediaType, Form> forms = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * A serialized element, with a hash of media type and content as entity tag and the time of
+   * serialization. Forms of different media types never share an entity tag.
+   */
+  static final class Form {
+    private final byte[] content;
+    private final MediaType type;
+    private final EntityTag tag;
+    private final Date lastModified;
+
+    private Form(final byte[] content, final MediaType type, final Date lastModified) {
+      this.content = content;
+      this.type = type;
+      this.tag = new EntityTag(Hashing.sha1().newHasher()
+          .putString(type.toString(), Charsets.UTF_8).putBytes(content).hash().toString());
+      this.lastModified = lastModified;
+    }
+
+    byte[] content() {
+      return content;
+    }
+
+    MediaType type() {
+      return type;
+    }
+
+    EntityTag tag() {
+      return tag;
+    }
+
+    Date lastModified() {
+      return lastModified;
+    }
+
+    @Override
+    public String toString() {
+      return "Form{" + "type=" + type + ", tag=" + tag + ", lastModified=" + lastModified + '}';
+    }
+  }
+}
@@ -19,10 +19,13 @@
  */
 package at.ac.univie.isc.asio.engine;
 
+import com.google.common.base.Optional;
 import rx.Observable;
 import rx.subjects.BehaviorSubject;
 import rx.subjects.Subject;
 
+import javax.annotation.Nullable;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
@@ -34,9 +37,15 @@ import java.io.OutputStream;
 public abstract class StreamedResults implements StreamingOutput, AutoCloseable {
   private final Subject<Void, Void> progress = BehaviorSubject.create();
   private final MediaType format;
+  private final EntityTag tag;
 
   protected StreamedResults(final MediaType format) {
+    this(format, null);
+  }
+
+  protected StreamedResults(final MediaType format, @Nullable final EntityTag tag) {
     this.format = format;
+    this.tag = tag;
   }
 
   /**
@@ -89,4 +98,11 @@ public abstract class StreamedResults implements StreamingOutput, AutoCloseable
   public final MediaType format() {
     return format;
   }
+
+  /**
+   * @return entity tag of this serialized result, if it is known before streaming
+   */
+  public final Optional<EntityTag> tag() {
+    return Optional.fromNullable(tag);
+  }
 }
@@ -34,19 +34,18 @@ public final class DefaultJenaFactory implements JenaFactory {
   private final Timeout timeout;
   private final Dataset dataset;
   private final Model model;
+  private final QueryCache queries;
 
   public DefaultJenaFactory(final Model model, final Timeout timeout) {
     this.model = model;
     this.dataset = DatasetFactory.create(model);
     this.timeout = timeout;
+    this.queries = QueryCache.create(QueryCache.DEFAULT_SIZE);
   }
 
   @Override
   public Query parse(final String sparql) {
-    final Query query = QueryFactory.create();
-    query.getPrefixMapping().withDefaultMappings(model);
-    QueryFactory.parse(query, sparql, null, Syntax.syntaxARQ);
-    return query;
+    return queries.parse(sparql, model);
   }
 
   @Override
@@ -0,0 +1,319 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.security.Permission;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.ws.rs.core.MediaType;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Retain the descriptions of single resources, as produced by {@code DESCRIBE <uri>}. Queries, that
+ * describe a fixed list of resources, are answered by merging the cached descriptions. Missing
+ * descriptions are computed on first access. Entries expire after a fixed period and are evicted if
+ * either the number of entries or their estimated total size exceeds the configured limits.
+ * <p>
+ * The cache must be {@link #invalidate() invalidated}, whenever the backing dataset is modified.
+ * </p>
+ */
+@ThreadSafe
+public final class DescribeCache {
+  private static final Logger log = getLogger(DescribeCache.class);
+
+  /**
+   * Compute the description of a single resource.
+   */
+  interface Source {
+    /**
+     * @param resource uri of the described resource
+     * @return description of the resource
+     */
+    Model describe(Node resource);
+  }
+
+  /**
+   * Create a cache for resource descriptions of a single dataset.
+   *
+   * @param maxEntries maximal number of cached descriptions
+   * @param maxBytes   maximal estimated total size of cached descriptions in bytes
+   * @param ttl        expiration period of cached descriptions
+   * @return a new, empty cache
+   */
+  public static DescribeCache create(final long maxEntries, final long maxBytes, final Timeout ttl) {
+    assert ttl.isDefined() : "describe cache ttl must be defined";
+    return new DescribeCache(maxEntries, maxBytes, ttl.getAs(TimeUnit.MILLISECONDS, 0));
+  }
+
+  /**
+   * @return a cache that never retains descriptions
+   */
+  public static DescribeCache disabled() {
+    return new DescribeCache(0, 0, 0);
+  }
+
+  /**
+   * Only queries, that describe a fixed list of resources without any pattern, are served from the
+   * cache.
+   *
+   * @param query a parsed query
+   * @return true if the query may be answered from cached descriptions
+   */
+  static boolean isCacheable(final Query query) {
+    if (!query.isDescribeType()
+        || query.getQueryPattern() != null
+        || query.hasValues()
+        || query.hasDatasetDescription()
+        || !query.getResultVars().isEmpty()
+        || query.getResultURIs().isEmpty()) {
+      return false;
+    }
+    for (final Node node : query.getResultURIs()) {
+      if (!node.isURI()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private final Cache<Node, Description> cache;
+  private final long maxBytes;
+  private final long maxEntries;
+
+  private DescribeCache(final long maxEntries, final long maxBytes, final long ttl) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    // guava caches support a single bound only - the entry count is enforced by a weight floor
+    this.cache = CacheBuilder.newBuilder()
+        // guava splits the weight limit across segments - a single one admits maxEntries at the floor
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher(new DescriptionWeigher(maxBytesPerEntry(maxEntries, maxBytes)))
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Each entry weighs at least the average allowed size, therefore at most maxEntries fit.
+   */
+  private static long maxBytesPerEntry(final long maxEntries, final long maxBytes) {
+    return maxEntries > 0 ? Math.max(1, maxBytes / maxEntries) : 1;
+  }
+
+  /**
+   * @return true if descriptions may be retained
+   */
+  public boolean isEnabled() {
+    return maxBytes > 0 && maxEntries > 0;
+  }
+
+  /**
+   * Discard all cached descriptions.
+   */
+  public void invalidate() {
+    log.debug(Scope.SYSTEM.marker(), "invalidating {} cached resource descriptions", cache.size());
+    cache.invalidateAll();
+  }
+
+  /**
+   * @return number of cached descriptions
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("maxEntries", maxEntries)
+        .add("maxBytes", maxBytes)
+        .add("size", cache.size())
+        .toString();
+  }
+
+  /**
+   * Answer a cacheable DESCRIBE query from cached descriptions.
+   *
+   * @param query   a query, that is {@link #isCacheable(Query) cacheable}
+   * @param handler the handler, that would evaluate the query otherwise
+   * @param source  computes missing descriptions
+   * @return an invocation merging the described resources
+   */
+  Invocation lookup(final Query query, final DescribeInvocation handler, final Source source) {
+    assert isCacheable(query) : "query not cacheable " + query;
+    return new Lookup(query, handler, source);
+  }
+
+  private Description fetch(final Node resource, final Source source) {
+    try {
+      return cache.get(resource, new Callable<Description>() {
+        @Override
+        public Description call() throws Exception {
+          log.debug(Scope.REQUEST.marker(), "describing {}", resource);
+          return Description.of(source.describe(resource));
+        }
+      });
+    } catch (final ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** the immutable triples of a single description */
+  private static final class Description {
+    static Description of(final Model model) {
+      final ImmutableList.Builder<Triple> triples = ImmutableList.builder();
+      long bytes = 0;
+      final ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+      try {
+        while (it.hasNext()) {
+          final Triple next = it.next();
+          triples.add(next);
+          bytes += next.toString().length();
+        }
+      } finally {
+        it.close();
+        model.close();
+      }
+      return new Description(triples.build(), bytes);
+    }
+
+    private final ImmutableList<Triple> triples;
+    private final long bytes;
+
+    private Description(final ImmutableList<Triple> triples, final long bytes) {
+      this.triples = triples;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final class DescriptionWeigher implements Weigher<Node, Description> {
+    private final long floor;
+
+    private DescriptionWeigher(final long floor) {
+      this.floor = floor;
+    }
+
+    @Override
+    public int weigh(@Nonnull final Node key, @Nonnull final Description value) {
+      return (int) Math.min(Integer.MAX_VALUE, Math.max(floor, value.bytes));
+    }
+  }
+
+  /** merge cached descriptions of all described resources */
+  private final class Lookup implements Invocation {
+    private final Query query;
+    private final DescribeInvocation handler;
+    private final Source source;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final Multimap<String, String> properties;
+    private Model result;
+
+    private Lookup(final Query query, final DescribeInvocation handler, final Source source) {
+      this.query = query;
+      this.handler = handler;
+      this.source = source;
+      this.properties = ImmutableMultimap.<String, String>builder()
+          .put("command", QueryCache.formatted(query))
+          .put("permission", Permission.INVOKE_QUERY.toString())
+          .put("format", handler.produces().toString())
+          .put("engine", "jena")
+          .put("cache", "describe")
+          .build();
+    }
+
+    @Override
+    public Permission requires() {
+      return Permission.INVOKE_QUERY;
+    }
+
+    @Override
+    public Multimap<String, String> properties() {
+      return properties;
+    }
+
+    @Override
+    public void execute() {
+      final Model merged = ModelFactory.createDefaultModel();
+      merged.setNsPrefixes(query.getPrefixMapping());
+      for (final Node resource : query.getResultURIs()) {
+        if (cancelled.get()) {
+          throw new QueryCancelledException();
+        }
+        for (final Triple triple : fetch(resource, source).triples) {
+          merged.getGraph().add(triple);
+        }
+      }
+      result = merged;
+    }
+
+    @Override
+    public MediaType produces() {
+      return handler.produces();
+    }
+
+    @Override
+    public void write(final OutputStream sink) {
+      assert result != null : "not executed";
+      handler.doSerialize(sink, result);
+    }
+
+    @Override
+    public void cancel() {
+      cancelled.set(true);
+    }
+
+    @Override
+    public void close() { /* noop */ }
+
+    @Override
+    public String toString() {
+      return "CachedDescription{" + "properties=" + properties + '}';
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.insight.Sql;
+import at.ac.univie.isc.asio.insight.SqlTrace;
+import at.ac.univie.isc.asio.security.Permission;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Profile the execution of a sparql query instead of delivering its results. The query is
+ * evaluated as usual, but results are discarded during serialization. The produced json report
+ * contains the query algebra, the optimized plan, all sql statements issued while executing the
+ * query and the time spent in each phase of the execution.
+ * <p>
+ * The wrapped invocation is created lazily on {@link #execute()}, to include the time for claiming
+ * a backing connection in the report.
+ * </p>
+ */
+@NotThreadSafe
+final class ExplainInvocation implements Invocation {
+  private static final ObjectMapper JSON =
+      new ObjectMapper()
+          .enable(SerializationFeature.INDENT_OUTPUT)
+          .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+  private final Query query;
+  private final Supplier<SparqlInvocation<?>> delegateFactory;
+  private final MediaType format;
+  private final Multimap<String, String> properties;
+
+  private volatile SparqlInvocation<?> delegate;
+  private Map<String, Object> report;
+
+  ExplainInvocation(final Query query, final MediaType format, final Supplier<SparqlInvocation<?>> delegateFactory) {
+    this.query = query;
+    this.format = format;
+    this.delegateFactory = delegateFactory;
+    this.properties = ImmutableMultimap.<String, String>builder()
+        .put("command", QueryCache.formatted(query))
+        .put("permission", Permission.INVOKE_QUERY.toString())
+        .put("format", format.toString())
+        .put("engine", "jena")
+        .put("explain", "true")
+        .build();
+  }
+
+  @Override
+  public Permission requires() {
+    return Permission.INVOKE_QUERY;
+  }
+
+  @Override
+  public Multimap<String, String> properties() {
+    return properties;
+  }
+
+  @Override
+  public MediaType produces() {
+    return MediaType.APPLICATION_JSON_TYPE;
+  }
+
+  @Override
+  public void execute() {
+    Preconditions.checkState(report == null, "query invoked twice");
+    final Stopwatch total = Stopwatch.createStarted();
+    final Op algebra = Algebra.compile(query);
+    final Op plan = Algebra.optimize(algebra);
+    final long claim, execution, serialization, size;
+    final List<Sql.SqlEvent> statements;
+    try (final SqlTrace trace = SqlTrace.begin()) {
+      final Stopwatch phase = Stopwatch.createStarted();
+      delegate = delegateFactory.get();
+      claim = phase.elapsed(TimeUnit.MILLISECONDS);
+      phase.reset().start();
+      delegate.execute();
+      execution = phase.elapsed(TimeUnit.MILLISECONDS);
+      phase.reset().start();
+      final CountingOutputStream discard = new CountingOutputStream(ByteStreams.nullOutputStream());
+      delegate.write(discard);
+      serialization = phase.elapsed(TimeUnit.MILLISECONDS);
+      size = discard.getCount();
+      statements = trace.statements();
+    }
+    final Map<String, Object> timing = new LinkedHashMap<>();
+    timing.put("claim", claim);
+    timing.put("execution", execution);
+    timing.put("serialization", serialization);
+    timing.put("total", total.elapsed(TimeUnit.MILLISECONDS));
+    report = new LinkedHashMap<>();
+    report.put("query", QueryCache.formatted(query));
+    report.put("algebra", algebra.toString());
+    report.put("plan", plan.toString());
+    report.put("format", format.toString());
+    report.put("bytes", size);
+    report.put("timing", timing);
+    report.put("sql", describe(statements));
+  }
+
+  private List<Map<String, Object>> describe(final List<Sql.SqlEvent> statements) {
+    final List<Map<String, Object>> described = new ArrayList<>(statements.size());
+    for (final Sql.SqlEvent statement : statements) {
+      final Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("statement", statement.getStatement());
+      entry.put("rows", statement.getRows());
+      entry.put("duration", statement.getDuration());
+      entry.put("error", statement.getError());
+      described.add(entry);
+    }
+    return described;
+  }
+
+  @Override
+  public void write(final OutputStream sink) throws IOException {
+    Preconditions.checkState(report != null, "query not executed");
+    JSON.writeValue(sink, report);
+  }
+
+  @Override
+  public void cancel() {
+    final SparqlInvocation<?> current = delegate;
+    if (current != null) {
+      current.cancel();
+    }
+  }
+
+  @Override
+  public void close() {
+    final SparqlInvocation<?> current = delegate;
+    if (current != null) {
+      current.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("properties", properties)
+        .toString();
+  }
+}
@@ -27,6 +27,7 @@ import com.hp.hpl.jena.rdf.model.RDFWriter;
 import com.hp.hpl.jena.sparql.resultset.CSVOutput;
 import com.hp.hpl.jena.sparql.resultset.JSONOutput;
 import com.hp.hpl.jena.sparql.resultset.OutputFormatter;
+import com.hp.hpl.jena.sparql.resultset.TSVOutput;
 import com.hp.hpl.jena.sparql.resultset.XMLOutput;
 import com.hp.hpl.jena.xmloutput.impl.Basic;
 import org.openjena.riot.system.JenaWriterRdfJson;
@@ -42,12 +43,16 @@ public final class HandlerFactory {
   public static final MediaType RESULTS_JSON_TYPE =
       MediaType.valueOf("application/sparql-results+json");
   public static final MediaType CSV_TYPE = MediaType.valueOf("text/csv");
+  public static final MediaType TSV_TYPE = MediaType.valueOf("text/tab-separated-values");
   // graph formats
   public static final MediaType GRAPH_XML_TYPE = MediaType.valueOf("application/rdf+xml");
   public static final MediaType GRAPH_JSON_TYPE = MediaType.valueOf("application/rdf+json");
   public static final MediaType GRAPH_TURTLE_TYPE = MediaType.valueOf("text/turtle");
+  public static final MediaType GRAPH_NTRIPLES_TYPE = MediaType.valueOf("application/n-triples");
+  public static final MediaType GRAPH_NQUADS_TYPE = MediaType.valueOf("application/n-quads");
 
   private final TypeMatchingResolver<OutputFormatter> resultFormatterRegistry;
+  private final TypeMatchingResolver<SelectInvocation.ResultWriter> resultWriterRegistry;
   private final TypeMatchingResolver<RDFWriter> graphFormatterRegistry;
 
   public HandlerFactory() {
@@ -72,6 +77,40 @@ public final class HandlerFactory {
             return new CSVOutput();
           }
         })
+        .register(TSV_TYPE, new Supplier<OutputFormatter>() {
+          @Override
+          public OutputFormatter get() {
+            return new TSVOutput();
+          }
+        })
+        .make();
+    resultWriterRegistry = TypeMatchingResolver.<SelectInvocation.ResultWriter>builder()
+        .register(RESULTS_XML_TYPE, new Supplier<SelectInvocation.ResultWriter>() {
+          @Override
+          public SelectInvocation.ResultWriter get() {
+            return StreamingResultWriter.xml();
+          }
+        })
+        .alias(MediaType.APPLICATION_XML_TYPE)
+        .register(RESULTS_JSON_TYPE, new Supplier<SelectInvocation.ResultWriter>() {
+          @Override
+          public SelectInvocation.ResultWriter get() {
+            return StreamingResultWriter.json();
+          }
+        })
+        .alias(MediaType.APPLICATION_JSON_TYPE)
+        .register(CSV_TYPE, new Supplier<SelectInvocation.ResultWriter>() {
+          @Override
+          public SelectInvocation.ResultWriter get() {
+            return StreamingResultWriter.csv();
+          }
+        })
+        .register(TSV_TYPE, new Supplier<SelectInvocation.ResultWriter>() {
+          @Override
+          public SelectInvocation.ResultWriter get() {
+            return StreamingResultWriter.tsv();
+          }
+        })
         .make();
     graphFormatterRegistry = TypeMatchingResolver.<RDFWriter>builder()
         .register(GRAPH_XML_TYPE, new Supplier<RDFWriter>() {
@@ -95,6 +134,18 @@ public final class HandlerFactory {
           }
         })
         .alias(MediaType.TEXT_PLAIN_TYPE)
+        .register(GRAPH_NTRIPLES_TYPE, new Supplier<RDFWriter>() {
+          @Override
+          public RDFWriter get() {
+            return LineBasedRdfWriter.triples();
+          }
+        })
+        .register(GRAPH_NQUADS_TYPE, new Supplier<RDFWriter>() {
+          @Override
+          public RDFWriter get() {
+            return LineBasedRdfWriter.quads();
+          }
+        })
         .make();
   }
 
@@ -130,8 +181,8 @@ public final class HandlerFactory {
   }
 
   private SparqlInvocation handleSelect(final List<MediaType> acceptable) {
-    final TypeMatchingResolver.Selection<OutputFormatter> selection =
-        resultFormatterRegistry.select(acceptable);
+    final TypeMatchingResolver.Selection<SelectInvocation.ResultWriter> selection =
+        resultWriterRegistry.select(acceptable);
     return new SelectInvocation(selection.value(), selection.type());
   }
 
@@ -23,9 +23,12 @@ import at.ac.univie.isc.asio.InvalidUsage;
 import at.ac.univie.isc.asio.Language;
 import at.ac.univie.isc.asio.engine.Command;
 import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.Invocation;
 import at.ac.univie.isc.asio.security.Identity;
 import at.ac.univie.isc.asio.tool.Timeout;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.rdf.model.Model;
@@ -35,11 +38,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.Principal;
+import java.util.Collection;
 
 public final class JenaEngine implements Engine {
   private static final Logger log = LoggerFactory.getLogger(JenaEngine.class);
 
   public static final String KEY_QUERY = "query";
+  /** name of a stored query, that is executed instead of a given query text */
+  public static final String KEY_STORED = "stored";
+  /** profile the query execution instead of delivering results, if present and not 'false' */
+  public static final String KEY_EXPLAIN = "explain";
 
   public static JenaEngine using(final JenaFactory factory, final boolean allowFederated) {
     return new JenaEngine(factory, allowFederated);
@@ -53,6 +61,11 @@ public final class JenaEngine implements Engine {
   private final JenaFactory state;
   private final Predicate<Query> detectFederatedQuery;
   private final boolean allowFederated;
+  private ResultCache results = ResultCache.disabled();
+  private ServiceEvaluation services = ServiceEvaluation.sequential();
+  private StoredQueries stored = StoredQueries.empty();
+  private TextIndex text = TextIndex.disabled();
+  private DescribeCache describes = DescribeCache.disabled();
 
   private JenaEngine(final JenaFactory state, final boolean allowFederated) {
     this.state = state;
@@ -66,27 +79,136 @@ public final class JenaEngine implements Engine {
     return Language.SPARQL;
   }
 
+  /**
+   * Retain serialized results of queries in the given cache. Federated queries are never cached.
+   *
+   * @param results cache of query results
+   */
+  public void setResultCache(final ResultCache results) {
+    this.results = results;
+  }
+
+  /**
+   * Evaluate SERVICE clauses of federated queries with the given strategy.
+   *
+   * @param services evaluation strategy of SERVICE clauses
+   */
+  public void setServiceEvaluation(final ServiceEvaluation services) {
+    this.services = services;
+  }
+
+  /**
+   * Allow clients to invoke the given queries by name. All queries are parsed eagerly.
+   *
+   * @param stored registry of named queries
+   * @throws com.hp.hpl.jena.query.QueryParseException if a stored query is not valid
+   */
+  public void setStoredQueries(final StoredQueries stored) {
+    for (final String sparql : stored.asMap().values()) {
+      state.parse(sparql);
+    }
+    this.stored = stored;
+  }
+
+  /**
+   * Answer DESCRIBE queries of fixed resources from cached descriptions.
+   *
+   * @param describes cache of resource descriptions
+   */
+  public void setDescribeCache(final DescribeCache describes) {
+    this.describes = describes;
+  }
+
+  /**
+   * Answer text searches and simple text filters from the given index.
+   *
+   * @param text full-text index of the dataset
+   */
+  public void setTextIndex(final TextIndex text) {
+    this.text = text;
+  }
+
   @Override
   public void close() {
-    this.state.close();
+    try {
+      this.state.close();
+    } finally {
+      results.invalidate();
+      describes.invalidate();
+      services.close();
+    }
   }
 
   @Override
-  public SparqlInvocation<?> prepare(final Command command) {
-    final Query query = state.parse(command.require(KEY_QUERY));
+  public Invocation prepare(final Command command) {
+    final Query query = state.parse(sparqlOf(command));
     log.debug("parsed ARQ query\n{}", query);
-    rejectFederatedQueries(query);
+    final QueryParameters parameters = QueryParameters.from(command.properties(), query);
+    final boolean federated = detectFederatedQuery.apply(query);
+    rejectFederatedQueries(federated);
     final SparqlInvocation<?> handler = handlers.select(query.getQueryType(), command.acceptable());
+    if (isExplain(command)) {
+      return explain(handler, query, parameters, command);
+    }
+    if (describes.isEnabled() && parameters.isEmpty() && DescribeCache.isCacheable(query)) {
+      return describes.lookup(query, (DescribeInvocation) handler,
+          new DescribeResource(command.owner().or(Identity.undefined())));
+    }
+    if (results.isEnabled() && !federated) {
+      final String key = ResultCache.keyOf(query, parameters, handler.produces());
+      final Invocation cached = results.find(key, query, handler.produces());
+      if (cached != null) {
+        return cached;
+      }
+      return results.capture(key, initialize(handler, query, parameters, command));
+    }
+    return initialize(handler, query, parameters, command);
+  }
+
+  private String sparqlOf(final Command command) {
+    if (command.properties().containsKey(KEY_STORED)) {
+      if (command.properties().containsKey(KEY_QUERY)) {
+        throw new Command.IllegalCommand("either a query or the name of a stored query is allowed");
+      }
+      return stored.require(command.require(KEY_STORED));
+    }
+    return command.require(KEY_QUERY);
+  }
+
+  private boolean isExplain(final Command command) {
+    final Collection<String> flags = command.properties().get(KEY_EXPLAIN);
+    return !flags.isEmpty() && !flags.contains("false");
+  }
+
+  private Invocation explain(final SparqlInvocation<?> handler, final Query query,
+                             final QueryParameters parameters, final Command command) {
+    log.debug("explaining {}", query);
+    return new ExplainInvocation(query, handler.produces(), new Supplier<SparqlInvocation<?>>() {
+      @Override
+      public SparqlInvocation<?> get() {
+        return initialize(handler, query, parameters, command);
+      }
+    });
+  }
+
+  private SparqlInvocation<?> initialize(final SparqlInvocation<?> handler, final Query query,
+                                         final QueryParameters parameters, final Command command) {
     final Principal principal = command.owner().or(Identity.undefined());
     final QueryExecution execution = state.execution(query, principal);
+    if (!parameters.isEmpty()) {
+      log.debug("binding query parameters {}", parameters);
+      execution.setInitialBinding(parameters.asSolution());
+    }
     injectCredentials(execution.getContext(), principal);
+    text.applyTo(execution.getContext());
+    services.applyTo(execution.getContext());  // SERVICE evaluation takes precedence
     handler.init(execution);
     log.debug("using handler {}", handler);
     return handler;
   }
 
-  private void rejectFederatedQueries(final Query query) {
-    if (!allowFederated && detectFederatedQuery.apply(query)) {
+  private void rejectFederatedQueries(final boolean federated) {
+    if (!allowFederated && federated) {
       throw new JenaEngine.FederatedQueryLocked();
     }
   }
@@ -107,6 +229,28 @@ public final class JenaEngine implements Engine {
     }
   }
 
+  /** compute the description of a single resource on behalf of the requesting client */
+  private final class DescribeResource implements DescribeCache.Source {
+    private final Principal owner;
+
+    private DescribeResource(final Principal owner) {
+      this.owner = owner;
+    }
+
+    @Override
+    public Model describe(final Node resource) {
+      final Query single = new Query();
+      single.setQueryDescribeType();
+      single.addDescribeNode(resource);
+      final QueryExecution execution = state.execution(single, owner);
+      try {
+        return execution.execDescribe();
+      } finally {
+        execution.close();
+      }
+    }
+  }
+
   public static final class UnknownQueryType extends InvalidUsage {
     public UnknownQueryType() {
       super("unknown SPARQL query type");
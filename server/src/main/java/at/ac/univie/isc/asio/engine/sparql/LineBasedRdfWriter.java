@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFErrorHandler;
+import com.hp.hpl.jena.rdf.model.RDFWriter;
+import com.hp.hpl.jena.shared.WrappedIOException;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import org.openjena.atlas.lib.Sink;
+import org.openjena.riot.out.NodeToLabel;
+import org.openjena.riot.out.OutputLangUtils;
+import org.openjena.riot.out.SinkQuadOutput;
+import org.openjena.riot.out.SinkTripleOutput;
+import org.openjena.riot.system.Prologue;
+import org.openjena.riot.system.SyntaxLabels;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Serialize a model to one of the line based rdf formats (N-Triples or N-Quads). Each statement
+ * is encoded and handed to the sink as soon as it is read from the model, no analysis of the
+ * whole graph is required, i.e. memory usage is constant and the first rows are available
+ * immediately.
+ * Statements are written as members of the default graph, if the N-Quads format is used.
+ */
+final class LineBasedRdfWriter implements RDFWriter {
+  /**
+   * @return writer producing N-Triples
+   */
+  static LineBasedRdfWriter triples() {
+    return new LineBasedRdfWriter(false);
+  }
+
+  /**
+   * @return writer producing N-Quads
+   */
+  static LineBasedRdfWriter quads() {
+    return new LineBasedRdfWriter(true);
+  }
+
+  private final boolean quads;
+
+  private LineBasedRdfWriter(final boolean quads) {
+    this.quads = quads;
+  }
+
+  @Override
+  public void write(final Model model, final OutputStream out, final String base) {
+    final Sink<Triple> sink = quads
+        ? new QuadSinkAdapter(new SinkQuadOutput(out, Prologue.create(null, null), SyntaxLabels.createNodeToLabel()))
+        : new SinkTripleOutput(out, Prologue.create(null, null), SyntaxLabels.createNodeToLabel());
+    final ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+    try {
+      while (triples.hasNext()) {
+        sink.send(triples.next());
+      }
+    } finally {
+      triples.close();
+      sink.flush();
+    }
+  }
+
+  @Override
+  public void write(final Model model, final Writer out, final String base) {
+    final Prologue prologue = Prologue.create(null, null);
+    final NodeToLabel labels = SyntaxLabels.createNodeToLabel();  // blank node labels of whole model
+    final ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+    try {
+      while (triples.hasNext()) {
+        final Triple triple = triples.next();
+        if (quads) {
+          OutputLangUtils.output(out, new Quad(Quad.defaultGraphNodeGenerated, triple), prologue, labels);
+        } else {
+          OutputLangUtils.output(out, triple, prologue, labels);
+        }
+      }
+      out.flush();
+    } catch (IOException e) {
+      throw new WrappedIOException(e);
+    } finally {
+      triples.close();
+    }
+  }
+
+  @Override
+  public Object setProperty(final String propName, final Object propValue) {
+    return null;  // no properties supported
+  }
+
+  @Override
+  public RDFErrorHandler setErrorHandler(final RDFErrorHandler errHandler) {
+    return null;  // no errors reported
+  }
+
+  @Override
+  public String toString() {
+    return "LineBasedRdfWriter{" + (quads ? "n-quads" : "n-triples") + "}";
+  }
+
+  /** wrap triples into quads in the default graph */
+  private static final class QuadSinkAdapter implements Sink<Triple> {
+    private final Sink<Quad> delegate;
+
+    private QuadSinkAdapter(final Sink<Quad> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void send(final Triple item) {
+      delegate.send(new Quad(Quad.defaultGraphNodeGenerated, item));
+    }
+
+    @Override
+    public void flush() {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.tool.Pair;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.core.VarExprList;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Map;
+
+/**
+ * Bounded cache of parsed sparql queries. Queries are identified by their text and the default
+ * prefixes, that are in effect when parsing. Each lookup yields a fresh, shallow copy of the
+ * cached query. The query level settings of a copy, e.g. prefixes, projection, modifiers or the
+ * pattern itself, may be replaced without affecting the cached original. The syntax elements,
+ * expressions and templates are <strong>shared</strong> with the original, as jena offers no
+ * cheap deep copy. They are mutable and must not be modified in place.
+ * <p>
+ * The flat serialized form of the query is computed once and retained with the copy, as long as
+ * the copy is not modified, see {@link #formatted(Query)}.
+ * </p>
+ */
+@ThreadSafe
+public final class QueryCache {
+  /** default maximal number of retained queries */
+  public static final int DEFAULT_SIZE = 256;
+
+  /**
+   * Create a cache, which retains at most the given number of queries, evicting the least recently
+   * used ones first.
+   *
+   * @param size maximal number of cached queries
+   * @return a new, empty cache
+   */
+  public static QueryCache create(final int size) {
+    return new QueryCache(size);
+  }
+
+  private final Cache<Key, Template> cache;
+
+  private QueryCache(final int size) {
+    cache = CacheBuilder.newBuilder().maximumSize(size).build();
+  }
+
+  /**
+   * Parse a sparql query or retrieve it from the cache if it was parsed before with the same
+   * default prefixes.
+   *
+   * @param sparql   text of sparql query
+   * @param defaults prefixes that are added to the parsed query, if not defined in the query text
+   * @return a private copy of the parsed query
+   */
+  public Query parse(final String sparql, final PrefixMapping defaults) {
+    final Key key = new Key(sparql, defaults.getNsPrefixMap());
+    Template template = cache.getIfPresent(key);
+    if (template == null) { // parse errors are not cached, concurrent misses may parse twice
+      template = Template.parse(sparql, defaults);
+      cache.put(key, template);
+    }
+    return template.copy();
+  }
+
+  /**
+   * @return number of currently cached queries
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Retrieve the flat serialized form of a query. If the query originates from a cache and is
+   * structurally equal to the cached original, the precomputed form is returned, else the query is
+   * serialized again.
+   *
+   * @param query parsed sparql query
+   * @return single line serialization of the query
+   */
+  public static String formatted(final Query query) {
+    if (query instanceof FormattedQuery) {
+      final FormattedQuery cached = (FormattedQuery) query;
+      if (cached.equals(cached.reference)) {
+        return cached.formatted;
+      }
+    }
+    return SparqlInvocation.format(query);
+  }
+
+  private static final class Key extends Pair<String, Map<String, String>> {
+    private Key(final String sparql, final Map<String, String> prefixes) {
+      super(sparql, ImmutableMap.copyOf(prefixes));
+    }
+  }
+
+  /**
+   * A cached query - must never be exposed. Copies are derived from the {@code original}, while
+   * the {@code reference} is a separately parsed instance, that shares no syntax elements with
+   * any copy and detects modifications of them.
+   */
+  private static final class Template {
+    private final Query original;
+    private final Query reference;
+    private final String formatted;
+    private final boolean copyable;
+
+    static Template parse(final String sparql, final PrefixMapping defaults) {
+      return new Template(parseQuery(sparql, defaults), parseQuery(sparql, defaults));
+    }
+
+    private static Query parseQuery(final String sparql, final PrefixMapping defaults) {
+      final Query query = QueryFactory.create();
+      query.getPrefixMapping().withDefaultMappings(defaults);
+      QueryFactory.parse(query, sparql, null, Syntax.syntaxARQ);
+      query.setResultVars();  // settle lazily computed projection
+      return query;
+    }
+
+    private Template(final Query original, final Query reference) {
+      this.original = original;
+      this.reference = reference;
+      this.formatted = SparqlInvocation.format(reference);
+      // guard against query features, that are not transferred by the field-wise copy
+      this.copyable = shallowCopy().equals(reference);
+    }
+
+    Query copy() {
+      return copyable ? shallowCopy() : original.cloneQuery();
+    }
+
+    private Query shallowCopy() {
+      final FormattedQuery copy = new FormattedQuery(reference, formatted);
+      copy.setSyntax(original.getSyntax());
+      copy.setPrefixMapping(new PrefixMappingImpl().setNsPrefixes(original.getPrefixMapping()));
+      if (original.explicitlySetBaseURI()) {
+        copy.setBaseURI(original.getResolver());
+      }
+      switch (original.getQueryType()) {
+        case Query.QueryTypeSelect:
+          copy.setQuerySelectType(); break;
+        case Query.QueryTypeConstruct:
+          copy.setQueryConstructType(); break;
+        case Query.QueryTypeDescribe:
+          copy.setQueryDescribeType(); break;
+        case Query.QueryTypeAsk:
+          copy.setQueryAskType(); break;
+        default:
+          throw new JenaEngine.UnknownQueryType();
+      }
+      for (final String graph : original.getGraphURIs()) {
+        copy.addGraphURI(graph);
+      }
+      for (final String graph : original.getNamedGraphURIs()) {
+        copy.addNamedGraphURI(graph);
+      }
+      copy.setQueryPattern(original.getQueryPattern());
+      copy.setDistinct(original.isDistinct());
+      copy.setReduced(original.isReduced());
+      copy.setLimit(original.getLimit());
+      copy.setOffset(original.getOffset());
+      // aggregators are allocated in order, yielding the same internal variables as in the original
+      for (final ExprAggregator aggregator : original.getAggregators()) {
+        copy.allocAggregate(aggregator.getAggregator());
+      }
+      if (original.isQueryResultStar()) {
+        copy.setQueryResultStar(true);
+      } else {
+        copyVariables(original.getProject(), copy, false);
+      }
+      copyVariables(original.getGroupBy(), copy, true);
+      for (final Expr having : original.getHavingExprs()) {
+        copy.addHavingCondition(having);
+      }
+      if (original.hasOrderBy()) {
+        for (final SortCondition condition : original.getOrderBy()) {
+          copy.addOrderBy(condition);
+        }
+      }
+      if (original.hasValues()) {
+        copy.setValuesDataBlock(original.getValuesVariables(), original.getValuesData());
+      }
+      if (original.getConstructTemplate() != null) {
+        copy.setConstructTemplate(original.getConstructTemplate());
+      }
+      for (final Node node : original.getResultURIs()) {
+        copy.addDescribeNode(node);
+      }
+      copy.setResultVars();
+      return copy;
+    }
+
+    private static void copyVariables(final VarExprList source, final Query target, final boolean group) {
+      for (final Var var : source.getVars()) {
+        final Expr expression = source.getExpr(var);
+        if (group) {
+          if (expression == null) {
+            target.addGroupBy(var);
+          } else {
+            target.addGroupBy(var, expression);
+          }
+        } else {
+          if (expression == null) {
+            target.addResultVar(var);
+          } else {
+            target.addResultVar(var, expression);
+          }
+        }
+      }
+    }
+  }
+
+  /** carry the precomputed serialization of a query and the query it was computed from */
+  private static final class FormattedQuery extends Query {
+    private final Query reference;
+    private final String formatted;
+
+    private FormattedQuery(final Query reference, final String formatted) {
+      this.reference = reference;
+      this.formatted = formatted;
+    }
+  }
+}
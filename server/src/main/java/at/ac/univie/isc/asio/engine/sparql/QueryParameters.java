@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.InvalidUsage;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Multimap;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.syntax.PatternVars;
+import com.hp.hpl.jena.sparql.util.NodeFactory;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Typed values for variables of a parsed sparql query. Parameters are passed as command properties,
+ * where the key is the variable name prefixed with {@code $}, e.g. {@code $patient}, and the value
+ * is a single rdf term in sparql syntax, e.g. {@code <http://example.com/patient/1>},
+ * {@code "text"@en}, {@code 42} or a prefixed name using the prefixes of the query.
+ * <p>
+ * Parameters are applied as initial binding of the query execution, therefore the parsed query
+ * is left untouched and may be shared between requests.
+ * </p>
+ */
+@Immutable
+public final class QueryParameters {
+  /** command properties with this prefix are query parameters */
+  public static final String PREFIX = "$";
+
+  private static final Pattern PREFIXED_NAME = Pattern.compile("^[A-Za-z][\\w.-]*:[^<>\"\\s]*$|^:[^<>\"\\s]*$");
+  private static final QueryParameters NONE = new QueryParameters(ImmutableSortedMap.<String, Node>of());
+
+  /**
+   * @return parameters binding no variables
+   */
+  public static QueryParameters none() {
+    return NONE;
+  }
+
+  /**
+   * Extract and parse all query parameters from the given command properties.
+   *
+   * @param properties command properties
+   * @param query      the parsed query, which must mention all parameter variables
+   * @return parsed parameters
+   * @throws IllegalParameter if a parameter is not a single valid rdf term or an unknown variable
+   */
+  public static QueryParameters from(final Multimap<String, String> properties, final Query query) {
+    final ImmutableSortedMap.Builder<String, Node> bindings = ImmutableSortedMap.naturalOrder();
+    Set<String> known = null;
+    for (final Map.Entry<String, Collection<String>> each : properties.asMap().entrySet()) {
+      if (!each.getKey().startsWith(PREFIX)) {
+        continue;
+      }
+      final String name = each.getKey().substring(PREFIX.length());
+      if (known == null) {
+        known = variablesOf(query);
+      }
+      if (!known.contains(name)) {
+        throw new IllegalParameter(name, "not a variable of the query");
+      }
+      if (each.getValue().size() != 1) {
+        throw new IllegalParameter(name, "expected exactly one value but got " + each.getValue());
+      }
+      bindings.put(name, parse(name, each.getValue().iterator().next(), query.getPrefixMapping()));
+    }
+    final ImmutableSortedMap<String, Node> parsed = bindings.build();
+    return parsed.isEmpty() ? NONE : new QueryParameters(parsed);
+  }
+
+  private static Set<String> variablesOf(final Query query) {
+    final Set<String> names = new HashSet<>();
+    if (query.getQueryPattern() != null) {
+      for (final Var var : PatternVars.vars(query.getQueryPattern())) {
+        names.add(var.getVarName());
+      }
+    }
+    names.addAll(query.getResultVars());
+    return names;
+  }
+
+  private static Node parse(final String name, final String text, final PrefixMapping prefixes) {
+    final String term = text.trim();
+    try {
+      if (PREFIXED_NAME.matcher(term).matches()) {
+        final String expanded = prefixes.expandPrefix(term);
+        if (expanded.equals(term)) {
+          throw new IllegalParameter(name, "unknown prefix in <" + term + ">");
+        }
+        return Node.createURI(expanded);
+      }
+      final Node node = NodeFactory.parseNode(term);
+      if (node.isVariable() || node.isBlank()) {
+        throw new IllegalParameter(name, "<" + term + "> is not a concrete rdf term");
+      }
+      return node;
+    } catch (final IllegalParameter e) {
+      throw e;
+    } catch (final RuntimeException e) {
+      throw new IllegalParameter(name, "<" + term + "> is not a valid rdf term (" + e.getMessage() + ")");
+    }
+  }
+
+  private final ImmutableSortedMap<String, Node> bindings;
+
+  private QueryParameters(final ImmutableSortedMap<String, Node> bindings) {
+    this.bindings = bindings;
+  }
+
+  /**
+   * @return true if no variable is bound
+   */
+  public boolean isEmpty() {
+    return bindings.isEmpty();
+  }
+
+  /**
+   * @return the bound values by variable name
+   */
+  public Map<String, Node> bindings() {
+    return bindings;
+  }
+
+  /**
+   * @return the parameters as initial binding of a query execution
+   */
+  public QuerySolution asSolution() {
+    final Model holder = ModelFactory.createDefaultModel();
+    final QuerySolutionMap solution = new QuerySolutionMap();
+    for (final Map.Entry<String, Node> each : bindings.entrySet()) {
+      solution.add(each.getKey(), holder.asRDFNode(each.getValue()));
+    }
+    return solution;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).addValue(bindings).toString();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) { return true; }
+    if (o == null || getClass() != o.getClass()) { return false; }
+    return bindings.equals(((QueryParameters) o).bindings);
+  }
+
+  @Override
+  public int hashCode() {
+    return bindings.hashCode();
+  }
+
+  public static final class IllegalParameter extends InvalidUsage {
+    public IllegalParameter(final String name, final String reason) {
+      super("illegal query parameter $" + name + " - " + reason);
+    }
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.security.Permission;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Objects;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.hash.Hashing;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Retain serialized results of sparql queries on a single dataset. Queries are identified by their
+ * normalized algebra expression and the requested result format. Entries expire after a fixed
+ * period and are evicted if the total size of cached results exceeds the configured limit.
+ * <p>
+ * The cache must be {@link #invalidate() invalidated}, whenever the backing dataset is modified.
+ * </p>
+ */
+@ThreadSafe
+public final class ResultCache {
+  private static final Logger log = getLogger(ResultCache.class);
+
+  /**
+   * Create a cache for results of a single dataset.
+   *
+   * @param maxBytes maximal total size of cached results in bytes
+   * @param ttl      expiration period of cached results
+   * @return a new, empty cache
+   */
+  public static ResultCache create(final long maxBytes, final Timeout ttl) {
+    assert ttl.isDefined() : "result cache ttl must be defined";
+    return new ResultCache(maxBytes, ttl.getAs(TimeUnit.MILLISECONDS, 0));
+  }
+
+  /**
+   * @return a cache that never retains results.
+   */
+  public static ResultCache disabled() {
+    return new ResultCache(0, 0);
+  }
+
+  private final Cache<String, Entry> cache;
+  private final long maxBytes;
+  /** incremented on every invalidation - captures started before must not store their results */
+  private final AtomicLong generation = new AtomicLong(0);
+
+  private ResultCache(final long maxBytes, final long ttl) {
+    this.maxBytes = maxBytes;
+    this.cache = CacheBuilder.newBuilder()
+        // guava splits the weight limit across segments - a single one admits entries up to maxBytes
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher(new ResultWeigher())
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * @return true if results may be retained
+   */
+  public boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * Discard all cached results.
+   */
+  public void invalidate() {
+    log.debug(Scope.SYSTEM.marker(), "invalidating {} cached sparql results", cache.size());
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  /**
+   * @return number of cached results
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("maxBytes", maxBytes)
+        .add("size", cache.size())
+        .toString();
+  }
+
+  /**
+   * Derive the cache key of a query, which is independent of prefix declarations and formatting.
+   * Result variables, construct templates and described resources are not part of the algebra
+   * expression and are added to the key explicitly.
+   *
+   * @param query  the parsed query
+   * @param format media type of serialized results
+   * @return normalized key
+   */
+  static String keyOf(final Query query, final MediaType format) {
+    return keyOf(query, QueryParameters.none(), format);
+  }
+
+  /**
+   * Compute the key of a parameterized query.
+   *
+   * @param query the parsed query
+   * @param parameters values bound to variables of the query
+   * @param format media type of serialized results
+   * @return normalized key
+   */
+  static String keyOf(final Query query, final QueryParameters parameters, final MediaType format) {
+    final StringBuilder key = new StringBuilder();
+    if (!parameters.isEmpty()) {
+      key.append(parameters.bindings()).append('\n');
+    }
+    key.append(format).append('\n').append(query.getQueryType()).append('\n');
+    if (query.getQueryPattern() != null) {
+      key.append(Algebra.compile(query)).append('\n');
+    }
+    key.append(query.getResultVars()).append('\n');
+    if (query.getConstructTemplate() != null) {
+      key.append(query.getConstructTemplate().getTriples()).append('\n');
+    }
+    for (final Node node : query.getResultURIs()) {
+      key.append(node).append('\n');
+    }
+    return key.toString();
+  }
+
+  /**
+   * Find the cached results of a query.
+   *
+   * @param key key of the query as computed by {@link #keyOf(Query, MediaType)}
+   * @param query the parsed query
+   * @param format media type of results
+   * @return an invocation replaying the cached results or {@code null} if there are none
+   */
+  Invocation find(final String key, final Query query, final MediaType format) {
+    final Entry found = cache.getIfPresent(key);
+    if (found == null) {
+      return null;
+    }
+    log.debug(Scope.REQUEST.marker(), "sparql result cache hit - {} bytes", found.results.length);
+    return new Replay(found, format, QueryCache.formatted(query));
+  }
+
+  /**
+   * Capture the results of the given invocation and store them in the cache, if serialization
+   * succeeds.
+   *
+   * @param key key of the query as computed by {@link #keyOf(Query, MediaType)}
+   * @param delegate invocation producing the results
+   * @return an invocation, that stores its results on successful completion
+   */
+  Invocation capture(final String key, final SparqlInvocation<?> delegate) {
+    return new Capture(key, delegate);
+  }
+
+  private static final class ResultWeigher implements Weigher<String, Entry> {
+    @Override
+    public int weigh(@Nonnull final String key, @Nonnull final Entry value) {
+      return key.length() + value.results.length;
+    }
+  }
+
+  /** serialized results with a hash of format and content as entity tag */
+  private static final class Entry {
+    private final byte[] results;
+    private final String tag;
+
+    private Entry(final byte[] results, final MediaType format) {
+      this.results = results;
+      this.tag = Hashing.sha1().newHasher()
+          .putString(format.toString(), Charsets.UTF_8).putBytes(results).hash().toString();
+    }
+  }
+
+  /** serve results from memory */
+  private static final class Replay implements Invocation {
+    private final byte[] results;
+    private final MediaType format;
+    private final Multimap<String, String> properties;
+
+    private Replay(final Entry entry, final MediaType format, final String command) {
+      this.results = entry.results;
+      this.format = format;
+      this.properties = ImmutableMultimap.<String, String>builder()
+          .put("command", command)
+          .put("permission", Permission.INVOKE_QUERY.toString())
+          .put("format", format.toString())
+          .put("engine", "jena")
+          .put("cache", "hit")
+          .put(RESULTS_TAG, entry.tag)
+          .build();
+    }
+
+    @Override
+    public Permission requires() {
+      return Permission.INVOKE_QUERY;
+    }
+
+    @Override
+    public Multimap<String, String> properties() {
+      return properties;
+    }
+
+    @Override
+    public void execute() { /* noop */ }
+
+    @Override
+    public MediaType produces() {
+      return format;
+    }
+
+    @Override
+    public void write(final OutputStream sink) throws IOException {
+      sink.write(results);
+    }
+
+    @Override
+    public void cancel() { /* noop */ }
+
+    @Override
+    public void close() { /* noop */ }
+
+    @Override
+    public String toString() {
+      return "CachedResults{" + "properties=" + properties + '}';
+    }
+  }
+
+  /** copy serialized results into the cache */
+  private final class Capture implements Invocation {
+    private final String key;
+    private final SparqlInvocation<?> delegate;
+    private final long started;
+
+    private Capture(final String key, final SparqlInvocation<?> delegate) {
+      this.key = key;
+      this.delegate = delegate;
+      this.started = generation.get();
+    }
+
+    @Override
+    public Permission requires() {
+      return delegate.requires();
+    }
+
+    @Override
+    public Multimap<String, String> properties() {
+      return delegate.properties();
+    }
+
+    @Override
+    public void execute() {
+      delegate.execute();
+    }
+
+    @Override
+    public MediaType produces() {
+      return delegate.produces();
+    }
+
+    @Override
+    public void write(final OutputStream sink) throws IOException {
+      final BoundedCopy copy = new BoundedCopy(sink, maxBytes - key.length());
+      delegate.write(copy);
+      if (copy.isComplete()) {
+        store(copy.captured());
+      } else {
+        log.debug(Scope.REQUEST.marker(), "sparql results exceed cache size - not retained");
+      }
+    }
+
+    /** discard the results if the cache was invalidated while they were computed */
+    private void store(final byte[] results) {
+      if (generation.get() != started) {
+        log.debug(Scope.REQUEST.marker(), "sparql results outdated by invalidation - not retained");
+        return;
+      }
+      cache.put(key, new Entry(results, delegate.produces()));
+      if (generation.get() != started) {  // invalidated concurrently - may have missed this entry
+        cache.invalidate(key);
+      }
+    }
+
+    @Override
+    public void cancel() {
+      delegate.cancel();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public String toString() {
+      return "CachingInvocation{" + delegate + '}';
+    }
+  }
+
+  /** pass through all written bytes and retain a copy of them, until the limit is exceeded */
+  private static final class BoundedCopy extends OutputStream {
+    private final OutputStream sink;
+    private final long limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    private BoundedCopy(final OutputStream sink, final long limit) {
+      this.sink = sink;
+      this.limit = limit;
+    }
+
+    boolean isComplete() {
+      return copy != null;
+    }
+
+    byte[] captured() {
+      return copy.toByteArray();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      sink.write(b);
+      if (copy != null) {
+        copy.write(b);
+        checkLimit();
+      }
+    }
+
+    @Override
+    public void write(@Nonnull final byte[] b, final int off, final int len) throws IOException {
+      sink.write(b, off, len);
+      if (copy != null) {
+        copy.write(b, off, len);
+        checkLimit();
+      }
+    }
+
+    private void checkLimit() {
+      if (copy.size() > limit) {
+        copy = null;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      sink.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      sink.close();
+    }
+  }
+}
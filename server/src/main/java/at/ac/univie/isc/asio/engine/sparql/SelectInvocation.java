@@ -21,22 +21,28 @@ package at.ac.univie.isc.asio.engine.sparql;
 
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.sparql.resultset.OutputFormatter;
 
 import javax.ws.rs.core.MediaType;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 final class SelectInvocation extends SparqlInvocation<ResultSet> {
+  interface ResultWriter {
+    /**
+     * Serialize all remaining solutions, stopping early if {@code cancelled} is set.
+     */
+    void serialize(OutputStream output, ResultSet results, AtomicBoolean cancelled);
+  }
 
-  private final OutputFormatter serializer;
+  private final ResultWriter writer;
 
-  public SelectInvocation(final OutputFormatter serializer) {
-    this(serializer, MediaType.WILDCARD_TYPE);
+  public SelectInvocation(final ResultWriter writer) {
+    this(writer, MediaType.WILDCARD_TYPE);
   }
 
-  public SelectInvocation(final OutputFormatter serializer, final MediaType format) {
+  public SelectInvocation(final ResultWriter writer, final MediaType format) {
     super(format);
-    this.serializer = serializer;
+    this.writer = writer;
   }
 
   @Override
@@ -48,6 +54,6 @@ final class SelectInvocation extends SparqlInvocation<ResultSet> {
 
   @Override
   protected void doSerialize(final OutputStream sink, final ResultSet data) {
-    serializer.format(sink, data);
+    writer.serialize(sink, data, cancelled());
   }
 }
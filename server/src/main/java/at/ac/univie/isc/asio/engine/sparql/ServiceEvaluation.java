@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.sparql.algebra.op.OpService;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.http.Service;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.util.Context;
+import org.slf4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Evaluate SERVICE clauses of federated queries. Independent SERVICE clauses are executed
+ * concurrently on a bounded pool, dependent ones are evaluated as bound joins, which ship a batch
+ * of input bindings as inline VALUES block to the remote endpoint. Results of remote calls may
+ * optionally be cached for a fixed period.
+ * <p>
+ * Remote calls are made by ARQ's {@link Service}, which consumes each response fully and closes
+ * it, therefore the keep-alive connections of the JVM's http client are reused between calls.
+ * </p>
+ */
+@ThreadSafe
+public final class ServiceEvaluation implements AutoCloseable {
+  private static final Logger log = getLogger(ServiceEvaluation.class);
+
+  /** default size of batches in bound joins */
+  public static final int DEFAULT_BATCH_SIZE = 20;
+
+  /**
+   * Create an evaluation that executes at most {@code concurrency} remote calls in parallel.
+   *
+   * @param concurrency max number of parallel remote calls
+   * @param batchSize   max number of bindings shipped in a single bound join call
+   * @param cacheSize   max number of cached remote results
+   * @param cacheTtl    expiration period of cached remote results, caching is disabled if undefined
+   * @return a new evaluation
+   */
+  public static ServiceEvaluation create(final int concurrency, final int batchSize,
+                                         final long cacheSize, final Timeout cacheTtl) {
+    Preconditions.checkArgument(concurrency > 0, "illegal service concurrency %s", concurrency);
+    final ExecutorService pool = Executors.newFixedThreadPool(concurrency,
+        new ThreadFactoryBuilder().setNameFormat("sparql-service-%d").setDaemon(true).build());
+    return new ServiceEvaluation(new HttpEndpoint(), pool, batchSize, cacheSize, cacheTtl);
+  }
+
+  /**
+   * @return an evaluation that leaves SERVICE clauses to the default ARQ implementation
+   */
+  public static ServiceEvaluation sequential() {
+    return new ServiceEvaluation(null, null, 0, 0, Timeout.undefined());
+  }
+
+  /**
+   * Perform a single remote call.
+   */
+  interface Endpoint {
+    /**
+     * @param service the remote sub-query
+     * @param context of the enclosing query execution
+     * @return all solutions of the remote query
+     */
+    QueryIterator call(OpService service, Context context);
+  }
+
+  private final Endpoint endpoint;
+  private final ExecutorService pool;
+  private final int batchSize;
+  private final Cache<String, List<Binding>> cache;
+
+  ServiceEvaluation(final Endpoint endpoint, final ExecutorService pool, final int batchSize,
+                    final long cacheSize, final Timeout cacheTtl) {
+    this.endpoint = endpoint;
+    this.pool = pool;
+    this.batchSize = batchSize;
+    if (cacheTtl.isDefined() && cacheSize > 0) {
+      cache = CacheBuilder.newBuilder()
+          .maximumSize(cacheSize)
+          .expireAfterWrite(cacheTtl.getAs(TimeUnit.MILLISECONDS, 0), TimeUnit.MILLISECONDS)
+          .build();
+    } else {
+      cache = null;
+    }
+  }
+
+  /**
+   * @return true if SERVICE clauses are evaluated by this
+   */
+  public boolean isEnabled() {
+    return pool != null;
+  }
+
+  /**
+   * Use this to evaluate SERVICE clauses in query executions with the given context.
+   *
+   * @param context of a query execution
+   */
+  public void applyTo(final Context context) {
+    if (isEnabled()) {
+      QC.setFactory(context, new ServiceOpExecutor.Factory(this));
+    }
+  }
+
+  /**
+   * Discard all cached remote results.
+   */
+  public void invalidate() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  @Override
+  public void close() {
+    invalidate();
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  int batchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Schedule the given remote call on the pool.
+   */
+  Future<List<Binding>> prefetch(final OpService service, final Context context) {
+    return pool.submit(new Callable<List<Binding>>() {
+      @Override
+      public List<Binding> call() throws Exception {
+        return fetch(service, context);
+      }
+    });
+  }
+
+  /**
+   * Perform the given remote call or return cached results. A failing silent call yields a
+   * single empty solution, as in ARQ's default implementation.
+   */
+  List<Binding> fetch(final OpService service, final Context context) {
+    try {
+      if (cache == null) {
+        return invoke(service, context);
+      }
+      return cache.get(keyOf(service, context), new Callable<List<Binding>>() {
+        @Override
+        public List<Binding> call() throws Exception {
+          return invoke(service, context);
+        }
+      });
+    } catch (final ExecutionException | UncheckedExecutionException e) {
+      throw propagate(service, e.getCause());
+    } catch (final RuntimeException e) {
+      throw propagate(service, e);
+    }
+  }
+
+  private RuntimeException propagate(final OpService service, final Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+    return new QueryExecException("SERVICE <" + service.getService() + "> failed", cause);
+  }
+
+  private List<Binding> invoke(final OpService service, final Context context) {
+    log.debug(Scope.REQUEST.marker(), "calling remote {}", service.getService());
+    try {
+      final QueryIterator solutions = endpoint.call(service, context);
+      try {
+        return ImmutableList.copyOf(solutions);
+      } finally {
+        solutions.close();
+      }
+    } catch (final RuntimeException e) {
+      if (service.getSilent()) {
+        log.debug(Scope.REQUEST.marker(), "ignoring failure of silent remote {}", service.getService(), e);
+        return ImmutableList.of(BindingFactory.binding());
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Remote results may depend on the delegated credentials, which are part of the key therefore.
+   */
+  private String keyOf(final OpService service, final Context context) {
+    final String secret = context.getAsString(JenaEngine.CONTEXT_AUTH_PASSWORD, "");
+    return service.getService().getURI() + "\n"
+        + Hashing.sha256().hashString(secret, Charsets.UTF_8) + "\n"
+        + service.getSubOp();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("enabled", isEnabled())
+        .add("batchSize", batchSize)
+        .add("cached", cache == null ? "disabled" : cache.size())
+        .toString();
+  }
+
+  private static final class HttpEndpoint implements Endpoint {
+    @Override
+    public QueryIterator call(final OpService service, final Context context) {
+      return Service.exec(service, context);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.OpVars;
+import com.hp.hpl.jena.sparql.algebra.Table;
+import com.hp.hpl.jena.sparql.algebra.TableFactory;
+import com.hp.hpl.jena.sparql.algebra.op.OpJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
+import com.hp.hpl.jena.sparql.algebra.op.OpService;
+import com.hp.hpl.jena.sparql.algebra.op.OpTable;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRoot;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutor;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterJoin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluate SERVICE clauses with a {@link ServiceEvaluation}.
+ * <ul>
+ * <li>SERVICE clauses in a top-level sequence, that share no variable with preceding elements, and
+ * the right hand side of joins are fetched concurrently and joined locally.</li>
+ * <li>Remaining SERVICE clauses are evaluated as bound joins, where input bindings are shipped in
+ * batches as inline data.</li>
+ * </ul>
+ * SERVICE clauses with a variable as endpoint are left to the default ARQ implementation.
+ */
+final class ServiceOpExecutor extends OpExecutor {
+
+  static final class Factory implements OpExecutorFactory {
+    private final ServiceEvaluation services;
+
+    Factory(final ServiceEvaluation services) {
+      this.services = services;
+    }
+
+    @Override
+    public OpExecutor create(final ExecutionContext execCxt) {
+      return new ServiceOpExecutor(execCxt, services);
+    }
+  }
+
+  private final ServiceEvaluation services;
+
+  ServiceOpExecutor(final ExecutionContext execCxt, final ServiceEvaluation services) {
+    super(execCxt);
+    this.services = services;
+  }
+
+  @Override
+  protected QueryIterator execute(final OpSequence opSequence, final QueryIterator input) {
+    final List<Op> elements = opSequence.getElements();
+    final Map<Op, Future<List<Binding>>> independent = new LinkedHashMap<>();
+    final Set<Var> preceding = new HashSet<>();
+    for (final Op element : elements) {
+      if (isRemote(element) && Collections.disjoint(preceding, OpVars.allVars(element))) {
+        independent.put(element, null);
+      }
+      OpVars.allVars(element, preceding);
+    }
+    // nested sequences are restricted more effectively by bound joins on the outer bindings
+    if (independent.isEmpty() || !(input instanceof QueryIterRoot)) {
+      return super.execute(opSequence, input);
+    }
+    for (final Map.Entry<Op, Future<List<Binding>>> each : independent.entrySet()) {
+      each.setValue(prefetch((OpService) each.getKey()));
+    }
+    QueryIterator current = input;
+    for (final Op element : elements) {
+      final Future<List<Binding>> remote = independent.get(element);
+      if (remote != null) {
+        current = new QueryIterJoin(current, new QueryIterFuture(remote, execCxt), execCxt);
+      } else {
+        current = executeOp(element, current);
+      }
+    }
+    return current;
+  }
+
+  @Override
+  protected QueryIterator execute(final OpJoin opJoin, final QueryIterator input) {
+    if (!isRemote(opJoin.getRight())) {
+      return super.execute(opJoin, input);
+    }
+    final QueryIterator right = new QueryIterFuture(prefetch((OpService) opJoin.getRight()), execCxt);
+    final QueryIterator left = executeOp(opJoin.getLeft(), input);
+    return new QueryIterJoin(left, right, execCxt);
+  }
+
+  @Override
+  protected QueryIterator execute(final OpService opService, final QueryIterator input) {
+    if (!isRemote(opService)) {
+      return super.execute(opService, input);
+    }
+    return new QueryIterBoundJoin(input, opService, services, execCxt);
+  }
+
+  private Future<List<Binding>> prefetch(final OpService service) {
+    return services.prefetch(service, execCxt.getContext());
+  }
+
+  private static boolean isRemote(final Op op) {
+    return op instanceof OpService && ((OpService) op).getService().isURI();
+  }
+
+  /**
+   * Lazily yield the results of a concurrent remote call.
+   */
+  static final class QueryIterFuture extends QueryIter {
+    private final Future<List<Binding>> remote;
+    private Iterator<Binding> solutions;
+
+    QueryIterFuture(final Future<List<Binding>> remote, final ExecutionContext execCxt) {
+      super(execCxt);
+      this.remote = remote;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+      if (solutions == null) {
+        solutions = await().iterator();
+      }
+      return solutions.hasNext();
+    }
+
+    private List<Binding> await() {
+      try {
+        return Uninterruptibles.getUninterruptibly(remote);
+      } catch (final CancellationException e) {
+        throw new QueryCancelledException();
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+      return solutions.next();
+    }
+
+    @Override
+    protected void closeIterator() {
+      remote.cancel(true);
+    }
+
+    @Override
+    protected void requestCancel() {
+      remote.cancel(true);
+    }
+  }
+
+  /**
+   * Consume input bindings in batches, restrict the remote query to the bound values of each
+   * batch and join the remote solutions with the batch locally.
+   */
+  static final class QueryIterBoundJoin extends QueryIter {
+    private final QueryIterator input;
+    private final OpService service;
+    private final ServiceEvaluation services;
+    private final Collection<Var> mentioned;
+    private Iterator<Binding> current = Collections.emptyIterator();
+
+    QueryIterBoundJoin(final QueryIterator input, final OpService service,
+                       final ServiceEvaluation services, final ExecutionContext execCxt) {
+      super(execCxt);
+      this.input = input;
+      this.service = service;
+      this.services = services;
+      this.mentioned = OpVars.allVars(service.getSubOp());
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+      while (!current.hasNext() && input.hasNext()) {
+        current = joinNextBatch();
+      }
+      return current.hasNext();
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+      return current.next();
+    }
+
+    private Iterator<Binding> joinNextBatch() {
+      final List<Binding> batch = new ArrayList<>(services.batchSize());
+      while (input.hasNext() && batch.size() < Math.max(services.batchSize(), 1)) {
+        batch.add(input.nextBinding());
+      }
+      final List<Binding> remote = services.fetch(restrict(batch), getExecContext().getContext());
+      final List<Binding> joined = new ArrayList<>();
+      for (final Binding left : batch) {
+        for (final Binding right : remote) {
+          if (Algebra.compatible(left, right)) {
+            joined.add(Algebra.merge(left, right));
+          }
+        }
+      }
+      return joined.iterator();
+    }
+
+    /**
+     * Prepend the distinct bound values of shared variables as inline data to the remote query.
+     * Blank nodes cannot be shipped and are left undefined, the local join filters the results.
+     */
+    private OpService restrict(final List<Binding> batch) {
+      final List<Var> shared = new ArrayList<>();
+      for (final Var var : mentioned) {
+        for (final Binding binding : batch) {
+          if (isShippable(binding.get(var))) {
+            shared.add(var);
+            break;
+          }
+        }
+      }
+      if (shared.isEmpty()) {
+        return service;
+      }
+      final Map<List<Node>, Binding> rows = new LinkedHashMap<>();
+      for (final Binding binding : batch) {
+        final List<Node> key = new ArrayList<>(shared.size());
+        final BindingMap row = BindingFactory.create();
+        for (final Var var : shared) {
+          final Node value = binding.get(var);
+          if (isShippable(value)) {
+            row.add(var, value);
+            key.add(value);
+          } else {
+            key.add(null);
+          }
+        }
+        rows.put(key, row);
+      }
+      final Table values = TableFactory.create(shared);
+      for (final Binding row : rows.values()) {
+        values.addBinding(row);
+      }
+      final Op restricted = OpJoin.create(OpTable.create(values), service.getSubOp());
+      return new OpService(service.getService(), restricted, service.getSilent());
+    }
+
+    private static boolean isShippable(final Node value) {
+      return value != null && !value.isBlank();
+    }
+
+    @Override
+    protected void closeIterator() {
+      input.close();
+    }
+
+    @Override
+    protected void requestCancel() {
+      input.cancel();
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import org.slf4j.Logger;
+import rx.functions.Action0;
+import rx.functions.Actions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.security.Principal;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Serve sparql queries from a materialized, in-memory copy of a (virtual) source graph. The copy
+ * is periodically or explicitly rebuilt in the background and replaces the current one atomically.
+ * Queries, that are executing while the snapshot is replaced, complete on the old snapshot.
+ * If rebuilding fails, the current snapshot remains active.
+ */
+@ThreadSafe
+public final class SnapshotJenaFactory implements JenaFactory {
+  private static final Logger log = getLogger(SnapshotJenaFactory.class);
+
+  /**
+   * Materialize the given source graph and create a factory serving the initial snapshot.
+   * Fails fast if the initial snapshot cannot be created.
+   *
+   * @param source   provides a fresh view of the source graph on each invocation
+   * @param prefixes default prefixes of sparql queries
+   * @param timeout  maximal execution duration of queries
+   * @return factory serving an initial snapshot
+   */
+  public static SnapshotJenaFactory load(final Supplier<Model> source,
+                                         final PrefixMapping prefixes,
+                                         final Timeout timeout) {
+    final SnapshotJenaFactory factory = new SnapshotJenaFactory(source, prefixes, timeout);
+    factory.refresh();
+    return factory;
+  }
+
+  private final Supplier<Model> source;
+  private final PrefixMapping prefixes;
+  private final long executionTimeout;
+  private final QueryCache queries;
+  private final ScheduledExecutorService worker;
+
+  private final AtomicReference<Snapshot> current = new AtomicReference<>();
+  private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+  private final Object refreshLock = new Object();
+  private volatile Action0 onRefresh = Actions.empty();
+
+  private SnapshotJenaFactory(final Supplier<Model> source,
+                              final PrefixMapping prefixes,
+                              final Timeout timeout) {
+    this.source = source;
+    this.prefixes = prefixes;
+    this.executionTimeout = timeout.getAs(MILLISECONDS, -1L);
+    this.queries = QueryCache.create(QueryCache.DEFAULT_SIZE);
+    this.worker = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("rdf-snapshot-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Register a callback, that is invoked after a new snapshot has been activated.
+   *
+   * @param onRefresh callback action
+   */
+  public void setRefreshListener(final Action0 onRefresh) {
+    this.onRefresh = onRefresh;
+  }
+
+  /**
+   * Rebuild the snapshot periodically.
+   *
+   * @param interval delay between the completion of a refresh and the start of the next one
+   */
+  public void scheduleRefresh(final Timeout interval) {
+    final long delay = interval.getAs(MILLISECONDS, 0);
+    assert delay > 0 : "illegal refresh interval " + interval;
+    log.info(Scope.SYSTEM.marker(), "refreshing rdf snapshot every {}", interval);
+    worker.scheduleWithFixedDelay(new RefreshTask(), delay, delay, MILLISECONDS);
+  }
+
+  /**
+   * Rebuild the snapshot in the background. Requests are coalesced, while a refresh is pending.
+   */
+  public void requestRefresh() {
+    if (refreshPending.compareAndSet(false, true)) {
+      log.debug(Scope.SYSTEM.marker(), "rdf snapshot refresh requested");
+      worker.execute(new RefreshTask());
+    }
+  }
+
+  /**
+   * Rebuild the snapshot in the calling thread and activate it.
+   */
+  public void refresh() {
+    synchronized (refreshLock) {
+      refreshPending.set(false);
+      final long started = System.nanoTime();
+      final Model copy = materialize();
+      final Snapshot next = new Snapshot(copy, System.currentTimeMillis());
+      final Snapshot previous = current.getAndSet(next);
+      log.info(Scope.SYSTEM.marker(), "activated rdf snapshot with {} triples in {}ms (replaced {})",
+          copy.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), previous);
+    }
+    onRefresh.call();
+  }
+
+  private Model materialize() {
+    final Model snapshot = ModelFactory.createDefaultModel();
+    final Model view = source.get();
+    try {
+      snapshot.setNsPrefixes(prefixes);
+      snapshot.add(view);
+    } finally {
+      view.close();
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return number of triples in the active snapshot
+   */
+  public long size() {
+    return current.get().model.size();
+  }
+
+  @Override
+  public Query parse(final String sparql) {
+    return queries.parse(sparql, prefixes);
+  }
+
+  @Override
+  public QueryExecution execution(final Query query, final Principal owner) {
+    final QueryExecution execution = QueryExecutionFactory.create(query, current.get().dataset);
+    execution.setTimeout(executionTimeout, MILLISECONDS);
+    return execution;
+  }
+
+  @Override
+  public void close() {
+    worker.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("snapshot", current.get())
+        .add("timeout", executionTimeout)
+        .toString();
+  }
+
+  private final class RefreshTask implements Runnable {
+    @Override
+    public void run() {
+      try {
+        refresh();
+      } catch (final Exception e) {
+        log.warn(Scope.SYSTEM.marker(), "rdf snapshot refresh failed - keeping current snapshot", e);
+      }
+    }
+  }
+
+  /** an immutable, materialized copy of the source */
+  private static final class Snapshot {
+    private final Model model;
+    private final Dataset dataset;
+    private final long created;
+
+    private Snapshot(final Model model, final long created) {
+      this.model = model;
+      this.dataset = DatasetFactory.create(model);
+      this.created = created;
+    }
+
+    @Override
+    public String toString() {
+      return "Snapshot{" + "size=" + model.size() + ", created=" + created + '}';
+    }
+  }
+}
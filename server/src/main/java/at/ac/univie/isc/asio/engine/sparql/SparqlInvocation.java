@@ -36,6 +36,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.ws.rs.core.MediaType;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Objects.requireNonNull;
 
@@ -47,6 +48,7 @@ import static java.util.Objects.requireNonNull;
 @Nonnull
 public abstract class SparqlInvocation<RESULT> implements Invocation {
   private final MediaType format;
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
   private Multimap<String, String> properties;
   private QueryExecution query;
   private RESULT result;
@@ -59,7 +61,7 @@ public abstract class SparqlInvocation<RESULT> implements Invocation {
     this.query = requireNonNull(query);
     final Context context = query.getContext();
     properties = ImmutableMultimap.<String, String>builder()
-        .put("command", format(query.getQuery()))
+        .put("command", QueryCache.formatted(query.getQuery()))
         .put("permission", Permission.INVOKE_QUERY.toString())
         .put("format", format.toString())
         .put("engine", "jena")
@@ -106,8 +108,16 @@ public abstract class SparqlInvocation<RESULT> implements Invocation {
 
   protected abstract void doSerialize(OutputStream sink, RESULT data);
 
+  /**
+   * @return flag, that is set as soon as this invocation is cancelled
+   */
+  protected final AtomicBoolean cancelled() {
+    return cancelled;
+  }
+
   @Override
   public final void cancel() {
+    cancelled.set(true);
     query.abort();
   }
 
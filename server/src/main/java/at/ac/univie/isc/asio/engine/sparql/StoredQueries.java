@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.InvalidUsage;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named sparql queries of a single dataset. Clients invoke stored queries by name and supply
+ * values for their variables as {@link QueryParameters}.
+ */
+@Immutable
+public final class StoredQueries {
+  private static final StoredQueries EMPTY = new StoredQueries(ImmutableMap.<String, String>of());
+
+  /**
+   * @return a registry without any query
+   */
+  public static StoredQueries empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @param queries sparql query texts by name
+   * @return registry containing the given queries
+   */
+  public static StoredQueries from(final Map<String, String> queries) {
+    return new StoredQueries(ImmutableMap.copyOf(queries));
+  }
+
+  private final ImmutableMap<String, String> queries;
+
+  private StoredQueries(final ImmutableMap<String, String> queries) {
+    this.queries = queries;
+  }
+
+  /**
+   * @param name name of the stored query
+   * @return text of the stored query
+   * @throws UnknownStoredQuery if there is no query with the given name
+   */
+  public String require(final String name) {
+    final String sparql = queries.get(name);
+    if (sparql == null) {
+      throw new UnknownStoredQuery(name);
+    }
+    return sparql;
+  }
+
+  /**
+   * @return names of all stored queries
+   */
+  public Set<String> names() {
+    return queries.keySet();
+  }
+
+  /**
+   * @return all stored queries by name
+   */
+  public Map<String, String> asMap() {
+    return queries;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).addValue(queries.keySet()).toString();
+  }
+
+  public static final class UnknownStoredQuery extends InvalidUsage {
+    public UnknownStoredQuery(final String name) {
+      super("no stored sparql query named '" + name + "'");
+    }
+  }
+}
@@ -0,0 +1,408 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.shared.WrappedIOException;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serialize sparql result sets row by row. Rows are encoded into a reusable buffer, which is
+ * handed to the sink and flushed after the first row, whenever it exceeds a size threshold or if
+ * the last flush is older than a fixed delay. Clients therefore receive the first rows of long
+ * running queries as soon as they are available.
+ * Serialization stops before the next row, if the invocation is cancelled.
+ */
+@NotThreadSafe
+abstract class StreamingResultWriter implements SelectInvocation.ResultWriter {
+  /** flush if more bytes are buffered */
+  static final int DEFAULT_FLUSH_BYTES = 8 * 1024;
+  /** flush if the last flush is older */
+  static final long DEFAULT_FLUSH_DELAY_MILLIS = 250;
+
+  /**
+   * @return writer for the sparql query results xml format
+   */
+  static StreamingResultWriter xml() {
+    return new Xml(Ticker.systemTicker(), DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_DELAY_MILLIS);
+  }
+
+  /**
+   * @return writer for the sparql query results json format
+   */
+  static StreamingResultWriter json() {
+    return new Json(Ticker.systemTicker(), DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_DELAY_MILLIS);
+  }
+
+  /**
+   * @return writer for the sparql query results csv format
+   */
+  static StreamingResultWriter csv() {
+    return new Csv(Ticker.systemTicker(), DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_DELAY_MILLIS);
+  }
+
+  /**
+   * @return writer for the sparql query results tsv format
+   */
+  static StreamingResultWriter tsv() {
+    return new Tsv(Ticker.systemTicker(), DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_DELAY_MILLIS);
+  }
+
+  private final Ticker time;
+  private final int flushBytes;
+  private final long flushDelay;
+  private final Map<Node, String> blankLabels = new HashMap<>();
+
+  private OutputStream sink;
+  private ByteArrayOutputStream buffer;
+  private long lastFlush;
+  private boolean flushed;
+
+  protected StreamingResultWriter(final Ticker time, final int flushBytes, final long flushDelayMillis) {
+    this.time = time;
+    this.flushBytes = flushBytes;
+    this.flushDelay = TimeUnit.MILLISECONDS.toNanos(flushDelayMillis);
+  }
+
+  @Override
+  public final void serialize(final OutputStream output, final ResultSet results, final AtomicBoolean cancelled) {
+    sink = output;
+    buffer = new ByteArrayOutputStream(flushBytes + flushBytes / 2);
+    lastFlush = time.read();
+    flushed = false;
+    blankLabels.clear();
+    final Writer text = new OutputStreamWriter(buffer, Charsets.UTF_8);
+    try {
+      final List<Var> variables = new ArrayList<>();
+      for (final String name : results.getResultVars()) {
+        variables.add(Var.alloc(name));
+      }
+      header(text, variables);
+      boolean first = true;
+      while (results.hasNext()) {
+        if (cancelled.get()) {
+          throw new QueryCancelledException();
+        }
+        row(text, variables, results.nextBinding(), first);
+        first = false;
+        text.flush();
+        if (!flushed || buffer.size() >= flushBytes || time.read() - lastFlush >= flushDelay) {
+          flush();
+        }
+      }
+      footer(text);
+      text.flush();
+      flush();
+    } catch (final IOException e) {
+      throw new WrappedIOException(e);
+    } finally {
+      sink = null;
+      buffer = null;
+    }
+  }
+
+  private void flush() throws IOException {
+    lastFlush = time.read();
+    flushed = true;
+    buffer.writeTo(sink);
+    buffer.reset();
+    sink.flush();
+  }
+
+  /**
+   * Write the preamble of the results.
+   */
+  protected abstract void header(Writer out, List<Var> variables) throws IOException;
+
+  /**
+   * Write a single solution.
+   */
+  protected abstract void row(Writer out, List<Var> variables, Binding row, boolean first) throws IOException;
+
+  /**
+   * Write the closing part of the results.
+   */
+  protected abstract void footer(Writer out) throws IOException;
+
+  /**
+   * @return stable label of the given blank node, unique within the current result set
+   */
+  protected final String labelOf(final Node blank) {
+    String label = blankLabels.get(blank);
+    if (label == null) {
+      label = "b" + blankLabels.size();
+      blankLabels.put(blank, label);
+    }
+    return label;
+  }
+
+  // === formats ===================================================================================
+
+  static final class Xml extends StreamingResultWriter {
+    Xml(final Ticker time, final int flushBytes, final long flushDelayMillis) {
+      super(time, flushBytes, flushDelayMillis);
+    }
+
+    @Override
+    protected void header(final Writer out, final List<Var> variables) throws IOException {
+      out.write("<?xml version=\"1.0\"?>\n<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n  <head>\n");
+      for (final Var variable : variables) {
+        out.append("    <variable name=\"").append(escape(variable.getVarName())).append("\"/>\n");
+      }
+      out.write("  </head>\n  <results>\n");
+    }
+
+    @Override
+    protected void row(final Writer out, final List<Var> variables, final Binding row, final boolean first) throws IOException {
+      out.write("    <result>\n");
+      for (final Var variable : variables) {
+        final Node value = row.get(variable);
+        if (value == null) { continue; }
+        out.append("      <binding name=\"").append(escape(variable.getVarName())).append("\">");
+        if (value.isURI()) {
+          out.append("<uri>").append(escape(value.getURI())).append("</uri>");
+        } else if (value.isBlank()) {
+          out.append("<bnode>").append(labelOf(value)).append("</bnode>");
+        } else if (value.isLiteral()) {
+          out.append("<literal");
+          final String language = value.getLiteralLanguage();
+          final String datatype = value.getLiteralDatatypeURI();
+          if (language != null && !language.isEmpty()) {
+            out.append(" xml:lang=\"").append(escape(language)).append('"');
+          } else if (datatype != null) {
+            out.append(" datatype=\"").append(escape(datatype)).append('"');
+          }
+          out.append('>').append(escape(value.getLiteralLexicalForm())).append("</literal>");
+        }
+        out.write("</binding>\n");
+      }
+      out.write("    </result>\n");
+    }
+
+    @Override
+    protected void footer(final Writer out) throws IOException {
+      out.write("  </results>\n</sparql>\n");
+    }
+
+    private static String escape(final String raw) {
+      final StringBuilder escaped = new StringBuilder(raw.length());
+      for (int i = 0; i < raw.length(); i++) {
+        final char c = raw.charAt(i);
+        switch (c) {
+          case '&': escaped.append("&amp;"); break;
+          case '<': escaped.append("&lt;"); break;
+          case '>': escaped.append("&gt;"); break;
+          case '"': escaped.append("&quot;"); break;
+          case '\r': escaped.append("&#x0D;"); break;
+          default: escaped.append(c);
+        }
+      }
+      return escaped.toString();
+    }
+  }
+
+  static final class Json extends StreamingResultWriter {
+    Json(final Ticker time, final int flushBytes, final long flushDelayMillis) {
+      super(time, flushBytes, flushDelayMillis);
+    }
+
+    @Override
+    protected void header(final Writer out, final List<Var> variables) throws IOException {
+      out.write("{\n  \"head\": {\n    \"vars\": [ ");
+      boolean first = true;
+      for (final Var variable : variables) {
+        if (!first) { out.write(" , "); }
+        first = false;
+        quote(out, variable.getVarName());
+      }
+      out.write(" ]\n  } ,\n  \"results\": {\n    \"bindings\": [\n");
+    }
+
+    @Override
+    protected void row(final Writer out, final List<Var> variables, final Binding row, final boolean first) throws IOException {
+      out.write(first ? "      {" : " ,\n      {");
+      boolean firstValue = true;
+      for (final Var variable : variables) {
+        final Node value = row.get(variable);
+        if (value == null) { continue; }
+        out.write(firstValue ? " " : " , ");
+        firstValue = false;
+        quote(out, variable.getVarName());
+        out.write(": { \"type\": ");
+        if (value.isURI()) {
+          out.write("\"uri\" , \"value\": ");
+          quote(out, value.getURI());
+        } else if (value.isBlank()) {
+          out.write("\"bnode\" , \"value\": ");
+          quote(out, labelOf(value));
+        } else if (value.isLiteral()) {
+          final String language = value.getLiteralLanguage();
+          final String datatype = value.getLiteralDatatypeURI();
+          if (datatype != null) {
+            out.write("\"typed-literal\" , \"datatype\": ");
+            quote(out, datatype);
+          } else {
+            out.write("\"literal\"");
+            if (language != null && !language.isEmpty()) {
+              out.write(" , \"xml:lang\": ");
+              quote(out, language);
+            }
+          }
+          out.write(" , \"value\": ");
+          quote(out, value.getLiteralLexicalForm());
+        }
+        out.write(" }");
+      }
+      out.write(" }");
+    }
+
+    @Override
+    protected void footer(final Writer out) throws IOException {
+      out.write("\n    ]\n  }\n}\n");
+    }
+
+    private static void quote(final Writer out, final String raw) throws IOException {
+      out.write('"');
+      for (int i = 0; i < raw.length(); i++) {
+        final char c = raw.charAt(i);
+        switch (c) {
+          case '"': out.write("\\\""); break;
+          case '\\': out.write("\\\\"); break;
+          case '\n': out.write("\\n"); break;
+          case '\r': out.write("\\r"); break;
+          case '\t': out.write("\\t"); break;
+          case '\b': out.write("\\b"); break;
+          case '\f': out.write("\\f"); break;
+          default:
+            if (c < 0x20) {
+              out.write(String.format("\\u%04x", (int) c));
+            } else {
+              out.write(c);
+            }
+        }
+      }
+      out.write('"');
+    }
+  }
+
+  static final class Csv extends StreamingResultWriter {
+    Csv(final Ticker time, final int flushBytes, final long flushDelayMillis) {
+      super(time, flushBytes, flushDelayMillis);
+    }
+
+    @Override
+    protected void header(final Writer out, final List<Var> variables) throws IOException {
+      boolean first = true;
+      for (final Var variable : variables) {
+        if (!first) { out.write(','); }
+        first = false;
+        out.write(escape(variable.getVarName()));
+      }
+      out.write("\r\n");
+    }
+
+    @Override
+    protected void row(final Writer out, final List<Var> variables, final Binding row, final boolean first) throws IOException {
+      boolean firstValue = true;
+      for (final Var variable : variables) {
+        if (!firstValue) { out.write(','); }
+        firstValue = false;
+        final Node value = row.get(variable);
+        if (value == null) {
+          continue;
+        } else if (value.isURI()) {
+          out.write(escape(value.getURI()));
+        } else if (value.isBlank()) {
+          out.write(escape("_:" + labelOf(value)));
+        } else if (value.isLiteral()) {
+          out.write(escape(value.getLiteralLexicalForm()));
+        }
+      }
+      out.write("\r\n");
+    }
+
+    @Override
+    protected void footer(final Writer out) throws IOException { /* no footer */ }
+
+    private static String escape(final String raw) {
+      if (raw.indexOf('"') < 0 && raw.indexOf(',') < 0 && raw.indexOf('\r') < 0 && raw.indexOf('\n') < 0) {
+        return raw;
+      }
+      return '"' + raw.replace("\"", "\"\"") + '"';
+    }
+  }
+
+  static final class Tsv extends StreamingResultWriter {
+    Tsv(final Ticker time, final int flushBytes, final long flushDelayMillis) {
+      super(time, flushBytes, flushDelayMillis);
+    }
+
+    @Override
+    protected void header(final Writer out, final List<Var> variables) throws IOException {
+      boolean first = true;
+      for (final Var variable : variables) {
+        if (!first) { out.write('\t'); }
+        first = false;
+        out.append('?').append(variable.getVarName());
+      }
+      out.write('\n');
+    }
+
+    @Override
+    protected void row(final Writer out, final List<Var> variables, final Binding row, final boolean first) throws IOException {
+      boolean firstValue = true;
+      for (final Var variable : variables) {
+        if (!firstValue) { out.write('\t'); }
+        firstValue = false;
+        final Node value = row.get(variable);
+        if (value == null) {
+          continue;
+        } else if (value.isBlank()) {
+          out.append("_:").append(labelOf(value));
+        } else {
+          out.write(FmtUtils.stringForNode(value));
+        }
+      }
+      out.write('\n');
+    }
+
+    @Override
+    protected void footer(final Writer out) throws IOException { /* no footer */ }
+  }
+}
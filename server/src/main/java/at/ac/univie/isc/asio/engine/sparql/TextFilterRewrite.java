@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.sparql.algebra.Transformer;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpPropFunc;
+import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
+import com.hp.hpl.jena.sparql.algebra.op.OpTable;
+import com.hp.hpl.jena.sparql.algebra.optimize.Optimize;
+import com.hp.hpl.jena.sparql.algebra.optimize.Rewrite;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.E_Regex;
+import com.hp.hpl.jena.sparql.expr.E_StrContains;
+import com.hp.hpl.jena.sparql.expr.E_StrLowerCase;
+import com.hp.hpl.jena.sparql.expr.E_StrUpperCase;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprFunction1;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
+import com.hp.hpl.jena.sparql.util.Context;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Answer simple text filters on indexed properties from a {@link TextIndex}. A filter like
+ * <pre>
+ *   ?s rdfs:label ?label FILTER regex(?label, "heart", "i")
+ * </pre>
+ * is evaluated as a {@link TextMatch text:match} lookup of the candidate literals, followed by the
+ * original pattern and filter, which are now evaluated for the candidates only. Supported are
+ * {@code regex} without special characters and flags other than {@code i}, and {@code contains},
+ * where the argument may be wrapped in {@code lcase} or {@code ucase}.
+ * <p>
+ * The rewrite is part of the algebra optimization of a query execution, which precedes any engine
+ * specific compilation, e.g. the translation of basic graph patterns to sql by d2rq. Filters are
+ * evaluated as usual, while the index is not {@link TextIndex#isFresh() fresh}, as an outdated
+ * index would drop candidates.
+ * </p>
+ */
+final class TextFilterRewrite extends TransformCopy {
+
+  /** apply the rewrite before the standard optimizations of ARQ */
+  static final class Factory implements Optimize.RewriterFactory {
+    private final TextIndex index;
+
+    Factory(final TextIndex index) {
+      this.index = index;
+    }
+
+    @Override
+    public Rewrite create(final Context context) {
+      final Rewrite standard = Optimize.stdOptimizationFactory.create(context);
+      return new Rewrite() {
+        @Override
+        public Op rewrite(final Op op) {
+          final Op rewritten = index.isFresh()
+              ? Transformer.transform(new TextFilterRewrite(index.properties()), op)
+              : op;
+          return standard.rewrite(rewritten);
+        }
+      };
+    }
+  }
+
+  private static final Node MATCH = Node.createURI(TextIndex.MATCH);
+
+  /** regex patterns, that match literally */
+  private static final Pattern PLAIN = Pattern.compile("[\\p{L}\\p{N} _-]+");
+
+  private final Set<Node> indexed;
+
+  TextFilterRewrite(final Set<Node> indexed) {
+    this.indexed = indexed;
+  }
+
+  @Override
+  public Op transform(final OpFilter opFilter, final Op subOp) {
+    final Op copy = super.transform(opFilter, subOp);
+    return copy instanceof OpFilter ? rewrite((OpFilter) copy, indexed) : copy;
+  }
+
+  /**
+   * Prepend text index lookups to the basic graph pattern of the given filter, if possible.
+   *
+   * @param filter  original filter operation
+   * @param indexed uris of indexed properties
+   * @return the rewritten filter or the original one, if no text filter is applicable
+   */
+  static Op rewrite(final OpFilter filter, final Set<Node> indexed) {
+    if (!(filter.getSubOp() instanceof OpBGP)) {
+      return filter;
+    }
+    final OpBGP pattern = (OpBGP) filter.getSubOp();
+    final OpSequence sequence = OpSequence.create();
+    for (final Expr expr : filter.getExprs()) {
+      final Op lookup = lookupFor(expr, pattern, indexed);
+      if (lookup != null) {
+        sequence.add(lookup);
+      }
+    }
+    if (sequence.size() == 0) {
+      return filter;
+    }
+    sequence.add(pattern);
+    return OpFilter.filter(filter.getExprs(), sequence);
+  }
+
+  private static Op lookupFor(final Expr expr, final OpBGP pattern, final Set<Node> indexed) {
+    final Expr target;
+    final String text;
+    if (expr instanceof E_Regex) {
+      final E_Regex regex = (E_Regex) expr;
+      final String flags = regex.numArgs() > 2 ? constantString(regex.getArg(3)) : "";
+      if (flags == null || !(flags.isEmpty() || "i".equals(flags))) {
+        return null;
+      }
+      target = regex.getArg(1);
+      text = constantString(regex.getArg(2));
+      if (text == null || !PLAIN.matcher(text).matches()) {
+        return null;
+      }
+    } else if (expr instanceof E_StrContains) {
+      target = ((E_StrContains) expr).getArg1();
+      text = constantString(((E_StrContains) expr).getArg2());
+    } else {
+      return null;
+    }
+    final Var literal = variableOf(target);
+    if (literal == null || text == null || TextIndex.tokenize(text).isEmpty()) {
+      return null;
+    }
+    for (final Triple triple : pattern.getPattern()) {
+      if (literal.equals(triple.getObject())
+          && indexed.contains(triple.getPredicate())
+          && (triple.getSubject().isVariable() || triple.getSubject().isURI())) {
+        return new OpPropFunc(MATCH,
+            new PropFuncArg(Arrays.asList(triple.getSubject(), (Node) literal)),
+            new PropFuncArg(Arrays.asList(Node.createLiteral(text), triple.getPredicate())),
+            OpTable.unit());
+      }
+    }
+    return null;
+  }
+
+  private static String constantString(final Expr expr) {
+    if (expr.isConstant() && expr.getConstant().isString()) {
+      return expr.getConstant().getString();
+    }
+    return null;
+  }
+
+  /**
+   * Unwrap case conversions, as the index is case insensitive.
+   */
+  private static Var variableOf(final Expr expr) {
+    Expr current = expr;
+    while (current instanceof E_StrLowerCase || current instanceof E_StrUpperCase) {
+      current = ((ExprFunction1) current).getArg();
+    }
+    return current.isVariable() ? current.asVar() : null;
+  }
+}
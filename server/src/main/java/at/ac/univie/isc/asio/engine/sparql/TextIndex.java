@@ -0,0 +1,444 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.ARQConstants;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionRegistry;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.sparql.util.Symbol;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * An in-memory full-text index over the literal values of selected properties. Literals are split
+ * into lower case words. A search matches all literals, which contain each word of the search text
+ * as part of one of their words, i.e. it yields a superset of the literals, that contain the search
+ * text as substring.
+ * <p>
+ * The index is built when it is loaded and rebuilt in the background, if it is invalidated, e.g.
+ * after an update of the source through asio, or if it is older than its maximal age, as changes
+ * from other clients of the source are not observed. A refresh re-reads all indexed literals, as
+ * the source, e.g. a d2rq view of a relational database, offers no log of changed triples and
+ * finding the changes would require reading them all anyway. Properties are re-indexed one at a
+ * time and each replaces its previous entries when done, so that a refresh holds at most a single
+ * property twice. Searches in progress complete on the old entries.
+ * </p>
+ * <p>
+ * Queries may search the index with the {@link #MATCH text:match} property function, e.g.
+ * {@code (?s ?label) text:match ("heart" rdfs:label)}, or implicitly, as simple {@code regex} and
+ * {@code contains} filters on indexed properties are answered from the index, as long as it is
+ * {@link #isFresh() fresh}.
+ * </p>
+ */
+@ThreadSafe
+public final class TextIndex implements AutoCloseable {
+  private static final Logger log = getLogger(TextIndex.class);
+
+  /** namespace of text search functions */
+  public static final String NAMESPACE = "http://isc.univie.ac.at/2014/asio/text#";
+
+  /** uri of the text search property function */
+  public static final String MATCH = NAMESPACE + "match";
+
+  /** rebuild the index at least this often if not configured otherwise */
+  public static final Timeout DEFAULT_MAX_AGE = Timeout.from(5, TimeUnit.MINUTES);
+
+  /** indexed words are split into suffixes of at most this many characters */
+  static final int MAX_SUFFIX_LENGTH = 32;
+
+  /** the index used in a query execution is attached to its context */
+  static final Symbol CONTEXT_INDEX = Symbol.create("asio:textIndex");
+
+  static {
+    PropertyFunctionRegistry.get().put(MATCH, TextMatch.class);
+  }
+
+  private static final Splitter WORDS =
+      Splitter.on(CharMatcher.JAVA_LETTER_OR_DIGIT.negate()).omitEmptyStrings();
+
+  /**
+   * Split the given text into lower case words.
+   *
+   * @param text any text
+   * @return all words in the text
+   */
+  static List<String> tokenize(final String text) {
+    return ImmutableList.copyOf(WORDS.split(text.toLowerCase(Locale.ENGLISH)));
+  }
+
+  /**
+   * Create an index of the literal values of the given properties and build it from the source.
+   * Fails fast if the initial build fails.
+   *
+   * @param source     provides a fresh view of the indexed graph on each invocation
+   * @param properties uris of indexed properties
+   * @param maxAge     rebuild the index if it is older, never expires if undefined
+   * @return index populated with the current content of the source
+   */
+  public static TextIndex load(final Supplier<Model> source, final Collection<String> properties,
+                               final Timeout maxAge) {
+    return load(source, properties, maxAge, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  static TextIndex load(final Supplier<Model> source, final Collection<String> properties,
+                        final Timeout maxAge, final Ticker time) {
+    final ImmutableSet.Builder<Node> nodes = ImmutableSet.builder();
+    for (final String property : properties) {
+      nodes.add(Node.createURI(property));
+    }
+    final TextIndex index = new TextIndex(source, nodes.build(), maxAge, time);
+    index.refresh();
+    return index;
+  }
+
+  /**
+   * @return an index without any entries, that is never used to answer queries
+   */
+  public static TextIndex disabled() {
+    return new TextIndex(null, ImmutableSet.<Node>of(), Timeout.undefined(), Ticker.systemTicker());
+  }
+
+  private final Supplier<Model> source;
+  private final Set<Node> properties;
+  private final long maxAge;
+  private final Ticker time;
+  private final ExecutorService worker;
+
+  /** incremented on every invalidation */
+  private final AtomicLong generation = new AtomicLong(0);
+  private volatile Entries current = new Entries(ImmutableMap.<Node, Postings>of(), 0, -1);
+  private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+  private final Object refreshLock = new Object();
+
+  private TextIndex(final Supplier<Model> source, final Set<Node> properties,
+                    final Timeout maxAge, final Ticker time) {
+    this.source = source;
+    this.properties = properties;
+    this.maxAge = maxAge.getAs(TimeUnit.NANOSECONDS, Long.MAX_VALUE);
+    this.time = time;
+    this.worker = source == null
+        ? null
+        : Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("text-index-%d").setDaemon(true).build());
+  }
+
+  /**
+   * @return true if queries may be answered from this index
+   */
+  public boolean isEnabled() {
+    return source != null && !properties.isEmpty();
+  }
+
+  /**
+   * Check whether the index reflects the source, i.e. it has not been invalidated since it was
+   * built and is not older than the maximal age. A background refresh is started if it is not.
+   *
+   * @return true if the index may be used instead of evaluating filters on the source
+   */
+  public boolean isFresh() {
+    if (!isEnabled()) { return false; }
+    final Entries entries = current;
+    if (entries.generation == generation.get() && time.read() - entries.built < maxAge) {
+      return true;
+    }
+    scheduleRefresh();
+    return false;
+  }
+
+  /**
+   * @return uris of all indexed properties
+   */
+  public Set<Node> properties() {
+    return properties;
+  }
+
+  /**
+   * Use this index in query executions with the given context.
+   *
+   * @param context of a query execution
+   */
+  public void applyTo(final Context context) {
+    if (isEnabled()) {
+      context.set(CONTEXT_INDEX, this);
+      context.set(ARQConstants.sysOptimizerFactory, new TextFilterRewrite.Factory(this));
+    }
+  }
+
+  /**
+   * Find all indexed triples, whose literal value contains each word of the given text. The search
+   * is answered from the current entries, even if the index is not {@link #isFresh() fresh}.
+   *
+   * @param text     search text
+   * @param property restrict the search to this property, or search all indexed properties if null
+   * @return matching triples, empty if the text contains no words
+   */
+  public List<Triple> search(final String text, @Nullable final Node property) {
+    final List<String> words = tokenize(text);
+    if (words.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final ImmutableMap<Node, Postings> snapshot = current.postings;
+    if (property != null) {
+      final Postings postings = snapshot.get(property);
+      return postings == null ? Collections.<Triple>emptyList() : postings.search(words);
+    }
+    final List<Triple> result = new ArrayList<>();
+    for (final Postings postings : snapshot.values()) {
+      result.addAll(postings.search(words));
+    }
+    return result;
+  }
+
+  /**
+   * Mark the index as outdated and re-index in the background. Requests are coalesced, while a
+   * refresh is pending.
+   */
+  public void requestRefresh() {
+    if (isEnabled()) {
+      generation.incrementAndGet();
+      log.debug(Scope.SYSTEM.marker(), "text index refresh requested");
+      scheduleRefresh();
+    }
+  }
+
+  private void scheduleRefresh() {
+    if (refreshPending.compareAndSet(false, true)) {
+      worker.execute(new RefreshTask());
+    }
+  }
+
+  /**
+   * Re-index all properties in the calling thread. The entries of each property are replaced as
+   * soon as it is re-indexed, but the index is only fresh again after all properties are done.
+   */
+  public void refresh() {
+    if (!isEnabled()) { return; }
+    synchronized (refreshLock) {
+      refreshPending.set(false);
+      final long started = generation.get();
+      final long built = time.read();
+      final Model view = source.get();
+      try {
+        for (final Node property : properties) {
+          final Postings postings = Postings.build(view, property);
+          final Entries previous = current;
+          final Map<Node, Postings> next = new TreeMap<>(NodeOrder.INSTANCE);
+          next.putAll(previous.postings);
+          next.put(property, postings);
+          current = new Entries(ImmutableMap.copyOf(next), previous.built, previous.generation);
+          log.debug(Scope.SYSTEM.marker(), "indexed {} as {}", property, postings);
+        }
+      } finally {
+        view.close();
+      }
+      current = new Entries(current.postings, built, started);
+      log.debug(Scope.SYSTEM.marker(), "refreshed text index of {} properties in {}ms",
+          properties.size(), TimeUnit.NANOSECONDS.toMillis(time.read() - built));
+    }
+  }
+
+  @Override
+  public void close() {
+    if (worker != null) {
+      worker.shutdownNow();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("enabled", isEnabled())
+        .add("maxAge", maxAge)
+        .add("entries", current.postings)
+        .toString();
+  }
+
+  private final class RefreshTask implements Runnable {
+    @Override
+    public void run() {
+      try {
+        refresh();
+      } catch (final Exception e) {
+        log.warn(Scope.SYSTEM.marker(), "text index refresh failed - keeping current entries", e);
+      }
+    }
+  }
+
+  /** indexed properties with the time and generation they were built at */
+  private static final class Entries {
+    private final ImmutableMap<Node, Postings> postings;
+    private final long built;
+    private final long generation;
+
+    private Entries(final ImmutableMap<Node, Postings> postings, final long built,
+                    final long generation) {
+      this.postings = postings;
+      this.built = built;
+      this.generation = generation;
+    }
+  }
+
+  /** order properties by uri to keep the iteration order stable */
+  private static final class NodeOrder implements Comparator<Node> {
+    static final NodeOrder INSTANCE = new NodeOrder();
+
+    @Override
+    public int compare(final Node o1, final Node o2) {
+      return o1.getURI().compareTo(o2.getURI());
+    }
+  }
+
+  /**
+   * Inverted index of the literals of a single property. Each suffix of an indexed word maps to
+   * the ascending positions of the triples containing it, as a search word occurring anywhere
+   * within an indexed word is a prefix of one of its suffixes. Suffixes are cut off after
+   * {@link #MAX_SUFFIX_LENGTH} characters, which bounds the size of the dictionary linearly in the
+   * length of the indexed text. Longer search words are looked up by their leading characters and
+   * may yield additional candidates.
+   */
+  static final class Postings {
+    static Postings build(final Model model, final Node property) {
+      final List<Triple> triples = new ArrayList<>();
+      final Map<String, List<Integer>> suffixes = new TreeMap<>();
+      final ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, property, Node.ANY);
+      try {
+        while (it.hasNext()) {
+          final Triple triple = it.next();
+          if (!triple.getObject().isLiteral()) { continue; }
+          final int position = triples.size();
+          triples.add(triple);
+          final Set<String> words =
+              new LinkedHashSet<>(tokenize(triple.getObject().getLiteralLexicalForm()));
+          for (final String word : words) {
+            for (int start = 0; start < word.length(); start++) {
+              final String suffix =
+                  word.substring(start, Math.min(word.length(), start + MAX_SUFFIX_LENGTH));
+              List<Integer> positions = suffixes.get(suffix);
+              if (positions == null) {
+                positions = new ArrayList<>();
+                suffixes.put(suffix, positions);
+              }
+              if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+                positions.add(position);
+              }
+            }
+          }
+        }
+      } finally {
+        it.close();
+      }
+      final ImmutableSortedMap.Builder<String, int[]> dictionary = ImmutableSortedMap.naturalOrder();
+      for (final Map.Entry<String, List<Integer>> entry : suffixes.entrySet()) {
+        final List<Integer> positions = entry.getValue();
+        final int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = positions.get(i);
+        }
+        dictionary.put(entry.getKey(), array);
+      }
+      return new Postings(ImmutableList.copyOf(triples), dictionary.build());
+    }
+
+    private final ImmutableList<Triple> triples;
+    private final ImmutableSortedMap<String, int[]> dictionary;
+
+    private Postings(final ImmutableList<Triple> triples,
+                     final ImmutableSortedMap<String, int[]> dictionary) {
+      this.triples = triples;
+      this.dictionary = dictionary;
+    }
+
+    /**
+     * Look up the range of suffixes starting with each search word and intersect their positions.
+     */
+    List<Triple> search(final List<String> words) {
+      BitSet matches = null;
+      for (final String word : words) {
+        final String prefix = word.length() > MAX_SUFFIX_LENGTH
+            ? word.substring(0, MAX_SUFFIX_LENGTH)
+            : word;
+        final BitSet containing = new BitSet(triples.size());
+        for (final Map.Entry<String, int[]> entry : dictionary.tailMap(prefix, true).entrySet()) {
+          if (!entry.getKey().startsWith(prefix)) { break; }
+          for (final int position : entry.getValue()) {
+            containing.set(position);
+          }
+        }
+        if (matches == null) {
+          matches = containing;
+        } else {
+          matches.and(containing);
+        }
+        if (matches.isEmpty()) {
+          return Collections.emptyList();
+        }
+      }
+      assert matches != null : "no search words";
+      final List<Triple> result = new ArrayList<>(matches.cardinality());
+      for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+        result.add(triples.get(i));
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Postings{" + "literals=" + triples.size() + ", suffixes=" + dictionary.size() + '}';
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryBuildException;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search the {@link TextIndex} of the executing query. Usage:
+ * <pre>
+ *   ?subject text:match "search text"
+ *   (?subject ?literal) text:match ("search text" &lt;property&gt;)
+ * </pre>
+ * The subject and literal may be variables or concrete terms, the property restricts the search
+ * to a single indexed property.
+ */
+public final class TextMatch extends PropertyFunctionBase {
+  @Override
+  public void build(final PropFuncArg subject, final Node predicate, final PropFuncArg object,
+                    final ExecutionContext execCxt) {
+    super.build(subject, predicate, object, execCxt);
+    if (subject.isList() && (subject.getArgListSize() < 1 || subject.getArgListSize() > 2)) {
+      throw new QueryBuildException("text:match expects (?subject ?literal) as subject");
+    }
+    if (object.isList() && (object.getArgListSize() < 1 || object.getArgListSize() > 2)) {
+      throw new QueryBuildException("text:match expects (\"text\" <property>) as object");
+    }
+  }
+
+  @Override
+  public QueryIterator exec(final Binding binding, final PropFuncArg subject, final Node predicate,
+                            final PropFuncArg object, final ExecutionContext execCxt) {
+    final Object index = execCxt.getContext().get(TextIndex.CONTEXT_INDEX);
+    if (!(index instanceof TextIndex)) {
+      throw new QueryExecException("no text index available");
+    }
+    final Node text = Var.lookup(binding, argument(object, 0));
+    if (!text.isLiteral()) {
+      throw new QueryExecException("text:match expects a literal search text but got " + text);
+    }
+    final Node property = argument(object, 1) == null ? null : Var.lookup(binding, argument(object, 1));
+    final Node subjectTerm = argument(subject, 0);
+    final Node literalTerm = argument(subject, 1);
+    final List<Binding> results = new ArrayList<>();
+    for (final Triple match : ((TextIndex) index).search(text.getLiteralLexicalForm(), property)) {
+      final BindingMap result = BindingFactory.create(binding);
+      if (bind(result, subjectTerm, match.getSubject())
+          && (literalTerm == null || bind(result, literalTerm, match.getObject()))) {
+        results.add(result);
+      }
+    }
+    return new QueryIterPlainWrapper(results.iterator(), execCxt);
+  }
+
+  private static Node argument(final PropFuncArg argument, final int index) {
+    if (argument.isNode()) {
+      return index == 0 ? argument.getArg() : null;
+    }
+    return index < argument.getArgListSize() ? argument.getArg(index) : null;
+  }
+
+  /**
+   * Bind an unbound variable or check whether the given term matches the value.
+   */
+  private static boolean bind(final BindingMap binding, final Node term, final Node value) {
+    final Node current = Var.lookup(binding, term);
+    if (Var.isVar(current)) {
+      binding.add(Var.alloc(current), value);
+      return true;
+    }
+    return current.equals(value);
+  }
+}
@@ -29,9 +29,12 @@ import at.ac.univie.isc.asio.engine.TypeMatchingResolver;
 import at.ac.univie.isc.asio.tool.Pretty;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
+import rx.functions.Action0;
+import rx.functions.Actions;
 
 import javax.sql.DataSource;
 import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
 
 /**
  * SQL query engine using JOOQ.
@@ -69,6 +72,12 @@ public final class JooqEngine implements Engine {
 
   private final JdbcFactory<?> state;
   private Predicate<String> whitelist = CommandWhitelist.any();
+  private Action0 onUpdate = Actions.empty();
+  private Action0 onSchemaChange = Actions.empty();
+
+  /** sql commands, that may alter the schema definition */
+  private static final Predicate<String> DEFINITION_CHANGE =
+      CommandWhitelist.allowOnly(Arrays.asList("CREATE", "ALTER", "DROP", "RENAME"));
 
   private JooqEngine(final JdbcFactory<?> state) {
     this.state = state;
@@ -109,6 +118,23 @@ public final class JooqEngine implements Engine {
     this.whitelist = whitelist;
   }
 
+  /**
+   * Register a callback, that is invoked whenever an sql update has been executed successfully.
+   * @param onUpdate callback action
+   */
+  public void setUpdateListener(final Action0 onUpdate) {
+    this.onUpdate = onUpdate;
+  }
+
+  /**
+   * Register a callback, that is invoked additionally, whenever an sql update, that may have
+   * altered the schema definition, e.g. {@code CREATE} or {@code ALTER}, has been executed.
+   * @param onSchemaChange callback action
+   */
+  public void setSchemaListener(final Action0 onSchemaChange) {
+    this.onSchemaChange = onSchemaChange;
+  }
+
   @Override
   public Language language() {
     return Language.SQL;
@@ -138,7 +164,9 @@ public final class JooqEngine implements Engine {
     rejectForbidden(sql);
     final TypeMatchingResolver.Selection<UpdateInvocation.ModCountWriter> selection
         = updateRegistry.select(command.acceptable());
-    return new UpdateInvocation(execution, sql, selection.value(), selection.type());
+    final Action0 listener =
+        DEFINITION_CHANGE.apply(sql) ? new NotifyBoth(onUpdate, onSchemaChange) : onUpdate;
+    return new UpdateInvocation(execution, sql, selection.value(), selection.type(), listener);
   }
 
   private Invocation createSelect(final Command command, final JdbcExecution execution) {
@@ -160,4 +188,23 @@ public final class JooqEngine implements Engine {
       throw new IllegalSqlCommand(Pretty.format("Illegal sql command <%s>", sql));
     }
   }
+
+  private static final class NotifyBoth implements Action0 {
+    private final Action0 first;
+    private final Action0 second;
+
+    private NotifyBoth(final Action0 first, final Action0 second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    public void call() {
+      try {
+        first.call();
+      } finally {
+        second.call();
+      }
+    }
+  }
 }
@@ -19,6 +19,7 @@
  */
 package at.ac.univie.isc.asio.engine.sql;
 
+import at.ac.univie.isc.asio.Column;
 import at.ac.univie.isc.asio.ObjectFactory;
 import at.ac.univie.isc.asio.SqlSchema;
 import at.ac.univie.isc.asio.Table;
@@ -42,6 +43,7 @@ public final class SqlSchemaBuilder {
   private final SqlSchema product;
   private String activeCatalog;
   private String activeSchema;
+  private Table activeTable;
 
   private SqlSchemaBuilder() {
     product = JAXB.createSqlSchema();
@@ -49,43 +51,70 @@ public final class SqlSchemaBuilder {
 
   public SqlSchemaBuilder switchCatalog(final Catalog catalog) {
     this.activeCatalog = requireNonNull(catalog.getName());
+    this.activeTable = null;
     return this;
   }
 
   public SqlSchemaBuilder noCatalog() {
     this.activeCatalog = null;
+    this.activeTable = null;
     return this;
   }
 
   public SqlSchemaBuilder switchSchema(final Schema schema) {
     this.activeSchema = requireNonNull(schema.getName());
+    this.activeTable = null;
     return this;
   }
 
   public SqlSchemaBuilder noSchema() {
     this.activeSchema = null;
+    this.activeTable = null;
     return this;
   }
 
   public SqlSchemaBuilder add(final org.jooq.Table<?> sqlTable) {
-    final Table metaTable = JAXB.createTable()
-        .withCatalog(activeCatalog)
-        .withSchema(activeSchema)
-        .withName(sqlTable.getName())
-        ;
+    final Table metaTable = createTable(sqlTable.getName());
     for (Field<?> field : sqlTable.fields()) {
-      final DataType<?> sqlType = field.getDataType();
-      final XmlSchemaType xmlType = XmlSchemaType.fromJavaType(sqlType.getType());
-      metaTable.getColumn().add(JAXB.createColumn()
-          .withName(field.getName())
-          .withType(xmlType.qname())
-          .withSqlType(sqlType.getTypeName())
-          .withLength(sqlType.length()));
+      metaTable.getColumn().add(createColumn(field.getName(), field.getDataType()));
     }
     product.getTable().add(metaTable);
+    activeTable = null;
+    return this;
+  }
+
+  /**
+   * Add a single column, e.g. from a row of a bulk metadata query. A new table is started, if the
+   * table name differs from the one of the previously added column, therefore columns must be
+   * grouped by their table.
+   */
+  public SqlSchemaBuilder addColumn(final String tableName, final String columnName,
+                                    final DataType<?> sqlType) {
+    if (activeTable == null || !activeTable.getName().equals(tableName)) {
+      activeTable = createTable(tableName);
+      product.getTable().add(activeTable);
+    }
+    activeTable.getColumn().add(createColumn(columnName, sqlType));
     return this;
   }
 
+  private Table createTable(final String name) {
+    return JAXB.createTable()
+        .withCatalog(activeCatalog)
+        .withSchema(activeSchema)
+        .withName(name)
+        ;
+  }
+
+  private Column createColumn(final String name, final DataType<?> sqlType) {
+    final XmlSchemaType xmlType = XmlSchemaType.fromJavaType(sqlType.getType());
+    return JAXB.createColumn()
+        .withName(name)
+        .withType(xmlType.qname())
+        .withSqlType(sqlType.getTypeName())
+        .withLength(sqlType.length());
+  }
+
   public SqlSchema build() {
     return product;
   }
@@ -23,6 +23,7 @@ import at.ac.univie.isc.asio.engine.Invocation;
 import at.ac.univie.isc.asio.security.Permission;
 import at.ac.univie.isc.asio.tool.Closer;
 import com.google.common.base.Charsets;
+import rx.functions.Action0;
 
 import javax.ws.rs.core.MediaType;
 import javax.xml.stream.XMLOutputFactory;
@@ -38,18 +39,21 @@ final class UpdateInvocation extends SqlInvocation {
   }
 
   private final ModCountWriter writer;
+  private final Action0 onUpdate;
 
   private int rowCount = -1;
 
   public UpdateInvocation(final JdbcExecution jdbc, final String sql, final ModCountWriter writer,
-                          final MediaType contentType) {
+                          final MediaType contentType, final Action0 onUpdate) {
     super(jdbc, sql, contentType, Permission.INVOKE_UPDATE);
     this.writer = writer;
+    this.onUpdate = onUpdate;
   }
 
   @Override
   public void execute() {
     rowCount = jdbc.update(sql);
+    onUpdate.call();
   }
 
   @Override
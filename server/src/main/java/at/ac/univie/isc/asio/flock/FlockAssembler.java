@@ -25,6 +25,7 @@ import at.ac.univie.isc.asio.Scope;
 import at.ac.univie.isc.asio.brood.Assembler;
 import at.ac.univie.isc.asio.engine.sparql.DefaultJenaFactory;
 import at.ac.univie.isc.asio.engine.sparql.JenaEngine;
+import at.ac.univie.isc.asio.engine.sparql.ServiceEvaluation;
 import at.ac.univie.isc.asio.metadata.DescriptorService;
 import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import at.ac.univie.isc.asio.tool.Timeout;
@@ -97,6 +98,8 @@ public /* final */ class FlockAssembler implements Assembler {
     final DefaultJenaFactory jenaFactory =
         new DefaultJenaFactory(ModelFactory.createDefaultModel(), timeout);
     final JenaEngine engine = JenaEngine.using(jenaFactory, true);
+    engine.setServiceEvaluation(ServiceEvaluation.create(config.getServiceConcurrency(),
+        config.getBindJoinSize(), config.getServiceCacheSize(), config.getServiceCacheTtl()));
 
     final Observable<SchemaDescriptor> descriptor =
         Observable.defer(new CallDescriptorService(descriptorService, config.getIdentifier()));
@@ -20,6 +20,7 @@
 package at.ac.univie.isc.asio.flock;
 
 import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.engine.sparql.ServiceEvaluation;
 import at.ac.univie.isc.asio.tool.Timeout;
 
 import java.net.URI;
@@ -32,6 +33,10 @@ final class FlockConfig {
   private Id name;
   private URI identifier = URI.create("asio:///flock/");
   private Timeout timeout = Timeout.undefined();
+  private int serviceConcurrency = 4;
+  private int bindJoinSize = ServiceEvaluation.DEFAULT_BATCH_SIZE;
+  private long serviceCacheSize = 1000;
+  private Timeout serviceCacheTtl = Timeout.undefined();
 
   FlockConfig() {}
 
@@ -62,12 +67,52 @@ final class FlockConfig {
     return this;
   }
 
+  public int getServiceConcurrency() {
+    return serviceConcurrency;
+  }
+
+  public FlockConfig setServiceConcurrency(final int serviceConcurrency) {
+    this.serviceConcurrency = serviceConcurrency;
+    return this;
+  }
+
+  public int getBindJoinSize() {
+    return bindJoinSize;
+  }
+
+  public FlockConfig setBindJoinSize(final int bindJoinSize) {
+    this.bindJoinSize = bindJoinSize;
+    return this;
+  }
+
+  public long getServiceCacheSize() {
+    return serviceCacheSize;
+  }
+
+  public FlockConfig setServiceCacheSize(final long serviceCacheSize) {
+    this.serviceCacheSize = serviceCacheSize;
+    return this;
+  }
+
+  public Timeout getServiceCacheTtl() {
+    return serviceCacheTtl;
+  }
+
+  public FlockConfig setServiceCacheTtl(final Timeout serviceCacheTtl) {
+    this.serviceCacheTtl = serviceCacheTtl;
+    return this;
+  }
+
   @Override
   public String toString() {
     return "FlockConfig{" +
         "name=" + name +
         ", identifier=" + identifier +
         ", timeout=" + timeout +
+        ", serviceConcurrency=" + serviceConcurrency +
+        ", bindJoinSize=" + bindJoinSize +
+        ", serviceCacheSize=" + serviceCacheSize +
+        ", serviceCacheTtl=" + serviceCacheTtl +
         '}';
   }
 
@@ -80,11 +125,16 @@ final class FlockConfig {
     final FlockConfig that = (FlockConfig) o;
     return Objects.equals(name, that.name) &&
         Objects.equals(identifier, that.identifier) &&
-        Objects.equals(timeout, that.timeout);
+        Objects.equals(timeout, that.timeout) &&
+        serviceConcurrency == that.serviceConcurrency &&
+        bindJoinSize == that.bindJoinSize &&
+        serviceCacheSize == that.serviceCacheSize &&
+        Objects.equals(serviceCacheTtl, that.serviceCacheTtl);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(name, identifier, timeout);
+    return Objects.hash(name, identifier, timeout, serviceConcurrency, bindJoinSize,
+        serviceCacheSize, serviceCacheTtl);
   }
 }
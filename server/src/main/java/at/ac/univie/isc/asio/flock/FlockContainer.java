@@ -21,17 +21,19 @@ package at.ac.univie.isc.asio.flock;
 
 import at.ac.univie.isc.asio.Container;
 import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
 import at.ac.univie.isc.asio.SqlSchema;
 import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.FixedSelection;
 import at.ac.univie.isc.asio.engine.sparql.JenaEngine;
 import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
 import com.hp.hpl.jena.rdf.model.Model;
 import rx.Observable;
 
-import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -42,7 +44,7 @@ abstract class FlockContainer implements Container {
   FlockContainer() { /* prevent subclassing */ }
 
   public static FlockContainer create(final FlockConfig config, final JenaEngine engine, final Observable<SchemaDescriptor> metadata) {
-    final Set<Engine> engines = Collections.<Engine>singleton(engine);
+    final FixedSelection engines = FixedSelection.from(ImmutableSet.<Engine>of(engine));
     return new AutoValue_FlockContainer(config, engines, metadata);
   }
 
@@ -50,8 +52,17 @@ abstract class FlockContainer implements Container {
   @JsonUnwrapped
   public abstract FlockConfig configuration();
 
+  abstract FixedSelection selection();
+
+  @Override
+  public final Set<Engine> engines() {
+    return selection().engines();
+  }
+
   @Override
-  public abstract Set<Engine> engines();
+  public final Engine engine(final Language language) throws Language.NotSupported {
+    return selection().select(language);
+  }
 
   @Override
   public abstract Observable<SchemaDescriptor> metadata();
@@ -61,13 +72,17 @@ abstract class FlockContainer implements Container {
     return configuration().getName();
   }
 
-  // === noop lifecycle management =================================================================
+  // === lifecycle management ======================================================================
 
   @Override
   public final void activate() throws IllegalStateException {}
 
   @Override
-  public final void close() {}
+  public final void close() {
+    for (final Engine engine : engines()) {
+      engine.close();
+    }
+  }
 
   // === stub components ===========================================================================
 
@@ -40,6 +40,7 @@ public final class Sql {
     private final String statement;
     private final String error;
     private long duration = 0;  // in ms
+    private long rows = -1;  // -1 if unknown
     private boolean noIndex = false;
     private boolean badIndex = false;
 
@@ -65,6 +66,17 @@ public final class Sql {
       this.duration = duration;
     }
 
+    /**
+     * @return number of fetched or affected rows or -1 if unknown
+     */
+    public long getRows() {
+      return rows;
+    }
+
+    public void setRows(final long rows) {
+      this.rows = rows;
+    }
+
     public boolean isNoIndex() {
       return noIndex;
     }
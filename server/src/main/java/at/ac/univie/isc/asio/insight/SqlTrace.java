@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.insight;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collect the sql statements executed by the current thread while the trace is active.
+ * Statements are recorded by the jdbc instrumentation, e.g. a statement interceptor, if present.
+ * Traces may be nested, the innermost active trace receives the recorded statements.
+ */
+@NotThreadSafe
+public final class SqlTrace implements AutoCloseable {
+  private static final ThreadLocal<SqlTrace> ACTIVE = new ThreadLocal<>();
+
+  /**
+   * Start tracing sql statements executed by the calling thread. The trace must be closed by the
+   * same thread.
+   *
+   * @return the active trace
+   */
+  public static SqlTrace begin() {
+    final SqlTrace trace = new SqlTrace(ACTIVE.get());
+    ACTIVE.set(trace);
+    return trace;
+  }
+
+  /**
+   * Add an executed statement to the trace active in the calling thread, if there is one.
+   *
+   * @param event describing the executed statement
+   */
+  public static void record(final Sql.SqlEvent event) {
+    final SqlTrace active = ACTIVE.get();
+    if (active != null) {
+      active.statements.add(event);
+    }
+  }
+
+  private final SqlTrace parent;
+  private final List<Sql.SqlEvent> statements = new ArrayList<>();
+
+  private SqlTrace(final SqlTrace parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * @return all statements recorded so far in execution order
+   */
+  public List<Sql.SqlEvent> statements() {
+    return ImmutableList.copyOf(statements);
+  }
+
+  /**
+   * Stop tracing and reactivate the enclosing trace if present.
+   */
+  @Override
+  public void close() {
+    if (ACTIVE.get() == this) {
+      if (parent == null) {
+        ACTIVE.remove();
+      } else {
+        ACTIVE.set(parent);
+      }
+    }
+  }
+}
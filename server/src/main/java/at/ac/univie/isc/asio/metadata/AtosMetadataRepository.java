@@ -27,14 +27,17 @@ import org.apache.http.HttpStatus;
 import rx.Observable;
 import rx.Subscriber;
 import rx.functions.Func1;
+import rx.subscriptions.Subscriptions;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Connect to the atos vph-metadata repository to perform CRUD on dataset metadata.
@@ -61,9 +64,11 @@ public final class AtosMetadataRepository {
             .resolveTemplate("identifier", globalIdentifier)
             .request(MediaType.APPLICATION_XML_TYPE)
             .get();
+        if (response.getStatus() == HttpStatus.SC_OK) {
+          return response.readEntity(AtosResourceMetadata.class).getDataset();
+        }
+        response.close();  // release the connection for reuse
         switch (response.getStatus()) {
-          case HttpStatus.SC_OK:
-            return response.readEntity(AtosResourceMetadata.class).getDataset();
           case HttpStatus.SC_INTERNAL_SERVER_ERROR:
           case HttpStatus.SC_NOT_FOUND:
             return null;
@@ -75,26 +80,48 @@ public final class AtosMetadataRepository {
   }
 
   /**
-   * Find metadata on the datasets with given {@code localID}.
+   * Find metadata on the datasets with given {@code localID}. The request is performed
+   * asynchronously, without blocking the subscribing thread. Unsubscribing cancels the request.
    *
    * @param localIdentifier identifier of dataset
    * @return metadata on target dataset if present
    */
   public Observable<AtosDataset> findByLocalId(final String localIdentifier) {
-    return checkedRequest(new Callable<List<AtosResourceMetadata>>() {
+    return Observable.create(new Observable.OnSubscribe<AtosResourceMetadataList>() {
       @Override
-      public List<AtosResourceMetadata> call() throws Exception {
-        final AtosResourceMetadataList resources = endpoint
-            .path("/metadata/facets/Dataset/localID")
-            .queryParam("value", localIdentifier)
-            .request(MediaType.APPLICATION_XML_TYPE)
-            .get(AtosResourceMetadataList.class);
-        return resources.getResourceMetadata();
+      public void call(final Subscriber<? super AtosResourceMetadataList> subscriber) {
+        try {
+          final Future<AtosResourceMetadataList> pending = endpoint
+              .path("/metadata/facets/Dataset/localID")
+              .queryParam("value", localIdentifier)
+              .request(MediaType.APPLICATION_XML_TYPE)
+              .async()
+              .get(new InvocationCallback<AtosResourceMetadataList>() {
+                @Override
+                public void completed(final AtosResourceMetadataList resources) {
+                  subscriber.onNext(resources);
+                  subscriber.onCompleted();
+                }
+
+                @Override
+                public void failed(final Throwable error) {
+                  // async invocations wrap http errors, unlike synchronous ones
+                  final Throwable cause = error instanceof ProcessingException
+                      && error.getCause() instanceof WebApplicationException
+                      ? error.getCause()
+                      : error;
+                  subscriber.onError(wrapError(cause));
+                }
+              });
+          subscriber.add(Subscriptions.from(pending));
+        } catch (final Exception error) {
+          subscriber.onError(wrapError(error));
+        }
       }
-    }).flatMap(new Func1<List<AtosResourceMetadata>, Observable<AtosResourceMetadata>>() {
+    }).flatMap(new Func1<AtosResourceMetadataList, Observable<AtosResourceMetadata>>() {
       @Override
-      public Observable<AtosResourceMetadata> call(final List<AtosResourceMetadata> resourceList) {
-        return Observable.from(resourceList);
+      public Observable<AtosResourceMetadata> call(final AtosResourceMetadataList resources) {
+        return Observable.from(resources.getResourceMetadata());
       }
     }).map(new Func1<AtosResourceMetadata, AtosDataset>() {
       @Override
@@ -221,7 +248,7 @@ public final class AtosMetadataRepository {
     }
   }
 
-  private RuntimeException wrapError(final Exception original) {
+  private RuntimeException wrapError(final Throwable original) {
     if (original instanceof RepositoryFailure) {
       return (RuntimeException) original;
     }
@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.metadata;
+
+import at.ac.univie.isc.asio.AsioError;
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.tool.Pretty;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Protect callers from a slow or failing remote {@link DescriptorService}. Lookups that do not
+ * complete within the timeout fail. After a number of consecutive failures, the circuit is opened
+ * and lookups fail immediately, without contacting the remote service, until the retry period
+ * elapsed. The next lookup after that is attempted again and closes the circuit on success.
+ * Callers are expected to serve cached or fallback descriptors on failure.
+ */
+@ThreadSafe
+public final class GuardedDescriptorService implements DescriptorService {
+  private static final Logger log = getLogger(GuardedDescriptorService.class);
+
+  /**
+   * Thrown instead of a lookup, while the circuit is open.
+   */
+  public static final class Unavailable extends AsioError.Base {
+    private Unavailable(final URI identifier, final int failures) {
+      super(Pretty.format("metadata lookup for %s skipped - remote service failed %s times in a row",
+          identifier, failures));
+    }
+  }
+
+  /**
+   * Guard the given service, using the computation scheduler for timeouts.
+   *
+   * @param delegate         remote service
+   * @param timeout          maximal duration of a lookup
+   * @param failureThreshold number of consecutive failures that open the circuit
+   * @param retryAfter       duration of an open circuit
+   * @return guarded service
+   */
+  public static GuardedDescriptorService wrap(final DescriptorService delegate,
+                                              final Timeout timeout,
+                                              final int failureThreshold,
+                                              final Timeout retryAfter) {
+    return new GuardedDescriptorService(delegate, timeout, failureThreshold, retryAfter,
+        Ticker.systemTicker(), Schedulers.computation());
+  }
+
+  private final DescriptorService delegate;
+  private final long timeout;
+  private final int failureThreshold;
+  private final long retryAfter;
+  private final Ticker time;
+  private final Scheduler scheduler;
+
+  private final AtomicInteger failures = new AtomicInteger(0);
+  private final AtomicLong openedAt = new AtomicLong(0);
+
+  @VisibleForTesting
+  GuardedDescriptorService(final DescriptorService delegate, final Timeout timeout,
+                           final int failureThreshold, final Timeout retryAfter,
+                           final Ticker time, final Scheduler scheduler) {
+    Preconditions.checkArgument(failureThreshold > 0, "illegal failure threshold %s", failureThreshold);
+    this.delegate = delegate;
+    this.timeout = timeout.getAs(TimeUnit.NANOSECONDS, Long.MAX_VALUE);
+    this.failureThreshold = failureThreshold;
+    this.retryAfter = retryAfter.getAs(TimeUnit.NANOSECONDS, 0);
+    this.time = time;
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public Observable<SchemaDescriptor> metadata(final URI identifier) {
+    final int failed = failures.get();
+    if (failed >= failureThreshold && time.read() - openedAt.get() < retryAfter) {
+      log.debug(Scope.SYSTEM.marker(), "circuit open - skipping metadata lookup for {}", identifier);
+      return Observable.error(new Unavailable(identifier, failed));
+    }
+    Observable<SchemaDescriptor> lookup = delegate.metadata(identifier);
+    if (timeout != Long.MAX_VALUE) {
+      lookup = lookup.timeout(timeout, TimeUnit.NANOSECONDS, scheduler);
+    }
+    return lookup.doOnCompleted(new Action0() {
+      @Override
+      public void call() {
+        if (failures.getAndSet(0) >= failureThreshold) {
+          log.info(Scope.SYSTEM.marker(), "metadata service recovered - closing circuit");
+        }
+      }
+    }).doOnError(new Action1<Throwable>() {
+      @Override
+      public void call(final Throwable error) {
+        if (failures.incrementAndGet() >= failureThreshold) {
+          openedAt.set(time.read());
+          log.warn(Scope.SYSTEM.marker(), "metadata service failing - opening circuit for {}ms ({})",
+              TimeUnit.NANOSECONDS.toMillis(retryAfter), error.toString());
+        }
+      }
+    });
+  }
+
+  @Override
+  public String toString() {
+    return "GuardedDescriptorService{" +
+        "delegate=" + delegate +
+        ", timeout=" + timeout +
+        ", failureThreshold=" + failureThreshold +
+        ", retryAfter=" + retryAfter +
+        ", failures=" + failures.get() +
+        '}';
+  }
+}
@@ -46,7 +46,8 @@ import java.util.List;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * Create container based on the {@link at.ac.univie.isc.asio.nest.NestBluePrint}.
+ * Create container based on the {@link at.ac.univie.isc.asio.nest.NestBluePrint}. If a
+ * {@link NestWiring} is present, the components are wired in code instead of a spring context.
  */
 @Component
 public /* final */ class D2rqNestAssembler implements Assembler {
@@ -56,6 +57,8 @@ public /* final */ class D2rqNestAssembler implements Assembler {
   private final List<Configurer> configurers;
   private final List<OnClose> cleaners;
 
+  private NestWiring wiring;
+
   /** Ensure there is always at least on Configurer and OnClose available. */
   @Bean
   public static ListenerDummy dummyConfigurer() {
@@ -71,11 +74,23 @@ public /* final */ class D2rqNestAssembler implements Assembler {
     this.cleaners = cleaners;
   }
 
+  /**
+   * Wire container components in code, instead of creating a spring context per container.
+   *
+   * @param wiring the component factory
+   */
+  @Autowired(required = false)
+  void setWiring(final NestWiring wiring) {
+    log.info(Scope.SYSTEM.marker(), "enabling lightweight container assembly {}", wiring);
+    this.wiring = wiring;
+  }
+
   @Override
   public String toString() {
     return "D2rqNestAssembler{" +
         "create=" + create +
         ", configurers=" + configurers +
+        ", wiring=" + wiring +
         '}';
   }
 
@@ -88,6 +103,10 @@ public /* final */ class D2rqNestAssembler implements Assembler {
     log.debug(Scope.SYSTEM.marker(), "initial config for {} : {}", name, initial);
     final NestConfig processed = postProcess(initial, configurers);
     log.debug(Scope.SYSTEM.marker(), "final config for {} : {}", name, initial);
+    if (wiring != null) {
+      log.debug(Scope.SYSTEM.marker(), "assembled lightweight container <{}>", name);
+      return WiredNestContainer.create(processed, wiring, cleaners);
+    }
     final AnnotationConfigApplicationContext context = create.named(name.asString());
     inject(context, processed);
     log.debug(Scope.SYSTEM.marker(), "assembled container <{}> with {} ({})", name, context.getId(), context);
@@ -101,7 +120,12 @@ public /* final */ class D2rqNestAssembler implements Assembler {
     final Dataset dataset = new Dataset()
         .setIdentifier(d2rq.getIdentifier())
         .setTimeout(d2rq.getTimeout())
-        .setFederationEnabled(d2rq.isFederationEnabled());
+        .setFederationEnabled(d2rq.isFederationEnabled())
+        .setResultCacheTtl(d2rq.getResultCacheTtl())
+        .setSnapshotRefresh(d2rq.getSnapshotRefresh())
+        .setStoredQueries(d2rq.getStoredQueries())
+        .setTextIndex(d2rq.getTextIndex())
+        .setWarmUpQueries(d2rq.getWarmUpQueries());
     final D2rqJdbcModel jdbcConfig = d2rq.getJdbcConfig();
     final Jdbc jdbc = new Jdbc()
         .setUrl(jdbcConfig.getUrl())
@@ -24,7 +24,11 @@ import at.ac.univie.isc.asio.tool.Timeout;
 
 import javax.validation.constraints.NotNull;
 import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Common dataset properties. These are not specific to an engine.
@@ -49,6 +53,35 @@ final class Dataset {
    * Whether federated query processing is supported. (default: false)
    */
   private boolean federationEnabled = false;
+  /**
+   * Expiration period of cached sparql results and resource descriptions. Caching is disabled if
+   * undefined. (default: undefined)
+   */
+  @NotNull
+  private Timeout resultCacheTtl = Timeout.undefined();
+  /**
+   * Refresh period of a materialized snapshot of the dataset. Sparql queries are translated to sql
+   * on the fly if undefined. (default: undefined)
+   */
+  @NotNull
+  private Timeout snapshotRefresh = Timeout.undefined();
+  /**
+   * Named sparql queries, that clients may invoke with parameters. (default: none)
+   */
+  @NotNull
+  private Map<String, String> storedQueries = Collections.emptyMap();
+  /**
+   * Literal-valued properties, that are included in a full-text index. Indexing is disabled if
+   * empty. (default: none)
+   */
+  @NotNull
+  private Set<URI> textIndex = Collections.emptySet();
+  /**
+   * Sparql queries, that are executed once the dataset is activated, e.g. to prime caches.
+   * (default: none)
+   */
+  @NotNull
+  private List<String> warmUpQueries = Collections.emptyList();
 
   public Id getName() {
     return name;
@@ -86,6 +119,51 @@ final class Dataset {
     return this;
   }
 
+  public Timeout getResultCacheTtl() {
+    return resultCacheTtl;
+  }
+
+  public Dataset setResultCacheTtl(final Timeout resultCacheTtl) {
+    this.resultCacheTtl = resultCacheTtl;
+    return this;
+  }
+
+  public Timeout getSnapshotRefresh() {
+    return snapshotRefresh;
+  }
+
+  public Dataset setSnapshotRefresh(final Timeout snapshotRefresh) {
+    this.snapshotRefresh = snapshotRefresh;
+    return this;
+  }
+
+  public Map<String, String> getStoredQueries() {
+    return storedQueries;
+  }
+
+  public Dataset setStoredQueries(final Map<String, String> storedQueries) {
+    this.storedQueries = storedQueries;
+    return this;
+  }
+
+  public Set<URI> getTextIndex() {
+    return textIndex;
+  }
+
+  public Dataset setTextIndex(final Set<URI> textIndex) {
+    this.textIndex = textIndex;
+    return this;
+  }
+
+  public List<String> getWarmUpQueries() {
+    return warmUpQueries;
+  }
+
+  public Dataset setWarmUpQueries(final List<String> warmUpQueries) {
+    this.warmUpQueries = warmUpQueries;
+    return this;
+  }
+
   @Override
   public String toString() {
     return "Dataset{" +
@@ -93,6 +171,11 @@ final class Dataset {
         ", identifier='" + identifier + '\'' +
         ", timeout=" + timeout +
         ", federationEnabled=" + federationEnabled +
+        ", resultCacheTtl=" + resultCacheTtl +
+        ", snapshotRefresh=" + snapshotRefresh +
+        ", storedQueries=" + storedQueries.keySet() +
+        ", textIndex=" + textIndex +
+        ", warmUpQueries=" + warmUpQueries.size() +
         '}';
   }
 
@@ -106,11 +189,17 @@ final class Dataset {
     return Objects.equals(federationEnabled, dataset.federationEnabled) &&
         Objects.equals(name, dataset.name) &&
         Objects.equals(identifier, dataset.identifier) &&
-        Objects.equals(timeout, dataset.timeout);
+        Objects.equals(timeout, dataset.timeout) &&
+        Objects.equals(resultCacheTtl, dataset.resultCacheTtl) &&
+        Objects.equals(snapshotRefresh, dataset.snapshotRefresh) &&
+        Objects.equals(storedQueries, dataset.storedQueries) &&
+        Objects.equals(textIndex, dataset.textIndex) &&
+        Objects.equals(warmUpQueries, dataset.warmUpQueries);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(name, identifier, timeout, federationEnabled);
+    return Objects.hash(name, identifier, timeout, federationEnabled, resultCacheTtl,
+        snapshotRefresh, storedQueries, textIndex, warmUpQueries);
   }
 }
@@ -22,13 +22,20 @@ package at.ac.univie.isc.asio.nest;
 import at.ac.univie.isc.asio.Scope;
 import at.ac.univie.isc.asio.SqlSchema;
 import at.ac.univie.isc.asio.d2rq.D2rqConfigModel;
+import at.ac.univie.isc.asio.d2rq.D2rqModelSource;
 import at.ac.univie.isc.asio.d2rq.pool.PooledD2rqFactory;
 import at.ac.univie.isc.asio.database.DatabaseInspector;
 import at.ac.univie.isc.asio.database.DefinitionService;
 import at.ac.univie.isc.asio.database.Jdbc;
 import at.ac.univie.isc.asio.database.MysqlUserRepository;
+import at.ac.univie.isc.asio.engine.CachedSource;
+import at.ac.univie.isc.asio.engine.sparql.DescribeCache;
 import at.ac.univie.isc.asio.engine.sparql.JenaEngine;
 import at.ac.univie.isc.asio.engine.sparql.JenaFactory;
+import at.ac.univie.isc.asio.engine.sparql.ResultCache;
+import at.ac.univie.isc.asio.engine.sparql.SnapshotJenaFactory;
+import at.ac.univie.isc.asio.engine.sparql.StoredQueries;
+import at.ac.univie.isc.asio.engine.sparql.TextIndex;
 import at.ac.univie.isc.asio.engine.sql.CommandWhitelist;
 import at.ac.univie.isc.asio.engine.sql.JdbcSpec;
 import at.ac.univie.isc.asio.engine.sql.JooqEngine;
@@ -45,16 +52,22 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
 import rx.Observable;
+import rx.functions.Action0;
 import rx.functions.Func0;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -68,6 +81,9 @@ class NestBluePrint {
   static final String BEAN_DESCRIPTOR_SOURCE = "metadata";
   static final String BEAN_MAPPING_SOURCE = "mapping";
 
+  /** default period after which cached definitions and descriptors are reloaded in background */
+  static final long DEFAULT_METADATA_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
   @Autowired(required = false)
   @Qualifier("sqlCommandWhitelist")
   private Predicate<String> whitelist = CommandWhitelist.any();
@@ -75,36 +91,93 @@ class NestBluePrint {
   @Bean(destroyMethod = "close")
   public JooqEngine jooqEngine(final Jdbc jdbc,
                                final DataSource pool,
-                               final Timeout timeout) {
-    final JdbcSpec spec = JdbcSpec.connectTo(jdbc.getUrl())
-        .authenticateAs(jdbc.getUrl(), jdbc.getPassword())
-        .use(timeout).complete();
-    final JooqEngine engine = JooqEngine.create(ClosableDataSourceProxy.wrap(pool), spec);
-    engine.setWhitelist(whitelist);
-    return engine;
+                               final Timeout timeout,
+                               final ResultCache resultCache,
+                               final DescribeCache describeCache,
+                               final TextIndex textIndex,
+                               final JenaFactory sparql,
+                               final CachedSource<SqlSchema> definitionCache) {
+    return createJooqEngine(jdbc, pool, timeout, whitelist,
+        resultCache, describeCache, textIndex, sparql, definitionCache);
   }
 
   @Bean(destroyMethod = "close")
   public JenaEngine jenaEngine(final Dataset dataset,
-                               final D2rqConfigModel d2rq,
-                               final Jdbc jdbc,
-                               final Timeout timeout,
-                               final Environment env) {
-    final Integer poolSize = env.getProperty("asio.d2rq.pool-size", Integer.class, 1);
-    final JenaFactory factory = PooledD2rqFactory.using(d2rq, jdbc, timeout, poolSize);
-    return JenaEngine.using(factory, dataset.isFederationEnabled());
+                               final JenaFactory factory,
+                               final ResultCache resultCache,
+                               final DescribeCache describeCache,
+                               final TextIndex textIndex) {
+    return createJenaEngine(dataset, factory, resultCache, describeCache, textIndex);
+  }
+
+  @Bean
+  @ConditionalOnProperty(prefix = "asio.nest", name = "warm-up", matchIfMissing = true)
+  public WarmUp warmUp(final Dataset dataset,
+                       final DataSource pool,
+                       final JenaFactory sparql,
+                       final JenaEngine engine,
+                       final Timeout timeout) {
+    return new WarmUp(pool, sparql, engine, dataset.getWarmUpQueries(), timeout);
+  }
+
+  @Bean(destroyMethod = "") // closed by the engine
+  public JenaFactory jenaFactory(final Dataset dataset,
+                                 final D2rqConfigModel d2rq,
+                                 final Jdbc jdbc,
+                                 final Timeout timeout,
+                                 final ResultCache resultCache,
+                                 final DescribeCache describeCache,
+                                 final Environment env) {
+    return createJenaFactory(dataset, d2rq, jdbc, timeout, resultCache, describeCache, env);
+  }
+
+  @Bean(destroyMethod = "close")
+  public TextIndex textIndex(final Dataset dataset, final D2rqConfigModel d2rq, final Jdbc jdbc,
+                             final Environment env) {
+    return createTextIndex(dataset, d2rq, jdbc, env);
+  }
+
+  @Bean
+  public ResultCache resultCache(final Dataset dataset, final Environment env) {
+    return createResultCache(dataset, env);
+  }
+
+  @Bean
+  public DescribeCache describeCache(final Dataset dataset, final Environment env) {
+    return createDescribeCache(dataset, env);
+  }
+
+  @Bean
+  public CachedSource<SqlSchema> definitionCache(final Jdbc jdbc,
+                                                 final DefinitionService definitionService,
+                                                 final Environment env) {
+    return CachedSource.create(
+        Observable.defer(new CallDefinitionService(definitionService, jdbc.getSchema())),
+        metadataCacheTtl(env));
+  }
+
+  @Bean
+  public CachedSource<SchemaDescriptor> descriptorCache(final Dataset dataset,
+                                                        final DescriptorService descriptorService,
+                                                        final Environment env) {
+    return CachedSource.create(
+        Observable.defer(new CallDescriptorService(descriptorService, dataset.getIdentifier())),
+        metadataCacheTtl(env));
+  }
+
+  static Timeout metadataCacheTtl(final Environment env) {
+    final Long ttl = env.getProperty("asio.metadata.cache-ttl", Long.class, DEFAULT_METADATA_CACHE_TTL);
+    return Timeout.from(ttl, TimeUnit.MILLISECONDS);
   }
 
   @Bean(name = BEAN_DEFINITION_SOURCE)
-  public Observable<SqlSchema> definition(final Jdbc jdbc,
-                                          final DefinitionService definitionService) {
-    return Observable.defer(new CallDefinitionService(definitionService, jdbc.getSchema()));
+  public Observable<SqlSchema> definition(final CachedSource<SqlSchema> definitionCache) {
+    return definitionCache.observable();
   }
 
   @Bean(name = BEAN_DESCRIPTOR_SOURCE)
-  public Observable<SchemaDescriptor> metadata(final Dataset dataset,
-                                               final DescriptorService descriptorService) {
-    return Observable.defer(new CallDescriptorService(descriptorService, dataset.getIdentifier()));
+  public Observable<SchemaDescriptor> metadata(final CachedSource<SchemaDescriptor> descriptorCache) {
+    return descriptorCache.observable();
   }
 
   @Bean(name = BEAN_MAPPING_SOURCE)
@@ -137,9 +210,7 @@ class NestBluePrint {
                                final Dataset dataset,
                                final Jdbc jdbc,
                                final Timeout timeout) {
-    final HikariConfig config = JdbcTools.populate(base, dataset.getName().asString(), jdbc);
-    config.setConnectionTimeout(timeout.getAs(TimeUnit.MILLISECONDS, 0));
-    return new HikariDataSource(config);
+    return createDataSource(base, dataset, jdbc, timeout);
   }
 
   @Bean
@@ -160,6 +231,12 @@ class NestBluePrint {
 
   @PostConstruct
   public void ensureMysqlUserPresent() {
+    ensureMysqlUserPresent(mysql, jdbc);
+  }
+
+  // Component factories, shared with the NestWiring. Settings are read from the environment.
+
+  static void ensureMysqlUserPresent(@Nullable final MysqlUserRepository mysql, final Jdbc jdbc) {
     if (mysql != null) {
       final String schema = jdbc.getSchema();
       log.info(Scope.SYSTEM.marker(), "ensure mysql user for {} is present", schema);
@@ -167,11 +244,212 @@ class NestBluePrint {
     }
   }
 
+  static HikariDataSource createDataSource(final HikariConfig base, final Dataset dataset,
+                                           final Jdbc jdbc, final Timeout timeout) {
+    final HikariConfig config = JdbcTools.populate(base, dataset.getName().asString(), jdbc);
+    config.setConnectionTimeout(timeout.getAs(TimeUnit.MILLISECONDS, 0));
+    return new HikariDataSource(config);
+  }
+
+  static ResultCache createResultCache(final Dataset dataset, final Environment env) {
+    final Timeout ttl = dataset.getResultCacheTtl();
+    if (ttl.isDefined()) {
+      final Long maxBytes = env.getProperty("asio.sparql.result-cache-size", Long.class, 32L * 1024 * 1024);
+      log.info(Scope.SYSTEM.marker(), "caching sparql results of {} (ttl:{}) (max-bytes:{})",
+          dataset.getName(), ttl, maxBytes);
+      return ResultCache.create(maxBytes, ttl);
+    }
+    return ResultCache.disabled();
+  }
+
+  static DescribeCache createDescribeCache(final Dataset dataset, final Environment env) {
+    final Timeout ttl = dataset.getResultCacheTtl();
+    if (ttl.isDefined()) {
+      final Long maxEntries = env.getProperty("asio.sparql.describe-cache-entries", Long.class, 10000L);
+      final Long maxBytes = env.getProperty("asio.sparql.describe-cache-size", Long.class, 16L * 1024 * 1024);
+      log.info(Scope.SYSTEM.marker(), "caching resource descriptions of {} (ttl:{}) (max-entries:{}) (max-bytes:{})",
+          dataset.getName(), ttl, maxEntries, maxBytes);
+      return DescribeCache.create(maxEntries, maxBytes, ttl);
+    }
+    return DescribeCache.disabled();
+  }
+
+  static TextIndex createTextIndex(final Dataset dataset, final D2rqConfigModel d2rq,
+                                   final Jdbc jdbc, final Environment env) {
+    final Set<URI> properties = dataset.getTextIndex();
+    if (properties.isEmpty()) {
+      return TextIndex.disabled();
+    }
+    log.info(Scope.SYSTEM.marker(), "building full-text index of {} over {}",
+        dataset.getName(), properties);
+    final List<String> uris = new ArrayList<>();
+    for (final URI property : properties) {
+      uris.add(property.toString());
+    }
+    final Long maxAge = env.getProperty("asio.sparql.text-index-max-age", Long.class,
+        TextIndex.DEFAULT_MAX_AGE.getAs(TimeUnit.SECONDS, 0));
+    return TextIndex.load(D2rqModelSource.create(d2rq, jdbc), uris,
+        Timeout.from(maxAge, TimeUnit.SECONDS));
+  }
+
+  static JenaFactory createJenaFactory(final Dataset dataset, final D2rqConfigModel d2rq,
+                                       final Jdbc jdbc, final Timeout timeout,
+                                       final ResultCache resultCache,
+                                       final DescribeCache describeCache,
+                                       final Environment env) {
+    final Timeout refresh = dataset.getSnapshotRefresh();
+    if (refresh.isDefined()) {
+      log.info(Scope.SYSTEM.marker(), "materializing rdf snapshot of {} (refresh:{})",
+          dataset.getName(), refresh);
+      final SnapshotJenaFactory factory =
+          SnapshotJenaFactory.load(D2rqModelSource.create(d2rq, jdbc), d2rq.getPrefixes(), timeout);
+      factory.setRefreshListener(new UpdateListeners(
+          new InvalidateResultCache(resultCache), new InvalidateDescribeCache(describeCache)));
+      if (refresh.getAs(TimeUnit.MILLISECONDS, 0) > 0) {
+        factory.scheduleRefresh(refresh);
+      }
+      return factory;
+    }
+    final Integer poolSize = env.getProperty("asio.d2rq.pool-size", Integer.class, 1);
+    final Long statisticsRefresh = env.getProperty("asio.d2rq.statistics-refresh", Long.class,
+        PooledD2rqFactory.DEFAULT_STATISTICS_REFRESH.getAs(TimeUnit.SECONDS, 0));
+    return PooledD2rqFactory.using(d2rq, jdbc, timeout, poolSize,
+        Timeout.from(statisticsRefresh, TimeUnit.SECONDS));
+  }
+
+  static JenaEngine createJenaEngine(final Dataset dataset, final JenaFactory factory,
+                                     final ResultCache resultCache,
+                                     final DescribeCache describeCache,
+                                     final TextIndex textIndex) {
+    final JenaEngine engine = JenaEngine.using(factory, dataset.isFederationEnabled());
+    engine.setResultCache(resultCache);
+    engine.setDescribeCache(describeCache);
+    engine.setTextIndex(textIndex);
+    engine.setStoredQueries(StoredQueries.from(dataset.getStoredQueries()));
+    return engine;
+  }
+
+  static JooqEngine createJooqEngine(final Jdbc jdbc, final DataSource pool, final Timeout timeout,
+                                     final Predicate<String> whitelist,
+                                     final ResultCache resultCache,
+                                     final DescribeCache describeCache,
+                                     final TextIndex textIndex,
+                                     final JenaFactory sparql,
+                                     final CachedSource<SqlSchema> definitionCache) {
+    final JdbcSpec spec = JdbcSpec.connectTo(jdbc.getUrl())
+        .authenticateAs(jdbc.getUrl(), jdbc.getPassword())
+        .use(timeout).complete();
+    final JooqEngine engine = JooqEngine.create(ClosableDataSourceProxy.wrap(pool), spec);
+    engine.setWhitelist(whitelist);
+    final Action0 refreshRdf;
+    if (sparql instanceof SnapshotJenaFactory) {  // cached results are invalidated after refresh
+      refreshRdf = new RequestSnapshotRefresh((SnapshotJenaFactory) sparql);
+    } else {
+      refreshRdf = new InvalidateResultCache(resultCache);
+    }
+    engine.setUpdateListener(new UpdateListeners(refreshRdf,
+        new InvalidateDescribeCache(describeCache), new RequestTextIndexRefresh(textIndex)));
+    engine.setSchemaListener(new InvalidateDefinitionCache(definitionCache));
+    return engine;
+  }
+
+  /** mirrors the condition of the warm-up bean */
+  static boolean isWarmUpEnabled(final Environment env) {
+    return env.getProperty("asio.nest.warm-up", Boolean.class, true);
+  }
+
 
   // Observable factories as nest static classes to avoid inner classes with implicit references.
+  // Also used by the NestWiring.
+
+
+  static class InvalidateResultCache implements Action0 {
+    private final ResultCache cache;
+
+    public InvalidateResultCache(final ResultCache cacheRef) {
+      this.cache = cacheRef;
+    }
+
+    @Override
+    public void call() {
+      cache.invalidate();
+    }
+  }
+
+
+  static class InvalidateDescribeCache implements Action0 {
+    private final DescribeCache cache;
+
+    public InvalidateDescribeCache(final DescribeCache cacheRef) {
+      this.cache = cacheRef;
+    }
+
+    @Override
+    public void call() {
+      cache.invalidate();
+    }
+  }
+
+
+  static class InvalidateDefinitionCache implements Action0 {
+    private final CachedSource<SqlSchema> cache;
+
+    public InvalidateDefinitionCache(final CachedSource<SqlSchema> cacheRef) {
+      this.cache = cacheRef;
+    }
+
+    @Override
+    public void call() {
+      cache.invalidate();
+    }
+  }
+
+
+  static class RequestTextIndexRefresh implements Action0 {
+    private final TextIndex index;
+
+    public RequestTextIndexRefresh(final TextIndex indexRef) {
+      this.index = indexRef;
+    }
+
+    @Override
+    public void call() {
+      index.requestRefresh();
+    }
+  }
+
+
+  static class UpdateListeners implements Action0 {
+    private final Action0[] listeners;
+
+    public UpdateListeners(final Action0... listenersRef) {
+      this.listeners = listenersRef;
+    }
+
+    @Override
+    public void call() {
+      for (final Action0 listener : listeners) {
+        listener.call();
+      }
+    }
+  }
+
+
+  static class RequestSnapshotRefresh implements Action0 {
+    private final SnapshotJenaFactory snapshot;
+
+    public RequestSnapshotRefresh(final SnapshotJenaFactory snapshotRef) {
+      this.snapshot = snapshotRef;
+    }
+
+    @Override
+    public void call() {
+      snapshot.requestRefresh();
+    }
+  }
 
 
-  private static class CallDescriptorService implements Func0<Observable<? extends SchemaDescriptor>> {
+  static class CallDescriptorService implements Func0<Observable<? extends SchemaDescriptor>> {
     private final DescriptorService service;
     private final URI identifier;
 
@@ -187,7 +465,7 @@ class NestBluePrint {
   }
 
 
-  private static class CallDefinitionService implements Func0<Observable<? extends SqlSchema>> {
+  static class CallDefinitionService implements Func0<Observable<? extends SqlSchema>> {
     private final DefinitionService service;
     private final String schema;
 
@@ -21,19 +21,19 @@ package at.ac.univie.isc.asio.nest;
 
 import at.ac.univie.isc.asio.Container;
 import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
 import at.ac.univie.isc.asio.SqlSchema;
 import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.FixedSelection;
 import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import com.google.auto.value.AutoValue;
-import com.google.common.collect.ImmutableSet;
 import com.hp.hpl.jena.rdf.model.Model;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import rx.Observable;
 
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -45,6 +45,9 @@ import java.util.Set;
 abstract class NestContainer implements Container, AutoCloseable {
   NestContainer() { /* prevent subclassing */ }
 
+  /** engines of the refreshed context - null until activated */
+  private volatile FixedSelection engines;
+
   public static NestContainer wrap(final ConfigurableApplicationContext context, final NestConfig config) {
     return new AutoValue_NestContainer(context, config, config.getDataset().getName());
   }
@@ -57,11 +60,22 @@ abstract class NestContainer implements Container, AutoCloseable {
   // === bind container lifecycle to context lifecycle =============================================
 
   /**
-   * Refresh the wrapped spring context. All component beans are created now.
+   * Refresh the wrapped spring context. All component beans are created now. If present, the
+   * {@link WarmUp} is run before the container is considered active. The engines are resolved
+   * once, requests never query the bean factory. The context is closed again, if warming up fails.
    */
   @Override
   public void activate() {
     context().refresh();
+    try {
+      for (final WarmUp warmUp : context().getBeansOfType(WarmUp.class).values()) {
+        warmUp.run();
+      }
+      engines = FixedSelection.from(context().getBeansOfType(Engine.class).values());
+    } catch (final RuntimeException e) {
+      context().close();
+      throw e;
+    }
   }
 
   /**
@@ -87,12 +101,24 @@ abstract class NestContainer implements Container, AutoCloseable {
   public abstract Id name();
 
   /**
-   * Retrieve all beans that implement {@link Engine}.
+   * All beans that implement {@link Engine}, as found on activation.
    */
   @Override
   public final Set<Engine> engines() {
-    final Map<String, Engine> found = context().getBeansOfType(Engine.class);
-    return ImmutableSet.copyOf(found.values());
+    return selection().engines();
+  }
+
+  @Override
+  public final Engine engine(final Language language) throws Language.NotSupported {
+    return selection().select(language);
+  }
+
+  private FixedSelection selection() {
+    final FixedSelection current = engines;
+    if (current == null) {
+      throw new IllegalStateException(name() + " not activated");
+    }
+    return current;
   }
 
   @SuppressWarnings("unchecked")
@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.nest;
+
+import at.ac.univie.isc.asio.AsioFeatures;
+import at.ac.univie.isc.asio.SqlSchema;
+import at.ac.univie.isc.asio.d2rq.D2rqConfigModel;
+import at.ac.univie.isc.asio.database.DatabaseInspector;
+import at.ac.univie.isc.asio.database.DefinitionService;
+import at.ac.univie.isc.asio.database.Jdbc;
+import at.ac.univie.isc.asio.database.MysqlUserRepository;
+import at.ac.univie.isc.asio.engine.CachedSource;
+import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.sparql.DescribeCache;
+import at.ac.univie.isc.asio.engine.sparql.JenaEngine;
+import at.ac.univie.isc.asio.engine.sparql.JenaFactory;
+import at.ac.univie.isc.asio.engine.sparql.ResultCache;
+import at.ac.univie.isc.asio.engine.sparql.TextIndex;
+import at.ac.univie.isc.asio.engine.sql.CommandWhitelist;
+import at.ac.univie.isc.asio.engine.sql.JooqEngine;
+import at.ac.univie.isc.asio.metadata.DescriptorService;
+import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
+import at.ac.univie.isc.asio.tool.Closer;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Create the components of a container directly in code, instead of refreshing a spring child
+ * context from the {@link NestBluePrint}. The components are created by the same factories as
+ * in the blue print, but the dependencies from the root context are resolved once and shared by
+ * all containers.
+ */
+@Component
+@ConditionalOnProperty(AsioFeatures.LIGHTWEIGHT_ASSEMBLY)
+final class NestWiring {
+  private final Provider<HikariConfig> hikari;
+  private final Timeout global;
+  private final Environment env;
+  private final boolean warmUp;
+  private final Timeout metadataCacheTtl;
+
+  private Predicate<String> whitelist = CommandWhitelist.any();
+  private DescriptorService descriptorService;
+  private DefinitionService definitionService;
+  private MysqlUserRepository mysql;
+
+  @Autowired
+  NestWiring(final Provider<HikariConfig> hikari, final Timeout global, final Environment env) {
+    this.hikari = hikari;
+    this.global = global;
+    this.env = env;
+    this.warmUp = NestBluePrint.isWarmUpEnabled(env);
+    this.metadataCacheTtl = NestBluePrint.metadataCacheTtl(env);
+  }
+
+  @Autowired(required = false)
+  void setWhitelist(@Qualifier("sqlCommandWhitelist") final Predicate<String> whitelist) {
+    this.whitelist = whitelist;
+  }
+
+  @Autowired(required = false)
+  void setDescriptorService(final DescriptorService descriptorService) {
+    this.descriptorService = descriptorService;
+  }
+
+  @Autowired(required = false)
+  void setDefinitionService(final DefinitionService definitionService) {
+    this.definitionService = definitionService;
+  }
+
+  @Autowired(required = false)
+  void setMysqlUserRepository(final MysqlUserRepository mysql) {
+    this.mysql = mysql;
+  }
+
+  @Override
+  public String toString() {
+    return "NestWiring{" +
+        "global=" + global +
+        ", warmUp=" + warmUp +
+        ", descriptorService=" + descriptorService +
+        ", definitionService=" + definitionService +
+        '}';
+  }
+
+  /**
+   * Create and connect all components of a container. If any step fails, all components created
+   * so far are closed again.
+   *
+   * @param config final configuration of the container
+   * @return the wired components
+   */
+  Components wire(final NestConfig config) {
+    final Dataset dataset = config.getDataset();
+    final Jdbc jdbc = config.getJdbc();
+    final D2rqConfigModel d2rq = config.getD2rq();
+    final List<AutoCloseable> resources = new ArrayList<>();
+    try {
+      NestBluePrint.ensureMysqlUserPresent(mysql, jdbc);
+      final Timeout timeout = dataset.getTimeout().orIfUndefined(global);
+
+      final HikariDataSource pool = NestBluePrint.createDataSource(hikari.get(), dataset, jdbc, timeout);
+      resources.add(pool);
+      final ResultCache resultCache = NestBluePrint.createResultCache(dataset, env);
+      final DescribeCache describeCache = NestBluePrint.createDescribeCache(dataset, env);
+      final TextIndex textIndex = NestBluePrint.createTextIndex(dataset, d2rq, jdbc, env);
+      resources.add(textIndex);
+      final JenaFactory sparql = NestBluePrint.createJenaFactory(dataset, d2rq, jdbc, timeout,
+          resultCache, describeCache, env);
+      resources.add(sparql);  // until the jena engine takes over
+
+      final DefinitionService definitions = definitionService == null
+          ? DatabaseInspector.create(jdbc.getUrl(), pool)
+          : definitionService;
+      final CachedSource<SqlSchema> definitionCache = CachedSource.create(Observable.defer(
+          new NestBluePrint.CallDefinitionService(definitions, jdbc.getSchema())), metadataCacheTtl);
+      final Observable<SchemaDescriptor> metadata = descriptorService == null
+          ? Observable.<SchemaDescriptor>empty()
+          : CachedSource.create(Observable.defer(
+          new NestBluePrint.CallDescriptorService(descriptorService, dataset.getIdentifier())),
+          metadataCacheTtl).observable();
+      final Observable<Model> mapping = Observable.just(d2rq.getDefinition());
+
+      final JooqEngine jooq = NestBluePrint.createJooqEngine(jdbc, pool, timeout, whitelist,
+          resultCache, describeCache, textIndex, sparql, definitionCache);
+      resources.add(jooq);
+      final JenaEngine jena =
+          NestBluePrint.createJenaEngine(dataset, sparql, resultCache, describeCache, textIndex);
+      resources.remove(sparql);  // closed by the engine
+      resources.add(jena);
+
+      final WarmUp warmUp = this.warmUp
+          ? new WarmUp(pool, sparql, jena, dataset.getWarmUpQueries(), timeout)
+          : null;
+      return new Components(ImmutableList.<Engine>of(jooq, jena), warmUp,
+          definitionCache.observable(), metadata, mapping, Lists.reverse(resources));
+    } catch (final RuntimeException e) {
+      for (final AutoCloseable resource : Lists.reverse(resources)) {
+        Closer.quietly(resource);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * The wired components of a single container.
+   */
+  static final class Components {
+    private final List<Engine> engines;
+    private final WarmUp warmUp;
+    private final Observable<SqlSchema> definition;
+    private final Observable<SchemaDescriptor> metadata;
+    private final Observable<Model> mapping;
+    private final List<AutoCloseable> resources;
+
+    private Components(final List<Engine> engines, @Nullable final WarmUp warmUp,
+                       final Observable<SqlSchema> definition,
+                       final Observable<SchemaDescriptor> metadata,
+                       final Observable<Model> mapping,
+                       final List<AutoCloseable> resources) {
+      this.engines = engines;
+      this.warmUp = warmUp;
+      this.definition = definition;
+      this.metadata = metadata;
+      this.mapping = mapping;
+      this.resources = ImmutableList.copyOf(resources);
+    }
+
+    List<Engine> engines() {
+      return engines;
+    }
+
+    @Nullable
+    WarmUp warmUp() {
+      return warmUp;
+    }
+
+    Observable<SqlSchema> definition() {
+      return definition;
+    }
+
+    Observable<SchemaDescriptor> metadata() {
+      return metadata;
+    }
+
+    Observable<Model> mapping() {
+      return mapping;
+    }
+
+    /**
+     * Close all components in reverse order of their creation.
+     */
+    void close() {
+      for (final AutoCloseable resource : resources) {
+        Closer.quietly(resource);
+      }
+    }
+  }
+}
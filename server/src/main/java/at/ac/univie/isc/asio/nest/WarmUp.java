@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.nest;
+
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.d2rq.pool.PooledD2rqFactory;
+import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.engine.sparql.JenaEngine;
+import at.ac.univie.isc.asio.engine.sparql.JenaFactory;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import javax.sql.DataSource;
+import javax.ws.rs.core.MediaType;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Prepare the components of a freshly activated container for the first requests. The jdbc and
+ * d2rq pools are filled up to their configured minimum and each pooled connection is validated.
+ * Then the configured warm-up queries are executed to prime caches.
+ * <p>
+ * Failing validation aborts the activation, as the container could not serve requests anyway.
+ * Failing warm-up queries are logged and ignored.
+ * </p>
+ */
+final class WarmUp {
+  private static final Logger log = getLogger(WarmUp.class);
+
+  /** max wait for a single validation, if no timeout is configured */
+  static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 30;
+
+  private final DataSource pool;
+  private final JenaFactory sparql;
+  private final Engine engine;
+  private final List<String> queries;
+  private final int validationTimeout;
+
+  WarmUp(final DataSource pool, final JenaFactory sparql, final Engine engine,
+         final List<String> queries, final Timeout timeout) {
+    this.pool = pool;
+    this.sparql = sparql;
+    this.engine = engine;
+    this.queries = ImmutableList.copyOf(queries);
+    final long seconds = timeout.getAs(TimeUnit.SECONDS, 0);
+    this.validationTimeout =
+        seconds > 0 ? (int) Math.min(seconds, Integer.MAX_VALUE) : DEFAULT_VALIDATION_TIMEOUT_SECONDS;
+  }
+
+  /**
+   * Fill and validate pools, then replay warm-up queries.
+   *
+   * @throws DataAccessResourceFailureException if a pooled connection is not valid
+   */
+  public void run() {
+    final long started = System.nanoTime();
+    fillJdbcPool();
+    if (sparql instanceof PooledD2rqFactory) {
+      ((PooledD2rqFactory) sparql).warmUp();
+    }
+    replayQueries();
+    log.info(Scope.SYSTEM.marker(), "warm-up completed in {}ms",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+  }
+
+  /**
+   * Hold the minimum number of idle connections at once, to force the pool to open them.
+   */
+  private void fillJdbcPool() {
+    final int minimum = pool instanceof HikariDataSource
+        ? Math.max(1, ((HikariDataSource) pool).getMinimumIdle())
+        : 1;
+    log.debug(Scope.SYSTEM.marker(), "filling jdbc pool with {} connections", minimum);
+    final List<Connection> held = new ArrayList<>(minimum);
+    try {
+      for (int i = 0; i < minimum; i++) {
+        final Connection connection = pool.getConnection();
+        held.add(connection);
+        if (!connection.isValid(validationTimeout)) {
+          throw new DataAccessResourceFailureException("invalid jdbc connection " + connection);
+        }
+      }
+    } catch (final SQLException e) {
+      throw new DataAccessResourceFailureException("cannot fill jdbc pool", e);
+    } finally {
+      for (final Connection connection : held) {
+        try {
+          connection.close();
+        } catch (final SQLException e) {
+          log.warn(Scope.SYSTEM.marker(), "failed to return warm-up connection", e);
+        }
+      }
+    }
+  }
+
+  private void replayQueries() {
+    for (final String query : queries) {
+      log.debug(Scope.SYSTEM.marker(), "replaying warm-up query {}", query);
+      try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+          .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, query)
+          .accept(MediaType.WILDCARD_TYPE).build())) {
+        invocation.execute();
+        invocation.write(ByteStreams.nullOutputStream());
+      } catch (final Exception e) {
+        log.warn(Scope.SYSTEM.marker(), "warm-up query failed - ignoring {}", query, e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "WarmUp{" + "queries=" + queries.size() + ", validationTimeout=" + validationTimeout + '}';
+  }
+}
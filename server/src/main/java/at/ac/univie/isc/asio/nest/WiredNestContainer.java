@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.nest;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.Scope;
+import at.ac.univie.isc.asio.SqlSchema;
+import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.FixedSelection;
+import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.google.common.collect.ImmutableList;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.slf4j.Logger;
+import rx.Observable;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.Set;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Hold the components of a dataset, that are created by the {@link NestWiring} on activation.
+ * Behaves like a {@link NestContainer}, but without a spring context per container.
+ * The {@link OnClose} actions are run, when an activated container is closed.
+ */
+@ThreadSafe
+final class WiredNestContainer implements Container {
+  private static final Logger log = getLogger(WiredNestContainer.class);
+
+  public static WiredNestContainer create(final NestConfig config, final NestWiring wiring,
+                                          final List<OnClose> cleaners) {
+    return new WiredNestContainer(config, wiring, cleaners);
+  }
+
+  private final NestConfig config;
+  private final NestWiring wiring;
+  private final List<OnClose> cleaners;
+
+  /** guarded by this */
+  private boolean activated = false;
+  /** guarded by this */
+  private boolean closed = false;
+  /** null until activated and after closing */
+  private volatile NestWiring.Components components;
+  private volatile FixedSelection engines;
+
+  private WiredNestContainer(final NestConfig config, final NestWiring wiring,
+                             final List<OnClose> cleaners) {
+    this.config = config;
+    this.wiring = wiring;
+    this.cleaners = ImmutableList.copyOf(cleaners);
+  }
+
+  // === lifecycle =================================================================================
+
+  /**
+   * Create all components and run the {@link WarmUp} if enabled. Components are closed again, if
+   * warming up fails.
+   */
+  @Override
+  public synchronized void activate() throws IllegalStateException {
+    if (activated || closed) {
+      throw new IllegalStateException(name() + " already activated");
+    }
+    activated = true;
+    final NestWiring.Components created = wiring.wire(config);
+    try {
+      final WarmUp warmUp = created.warmUp();
+      if (warmUp != null) {
+        warmUp.run();
+      }
+    } catch (final RuntimeException e) {
+      created.close();
+      throw e;
+    }
+    components = created;
+    engines = FixedSelection.from(created.engines());
+  }
+
+  /**
+   * Close all components and run the clean up actions, if the container was activated.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    final NestWiring.Components current = components;
+    components = null;
+    engines = null;
+    if (current != null) {
+      current.close();
+      log.info(Scope.SYSTEM.marker(), "cleaning up destroyed container using {}", cleaners);
+      for (final OnClose listener : cleaners) {
+        try {
+          listener.cleanUp(config);
+        } catch (final RuntimeException e) {
+          log.info(Scope.SYSTEM.marker(), "error during container clean up", e);
+        }
+      }
+    }
+  }
+
+  // === container info ============================================================================
+
+  @JsonProperty
+  @JsonUnwrapped
+  public NestConfig configuration() {
+    return config;
+  }
+
+  @Override
+  public Id name() {
+    return config.getDataset().getName();
+  }
+
+  // === components ================================================================================
+
+  @Override
+  public Set<Engine> engines() {
+    return selection().engines();
+  }
+
+  @Override
+  public Engine engine(final Language language) throws Language.NotSupported {
+    return selection().select(language);
+  }
+
+  @Override
+  public Observable<SqlSchema> definition() {
+    return components().definition();
+  }
+
+  @Override
+  public Observable<SchemaDescriptor> metadata() {
+    return components().metadata();
+  }
+
+  @Override
+  public Observable<Model> mapping() {
+    return components().mapping();
+  }
+
+  private FixedSelection selection() {
+    final FixedSelection current = engines;
+    if (current == null) {
+      throw new IllegalStateException(name() + " not active");
+    }
+    return current;
+  }
+
+  private NestWiring.Components components() {
+    final NestWiring.Components current = components;
+    if (current == null) {
+      throw new IllegalStateException(name() + " not active");
+    }
+    return current;
+  }
+
+  @Override
+  public String toString() {
+    return "WiredNestContainer{" + name() + " | " + config + "}";
+  }
+}
@@ -57,4 +57,14 @@ public class BaseContainerRegistryTest {
     error.expect(Id.NotFound.class);
     subject.find(Id.valueOf("test"));
   }
+
+  @Test
+  public void should_keep_successor_when_dropping_replaced_schema() throws Exception {
+    final Container former = StubContainer.create("test");
+    final Container successor = StubContainer.create("test");
+    subject.onDeploy(new ContainerEvent.Deployed(former));
+    subject.onDeploy(new ContainerEvent.Deployed(successor));
+    subject.onDrop(new ContainerEvent.Dropped(former));
+    assertThat(subject.find(Id.valueOf("test")), sameInstance(successor));
+  }
 }
@@ -131,13 +131,12 @@ public class CatalogTest {
     }
 
     @Test
-    public void emit_drop_and_deploy_when_replacing() throws Exception {
+    public void emit_deploy_before_drop_when_replacing() throws Exception {
       subject.deploy(StubContainer.create("first"));
       subject.deploy(StubContainer.create("first"));
       final InOrder ordered = inOrder(events);
-      ordered.verify(events).emit(Matchers.isA(ContainerEvent.Deployed.class));
+      ordered.verify(events, times(2)).emit(Matchers.isA(ContainerEvent.Deployed.class));
       ordered.verify(events).emit(Matchers.isA(ContainerEvent.Dropped.class));
-      ordered.verify(events).emit(Matchers.isA(ContainerEvent.Deployed.class));
     }
 
     @Test
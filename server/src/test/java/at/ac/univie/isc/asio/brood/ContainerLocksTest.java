@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.tool.StatefulMonitor;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ContainerLocksTest {
+  @Rule
+  public final ExpectedException error = ExpectedException.none();
+
+  private final ContainerLocks subject =
+      ContainerLocks.withMaximalWaitingTime(Timeout.from(100, TimeUnit.MILLISECONDS));
+
+  private static final Callable<Void> NOOP = StatefulMonitor.noop();
+
+  @Test
+  public void should_reject_container_operation_if_not_active() throws Exception {
+    error.expect(StatefulMonitor.IllegalMonitorState.class);
+    subject.atomic(Id.valueOf("test"), NOOP);
+  }
+
+  @Test
+  public void should_execute_container_operation_if_active() throws Exception {
+    subject.activate(NOOP);
+    final String result = subject.atomic(Id.valueOf("test"), new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return "result";
+      }
+    });
+    assertThat(result, equalTo("result"));
+  }
+
+  @Test
+  public void should_reject_after_disable() throws Exception {
+    subject.activate(NOOP);
+    subject.disable(NOOP);
+    assertThat(subject.isActive(), equalTo(false));
+    error.expect(StatefulMonitor.IllegalMonitorState.class);
+    subject.atomic(Id.valueOf("test"), NOOP);
+  }
+
+  @Test
+  public void operations_on_different_containers_should_proceed_concurrently() throws Exception {
+    subject.activate(NOOP);
+    final CountDownLatch holding = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      final Future<Void> blocker = exec.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          return subject.atomic(Id.valueOf("first"), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              holding.countDown();
+              release.await();
+              return null;
+            }
+          });
+        }
+      });
+      holding.await();
+      final Id other = otherStripe(Id.valueOf("first"));
+      assertThat(subject.atomic(other, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return true;
+        }
+      }), equalTo(true));
+      release.countDown();
+      blocker.get();
+    } finally {
+      release.countDown();
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void operations_on_same_container_should_be_serialized() throws Exception {
+    subject.activate(NOOP);
+    final CountDownLatch holding = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      exec.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          return subject.atomic(Id.valueOf("first"), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              holding.countDown();
+              release.await();
+              return null;
+            }
+          });
+        }
+      });
+      holding.await();
+      error.expect(UncheckedTimeoutException.class);
+      subject.atomic(Id.valueOf("first"), NOOP);
+    } finally {
+      release.countDown();
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void lifecycle_transition_should_wait_for_container_operations() throws Exception {
+    subject.activate(NOOP);
+    final CountDownLatch holding = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      exec.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          return subject.atomic(Id.valueOf("first"), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              holding.countDown();
+              release.await();
+              return null;
+            }
+          });
+        }
+      });
+      holding.await();
+      error.expect(UncheckedTimeoutException.class);
+      subject.disable(NOOP);
+    } finally {
+      release.countDown();
+      exec.shutdownNow();
+    }
+  }
+
+  /** find an id, which is not guarded by the same lock stripe as the given one */
+  private Id otherStripe(final Id id) {
+    for (int i = 0; ; i++) {
+      final Id candidate = Id.valueOf("other-" + i);
+      if (subject.lockOf(candidate) != subject.lockOf(id)) {
+        return candidate;
+      }
+    }
+  }
+}
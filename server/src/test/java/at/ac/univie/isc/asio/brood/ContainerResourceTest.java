@@ -22,7 +22,9 @@ package at.ac.univie.isc.asio.brood;
 import at.ac.univie.isc.asio.Container;
 import at.ac.univie.isc.asio.Id;
 import at.ac.univie.isc.asio.io.TransientPath;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -32,6 +34,7 @@ import javax.ws.rs.NotSupportedException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.Collection;
+import java.util.Map;
 
 import static at.ac.univie.isc.asio.jaxrs.ResponseMatchers.hasStatus;
 import static org.hamcrest.Matchers.equalTo;
@@ -67,6 +70,16 @@ public class ContainerResourceTest {
     assertThat(response, hasStatus(Response.Status.CREATED));
   }
 
+  @Test
+  public void should_report_outcome_of_each_bulk_deployment() throws Exception {
+    given(warden.deployAllFromD2rqMappings(Mockito.<Map<Id, ByteSource>>any()))
+        .willReturn(ImmutableMap.<Id, RuntimeException>of(Id.valueOf("second"), new IllegalStateException("broken")));
+    final Map<String, String> outcome =
+        subject.createContainers(ImmutableMap.of("first", "# turtle", "second", "# turtle"));
+    assertThat(outcome, Matchers.<Map<String, String>>equalTo(
+        ImmutableMap.of("first", "deployed", "second", "failed: broken")));
+  }
+
   @Test(expected = NotSupportedException.class)
   public void should_reject_unsupported_media_type() throws Exception {
     final Response response = subject.createContainer(Id.valueOf("test"), temp.path().toFile(), MediaType.APPLICATION_XML_TYPE);
@@ -0,0 +1,362 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.TestTicker;
+import at.ac.univie.isc.asio.engine.Command;
+import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+
+public class HibernatingContainerTest {
+  private static final long IDLE = TimeUnit.MINUTES.toNanos(1);
+
+  @Rule
+  public final ExpectedException error = ExpectedException.none();
+
+  private final TestTicker time = TestTicker.create(0);
+  private final Invocation invocation = Mockito.mock(Invocation.class);
+  private final List<StubContainer> assembled = new ArrayList<>();
+  private final Assembler assembler = new Assembler() {
+    @Override
+    public Container assemble(final Id name, final ByteSource source) {
+      final Engine engine = Mockito.mock(Engine.class);
+      given(engine.language()).willReturn(Language.SQL);
+      given(engine.prepare(any(Command.class))).willReturn(invocation);
+      final StubContainer container = new StubContainer(name).withEngine(engine);
+      assembled.add(container);
+      return container;
+    }
+  };
+
+  private final HibernatingContainer subject =
+      HibernatingContainer.create(Id.valueOf("test"), ByteSource.empty(), assembler, time, Timeout.undefined());
+
+  @Before
+  public void allowHibernation() {
+    subject.allowHibernation();
+  }
+
+  private StubContainer current() {
+    return Iterables.getLast(assembled);
+  }
+
+  private Invocation prepare() {
+    return Iterables.getOnlyElement(subject.engines()).prepare(Mockito.mock(Command.class));
+  }
+
+  @Test
+  public void should_assemble_eagerly_but_not_activate() throws Exception {
+    assertThat(assembled, hasSize(1));
+    assertThat(current().isActivated(), equalTo(false));
+  }
+
+  @Test
+  public void should_activate_initial_container() throws Exception {
+    subject.activate();
+    assertThat(assembled, hasSize(1));
+    assertThat(current().isRunning(), equalTo(true));
+  }
+
+  @Test
+  public void should_reject_second_activation() throws Exception {
+    subject.activate();
+    error.expect(IllegalStateException.class);
+    subject.activate();
+  }
+
+  @Test
+  public void should_not_hibernate_before_idle_period_elapsed() throws Exception {
+    subject.activate();
+    time.advance(IDLE - 1);
+    assertThat(subject.hibernateIfIdle(IDLE), equalTo(false));
+    assertThat(current().isRunning(), equalTo(true));
+  }
+
+  @Test
+  public void should_close_delegate_when_idle() throws Exception {
+    subject.activate();
+    time.advance(IDLE);
+    assertThat(subject.hibernateIfIdle(IDLE), equalTo(true));
+    assertThat(current().isClosed(), equalTo(true));
+    assertThat(subject.isHibernating(), equalTo(true));
+  }
+
+  @Test
+  public void should_not_hibernate_twice() throws Exception {
+    subject.activate();
+    time.advance(IDLE);
+    subject.hibernateIfIdle(IDLE);
+    assertThat(subject.hibernateIfIdle(IDLE), equalTo(false));
+  }
+
+  @Test
+  public void should_reassemble_on_access_after_hibernation() throws Exception {
+    subject.activate();
+    time.advance(IDLE);
+    subject.hibernateIfIdle(IDLE);
+    assertThat(subject.engines(), hasSize(1));
+    assertThat(assembled, hasSize(2));
+    assertThat(current().isRunning(), equalTo(true));
+    assertThat(subject.isHibernating(), equalTo(false));
+  }
+
+  @Test
+  public void access_should_reset_idle_period() throws Exception {
+    subject.activate();
+    time.advance(IDLE - 1);
+    subject.metadata();
+    time.advance(IDLE - 1);
+    assertThat(subject.hibernateIfIdle(IDLE), equalTo(false));
+  }
+
+  @Test
+  public void should_not_hibernate_while_invocation_is_open() throws Exception {
+    subject.activate();
+    final Invocation invocation = prepare();
+    time.advance(IDLE);
+    assertThat(subject.hibernateIfIdle(IDLE), equalTo(false));
+    invocation.close();
+    time.advance(IDLE);
+    assertThat(subject.hibernateIfIdle(IDLE), equalTo(true));
+  }
+
+  @Test
+  public void should_close_wrapped_invocation() throws Exception {
+    subject.activate();
+    prepare().close();
+    verify(invocation).close();
+  }
+
+  @Test
+  public void stale_engine_should_prepare_on_reactivated_container() throws Exception {
+    subject.activate();
+    final Engine stale = Iterables.getOnlyElement(subject.engines());
+    time.advance(IDLE);
+    subject.hibernateIfIdle(IDLE);
+    stale.prepare(Mockito.mock(Command.class)).close();
+    assertThat(assembled, hasSize(2));
+    verify(Iterables.getOnlyElement(current().engines())).prepare(any(Command.class));
+  }
+
+  @Test
+  public void should_resolve_engines_once_per_activation() throws Exception {
+    subject.activate();
+    final Engine selected = subject.engine(Language.SQL);
+    assertThat(subject.engine(Language.SQL), sameInstance(selected));
+    assertThat(Iterables.getOnlyElement(subject.engines()), sameInstance(selected));
+  }
+
+  @Test
+  public void should_fail_to_select_unsupported_language() throws Exception {
+    subject.activate();
+    error.expect(Language.NotSupported.class);
+    subject.engine(Language.SPARQL);
+  }
+
+  @Test
+  public void should_not_wake_up_after_close() throws Exception {
+    subject.activate();
+    subject.close();
+    assertThat(current().isClosed(), equalTo(true));
+    error.expect(IllegalStateException.class);
+    subject.engines();
+  }
+
+  @Test
+  public void sweep_should_hibernate_idle_deployed_containers() throws Exception {
+    final Hibernation hibernation = new Hibernation(Timeout.from(1, TimeUnit.MINUTES), Timeout.undefined(), time);
+    final Container wrapped = hibernation.wrap(assembler).assemble(Id.valueOf("swept"), ByteSource.empty());
+    wrapped.activate();
+    hibernation.onDeploy(new ContainerEvent.Deployed(wrapped));
+    assertThat(hibernation.sweep(), equalTo(0));
+    time.advance(IDLE);
+    assertThat(hibernation.sweep(), equalTo(1));
+    assertThat(current().isClosed(), equalTo(true));
+  }
+
+  @Test
+  public void should_not_hibernate_tracked_container() throws Exception {
+    final HibernatingContainer tracked = (HibernatingContainer) HibernatingContainer
+        .assembler(assembler, time, Timeout.undefined()).assemble(Id.valueOf("tracked"), ByteSource.empty());
+    tracked.activate();
+    time.advance(IDLE);
+    assertThat(tracked.hibernateIfIdle(IDLE), equalTo(false));
+    assertThat(current().isRunning(), equalTo(true));
+  }
+
+  @Test
+  public void sweep_should_skip_tracked_containers() throws Exception {
+    final Hibernation hibernation = new Hibernation(Timeout.from(1, TimeUnit.MINUTES), Timeout.undefined(), time);
+    final Container tracked = HibernatingContainer.assembler(assembler, time, Timeout.undefined())
+        .assemble(Id.valueOf("tracked"), ByteSource.empty());
+    tracked.activate();
+    hibernation.onDeploy(new ContainerEvent.Deployed(tracked));
+    time.advance(IDLE);
+    assertThat(hibernation.sweep(), equalTo(0));
+    assertThat(current().isRunning(), equalTo(true));
+  }
+
+  @Test
+  public void retire_should_close_after_drain_timeout() throws Exception {
+    subject.activate();
+    prepare();
+    final boolean drained = subject.retire(null, Timeout.from(10, TimeUnit.MILLISECONDS));
+    assertThat(drained, equalTo(false));
+    assertThat(current().isClosed(), equalTo(true));
+  }
+
+  @Test
+  public void retired_container_should_route_to_successor() throws Exception {
+    subject.activate();
+    final Engine stale = Iterables.getOnlyElement(subject.engines());
+    final Engine next = Mockito.mock(Engine.class);
+    given(next.language()).willReturn(Language.SQL);
+    assertThat(subject.retire(StubContainer.create("test").withEngine(next), Timeout.undefined()), equalTo(true));
+    stale.prepare(Mockito.mock(Command.class));
+    verify(next).prepare(any(Command.class));
+    assertThat(assembled, hasSize(1));
+  }
+
+  // === lazy activation
+
+  private final List<Runnable> background = new ArrayList<>();
+  private final Executor recording = new Executor() {
+    @Override
+    public void execute(final Runnable command) {
+      background.add(command);
+    }
+  };
+
+  private HibernatingContainer placeholder(final Assembler factory, final Timeout wait) {
+    return HibernatingContainer.lazy(Id.valueOf("lazy"), ByteSource.empty(), factory, time, wait, recording);
+  }
+
+  @Test
+  public void placeholder_should_not_assemble_eagerly() throws Exception {
+    assembled.clear();
+    final HibernatingContainer lazy = placeholder(assembler, Timeout.undefined());
+    lazy.activate();
+    assertThat(assembled, hasSize(0));
+    assertThat(background, hasSize(1));
+  }
+
+  @Test
+  public void placeholder_should_activate_in_background() throws Exception {
+    assembled.clear();
+    placeholder(assembler, Timeout.undefined()).activate();
+    Iterables.getOnlyElement(background).run();
+    assertThat(assembled, hasSize(1));
+    assertThat(current().isRunning(), equalTo(true));
+  }
+
+  @Test
+  public void placeholder_should_activate_on_first_use() throws Exception {
+    assembled.clear();
+    final HibernatingContainer lazy = placeholder(assembler, Timeout.undefined());
+    lazy.activate();
+    assertThat(lazy.engines(), hasSize(1));
+    Iterables.getOnlyElement(background).run();
+    assertThat(assembled, hasSize(1));
+  }
+
+  @Test
+  public void hibernation_should_allow_placeholders_to_hibernate() throws Exception {
+    final Hibernation hibernation = new Hibernation(Timeout.from(1, TimeUnit.MINUTES), Timeout.undefined(), time);
+    final HibernatingContainer lazy = placeholder(assembler, Timeout.undefined());
+    final Container wrapped = hibernation.wrap(new Assembler() {
+      @Override
+      public Container assemble(final Id name, final ByteSource source) {
+        return lazy;
+      }
+    }).assemble(Id.valueOf("lazy"), ByteSource.empty());
+    assertThat(wrapped, sameInstance((Container) lazy));
+    assertThat(lazy.mayHibernate(), equalTo(true));
+  }
+
+  @Test
+  public void placeholder_should_reject_use_before_activation() throws Exception {
+    final HibernatingContainer lazy = placeholder(assembler, Timeout.undefined());
+    error.expect(IllegalStateException.class);
+    lazy.engines();
+  }
+
+  @Test
+  public void background_activation_should_skip_closed_placeholder() throws Exception {
+    assembled.clear();
+    final HibernatingContainer lazy = placeholder(assembler, Timeout.undefined());
+    lazy.activate();
+    lazy.close();
+    Iterables.getOnlyElement(background).run();
+    assertThat(assembled, hasSize(0));
+  }
+
+  @Test
+  public void should_time_out_waiting_for_concurrent_activation() throws Exception {
+    final CountDownLatch assembling = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Assembler blocking = new Assembler() {
+      @Override
+      public Container assemble(final Id name, final ByteSource source) {
+        assembling.countDown();
+        Uninterruptibles.awaitUninterruptibly(release);
+        return assembler.assemble(name, source);
+      }
+    };
+    final HibernatingContainer lazy = placeholder(blocking, Timeout.from(10, TimeUnit.MILLISECONDS));
+    lazy.activate();
+    final Thread activation = new Thread(Iterables.getOnlyElement(background));
+    activation.start();
+    try {
+      assembling.await();
+      error.expect(UncheckedTimeoutException.class);
+      lazy.engines();
+    } finally {
+      release.countDown();
+      activation.join();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.brood;
+
+import at.ac.univie.isc.asio.Container;
+import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MetadataPrefetchTest {
+  private final MetadataPrefetch subject = new MetadataPrefetch(2, Schedulers.immediate());
+
+  /** count subscriptions, never terminate if pending is set */
+  private static Observable<SchemaDescriptor> lookup(final AtomicInteger subscriptions,
+                                                     final boolean pending) {
+    return Observable.create(new Observable.OnSubscribe<SchemaDescriptor>() {
+      @Override
+      public void call(final Subscriber<? super SchemaDescriptor> subscriber) {
+        subscriptions.incrementAndGet();
+        if (!pending) {
+          subscriber.onNext(SchemaDescriptor.empty("test").build());
+          subscriber.onCompleted();
+        }
+      }
+    });
+  }
+
+  @Test
+  public void should_request_metadata_of_each_container_once() throws Exception {
+    final AtomicInteger first = new AtomicInteger(0);
+    final AtomicInteger second = new AtomicInteger(0);
+    subject.fetch(Arrays.<Container>asList(
+        StubContainer.create("first").withMetadata(lookup(first, false)),
+        StubContainer.create("second").withMetadata(lookup(second, false))));
+    assertThat(first.get(), equalTo(1));
+    assertThat(second.get(), equalTo(1));
+  }
+
+  @Test
+  public void should_continue_after_failed_lookup() throws Exception {
+    final AtomicInteger subscriptions = new AtomicInteger(0);
+    subject.fetch(Arrays.<Container>asList(
+        StubContainer.create("failing")
+            .withMetadata(Observable.<SchemaDescriptor>error(new IllegalStateException("test"))),
+        StubContainer.create("working").withMetadata(lookup(subscriptions, false))));
+    assertThat(subscriptions.get(), equalTo(1));
+  }
+
+  @Test
+  public void should_limit_concurrent_lookups() throws Exception {
+    final AtomicInteger subscriptions = new AtomicInteger(0);
+    subject.fetch(Arrays.<Container>asList(
+        StubContainer.create("one").withMetadata(lookup(subscriptions, true)),
+        StubContainer.create("two").withMetadata(lookup(subscriptions, true)),
+        StubContainer.create("three").withMetadata(lookup(subscriptions, true))));
+    assertThat(subscriptions.get(), equalTo(2));
+  }
+
+  @Test
+  public void should_complete_on_empty_input() throws Exception {
+    final Subscription subscription = subject.fetch(Collections.<Container>emptyList());
+    assertThat(subscription.isUnsubscribed(), equalTo(true));
+  }
+}
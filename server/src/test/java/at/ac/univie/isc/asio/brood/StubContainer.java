@@ -21,6 +21,7 @@ package at.ac.univie.isc.asio.brood;
 
 import at.ac.univie.isc.asio.Container;
 import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
 import at.ac.univie.isc.asio.SqlSchema;
 import at.ac.univie.isc.asio.engine.Engine;
 import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
@@ -61,6 +62,16 @@ public class StubContainer implements Container {
     return engines;
   }
 
+  @Override
+  public final Engine engine(final Language language) throws Language.NotSupported {
+    for (final Engine engine : engines) {
+      if (engine.language().equals(language)) {
+        return engine;
+      }
+    }
+    throw new Language.NotSupported(language);
+  }
+
   @Override
   public Observable<SchemaDescriptor> metadata() {
     return metadata;
@@ -22,27 +22,47 @@ package at.ac.univie.isc.asio.brood;
 import at.ac.univie.isc.asio.ConfigStore;
 import at.ac.univie.isc.asio.Container;
 import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.engine.Command;
+import at.ac.univie.isc.asio.engine.Engine;
+import at.ac.univie.isc.asio.engine.Invocation;
 import at.ac.univie.isc.asio.flock.FlockAssembler;
 import at.ac.univie.isc.asio.io.Payload;
+import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import at.ac.univie.isc.asio.nest.D2rqNestAssembler;
 import at.ac.univie.isc.asio.tool.StatefulMonitor;
 import at.ac.univie.isc.asio.tool.Timeout;
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import de.bechte.junit.runners.context.HierarchicalContextRunner;
+import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import rx.Observable;
+import rx.Subscriber;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
@@ -72,6 +92,11 @@ public class WardenTest {
 
   private final Warden subject = new Warden(catalog, d2rq, json, store, Timeout.undefined());
 
+  @Before
+  public void retireInline() {
+    subject.setRetirement(MoreExecutors.sameThreadExecutor());
+  }
+
   @Test
   public void should_have_correct_lifecycle_settings() throws Exception {
     assertThat(subject.isAutoStartup(), equalTo(true));
@@ -167,7 +192,11 @@ public class WardenTest {
         given(d2rq.assemble(any(Id.class), any(ByteSource.class))).willReturn(expected);
         given(json.assemble(any(Id.class), any(ByteSource.class))).willReturn(expected);
         subject.start();
-        verify(catalog, times(3)).deploy(expected);
+        final ArgumentCaptor<Container> deployed = ArgumentCaptor.forClass(Container.class);
+        verify(catalog, times(3)).deploy(deployed.capture());
+        for (final Container each : deployed.getAllValues()) {
+          assertThat(unwrap(each), Matchers.<Container>sameInstance(expected));
+        }
       }
 
       @Test
@@ -193,6 +222,39 @@ public class WardenTest {
         subject.start();
         verify(catalog, times(2)).deploy(any(Container.class));
       }
+
+      @Test
+      public void should_prefetch_metadata_of_deployed_containers() throws Exception {
+        final CountDownLatch lookups = new CountDownLatch(3);
+        final Observable<SchemaDescriptor> metadata =
+            Observable.create(new Observable.OnSubscribe<SchemaDescriptor>() {
+              @Override
+              public void call(final Subscriber<? super SchemaDescriptor> subscriber) {
+                lookups.countDown();
+                subscriber.onCompleted();
+              }
+            });
+        given(d2rq.assemble(any(Id.class), any(ByteSource.class)))
+            .willReturn(StubContainer.create("first").withMetadata(metadata),
+                StubContainer.create("second").withMetadata(metadata));
+        given(json.assemble(any(Id.class), any(ByteSource.class)))
+            .willReturn(StubContainer.create("single-json").withMetadata(metadata));
+        subject.setPrefetchConcurrency(2);
+        subject.start();
+        assertThat("metadata not prefetched", lookups.await(1, TimeUnit.SECONDS), equalTo(true));
+      }
+
+      @Test
+      public void should_deploy_placeholders_if_lazy() throws Exception {
+        final ExecutorService background = Executors.newSingleThreadExecutor();
+        subject.setLazyActivation(new LazyActivation(background, Timeout.undefined(), Ticker.systemTicker()));
+        subject.start();
+        verify(catalog, times(3)).deploy(any(HibernatingContainer.class));
+        background.shutdown();
+        background.awaitTermination(1, TimeUnit.SECONDS);
+        verify(d2rq).assemble(Id.valueOf("first"), ByteSource.empty());
+        verify(json).assemble(Id.valueOf("single-json"), ByteSource.empty());
+      }
     }
   }
 
@@ -230,7 +292,37 @@ public class WardenTest {
         final StubContainer created = StubContainer.create("created");
         given(d2rq.assemble(Id.valueOf("test"), ByteSource.empty())).willReturn(created);
         subject.deployFromD2rqMapping(Id.valueOf("test"), ByteSource.empty());
-        verify(catalog).deploy(created);
+        assertThat(unwrap(deployedContainer()), Matchers.<Container>sameInstance(created));
+      }
+
+      @Test
+      public void should_bulk_deploy_all_containers() throws Exception {
+        final StubContainer first = StubContainer.create("first");
+        final StubContainer second = StubContainer.create("second");
+        given(d2rq.assemble(eq(Id.valueOf("first")), any(ByteSource.class))).willReturn(first);
+        given(d2rq.assemble(eq(Id.valueOf("second")), any(ByteSource.class))).willReturn(second);
+        final Map<Id, RuntimeException> failures = subject.deployAllFromD2rqMappings(
+            ImmutableMap.of(Id.valueOf("first"), ByteSource.empty(), Id.valueOf("second"), ByteSource.empty()));
+        assertThat(failures.isEmpty(), equalTo(true));
+        assertThat(first.isActivated() && second.isActivated(), equalTo(true));
+        final ArgumentCaptor<Container> deployed = ArgumentCaptor.forClass(Container.class);
+        verify(catalog, times(2)).deploy(deployed.capture());
+        assertThat(unwrap(deployed.getAllValues().get(0)), Matchers.<Container>sameInstance(first));
+        assertThat(unwrap(deployed.getAllValues().get(1)), Matchers.<Container>sameInstance(second));
+        verify(store).save("first", Warden.D2RQ_SUFFIX, ByteSource.empty());
+      }
+
+      @Test
+      public void should_isolate_failures_in_bulk_deployment() throws Exception {
+        final StubContainer second = StubContainer.create("second");
+        final IllegalStateException failure = new IllegalStateException("test");
+        given(d2rq.assemble(eq(Id.valueOf("first")), any(ByteSource.class))).willThrow(failure);
+        given(d2rq.assemble(eq(Id.valueOf("second")), any(ByteSource.class))).willReturn(second);
+        final Map<Id, RuntimeException> failures = subject.deployAllFromD2rqMappings(
+            ImmutableMap.of(Id.valueOf("first"), ByteSource.empty(), Id.valueOf("second"), ByteSource.empty()));
+        assertThat(failures, equalTo(Collections.<Id, RuntimeException>singletonMap(Id.valueOf("first"), failure)));
+        assertThat(unwrap(deployedContainer()), Matchers.<Container>sameInstance(second));
+        verify(store, never()).save(eq("first"), anyString(), any(ByteSource.class));
       }
 
       @Test
@@ -251,11 +343,96 @@ public class WardenTest {
       @Test
       public void should_dispose_former_container() throws Exception {
         final StubContainer it = StubContainer.create("test");
-        given(catalog.drop(Id.valueOf("test"))).willReturn(Optional.<Container>of(it));
+        given(catalog.deploy(any(Container.class))).willReturn(Optional.<Container>of(it));
         subject.deployFromD2rqMapping(Id.valueOf("test"), ByteSource.empty());
         assertThat("former container was not closed", it.isClosed(), equalTo(true));
       }
 
+      @Test
+      public void should_activate_new_container_before_replacing_former() throws Exception {
+        final StubContainer former = StubContainer.create("test");
+        final StubContainer broken = new StubContainer(Id.valueOf("test")) {
+          @Override
+          public void activate() throws IllegalStateException {
+            throw new IllegalStateException("test");
+          }
+        };
+        given(d2rq.assemble(Id.valueOf("test"), ByteSource.empty())).willReturn(broken);
+        try {
+          subject.deployFromD2rqMapping(Id.valueOf("test"), ByteSource.empty());
+        } catch (final IllegalStateException expected) {
+          assertThat(former.isClosed(), equalTo(false));
+          assertThat(broken.isClosed(), equalTo(true));
+          verify(catalog, never()).deploy(any(Container.class));
+          verify(store, never()).clear(anyString());
+          return;
+        }
+        throw new AssertionError("deployment of broken container succeeded");
+      }
+
+      @Test
+      public void should_route_to_successor_and_drain_replaced_container() throws Exception {
+        final StubContainer successor = StubContainer.create("test");
+        final Engine engine = Mockito.mock(Engine.class);
+        final Invocation running = Mockito.mock(Invocation.class);
+        given(engine.language()).willReturn(Language.SQL);
+        given(engine.prepare(any(Command.class))).willReturn(running);
+        final Container former = HibernatingContainer.create(Id.valueOf("test"), ByteSource.empty(),
+            new Assembler() {
+              @Override
+              public Container assemble(final Id name, final ByteSource source) {
+                return StubContainer.create("test").withEngine(engine);
+              }
+            }, Ticker.systemTicker(), Timeout.undefined());
+        former.activate();
+        final Invocation invocation =
+            Iterables.getOnlyElement(former.engines()).prepare(Mockito.mock(Command.class));
+        given(d2rq.assemble(Id.valueOf("test"), ByteSource.empty())).willReturn(successor);
+        given(catalog.deploy(any(Container.class))).willReturn(Optional.of(former));
+        final Thread closing = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+            invocation.close();
+          }
+        });
+        closing.start();
+        subject.deployFromD2rqMapping(Id.valueOf("test"), ByteSource.empty());
+        closing.join();
+        verify(running).close();
+        assertThat(((HibernatingContainer) former).delegate(), nullValue());
+        assertThat(former.metadata(), sameInstance(successor.metadata()));
+      }
+
+      @Test
+      public void should_not_wait_for_running_invocations_of_replaced_container() throws Exception {
+        final ExecutorService background = Executors.newSingleThreadExecutor();
+        subject.setRetirement(background);
+        final StubContainer successor = StubContainer.create("test");
+        final Engine engine = Mockito.mock(Engine.class);
+        given(engine.language()).willReturn(Language.SQL);
+        given(engine.prepare(any(Command.class))).willReturn(Mockito.mock(Invocation.class));
+        final Container former = HibernatingContainer.create(Id.valueOf("test"), ByteSource.empty(),
+            new Assembler() {
+              @Override
+              public Container assemble(final Id name, final ByteSource source) {
+                return StubContainer.create("test").withEngine(engine);
+              }
+            }, Ticker.systemTicker(), Timeout.undefined());
+        former.activate();
+        final Invocation invocation =
+            Iterables.getOnlyElement(former.engines()).prepare(Mockito.mock(Command.class));
+        given(d2rq.assemble(Id.valueOf("test"), ByteSource.empty())).willReturn(successor);
+        given(catalog.deploy(any(Container.class))).willReturn(Optional.of(former));
+        subject.deployFromD2rqMapping(Id.valueOf("test"), ByteSource.empty());
+        assertThat(former.metadata(), sameInstance(successor.metadata()));
+        assertThat(((HibernatingContainer) former).delegate(), notNullValue());
+        invocation.close();
+        background.shutdown();
+        assertThat(background.awaitTermination(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(((HibernatingContainer) former).delegate(), nullValue());
+      }
+
       @Test
       public void should_clear_config_of_former_container() throws Exception {
         given(catalog.drop(Id.valueOf("test")))
@@ -333,4 +510,16 @@ public class WardenTest {
       }
     }
   }
+
+  private Container deployedContainer() {
+    final ArgumentCaptor<Container> deployed = ArgumentCaptor.forClass(Container.class);
+    verify(catalog).deploy(deployed.capture());
+    return deployed.getValue();
+  }
+
+  private static Container unwrap(final Container container) {
+    return container instanceof HibernatingContainer
+        ? ((HibernatingContainer) container).delegate()
+        : container;
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import at.ac.univie.isc.asio.sql.Database;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.sql.Connection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CollectD2rqStatisticsTest {
+  private static final String MAPPING = "@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+      "@prefix ex: <http://example.com/> .\n" +
+      "ex:patient a d2rq:ClassMap ;\n" +
+      "  d2rq:uriPattern \"patient/@@PUBLIC.PATIENT.ID@@\" ;\n" +
+      "  d2rq:class ex:Patient .\n" +
+      "ex:patient_name a d2rq:PropertyBridge ;\n" +
+      "  d2rq:belongsToClassMap ex:patient ;\n" +
+      "  d2rq:property ex:name ;\n" +
+      "  d2rq:column \"PUBLIC.PATIENT.NAME\" .\n" +
+      "ex:visit a d2rq:ClassMap ;\n" +
+      "  d2rq:uriColumn \"PUBLIC.VISIT.URI\" ;\n" +
+      "  d2rq:class ex:Visit .\n" +
+      "ex:visit_patient a d2rq:PropertyBridge ;\n" +
+      "  d2rq:belongsToClassMap ex:visit ;\n" +
+      "  d2rq:property ex:patient ;\n" +
+      "  d2rq:refersToClassMap ex:patient .\n";
+
+  private Database db;
+  private Connection connection;
+  private final Model mapping = ModelFactory.createDefaultModel();
+
+  @Before
+  public void setUp() throws Exception {
+    db = Database.create("jdbc:h2:mem:statistics;DB_CLOSE_DELAY=-1").build()
+        .execute("DROP ALL OBJECTS")
+        .execute("CREATE TABLE PATIENT (ID INT PRIMARY KEY, NAME VARCHAR(255))")
+        .execute("INSERT INTO PATIENT VALUES (1, 'one'), (2, 'two'), (3, 'three')")
+        .execute("CREATE TABLE VISIT (URI VARCHAR(255) PRIMARY KEY, PATIENT INT)")
+        .execute("INSERT INTO VISIT VALUES ('urn:visit:1', 1)");
+    connection = db.datasource().getConnection();
+    mapping.read(new StringReader(MAPPING), null, "TURTLE");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private static Node uri(final String local) {
+    return Node.createURI("http://example.com/" + local);
+  }
+
+  @Test
+  public void should_count_class_instances_and_property_triples() throws Exception {
+    final D2rqStatistics statistics = CollectD2rqStatistics.from(mapping).collect(connection);
+    final D2rqStatistics expected = D2rqStatistics.builder()
+        .instances(uri("Patient"), 3)
+        .instances(uri("Visit"), 1)
+        .predicate(uri("name"), 3, 3, 3)
+        .predicate(uri("patient"), 1, 1, 1)
+        .build();
+    assertThat(statistics, is(expected));
+  }
+
+  @Test
+  public void should_assume_default_size_of_tables_without_metadata() throws Exception {
+    final Model notes = ModelFactory.createDefaultModel();
+    notes.read(new StringReader("@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+        "@prefix ex: <http://example.com/> .\n" +
+        "ex:note a d2rq:ClassMap ;\n" +
+        "  d2rq:uriColumn \"PUBLIC.NOTE.TEXT\" ;\n" +
+        "  d2rq:class ex:Note .\n"), null, "TURTLE");
+    final D2rqStatistics statistics = CollectD2rqStatistics.from(notes).collect(connection);
+    assertThat(statistics, is(D2rqStatistics.builder()
+        .instances(uri("Note"), CollectD2rqStatistics.UNKNOWN_ROWS).build()));
+  }
+
+  @Test
+  public void should_yield_no_statistics_for_empty_mapping() throws Exception {
+    final D2rqStatistics statistics =
+        CollectD2rqStatistics.from(ModelFactory.createDefaultModel()).collect(connection);
+    assertThat(statistics.isEmpty(), is(true));
+  }
+}
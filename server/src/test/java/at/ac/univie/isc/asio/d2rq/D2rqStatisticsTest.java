@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.syntax.Element;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.syntax.ElementOptional;
+import com.hp.hpl.jena.sparql.syntax.ElementPathBlock;
+import com.hp.hpl.jena.vocabulary.RDF;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class D2rqStatisticsTest {
+  private static final Node FREQUENT = Node.createURI("http://example.com/frequent");
+  private static final Node RARE = Node.createURI("http://example.com/rare");
+  private static final Node CLASS = Node.createURI("http://example.com/Class");
+
+  private final D2rqStatistics subject = D2rqStatistics.builder()
+      .predicate(FREQUENT, 10_000, 10_000, 10)
+      .predicate(RARE, 10, 10, 10)
+      .instances(CLASS, 500)
+      .build();
+
+  private static Triple triple(final String subject, final Node predicate, final Node object) {
+    return Triple.create(Var.alloc(subject), predicate, object);
+  }
+
+  @Test
+  public void should_evaluate_most_selective_pattern_first() throws Exception {
+    final BasicPattern pattern = new BasicPattern();
+    pattern.add(triple("s", FREQUENT, Var.alloc("o")));
+    pattern.add(triple("s", RDF.type.asNode(), CLASS));
+    pattern.add(triple("s", RARE, Var.alloc("r")));
+    final BasicPattern reordered = subject.reordering().reorder(pattern);
+    assertThat(reordered.get(0).getPredicate(), is(RARE));
+  }
+
+  @Test
+  public void should_prefer_class_membership_over_frequent_predicate() throws Exception {
+    final BasicPattern pattern = new BasicPattern();
+    pattern.add(triple("s", FREQUENT, Var.alloc("o")));
+    pattern.add(triple("s", RDF.type.asNode(), CLASS));
+    final BasicPattern reordered = subject.reordering().reorder(pattern);
+    assertThat(reordered.get(0).getObject(), is(CLASS));
+  }
+
+  @Test
+  public void should_merge_statistics_of_repeated_predicates() throws Exception {
+    final D2rqStatistics merged = D2rqStatistics.builder()
+        .predicate(RARE, 5, 5, 5).predicate(RARE, 5, 5, 5).instances(CLASS, 1).instances(CLASS, 2)
+        .build();
+    assertThat(merged, is(D2rqStatistics.builder().predicate(RARE, 10, 10, 10).instances(CLASS, 3).build()));
+  }
+
+  private static final String QUERY = "PREFIX ex: <http://example.com/> SELECT * { "
+      + "?s ex:frequent ?o . ?s a ex:Class . ?s ex:rare ?r "
+      + "OPTIONAL { ?s ex:frequent ?x . ?s ex:rare ?y } }";
+
+  /** first triple pattern of the basic graph pattern directly contained in the given group */
+  private static Triple firstTripleOf(final Element group) {
+    for (final Element each : ((ElementGroup) group).getElements()) {
+      if (each instanceof ElementPathBlock) {
+        return ((ElementPathBlock) each).getPattern().get(0).asTriple();
+      }
+    }
+    throw new AssertionError("no basic graph pattern in " + group);
+  }
+
+  private static Element optionalOf(final Element group) {
+    for (final Element each : ((ElementGroup) group).getElements()) {
+      if (each instanceof ElementOptional) {
+        return ((ElementOptional) each).getOptionalElement();
+      }
+    }
+    throw new AssertionError("no optional in " + group);
+  }
+
+  @Test
+  public void empty_statistics_do_not_alter_the_query() throws Exception {
+    final Query query = QueryFactory.create(QUERY);
+    final Element original = query.getQueryPattern();
+    D2rqStatistics.none().applyTo(query);
+    assertThat(query.getQueryPattern(), is(sameInstance(original)));
+  }
+
+  @Test
+  public void should_reorder_all_basic_graph_patterns_of_query() throws Exception {
+    final Query query = subject.applyTo(QueryFactory.create(QUERY));
+    assertThat(firstTripleOf(query.getQueryPattern()).getPredicate(), is(RARE));
+    assertThat(firstTripleOf(optionalOf(query.getQueryPattern())).getPredicate(), is(RARE));
+  }
+
+  @Test
+  public void should_not_modify_syntax_elements_of_query() throws Exception {
+    final Query query = QueryFactory.create(QUERY);
+    final Element original = query.getQueryPattern();
+    final String before = original.toString();
+    subject.applyTo(query);
+    assertThat(original.toString(), is(before));
+    assertThat(firstTripleOf(original).getPredicate(), is(FREQUENT));
+  }
+
+  @Test
+  public void reordered_query_should_yield_same_results() throws Exception {
+    final Model model = ModelFactory.createDefaultModel();
+    final Resource resource = model.createResource("http://example.com/test")
+        .addProperty(RDF.type, model.createResource(CLASS.getURI()))
+        .addProperty(model.createProperty(FREQUENT.getURI()), "frequent")
+        .addProperty(model.createProperty(RARE.getURI()), "rare");
+    final QueryExecution execution =
+        QueryExecutionFactory.create(subject.applyTo(QueryFactory.create(QUERY)), model);
+    final ResultSet results = execution.execSelect();
+    assertThat(results.next().getResource("s"), is(resource));
+    assertThat(results.hasNext(), is(false));
+    execution.close();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq.pool;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PoolMetricsTest {
+  private final PoolMetrics subject = PoolMetrics.create(10, TimeUnit.MILLISECONDS);
+
+  @Test
+  public void should_be_empty_initially() throws Exception {
+    assertThat(subject.getClaims(), equalTo(0L));
+    assertThat(subject.getActive(), equalTo(0L));
+    assertThat(subject.getAverageWaitMillis(), closeTo(0, 0.001));
+    assertThat(subject.getAverageHoldMillis(), closeTo(0, 0.001));
+  }
+
+  @Test
+  public void should_track_active_claims() throws Exception {
+    subject.claimed(0);
+    subject.claimed(0);
+    subject.released(0);
+    assertThat(subject.getClaims(), equalTo(2L));
+    assertThat(subject.getActive(), equalTo(1L));
+  }
+
+  @Test
+  public void should_aggregate_wait_times() throws Exception {
+    subject.claimed(TimeUnit.MILLISECONDS.toNanos(2));
+    subject.claimed(TimeUnit.MILLISECONDS.toNanos(4));
+    assertThat(subject.getAverageWaitMillis(), closeTo(3, 0.001));
+    assertThat(subject.getMaxWaitMillis(), closeTo(4, 0.001));
+  }
+
+  @Test
+  public void should_aggregate_hold_times() throws Exception {
+    subject.claimed(0);
+    subject.claimed(0);
+    subject.released(TimeUnit.MILLISECONDS.toNanos(1));
+    subject.released(TimeUnit.MILLISECONDS.toNanos(5));
+    assertThat(subject.getAverageHoldMillis(), closeTo(3, 0.001));
+    assertThat(subject.getMaxHoldMillis(), closeTo(5, 0.001));
+  }
+
+  @Test
+  public void should_detect_hold_time_exceeding_threshold() throws Exception {
+    subject.claimed(0);
+    assertThat(subject.released(TimeUnit.MILLISECONDS.toNanos(11)), is(true));
+    assertThat(subject.getLeaks(), equalTo(1L));
+  }
+
+  @Test
+  public void should_report_holder_exceeding_threshold_once() throws Exception {
+    final Object holder = new Object();
+    subject.held(holder, 0);
+    assertThat(subject.overdue(TimeUnit.MILLISECONDS.toNanos(9)).isEmpty(), is(true));
+    assertThat(subject.overdue(TimeUnit.MILLISECONDS.toNanos(11)),
+        hasEntry(holder, TimeUnit.MILLISECONDS.toNanos(11)));
+    assertThat(subject.overdue(TimeUnit.MILLISECONDS.toNanos(12)).isEmpty(), is(true));
+  }
+
+  @Test
+  public void should_not_report_released_holder() throws Exception {
+    final Object holder = new Object();
+    subject.claimed(0);
+    subject.held(holder, 0);
+    subject.released(holder, TimeUnit.MILLISECONDS.toNanos(1));
+    assertThat(subject.overdue(TimeUnit.MILLISECONDS.toNanos(11)).isEmpty(), is(true));
+  }
+
+  @Test
+  public void should_accept_hold_time_below_threshold() throws Exception {
+    subject.claimed(0);
+    assertThat(subject.released(TimeUnit.MILLISECONDS.toNanos(9)), is(false));
+    assertThat(subject.getLeaks(), equalTo(0L));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.d2rq.pool;
+
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import stormpot.LifecycledResizablePool;
+import stormpot.Slot;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PooledD2rqFactoryTest {
+  private final Slot slot = Mockito.mock(Slot.class);
+  private final PooledModel model = new PooledModel(slot, ModelFactory.createDefaultModel());
+  @SuppressWarnings("unchecked")
+  private final LifecycledResizablePool<PooledModel> pool = Mockito.mock(LifecycledResizablePool.class);
+  private final PooledD2rqFactory subject =
+      new PooledD2rqFactory(pool, PrefixMapping.Standard, Timeout.undefined());
+
+  @Before
+  public void provideModel() throws Exception {
+    when(pool.claim(any(stormpot.Timeout.class))).thenReturn(model);
+  }
+
+  @Test
+  public void should_keep_model_claimed_until_execution_is_closed() throws Exception {
+    final QueryExecution execution = subject.execution(QueryFactory.create("ASK {}"), null);
+    verify(slot, never()).release(model);
+    execution.close();
+    verify(slot, times(1)).release(model);
+  }
+
+  @Test
+  public void should_release_model_if_creating_the_execution_fails() throws Exception {
+    try {
+      subject.execution(null, null);
+    } catch (final RuntimeException expected) {
+      verify(slot, times(1)).release(model);
+      assertThat(subject.metrics().getActive(), equalTo(0L));
+      return;
+    }
+    throw new AssertionError("execution of null query created");
+  }
+}
@@ -19,16 +19,26 @@
  */
 package at.ac.univie.isc.asio.d2rq.pool;
 
+import at.ac.univie.isc.asio.d2rq.D2rqStatistics;
 import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
 import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
 import org.junit.Test;
 import org.mockito.Mockito;
 import stormpot.Slot;
 
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -72,4 +82,68 @@ public class PooledModelTest {
     execution.close();
     verify(slot, times(1)).release(subject);
   }
+
+  @Test
+  public void should_release_pool_slot_when_aborting_the_execution() throws Exception {
+    final QueryExecution execution = subject.execution(query);
+    execution.abort();
+    execution.close();
+    verify(slot, times(1)).release(subject);
+  }
+
+  @Test
+  public void should_not_release_pool_slot_while_aborted_execution_is_iterated() throws Exception {
+    model.createResource("http://example.com/one").addProperty(RDFS.label, "one");
+    model.createResource("http://example.com/two").addProperty(RDFS.label, "two");
+    final QueryExecution execution =
+        subject.execution(QueryFactory.create("SELECT * WHERE { ?s ?p ?o }"));
+    final ResultSet results = execution.execSelect();
+    results.next();
+    execution.abort();
+    verify(slot, never()).release(subject);
+    try {
+      while (results.hasNext()) { results.next(); }
+    } catch (final QueryCancelledException ignored) {
+      // iteration of an aborted execution may fail
+    }
+    verify(slot, never()).release(subject);
+    execution.close();
+    verify(slot, times(1)).release(subject);
+  }
+
+  @Test
+  public void should_record_hold_time_on_release() throws Exception {
+    final PoolMetrics metrics = PoolMetrics.create(1, TimeUnit.MINUTES);
+    metrics.claimed(0);
+    final QueryExecution execution = subject.execution(query, D2rqStatistics.none(), metrics);
+    assertThat(metrics.getActive(), equalTo(1L));
+    execution.close();
+    assertThat(metrics.getActive(), equalTo(0L));
+    assertThat(metrics.getLeaks(), equalTo(0L));
+  }
+
+  @Test
+  public void should_report_unreleased_execution_as_overdue() throws Exception {
+    final PoolMetrics metrics = PoolMetrics.create(1, TimeUnit.NANOSECONDS);
+    final QueryExecution execution = subject.execution(query, D2rqStatistics.none(), metrics);
+    assertThat(metrics.overdue(System.nanoTime() + 2).keySet(), contains((Object) execution));
+    execution.close();
+  }
+
+  @Test
+  public void should_not_report_closed_execution_as_overdue() throws Exception {
+    final PoolMetrics metrics = PoolMetrics.create(1, TimeUnit.NANOSECONDS);
+    subject.execution(query, D2rqStatistics.none(), metrics).close();
+    assertThat(metrics.overdue(System.nanoTime() + 2).isEmpty(), is(true));
+  }
+
+  @Test
+  public void should_count_release_after_threshold_as_leak() throws Exception {
+    final PoolMetrics metrics = PoolMetrics.create(1, TimeUnit.NANOSECONDS);
+    metrics.claimed(0);
+    final QueryExecution execution = subject.execution(query, D2rqStatistics.none(), metrics);
+    Thread.sleep(1);
+    execution.close();
+    assertThat(metrics.getLeaks(), equalTo(1L));
+  }
 }
@@ -0,0 +1,284 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.database;
+
+import at.ac.univie.isc.asio.Column;
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.SqlSchema;
+import at.ac.univie.isc.asio.Table;
+import at.ac.univie.isc.asio.engine.sql.XmlSchemaType;
+import com.google.common.collect.Iterables;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.jooq.util.mysql.MySQLDataType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.jooq.impl.DSL.fieldByName;
+import static org.mockito.Mockito.when;
+
+public class MysqlSchemaServiceTest {
+  @Rule
+  public final ExpectedException error = ExpectedException.none();
+
+  private final DataSource pool = Mockito.mock(DataSource.class);
+  private final FakeInformationSchema information = new FakeInformationSchema();
+  private final MysqlSchemaService subject = new MysqlSchemaService(pool);
+
+  @Before
+  public void connectToFake() throws Exception {
+    when(pool.getConnection()).thenAnswer(new Answer<Connection>() {
+      @Override
+      public Connection answer(final InvocationOnMock invocation) throws Throwable {
+        return new MockConnection(information);
+      }
+    });
+  }
+
+  private Column column(final String name, final XmlSchemaType type, final String sqlType,
+                        final int length) {
+    final Column column = new Column();
+    column.setName(name);
+    column.setType(type.qname());
+    column.setSqlType(sqlType);
+    column.setLength(length);
+    return column;
+  }
+
+  // === bulk inspection ===========================================================================
+
+  @Test
+  public void should_build_tables_from_bulk_column_scan() throws Exception {
+    information.column("first", "id", "int", "int(11)", null, 10L, 0L);
+    information.column("first", "name", "varchar", "varchar(255)", 255L, null, null);
+    information.column("second", "id", "int", "int(11)", null, 10L, 0L);
+    final SqlSchema schema = subject.explore(Id.valueOf("test"));
+    assertThat(schema.getTable(), hasSize(2));
+    final Table first = schema.getTable().get(0);
+    assertThat(first.getName(), equalTo("first"));
+    assertThat(first.getSchema(), equalTo("test"));
+    assertThat(first.getColumn(), hasSize(2));
+    assertThat(first.getColumn().get(0).getName(), equalTo("id"));
+    assertThat(first.getColumn().get(1).getName(), equalTo("name"));
+  }
+
+  @Test
+  public void should_read_columns_of_target_schema_from_information_schema() throws Exception {
+    information.column("first", "id", "int", "int(11)", null, 10L, 0L);
+    subject.explore(Id.valueOf("test"));
+    assertThat(information.executed, hasSize(2));
+    for (final String query : information.executed) {
+      assertThat(query, containsString("information_schema"));
+      assertThat(query, containsString("columns"));
+    }
+    assertThat(information.bindings.get(1), contains((Object) "test"));
+  }
+
+  @Test
+  public void should_reject_internal_schema() throws Exception {
+    error.expect(Id.NotFound.class);
+    subject.explore(Id.valueOf("information_schema"));
+  }
+
+  @Test
+  public void should_reject_missing_schema() throws Exception {
+    error.expect(Id.NotFound.class);
+    subject.explore(Id.valueOf("test"));
+  }
+
+  // === type mapping ==============================================================================
+
+  @Test
+  public void should_map_character_column() throws Exception {
+    information.column("sample", "data", "varchar", "varchar(255)", 255L, null, null);
+    assertThat(onlyColumn(), equalTo(column("data", XmlSchemaType.STRING, "varchar", 255)));
+  }
+
+  @Test
+  public void should_map_integer_column() throws Exception {
+    information.column("sample", "id", "int", "int(11)", null, 10L, 0L);
+    assertThat(onlyColumn(), equalTo(column("id", XmlSchemaType.LONG, "int", 10)));
+  }
+
+  @Test
+  public void should_map_unsigned_integer_column() throws Exception {
+    information.column("sample", "id", "int", "int(10) unsigned", null, 10L, 0L);
+    assertThat(onlyColumn().getSqlType(), equalTo(MySQLDataType.INTUNSIGNED.getTypeName()));
+  }
+
+  @Test
+  public void should_map_decimal_column() throws Exception {
+    information.column("sample", "price", "decimal", "decimal(10,2)", null, 10L, 2L);
+    assertThat(onlyColumn(), equalTo(column("price", XmlSchemaType.DECIMAL, "decimal", 10)));
+  }
+
+  @Test
+  public void should_map_unknown_type_to_other() throws Exception {
+    information.column("sample", "shape", "geometry", "geometry", null, null, null);
+    assertThat(onlyColumn().getSqlType(), equalTo("other"));
+  }
+
+  private Column onlyColumn() throws Id.NotFound {
+    final Table table = Iterables.getOnlyElement(subject.explore(Id.valueOf("test")).getTable());
+    return Iterables.getOnlyElement(table.getColumn());
+  }
+
+  // === incremental exploration ===================================================================
+
+  @Test
+  public void should_reuse_schema_if_no_column_changed() throws Exception {
+    information.column("first", "id", "int", "int(11)", null, 10L, 0L);
+    final SqlSchema explored = subject.explore(Id.valueOf("test"));
+    information.executed.clear();
+    assertThat(subject.explore(Id.valueOf("test")), sameInstance(explored));
+    assertThat(information.executed, hasSize(1));
+  }
+
+  @Test
+  public void should_inspect_table_again_if_column_was_added() throws Exception {
+    information.column("first", "id", "int", "int(11)", null, 10L, 0L);
+    information.column("second", "id", "int", "int(11)", null, 10L, 0L);
+    information.column("third", "id", "int", "int(11)", null, 10L, 0L);
+    subject.explore(Id.valueOf("test"));
+    information.column("second", "added", "varchar", "varchar(10)", 10L, null, null);
+    information.bindings.clear();
+    final SqlSchema schema = subject.explore(Id.valueOf("test"));
+    assertThat(schema.getTable().get(1).getColumn(), hasSize(2));
+    assertThat(information.bindings.get(1), contains((Object) "test", "second"));
+  }
+
+  @Test
+  public void should_inspect_table_again_if_column_type_changed() throws Exception {
+    information.column("first", "data", "varchar", "varchar(10)", 10L, null, null);
+    subject.explore(Id.valueOf("test"));
+    information.columns.clear();
+    information.column("first", "data", "varchar", "varchar(20)", 20L, null, null);
+    final Table table = Iterables.getOnlyElement(subject.explore(Id.valueOf("test")).getTable());
+    assertThat(Iterables.getOnlyElement(table.getColumn()).getLength(), equalTo(20));
+  }
+
+  @Test
+  public void should_drop_removed_tables() throws Exception {
+    information.column("first", "id", "int", "int(11)", null, 10L, 0L);
+    information.column("second", "id", "int", "int(11)", null, 10L, 0L);
+    subject.explore(Id.valueOf("test"));
+    information.columns.remove("second");
+    final SqlSchema schema = subject.explore(Id.valueOf("test"));
+    assertThat(schema.getTable(), hasSize(1));
+    assertThat(schema.getTable().get(0).getName(), equalTo("first"));
+  }
+
+  /**
+   * Answer the queries of the service from an in-memory {@code INFORMATION_SCHEMA.COLUMNS}. The
+   * column checksum of mysql is emulated with the hash code of the column properties.
+   */
+  private static final class FakeInformationSchema implements MockDataProvider {
+    private final DSLContext jooq = DSL.using(SQLDialect.MYSQL);
+    private final Map<String, List<Object[]>> columns = new TreeMap<>();
+    private final List<String> executed = new ArrayList<>();
+    private final List<List<Object>> bindings = new ArrayList<>();
+
+    void column(final String table, final String name, final String dataType,
+                final String columnType, final Long characters, final Long precision,
+                final Long scale) {
+      List<Object[]> existing = columns.get(table);
+      if (existing == null) {
+        existing = new ArrayList<>();
+        columns.put(table, existing);
+      }
+      existing.add(new Object[] {table, name, dataType, columnType, characters, precision, scale});
+    }
+
+    @Override
+    public MockResult[] execute(final MockExecuteContext ctx) {
+      final String sql = ctx.sql().toLowerCase(Locale.ENGLISH);
+      executed.add(sql);
+      bindings.add(Arrays.asList(ctx.bindings()));
+      final Result<Record> result;
+      if (sql.contains("schemata")) {
+        result = table(DSL.count());
+        result.add(record(result.fields(), columns.isEmpty() ? 0 : 1));
+      } else if (sql.contains("crc32")) {
+        result = table(fieldByName(String.class, "TABLE_NAME"), DSL.count(),
+            fieldByName(Long.class, "CHECKSUM"));
+        for (final Map.Entry<String, List<Object[]>> table : columns.entrySet()) {
+          long checksum = 0;
+          for (final Object[] column : table.getValue()) {
+            checksum += Arrays.asList(column).hashCode() & 0xffffffffL;
+          }
+          result.add(record(result.fields(), table.getKey(), table.getValue().size(), checksum));
+        }
+      } else {
+        result = table(fieldByName(String.class, "TABLE_NAME"),
+            fieldByName(String.class, "COLUMN_NAME"), fieldByName(String.class, "DATA_TYPE"),
+            fieldByName(String.class, "COLUMN_TYPE"),
+            fieldByName(Long.class, "CHARACTER_MAXIMUM_LENGTH"),
+            fieldByName(Long.class, "NUMERIC_PRECISION"), fieldByName(Long.class, "NUMERIC_SCALE"));
+        final List<Object> requested = Arrays.asList(ctx.bindings()).subList(1, ctx.bindings().length);
+        for (final Map.Entry<String, List<Object[]>> table : columns.entrySet()) {
+          if (requested.isEmpty() || requested.contains(table.getKey())) {
+            for (final Object[] column : table.getValue()) {
+              result.add(record(result.fields(), column));
+            }
+          }
+        }
+      }
+      return new MockResult[] {new MockResult(result.size(), result)};
+    }
+
+    private Result<Record> table(final Field<?>... fields) {
+      return jooq.newResult(fields);
+    }
+
+    private Record record(final Field<?>[] fields, final Object... values) {
+      final Record record = jooq.newRecord(fields);
+      record.fromArray(values);
+      return record;
+    }
+  }
+}
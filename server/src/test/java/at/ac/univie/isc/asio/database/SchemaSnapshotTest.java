@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.database;
+
+import at.ac.univie.isc.asio.ObjectFactory;
+import at.ac.univie.isc.asio.Table;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class SchemaSnapshotTest {
+  private static final ObjectFactory JAXB = new ObjectFactory();
+
+  private final Table first = JAXB.createTable().withName("first");
+  private final Table second = JAXB.createTable().withName("second");
+  private final Map<String, Long> versions = ImmutableMap.of("first", 1L, "second", 1L);
+
+  @Test
+  public void empty_snapshot_treats_all_tables_as_outdated() throws Exception {
+    assertThat(SchemaSnapshot.empty().outdated(versions), containsInAnyOrder("first", "second"));
+  }
+
+  @Test
+  public void empty_snapshot_is_current_for_empty_schema() throws Exception {
+    assertThat(SchemaSnapshot.empty().isCurrent(Collections.<String, Long>emptyMap()), equalTo(true));
+  }
+
+  @Test
+  public void should_hold_inspected_tables_ordered_by_name() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(second, first));
+    assertThat(subject.schema().getTable(), contains(first, second));
+  }
+
+  @Test
+  public void unchanged_versions_are_current() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(first, second));
+    assertThat(subject.isCurrent(versions), equalTo(true));
+    assertThat(subject.outdated(versions), empty());
+  }
+
+  @Test
+  public void changed_table_is_outdated() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(first, second));
+    final Map<String, Long> altered = ImmutableMap.of("first", 1L, "second", 2L);
+    assertThat(subject.isCurrent(altered), equalTo(false));
+    assertThat(subject.outdated(altered), contains("second"));
+  }
+
+  @Test
+  public void new_table_is_outdated() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(first, second));
+    final Map<String, Long> created = ImmutableMap.of("first", 1L, "second", 1L, "third", 1L);
+    assertThat(subject.outdated(created), contains("third"));
+  }
+
+  @Test
+  public void removed_table_makes_snapshot_outdated() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(first, second));
+    final Map<String, Long> dropped = ImmutableMap.of("first", 1L);
+    assertThat(subject.isCurrent(dropped), equalTo(false));
+    assertThat(subject.update(dropped, Collections.<Table>emptyList()).schema().getTable(), contains(first));
+  }
+
+  @Test
+  public void table_without_version_is_always_outdated() throws Exception {
+    final Map<String, Long> unknown = ImmutableMap.of("first", SchemaSnapshot.UNKNOWN_VERSION);
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(unknown, Arrays.asList(first));
+    assertThat(subject.outdated(unknown), contains("first"));
+  }
+
+  @Test
+  public void should_keep_unchanged_tables_and_replace_inspected_ones() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(first, second));
+    final Table altered = JAXB.createTable().withName("second");
+    final SchemaSnapshot updated =
+        subject.update(ImmutableMap.of("first", 1L, "second", 2L), Arrays.asList(altered));
+    assertThat(updated.schema().getTable().get(0), sameInstance(first));
+    assertThat(updated.schema().getTable().get(1), sameInstance(altered));
+  }
+
+  @Test
+  public void should_skip_tables_without_inspection_result() throws Exception {
+    final SchemaSnapshot subject = SchemaSnapshot.empty().update(versions, Arrays.asList(first));
+    assertThat(subject.schema().getTable(), contains(first));
+    assertThat(subject.outdated(versions), contains("second"));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine;
+
+import at.ac.univie.isc.asio.TestTicker;
+import at.ac.univie.isc.asio.tool.Timeout;
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CachedSourceTest {
+  private final TestTicker time = TestTicker.create(0);
+  private final AtomicInteger loads = new AtomicInteger(0);
+  private final Observable<Integer> source = Observable.defer(new Func0<Observable<Integer>>() {
+    @Override
+    public Observable<Integer> call() {
+      return Observable.just(loads.incrementAndGet());
+    }
+  });
+
+  private final CachedSource<Integer> subject = new CachedSource<>(source,
+      Timeout.from(10, TimeUnit.NANOSECONDS), time, Schedulers.immediate());
+
+  private Integer serve() {
+    return subject.observable().toBlocking().single();
+  }
+
+  @Test
+  public void should_not_load_before_first_subscription() throws Exception {
+    subject.observable();
+    assertThat(loads.get(), equalTo(0));
+  }
+
+  @Test
+  public void should_load_synchronously_on_first_subscription() throws Exception {
+    assertThat(serve(), equalTo(1));
+  }
+
+  @Test
+  public void should_serve_cached_element_while_fresh() throws Exception {
+    serve();
+    time.advance(9);
+    assertThat(serve(), equalTo(1));
+    assertThat(loads.get(), equalTo(1));
+  }
+
+  @Test
+  public void should_serve_stale_element_while_reloading_expired_one() throws Exception {
+    serve();
+    time.advance(10);
+    assertThat(serve(), equalTo(1));
+    assertThat(loads.get(), equalTo(2));
+    assertThat(serve(), equalTo(2));
+  }
+
+  @Test
+  public void should_reload_after_invalidation() throws Exception {
+    serve();
+    subject.invalidate();
+    assertThat(loads.get(), equalTo(2));
+    assertThat(serve(), equalTo(2));
+  }
+
+  @Test
+  public void should_ignore_invalidation_before_first_load() throws Exception {
+    subject.invalidate();
+    assertThat(loads.get(), equalTo(0));
+    assertThat(serve(), equalTo(1));
+  }
+
+  @Test
+  public void should_keep_stale_element_if_reload_fails() throws Exception {
+    final AtomicInteger calls = new AtomicInteger(0);
+    final CachedSource<String> failing = new CachedSource<>(
+        Observable.defer(new Func0<Observable<String>>() {
+          @Override
+          public Observable<String> call() {
+            return calls.incrementAndGet() == 1
+                ? Observable.just("initial")
+                : Observable.<String>error(new IllegalStateException("test"));
+          }
+        }), Timeout.from(10, TimeUnit.NANOSECONDS), time, Schedulers.immediate());
+    failing.observable().toBlocking().single();
+    failing.invalidate();
+    assertThat(calls.get(), equalTo(2));
+    assertThat(failing.observable().toBlocking().single(), equalTo("initial"));
+  }
+
+  @Test
+  public void should_never_expire_if_ttl_undefined() throws Exception {
+    final CachedSource<Integer> eternal =
+        new CachedSource<>(source, Timeout.undefined(), time, Schedulers.immediate());
+    eternal.observable().toBlocking().single();
+    time.advance(Long.MAX_VALUE / 2);
+    assertThat(eternal.observable().toBlocking().single(), equalTo(1));
+    assertThat(loads.get(), equalTo(1));
+  }
+
+  @Test
+  public void should_emit_nothing_if_source_is_empty() throws Exception {
+    final CachedSource<Object> empty = new CachedSource<>(Observable.empty(),
+        Timeout.undefined(), time, Schedulers.immediate());
+    assertThat(empty.observable().isEmpty().toBlocking().single(), equalTo(true));
+  }
+}
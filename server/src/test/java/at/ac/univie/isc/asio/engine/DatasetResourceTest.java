@@ -30,6 +30,7 @@ import at.ac.univie.isc.asio.metadata.SchemaDescriptor;
 import at.ac.univie.isc.asio.security.DelegatedCredentialsDetails;
 import at.ac.univie.isc.asio.security.Identity;
 import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Charsets;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import org.hamcrest.Matchers;
@@ -37,16 +38,24 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextImpl;
 import rx.Observable;
+import rx.subjects.PublishSubject;
 
 import javax.ws.rs.core.*;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
 import java.net.URI;
 import java.security.Principal;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import static at.ac.univie.isc.asio.jaxrs.ResponseMatchers.hasHeader;
@@ -82,32 +91,155 @@ public class DatasetResourceTest {
   // ===============================================================================================
   // METADATA
 
+  private final Request jaxrsRequest = Mockito.mock(Request.class);
+  private final Providers providers = Mockito.mock(Providers.class);
+  private final MessageBodyWriter<Object> writer = Mockito.mock(MessageBodyWriter.class);
+
+  @Before
+  public void setUpSerialization() throws Exception {
+    when(jaxrsRequest.selectVariant(any(List.class)))
+        .thenReturn(new Variant(MediaType.APPLICATION_JSON_TYPE, (String) null, null));
+    when(providers.getMessageBodyWriter(any(Class.class), any(Type.class), any(Annotation[].class), any(MediaType.class)))
+        .thenReturn(writer);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws Throwable {
+        final OutputStream sink = (OutputStream) invocation.getArguments()[6];
+        sink.write(String.valueOf(invocation.getArguments()[0]).getBytes(Charsets.UTF_8));
+        return null;
+      }
+    }).when(writer).writeTo(any(), any(Class.class), any(Type.class), any(Annotation[].class),
+        any(MediaType.class), any(MultivaluedMap.class), any(OutputStream.class));
+  }
+
   @Test
   public void should_respond_with_metadata_from_dataset() throws Exception {
     final SchemaDescriptor descriptor = SchemaDescriptor.empty("test").build();
     dataset.withMetadata(Observable.just(descriptor));
-    final Response response = subject.fetchMetadata();
+    subject.fetchMetadata(jaxrsRequest, providers, async);
+    final Response response = async.response();
     assertThat(response, hasStatus(Response.Status.OK));
-    assertThat(response.getEntity(), Matchers.<Object>equalTo(descriptor));
+    assertThat(response.getEntity(),
+        Matchers.<Object>equalTo(descriptor.toString().getBytes(Charsets.UTF_8)));
+    assertThat(response.getMediaType(), equalTo(MediaType.APPLICATION_JSON_TYPE));
   }
 
   @Test
   public void should_respond_with_NOT_FOUND_if_dataset_has_no_metadata() throws Exception {
-    assertThat(subject.fetchMetadata(), hasStatus(Response.Status.NOT_FOUND));
+    subject.fetchMetadata(jaxrsRequest, providers, async);
+    assertThat(async.response(), hasStatus(Response.Status.NOT_FOUND));
+  }
+
+  @Test
+  public void should_not_block_while_waiting_for_metadata() throws Exception {
+    final PublishSubject<SchemaDescriptor> pending = PublishSubject.create();
+    dataset.withMetadata(pending);
+    subject.fetchMetadata(jaxrsRequest, providers, async);
+    assertThat(async.isSuspended(), is(true));
+    final SchemaDescriptor descriptor = SchemaDescriptor.empty("test").build();
+    pending.onNext(descriptor);
+    pending.onCompleted();
+    assertThat(async.response(), hasStatus(Response.Status.OK));
+    assertThat(async.response().getEntity(),
+        Matchers.<Object>equalTo(descriptor.toString().getBytes(Charsets.UTF_8)));
+  }
+
+  @Test
+  public void should_respond_with_fallback_metadata_if_lookup_fails() throws Exception {
+    dataset.withMetadata(Observable.<SchemaDescriptor>error(new IllegalStateException("test")));
+    subject.fetchMetadata(jaxrsRequest, providers, async);
+    assertThat(async.response(), hasStatus(Response.Status.OK));
   }
 
   @Test
   public void should_respond_with_definition_from_dataset() throws Exception {
     final SqlSchema definition = new SqlSchema();
     dataset.withDefinition(Observable.just(definition));
-    final Response response = subject.fetchDefinition();
+    final Response response = subject.fetchDefinition(jaxrsRequest, providers);
     assertThat(response, hasStatus(Response.Status.OK));
-    assertThat(response.getEntity(), Matchers.<Object>equalTo(definition));
+    assertThat(response.getEntity(),
+        Matchers.<Object>equalTo(definition.toString().getBytes(Charsets.UTF_8)));
   }
 
   @Test
   public void should_respond_with_NOT_FOUND_if_dataset_has_no_definition() throws Exception {
-    assertThat(subject.fetchDefinition(), hasStatus(Response.Status.NOT_FOUND));
+    assertThat(subject.fetchDefinition(jaxrsRequest, providers), hasStatus(Response.Status.NOT_FOUND));
+  }
+
+  @Test
+  public void should_include_validators_in_metadata_response() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    final Response response = subject.fetchDefinition(jaxrsRequest, providers);
+    assertThat(response.getEntityTag(), notNullValue());
+    assertThat(response.getLastModified(), notNullValue());
+  }
+
+  @Test
+  public void should_serialize_same_metadata_element_only_once() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    final Response first = subject.fetchDefinition(jaxrsRequest, providers);
+    final Response second = subject.fetchDefinition(jaxrsRequest, providers);
+    assertThat(second.getEntityTag(), equalTo(first.getEntityTag()));
+    verify(writer, Mockito.times(1)).writeTo(any(), any(Class.class), any(Type.class),
+        any(Annotation[].class), any(MediaType.class), any(MultivaluedMap.class), any(OutputStream.class));
+  }
+
+  @Test
+  public void should_respond_with_NOT_MODIFIED_if_metadata_unchanged() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    when(jaxrsRequest.evaluatePreconditions(any(Date.class), any(EntityTag.class)))
+        .thenReturn(Response.notModified());
+    final Response response = subject.fetchDefinition(jaxrsRequest, providers);
+    assertThat(response, hasStatus(Response.Status.NOT_MODIFIED));
+    assertThat(response.getEntity(), nullValue());
+  }
+
+  @Test
+  public void should_vary_metadata_responses_on_accept_header() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    assertThat(subject.fetchDefinition(jaxrsRequest, providers),
+        hasHeader(HttpHeaders.VARY, equalTo(HttpHeaders.ACCEPT)));
+    when(jaxrsRequest.evaluatePreconditions(any(Date.class), any(EntityTag.class)))
+        .thenReturn(Response.notModified());
+    assertThat(subject.fetchDefinition(jaxrsRequest, providers),
+        hasHeader(HttpHeaders.VARY, equalTo(HttpHeaders.ACCEPT)));
+  }
+
+  @Test
+  public void should_tag_each_metadata_format_separately() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    final Response json = subject.fetchDefinition(jaxrsRequest, providers);
+    when(jaxrsRequest.selectVariant(any(List.class)))
+        .thenReturn(new Variant(MediaType.APPLICATION_XML_TYPE, (String) null, null));
+    final Response xml = subject.fetchDefinition(jaxrsRequest, providers);
+    assertThat(xml.getEntity(), equalTo(json.getEntity()));
+    assertThat(xml.getEntityTag(), not(equalTo(json.getEntityTag())));
+  }
+
+  @Test
+  public void should_require_revalidation_of_metadata_by_default() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    final CacheControl caching = CacheControl.valueOf(
+        subject.fetchDefinition(jaxrsRequest, providers).getHeaderString(HttpHeaders.CACHE_CONTROL));
+    assertThat(caching.isPrivate(), equalTo(true));
+    assertThat(caching.isNoCache(), equalTo(true));
+  }
+
+  @Test
+  public void should_allow_reuse_of_metadata_for_configured_period() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    subject.setMaxAge(60_000);
+    final CacheControl caching = CacheControl.valueOf(
+        subject.fetchDefinition(jaxrsRequest, providers).getHeaderString(HttpHeaders.CACHE_CONTROL));
+    assertThat(caching.isNoCache(), equalTo(false));
+    assertThat(caching.getMaxAge(), equalTo(60));
+  }
+
+  @Test
+  public void should_respond_with_NOT_ACCEPTABLE_if_no_metadata_format_matches() throws Exception {
+    dataset.withDefinition(Observable.just(new SqlSchema()));
+    when(jaxrsRequest.selectVariant(any(List.class))).thenReturn(null);
+    assertThat(subject.fetchDefinition(jaxrsRequest, providers), hasStatus(Response.Status.NOT_ACCEPTABLE));
   }
 
   @Test
@@ -125,14 +257,33 @@ public class DatasetResourceTest {
   public void should_respond_with_mapping_model() throws Exception {
     final Model mappingModel = ModelFactory.createDefaultModel();
     dataset.withMapping(Observable.just(mappingModel));
-    final Response response = subject.fetchMapping();
+    final Response response = subject.fetchMapping(jaxrsRequest, providers);
     assertThat(response, hasStatus(Response.Status.OK));
-    assertThat(response.getEntity(), Matchers.<Object>equalTo(mappingModel));
+    assertThat(response.getEntity(),
+        Matchers.<Object>equalTo(mappingModel.toString().getBytes(Charsets.UTF_8)));
+    assertThat(response.getEntityTag(), notNullValue());
+  }
+
+  @Test
+  public void should_use_mapping_format_reported_by_writer() throws Exception {
+    dataset.withMapping(Observable.just(ModelFactory.createDefaultModel()));
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Void answer(final InvocationOnMock invocation) throws Throwable {
+        ((MultivaluedMap<String, Object>) invocation.getArguments()[5])
+            .putSingle(HttpHeaders.CONTENT_TYPE, Mime.GRAPH_JSON.type());
+        return null;
+      }
+    }).when(writer).writeTo(any(), any(Class.class), any(Type.class), any(Annotation[].class),
+        any(MediaType.class), any(MultivaluedMap.class), any(OutputStream.class));
+    final Response response = subject.fetchMapping(jaxrsRequest, providers);
+    assertThat(response.getMediaType(), equalTo(Mime.GRAPH_JSON.type()));
   }
 
   @Test
   public void should_respond_with_NOT_FOUND_if_dataset_has_no_mapping() throws Exception {
-    assertThat(subject.fetchMapping(), hasStatus(Response.Status.NOT_FOUND));
+    assertThat(subject.fetchMapping(jaxrsRequest, providers), hasStatus(Response.Status.NOT_FOUND));
   }
 
   @Test
@@ -148,7 +299,7 @@ public class DatasetResourceTest {
     final UriInfo uri = Mockito.mock(UriInfo.class);
     when(uri.getQueryParameters()).thenReturn(requestParameters);
     requestParameters.addFirst("operation", "command");
-    subject.acceptQuery(uri, async, request);
+    subject.acceptQuery(uri, jaxrsRequest, async, request);
     assertThatResponseIsSuccessful();
   }
 
@@ -224,7 +375,7 @@ public class DatasetResourceTest {
     when(uri.getQueryParameters()).thenReturn(requestParameters);
     requestParameters.addAll("one", "1");
     requestParameters.addAll("two", "2", "3");
-    subject.acceptQuery(uri, async, request);
+    subject.acceptQuery(uri, jaxrsRequest, async, request);
     verify(connector).accept(params.capture());
     assertThat(params.getValue().properties(), hasEntries("one", "1"));
     assertThat(params.getValue().properties(), hasEntries("two", "2", "3"));
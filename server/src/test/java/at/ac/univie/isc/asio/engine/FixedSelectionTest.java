@@ -28,6 +28,7 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
 
@@ -53,6 +54,22 @@ public class FixedSelectionTest {
     assertThat(selected, is(sql));
   }
 
+  @Test
+  public void should_yield_engine_that_supports_given_language() throws Exception {
+    assertThat(subject.select(Language.SPARQL), is(sparql));
+  }
+
+  @Test
+  public void should_expose_all_candidates() throws Exception {
+    assertThat(subject.engines(), containsInAnyOrder(sql, sparql));
+  }
+
+  @Test
+  public void should_fail_if_no_engine_supports_given_language() throws Exception {
+    error.expect(Language.NotSupported.class);
+    subject.select(Language.UNKNOWN);
+  }
+
   @Test
   public void should_fail_if_no_engine_supports_given_command() throws Exception {
     error.expect(Language.NotSupported.class);
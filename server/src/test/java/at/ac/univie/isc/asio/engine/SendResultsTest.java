@@ -23,19 +23,28 @@ import at.ac.univie.isc.asio.jaxrs.AsyncResponseFake;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 import rx.Observable;
 
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import static at.ac.univie.isc.asio.jaxrs.ResponseMatchers.hasFamily;
 import static at.ac.univie.isc.asio.jaxrs.ResponseMatchers.hasStatus;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 public class SendResultsTest {
 
@@ -97,6 +106,46 @@ public class SendResultsTest {
     assertThat(completedAsync.timesResumed(), is(0));
   }
 
+  // === conditional requests
+
+  private final Request request = Mockito.mock(Request.class);
+  private final CacheControl caching = CacheControl.valueOf("private, no-cache");
+  private final EntityTag tag = new EntityTag("test");
+  private final StreamedResults tagged = new StreamedResults(MediaType.APPLICATION_JSON_TYPE, tag) {
+    @Override
+    protected void doWrite(final OutputStream output) throws IOException {}
+  };
+
+  @Test
+  public void should_include_tag_and_cache_control_of_tagged_results() throws Exception {
+    Observable.just(tagged).subscribe(SendResults.conditional(async, request, caching));
+    assertThat(async.response(), hasStatus(Response.Status.OK));
+    assertThat(async.response().getEntityTag(), equalTo(tag));
+    assertThat(async.response().getHeaderString(HttpHeaders.CACHE_CONTROL), containsString("no-cache"));
+  }
+
+  @Test
+  public void should_respond_with_not_modified_if_client_holds_tagged_results() throws Exception {
+    when(request.evaluatePreconditions(tag)).thenReturn(Response.notModified());
+    Observable.just(tagged).subscribe(SendResults.conditional(async, request, caching));
+    assertThat(async.response(), hasStatus(Response.Status.NOT_MODIFIED));
+    assertThat(async.response().getEntity(), nullValue());
+  }
+
+  @Test
+  public void should_vary_tagged_results_on_accept_header() throws Exception {
+    Observable.just(tagged).subscribe(SendResults.conditional(async, request, caching));
+    assertThat(async.response().getHeaderString(HttpHeaders.VARY), equalTo(HttpHeaders.ACCEPT));
+  }
+
+  @Test
+  public void should_not_evaluate_preconditions_if_results_not_tagged() throws Exception {
+    observable().subscribe(SendResults.conditional(async, request, caching));
+    assertThat(async.response(), hasStatus(Response.Status.OK));
+    assertThat(async.response().getEntityTag(), nullValue());
+    verifyZeroInteractions(request);
+  }
+
   private Observable<StreamedResults> observable() {
     return Observable.just(results);
   }
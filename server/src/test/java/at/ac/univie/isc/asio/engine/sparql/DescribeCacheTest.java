@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Charsets;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class DescribeCacheTest {
+  public static final MediaType TURTLE_TYPE = MediaType.valueOf("text/turtle");
+  public static final String DESCRIBE = "DESCRIBE <http://example.com/one>";
+
+  private Model model;
+  private DescribeCache cache;
+  private JenaEngine engine;
+
+  @Before
+  public void setUp() throws Exception {
+    model = ModelFactory.createDefaultModel();
+    model.createResource("http://example.com/one").addProperty(RDFS.label, "first");
+    model.createResource("http://example.com/two").addProperty(RDFS.label, "second");
+    cache = DescribeCache.create(100, 1024 * 1024, Timeout.from(1, TimeUnit.MINUTES));
+    engine = JenaEngine.create(model, Timeout.undefined(), false);
+    engine.setDescribeCache(cache);
+  }
+
+  private String execute(final String sparql) throws Exception {
+    try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+        .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, sparql).accept(TURTLE_TYPE).build())) {
+      invocation.execute();
+      final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      invocation.write(sink);
+      return new String(sink.toByteArray(), Charsets.UTF_8);
+    }
+  }
+
+  private void modifyDataset() {
+    model.removeAll();
+    model.createResource("http://example.com/one").addProperty(RDFS.label, "modified");
+  }
+
+  @Test
+  public void should_describe_resource() throws Exception {
+    assertThat(execute(DESCRIBE), containsString("first"));
+    assertThat(cache.size(), is(1L));
+  }
+
+  @Test
+  public void should_replay_cached_description() throws Exception {
+    execute(DESCRIBE);
+    modifyDataset();
+    assertThat(execute(DESCRIBE), containsString("first"));
+  }
+
+  @Test
+  public void should_describe_again_after_invalidation() throws Exception {
+    execute(DESCRIBE);
+    modifyDataset();
+    cache.invalidate();
+    assertThat(execute(DESCRIBE), containsString("modified"));
+  }
+
+  @Test
+  public void should_merge_descriptions_of_multiple_resources() throws Exception {
+    execute(DESCRIBE);
+    final String result = execute("DESCRIBE <http://example.com/one> <http://example.com/two>");
+    assertThat(result, containsString("first"));
+    assertThat(result, containsString("second"));
+    assertThat(cache.size(), is(2L));
+  }
+
+  @Test
+  public void should_evaluate_describe_with_pattern() throws Exception {
+    try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+        .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, "DESCRIBE ?s WHERE { ?s ?p ?o }")
+        .accept(TURTLE_TYPE).build())) {
+      assertThat(invocation, instanceOf(SparqlInvocation.class));
+    }
+  }
+
+  @Test
+  public void should_bypass_disabled_cache() throws Exception {
+    engine.setDescribeCache(DescribeCache.disabled());
+    try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+        .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, DESCRIBE)
+        .accept(TURTLE_TYPE).build())) {
+      assertThat(invocation, instanceOf(SparqlInvocation.class));
+    }
+  }
+
+  @Test
+  public void should_invalidate_when_engine_closed() throws Exception {
+    execute(DESCRIBE);
+    engine.close();
+    assertThat(cache.size(), is(0L));
+  }
+
+  @Test
+  public void should_retain_descriptions_up_to_entry_limit() throws Exception {
+    cache = DescribeCache.create(2, 1024 * 1024, Timeout.from(1, TimeUnit.MINUTES));
+    engine.setDescribeCache(cache);
+    execute("DESCRIBE <http://example.com/one> <http://example.com/two>");
+    assertThat(cache.size(), is(2L));
+  }
+
+  @Test
+  public void should_bound_number_of_cached_descriptions() throws Exception {
+    cache = DescribeCache.create(1, 1024 * 1024, Timeout.from(1, TimeUnit.MINUTES));
+    engine.setDescribeCache(cache);
+    execute("DESCRIBE <http://example.com/one> <http://example.com/two>");
+    assertThat(cache.size(), lessThanOrEqualTo(1L));
+  }
+
+  @Test
+  public void only_fixed_resources_are_cacheable() throws Exception {
+    assertThat(DescribeCache.isCacheable(QueryFactory.create(DESCRIBE)), is(true));
+    assertThat(DescribeCache.isCacheable(
+        QueryFactory.create("DESCRIBE ?s WHERE { ?s ?p ?o }")), is(false));
+    assertThat(DescribeCache.isCacheable(
+        QueryFactory.create("DESCRIBE <http://example.com/one> FROM <http://example.com/graph>")), is(false));
+    assertThat(DescribeCache.isCacheable(
+        QueryFactory.create("SELECT * WHERE { ?s ?p ?o }")), is(false));
+  }
+
+  @Test
+  public void should_share_descriptions_between_formats() throws Exception {
+    execute(DESCRIBE);
+    try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+        .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, DESCRIBE)
+        .accept(MediaType.valueOf("application/rdf+xml")).build())) {
+      invocation.execute();
+      final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      invocation.write(sink);
+      assertThat(new String(sink.toByteArray(), Charsets.UTF_8), containsString("rdf:RDF"));
+      assertThat(cache.size(), is(1L));
+      assertThat(invocation, not(instanceOf(SparqlInvocation.class)));
+    }
+  }
+}
@@ -40,9 +40,12 @@ public class HandlerFactoryTest {
   public static final MediaType XML_RESULTS = MediaType.valueOf("application/sparql-results+xml");
   private static final MediaType JSON_RESULTS = MediaType.valueOf("application/sparql-results+json");
   private static final MediaType CSV_RESULTS = MediaType.valueOf("text/csv");
+  private static final MediaType TSV_RESULTS = MediaType.valueOf("text/tab-separated-values");
 
   public static final MediaType XML_GRAPH = MediaType.valueOf("application/rdf+xml");
   public static final MediaType JSON_GRAPH = MediaType.valueOf("application/rdf+json");
+  public static final MediaType NTRIPLES_GRAPH = MediaType.valueOf("application/n-triples");
+  public static final MediaType NQUADS_GRAPH = MediaType.valueOf("application/n-quads");
 
   private final HandlerFactory factory = new HandlerFactory();
 
@@ -55,11 +58,14 @@ public class HandlerFactoryTest {
         , {Query.QueryTypeSelect, Arrays.asList(MediaType.APPLICATION_JSON_TYPE), JSON_RESULTS}
         , {Query.QueryTypeAsk, Arrays.asList(JSON_RESULTS), JSON_RESULTS}
         , {Query.QueryTypeAsk, Arrays.asList(CSV_RESULTS), CSV_RESULTS}
+        , {Query.QueryTypeSelect, Arrays.asList(TSV_RESULTS), TSV_RESULTS}
         // simple GRAPH format selection
         , {Query.QueryTypeConstruct, Arrays.asList(MediaType.APPLICATION_XML_TYPE), XML_GRAPH}
         , {Query.QueryTypeDescribe, Arrays.asList(XML_GRAPH), XML_GRAPH}
         , {Query.QueryTypeDescribe, Arrays.asList(MediaType.APPLICATION_JSON_TYPE), JSON_GRAPH}
         , {Query.QueryTypeConstruct, Arrays.asList(JSON_GRAPH), JSON_GRAPH}
+        , {Query.QueryTypeConstruct, Arrays.asList(NTRIPLES_GRAPH), NTRIPLES_GRAPH}
+        , {Query.QueryTypeDescribe, Arrays.asList(NQUADS_GRAPH), NQUADS_GRAPH}
         // wildcard selection
         , {Query.QueryTypeAsk, Arrays.asList(MediaType.WILDCARD_TYPE), XML_RESULTS}
         , {Query.QueryTypeDescribe, Arrays.asList(MediaType.WILDCARD_TYPE), XML_GRAPH}
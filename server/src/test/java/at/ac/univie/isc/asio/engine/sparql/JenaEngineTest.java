@@ -23,14 +23,18 @@ import at.ac.univie.isc.asio.InvalidUsage;
 import at.ac.univie.isc.asio.Language;
 import at.ac.univie.isc.asio.engine.Command;
 import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Invocation;
 import at.ac.univie.isc.asio.engine.TypeMatchingResolver;
 import at.ac.univie.isc.asio.security.Identity;
 import at.ac.univie.isc.asio.security.Permission;
 import at.ac.univie.isc.asio.sql.ConvertToTable;
 import at.ac.univie.isc.asio.tool.Timeout;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Table;
 import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.query.QueryParseException;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.sparql.util.Context;
@@ -45,10 +49,14 @@ import javax.ws.rs.core.MediaType;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import static at.ac.univie.isc.asio.junit.IsIsomorphic.isomorphicWith;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.nullValue;
@@ -124,8 +132,43 @@ public class JenaEngineTest {
     assertThat(raw.length, is(not(0)));
   }
 
+  @Test
+  public void valid_sparql_select_as_tsv() throws Exception {
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, "SELECT ?val WHERE { [] ?_ ?val }")
+        .accept(MediaType.valueOf("text/tab-separated-values"))
+        .build();
+    final byte[] raw = executeCommandWith(params);
+    final String result = new String(raw, Charsets.UTF_8);
+    assertThat(result, is(equalToIgnoringWhiteSpace("?val \"test-value\"")));
+  }
+
+  @Test
+  public void valid_sparql_construct_as_ntriples() throws Exception {
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }")
+        .accept(MediaType.valueOf("application/n-triples"))
+        .build();
+    byte[] raw = executeCommandWith(params);
+    final Model result = ModelFactory.createDefaultModel();
+    result.read(new ByteArrayInputStream(raw), null, "N-TRIPLE");
+    assertThat(result, is(isomorphicWith(model)));
+  }
+
+  @Test
+  public void valid_sparql_describe_as_nquads() throws Exception {
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, "DESCRIBE <http://example.com/test>")
+        .accept(MediaType.valueOf("application/n-quads"))
+        .build();
+    byte[] raw = executeCommandWith(params);
+    final String result = new String(raw, Charsets.UTF_8);
+    assertThat(result, is(equalToIgnoringWhiteSpace(
+        "<http://example.com/test> <http://www.w3.org/1999/02/22-rdf-syntax-ns#value> \"test-value\" .")));
+  }
+
   private byte[] executeCommandWith(final Command params) throws IOException {
-    final SparqlInvocation invocation = subject.prepare(params);
+    final Invocation invocation = subject.prepare(params);
     invocation.execute();
     final ByteArrayOutputStream sink = new ByteArrayOutputStream();
     invocation.write(sink);
@@ -139,7 +182,7 @@ public class JenaEngineTest {
     final Command params = CommandBuilder.empty().language(Language.SPARQL)
         .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
         .accept(MediaType.WILDCARD_TYPE).build();
-    final SparqlInvocation invocation = subject.prepare(params);
+    final Invocation invocation = subject.prepare(params);
     assertThat(invocation.requires(), is(Permission.INVOKE_QUERY));
   }
 
@@ -148,7 +191,7 @@ public class JenaEngineTest {
     final Command params = CommandBuilder.empty().language(Language.SPARQL)
         .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
         .accept(MediaType.APPLICATION_XML_TYPE).build();
-    final SparqlInvocation invocation = subject.prepare(params);
+    final Invocation invocation = subject.prepare(params);
     assertThat(invocation.produces(), is(MediaType.valueOf("application/sparql-results+xml")));
   }
 
@@ -157,15 +200,101 @@ public class JenaEngineTest {
     final Command params = CommandBuilder.empty().language(Language.SPARQL)
         .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
         .accept(MediaType.WILDCARD_TYPE).build();
-    final SparqlInvocation invocation = subject.prepare(params);
+    final Invocation invocation = subject.prepare(params);
     assertThat(invocation.produces(), is(MediaType.valueOf("application/sparql-results+xml")));
   }
 
+  @Test
+  public void should_bind_query_parameters() throws Exception {
+    model.createResource("http://example.com/other").addProperty(RDF.value, "other-value");
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, "SELECT ?val WHERE { ?subject ?_ ?val }")
+        .single("$subject", "<http://example.com/test>")
+        .accept(CSV_TYPE).build();
+    final Table<Integer, String, String> result =
+        ConvertToTable.fromCsv(new ByteArrayInputStream(executeCommandWith(params)));
+    assertThat(result.size(), is(1));
+    assertThat(result.get(0, "val"), is("test-value"));
+  }
+
+  @Test
+  public void should_execute_stored_query() throws Exception {
+    subject.setStoredQueries(StoredQueries.from(
+        Collections.singletonMap("value-of", "SELECT ?val WHERE { ?subject ?_ ?val }")));
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_STORED, "value-of")
+        .single("$subject", "<http://example.com/test>")
+        .accept(CSV_TYPE).build();
+    final Table<Integer, String, String> result =
+        ConvertToTable.fromCsv(new ByteArrayInputStream(executeCommandWith(params)));
+    assertThat(result.get(0, "val"), is("test-value"));
+  }
+
+  @Test
+  public void fail_on_unknown_stored_query() throws Exception {
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_STORED, "unknown")
+        .accept(CSV_TYPE).build();
+    error.expect(StoredQueries.UnknownStoredQuery.class);
+    subject.prepare(params);
+  }
+
+  @Test
+  public void fail_on_query_text_and_stored_query() throws Exception {
+    subject.setStoredQueries(StoredQueries.from(Collections.singletonMap("all", WILDCARD_QUERY)));
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_STORED, "all")
+        .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
+        .accept(CSV_TYPE).build();
+    error.expect(Command.IllegalCommand.class);
+    subject.prepare(params);
+  }
+
+  @Test
+  public void fail_on_invalid_stored_query() throws Exception {
+    error.expect(QueryParseException.class);
+    subject.setStoredQueries(StoredQueries.from(Collections.singletonMap("invalid", "SELECT WHERE")));
+  }
+
+  @Test
+  public void should_produce_json_profile_if_explain_requested() throws Exception {
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
+        .single(JenaEngine.KEY_EXPLAIN, "")
+        .accept(CSV_TYPE).build();
+    final Invocation invocation = subject.prepare(params);
+    assertThat(invocation.produces(), is(MediaType.APPLICATION_JSON_TYPE));
+    assertThat(invocation.properties().get("explain"), hasItem("true"));
+    final JsonNode report = new ObjectMapper().readTree(executeCommandWith(params));
+    assertThat(report.path("algebra").asText(), containsString("bgp"));
+    assertThat(report.path("plan").isTextual(), is(true));
+    assertThat(report.path("format").asText(), is("text/csv"));
+    assertThat(report.path("bytes").asLong(), is(greaterThan(0L)));
+    assertThat(report.path("timing").has("claim"), is(true));
+    assertThat(report.path("timing").has("execution"), is(true));
+    assertThat(report.path("timing").has("serialization"), is(true));
+    assertThat(report.path("timing").has("total"), is(true));
+    assertThat("in-memory model issued sql", report.path("sql").size(), is(0));
+  }
+
+  @Test
+  public void should_deliver_results_if_explain_disabled() throws Exception {
+    final Command params = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
+        .single(JenaEngine.KEY_EXPLAIN, "false")
+        .accept(CSV_TYPE).build();
+    final Invocation invocation = subject.prepare(params);
+    assertThat(invocation.produces(), is(CSV_TYPE));
+  }
+
   @Test
   public void should_set_timeout_on_query() throws Exception {
+    for (int i = 0; i < 100; i++) {  // sorting the cross product must not finish in time
+      model.createResource("http://example.com/" + i).addLiteral(RDF.value, i);
+    }
     subject = JenaEngine.create(model, Timeout.from(1, TimeUnit.MILLISECONDS), false);
-    final SparqlInvocation invocation = subject.prepare(CommandBuilder.empty().language(Language.SPARQL)
-            .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
+    final Invocation invocation = subject.prepare(CommandBuilder.empty().language(Language.SPARQL)
+            .single(JenaEngine.KEY_QUERY, "SELECT * WHERE { ?a ?b ?c . ?d ?e ?f } ORDER BY ?c ?f")
             .accept(MediaType.WILDCARD_TYPE).build()
     );
     error.expect(QueryCancelledException.class);
@@ -178,7 +307,7 @@ public class JenaEngineTest {
         .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
         .accept(MediaType.WILDCARD_TYPE)
         .owner(Identity.from("test-user", "test-token")).build();
-    final SparqlInvocation invocation = subject.prepare(params);
+    final SparqlInvocation invocation = (SparqlInvocation) subject.prepare(params);
     final Context context = invocation.query().getContext();
     // no username in VPH auth
     assertThat(context.getAsString(JenaEngine.CONTEXT_AUTH_USERNAME), is(""));
@@ -191,7 +320,7 @@ public class JenaEngineTest {
         .single(JenaEngine.KEY_QUERY, WILDCARD_QUERY)
         .accept(MediaType.WILDCARD_TYPE)
         .owner(Identity.undefined()).build();
-    final SparqlInvocation invocation = subject.prepare(params);
+    final SparqlInvocation invocation = (SparqlInvocation) subject.prepare(params);
     final Context context = invocation.query().getContext();
     assertThat(context.getAsString(JenaEngine.CONTEXT_AUTH_USERNAME), is(nullValue()));
     assertThat(context.getAsString(JenaEngine.CONTEXT_AUTH_PASSWORD), is(nullValue()));
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.google.common.base.Charsets;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.junit.Before;
+import org.junit.Test;
+import org.openjena.atlas.lib.Sink;
+import org.openjena.riot.Lang;
+import org.openjena.riot.RiotLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LineBasedRdfWriterTest {
+  private static final Pattern BLANK_NODE_LABEL = Pattern.compile("_:\\S+");
+
+  private Model model;
+
+  @Before
+  public void setUp() throws Exception {
+    model = ModelFactory.createDefaultModel();
+    final Resource shared = model.createResource();
+    shared.addProperty(RDFS.label, "shared");
+    shared.addLiteral(RDF.value, 42L);
+    final Resource other = model.createResource();
+    other.addProperty(RDFS.label, "other");
+    other.addProperty(RDFS.seeAlso, shared);
+    model.createResource("http://example.com/named").addProperty(RDFS.seeAlso, shared);
+  }
+
+  private Model parse(final String ntriples) {
+    final Model parsed = ModelFactory.createDefaultModel();
+    parsed.read(new ByteArrayInputStream(ntriples.getBytes(Charsets.UTF_8)), null, "N-TRIPLE");
+    return parsed;
+  }
+
+  /** collect the statements of all graphs */
+  private Model parseQuads(final String nquads) {
+    final Model parsed = ModelFactory.createDefaultModel();
+    final Sink<Triple> graph = RiotLoader.graphSink(parsed.getGraph());
+    RiotLoader.readQuads(new ByteArrayInputStream(nquads.getBytes(Charsets.UTF_8)), Lang.NQUADS, null,
+        new Sink<Quad>() {
+          @Override
+          public void send(final Quad item) {
+            graph.send(item.asTriple());
+          }
+
+          @Override
+          public void flush() {
+            graph.flush();
+          }
+
+          @Override
+          public void close() {
+            graph.close();
+          }
+        });
+    return parsed;
+  }
+
+  private Set<String> blankNodeLabelsIn(final String serialized) {
+    final Set<String> labels = new HashSet<>();
+    final Matcher matcher = BLANK_NODE_LABEL.matcher(serialized);
+    while (matcher.find()) {
+      labels.add(matcher.group());
+    }
+    return labels;
+  }
+
+  @Test
+  public void should_keep_shared_blank_node_when_writing_to_stream() throws Exception {
+    final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    LineBasedRdfWriter.triples().write(model, sink, null);
+    assertThat(parse(sink.toString("UTF-8")).isIsomorphicWith(model), is(true));
+  }
+
+  @Test
+  public void should_keep_shared_blank_node_when_writing_to_writer() throws Exception {
+    final StringWriter sink = new StringWriter();
+    LineBasedRdfWriter.triples().write(model, sink, null);
+    assertThat(blankNodeLabelsIn(sink.toString()), hasSize(2));
+    assertThat(parse(sink.toString()).isIsomorphicWith(model), is(true));
+  }
+
+  @Test
+  public void should_keep_shared_blank_node_when_writing_quads_to_writer() throws Exception {
+    final StringWriter sink = new StringWriter();
+    LineBasedRdfWriter.quads().write(model, sink, null);
+    assertThat(blankNodeLabelsIn(sink.toString()), hasSize(2));
+    assertThat(parseQuads(sink.toString()).isIsomorphicWith(model), is(true));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QueryParseException;
+import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.expr.E_Bound;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.syntax.ElementFilter;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Enclosed.class)
+public class QueryCacheTest {
+
+  public static class Caching {
+    @Rule
+    public ExpectedException error = ExpectedException.none();
+
+    private final QueryCache subject = QueryCache.create(2);
+    private final PrefixMapping prefixes = PrefixMapping.Factory.create();
+
+    @Test
+    public void should_yield_a_new_copy_on_each_lookup() throws Exception {
+      final Query first = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      final Query second = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      assertThat(first, is(not(sameInstance(second))));
+      assertThat(first, is(equalTo(second)));
+      assertThat(subject.size(), is(1L));
+    }
+
+    @Test
+    public void copies_should_be_independent() throws Exception {
+      final Query first = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      first.setLimit(10);
+      first.setPrefix("ex", "http://example.com/");
+      final Query second = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      assertThat(second.hasLimit(), is(false));
+      assertThat(second.getPrefix("ex"), is((String) null));
+    }
+
+    @Test
+    public void should_distinguish_default_prefixes() throws Exception {
+      final Query before = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      prefixes.setNsPrefix("ex", "http://example.com/");
+      final Query after = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      assertThat(before.getPrefix("ex"), is((String) null));
+      assertThat(after.getPrefix("ex"), is("http://example.com/"));
+      assertThat(subject.size(), is(2L));
+    }
+
+    @Test
+    public void should_evict_if_size_exceeded() throws Exception {
+      subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      subject.parse("ASK { ?s ?p ?o }", prefixes);
+      subject.parse("DESCRIBE <http://example.com/>", prefixes);
+      assertThat(subject.size(), is(2L));
+    }
+
+    @Test
+    public void should_retain_formatted_query() throws Exception {
+      final Query query = subject.parse("SELECT   *\n{ ?s ?p ?o }", prefixes);
+      assertThat(QueryCache.formatted(query), is(SparqlInvocation.format(query)));
+    }
+
+    @Test
+    public void should_format_again_if_copy_modified() throws Exception {
+      final Query query = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      QueryCache.formatted(query);
+      query.setLimit(10);
+      assertThat(QueryCache.formatted(query), containsString("LIMIT"));
+      assertThat(QueryCache.formatted(query), is(SparqlInvocation.format(query)));
+    }
+
+    @Test
+    public void should_format_again_if_shared_pattern_modified_in_place() throws Exception {
+      final Query query = subject.parse("SELECT * { ?s ?p ?o }", prefixes);
+      ((ElementGroup) query.getQueryPattern()).addElementFilter(
+          new ElementFilter(new E_Bound(new ExprVar("s"))));
+      assertThat(QueryCache.formatted(query), containsString("bound"));
+      assertThat(QueryCache.formatted(query), is(SparqlInvocation.format(query)));
+    }
+
+    @Test
+    public void should_reject_illegal_query() throws Exception {
+      error.expect(QueryParseException.class);
+      subject.parse("SELECT * FROM WHERE", prefixes);
+    }
+  }
+
+  @RunWith(Parameterized.class)
+  public static class Copying {
+    @Parameterized.Parameters(name = "{0}")
+    public static Iterable<Object[]> queries() {
+      return Arrays.asList(new Object[][] {
+          {"SELECT * WHERE { ?s ?p ?o }"}
+          , {"PREFIX ex: <http://example.com/> SELECT DISTINCT ?s (str(?o) AS ?label) WHERE { ?s ex:p ?o } ORDER BY DESC(?label) LIMIT 10 OFFSET 5"}
+          , {"SELECT REDUCED ?s WHERE { ?s ?p ?o FILTER(?o > 1) OPTIONAL { ?o ?q ?x } }"}
+          , {"SELECT ?s (COUNT(?o) AS ?count) (MAX(?o) AS ?max) WHERE { ?s ?p ?o } GROUP BY ?s HAVING (COUNT(?o) > 2)"}
+          , {"SELECT ?s WHERE { ?s ?p ?o } VALUES ?s { <http://example.com/a> <http://example.com/b> }"}
+          , {"BASE <http://example.com/> SELECT * FROM <graph> FROM NAMED <named> WHERE { GRAPH ?g { ?s <p> ?o } }"}
+          , {"ASK { ?s ?p 'test' }"}
+          , {"CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }"}
+          , {"DESCRIBE <http://example.com/test>"}
+          , {"DESCRIBE ?s <http://example.com/test> WHERE { ?s ?p ?o }"}
+          , {"DESCRIBE * WHERE { ?s ?p ?o }"}
+      });
+    }
+
+    @Parameterized.Parameter(0)
+    public String sparql;
+
+    @Test
+    public void copy_should_equal_freshly_parsed_query() throws Exception {
+      final Query expected = QueryFactory.create(sparql, Syntax.syntaxARQ);
+      final Query copy = QueryCache.create(1).parse(sparql, PrefixMapping.Factory.create());
+      assertThat(copy, is(equalTo(expected)));
+      assertThat(copy.getResultVars(), is(equalTo(expected.getResultVars())));
+      assertThat(QueryCache.formatted(copy), is(SparqlInvocation.format(expected)));
+    }
+  }
+}
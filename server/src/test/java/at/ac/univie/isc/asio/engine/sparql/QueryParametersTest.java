@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class QueryParametersTest {
+  private static final Query QUERY = QueryFactory.create(
+      "PREFIX ex: <http://example.com/> SELECT ?name WHERE { ?person ex:name ?name ; ex:age ?age }");
+
+  @Rule
+  public ExpectedException error = ExpectedException.none();
+
+  private QueryParameters parse(final String... keyValues) {
+    final ImmutableListMultimap.Builder<String, String> properties = ImmutableListMultimap.builder();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      properties.put(keyValues[i], keyValues[i + 1]);
+    }
+    return QueryParameters.from(properties.build(), QUERY);
+  }
+
+  @Test
+  public void should_ignore_non_parameter_properties() throws Exception {
+    final QueryParameters result = parse("query", "ignored", "format", "csv");
+    assertThat(result, is(sameInstance(QueryParameters.none())));
+  }
+
+  @Test
+  public void should_parse_iri() throws Exception {
+    final QueryParameters result = parse("$person", "<http://example.com/alice>");
+    assertThat(result.bindings(), hasEntry("person", Node.createURI("http://example.com/alice")));
+  }
+
+  @Test
+  public void should_expand_prefixed_name_using_query_prefixes() throws Exception {
+    final QueryParameters result = parse("$person", "ex:alice");
+    assertThat(result.bindings(), hasEntry("person", Node.createURI("http://example.com/alice")));
+  }
+
+  @Test
+  public void should_parse_typed_literals() throws Exception {
+    final QueryParameters result = parse("$age", "42", "$name", "\"alice\"@en");
+    assertThat(result.bindings(), hasEntry("age", Node.createLiteral("42", null, XSDDatatype.XSDinteger)));
+    assertThat(result.bindings(), hasEntry("name", Node.createLiteral("alice", "en", false)));
+  }
+
+  @Test
+  public void should_convert_to_query_solution() throws Exception {
+    final QueryParameters result = parse("$person", "<http://example.com/alice>");
+    assertThat(result.asSolution().getResource("person").getURI(), is("http://example.com/alice"));
+  }
+
+  @Test
+  public void should_reject_unknown_variable() throws Exception {
+    error.expect(QueryParameters.IllegalParameter.class);
+    parse("$unknown", "<http://example.com/alice>");
+  }
+
+  @Test
+  public void should_reject_multiple_values() throws Exception {
+    error.expect(QueryParameters.IllegalParameter.class);
+    parse("$person", "<http://example.com/alice>", "$person", "<http://example.com/bob>");
+  }
+
+  @Test
+  public void should_reject_malformed_term() throws Exception {
+    error.expect(QueryParameters.IllegalParameter.class);
+    parse("$person", "<http://example.com/alice");
+  }
+
+  @Test
+  public void should_reject_variable_as_value() throws Exception {
+    error.expect(QueryParameters.IllegalParameter.class);
+    parse("$person", "?other");
+  }
+
+  @Test
+  public void should_reject_unknown_prefix() throws Exception {
+    error.expect(QueryParameters.IllegalParameter.class);
+    parse("$person", "unknown:alice");
+  }
+}
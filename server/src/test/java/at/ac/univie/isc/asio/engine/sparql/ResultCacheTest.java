@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.engine.Command;
+import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDF;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ResultCacheTest {
+  public static final MediaType CSV_TYPE = MediaType.valueOf("text/csv");
+  public static final String QUERY = "SELECT ?val WHERE { [] ?_ ?val }";
+
+  private Model model;
+  private ResultCache cache;
+  private JenaEngine engine;
+
+  @Before
+  public void setUp() throws Exception {
+    model = ModelFactory.createDefaultModel();
+    model.createResource("http://example.com/test").addProperty(RDF.value, "first");
+    cache = ResultCache.create(1024 * 1024, Timeout.from(1, TimeUnit.MINUTES));
+    engine = JenaEngine.create(model, Timeout.undefined(), true);
+    engine.setResultCache(cache);
+  }
+
+  private Command query(final String sparql, final MediaType format) {
+    return CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, sparql).accept(format).build();
+  }
+
+  private String execute(final Command command) throws IOException {
+    try (final Invocation invocation = engine.prepare(command)) {
+      invocation.execute();
+      final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      invocation.write(sink);
+      return new String(sink.toByteArray(), Charsets.UTF_8);
+    }
+  }
+
+  private void modifyDataset() {
+    model.removeAll();
+    model.createResource("http://example.com/test").addProperty(RDF.value, "second");
+  }
+
+  @Test
+  public void should_replay_cached_results() throws Exception {
+    execute(query(QUERY, CSV_TYPE));
+    modifyDataset();
+    assertThat(execute(query(QUERY, CSV_TYPE)), containsString("first"));
+  }
+
+  @Test
+  public void should_not_touch_dataset_on_cache_hit() throws Exception {
+    execute(query(QUERY, CSV_TYPE));
+    try (final Invocation invocation = engine.prepare(query(QUERY, CSV_TYPE))) {
+      assertThat(invocation, not(instanceOf(SparqlInvocation.class)));
+      assertThat(invocation.properties().get("cache").toString(), containsString("hit"));
+    }
+  }
+
+  @Test
+  public void should_tag_replayed_results_with_hash_of_format_and_content() throws Exception {
+    final String results = execute(query(QUERY, CSV_TYPE));
+    try (final Invocation invocation = engine.prepare(query(QUERY, CSV_TYPE))) {
+      assertThat(invocation.properties().get(Invocation.RESULTS_TAG),
+          contains(Hashing.sha1().newHasher().putString(CSV_TYPE.toString(), Charsets.UTF_8)
+              .putString(results, Charsets.UTF_8).hash().toString()));
+    }
+  }
+
+  @Test
+  public void should_ignore_formatting_and_prefix_declarations() throws Exception {
+    execute(query(QUERY, CSV_TYPE));
+    modifyDataset();
+    final String reformatted = "PREFIX ex: <http://example.com/>\nSELECT ?val\nWHERE {\n  [] ?_ ?val .\n}";
+    assertThat(execute(query(reformatted, CSV_TYPE)), containsString("first"));
+  }
+
+  @Test
+  public void should_separate_result_formats() throws Exception {
+    execute(query(QUERY, CSV_TYPE));
+    modifyDataset();
+    assertThat(execute(query(QUERY, MediaType.APPLICATION_XML_TYPE)), containsString("second"));
+  }
+
+  @Test
+  public void should_execute_again_after_invalidation() throws Exception {
+    execute(query(QUERY, CSV_TYPE));
+    modifyDataset();
+    cache.invalidate();
+    assertThat(execute(query(QUERY, CSV_TYPE)), containsString("second"));
+  }
+
+  @Test
+  public void should_invalidate_when_engine_closed() throws Exception {
+    execute(query(QUERY, CSV_TYPE));
+    engine.close();
+    assertThat(cache.size(), is(0L));
+  }
+
+  @Test
+  public void should_not_retain_results_exceeding_size_limit() throws Exception {
+    cache = ResultCache.create(16, Timeout.from(1, TimeUnit.MINUTES));
+    engine.setResultCache(cache);
+    final String result = execute(query(QUERY, CSV_TYPE));
+    assertThat(result, containsString("first"));
+    assertThat(cache.size(), is(0L));
+  }
+
+  @Test
+  public void should_retain_results_up_to_total_size_limit() throws Exception {
+    final int weight = ResultCache.keyOf(QueryFactory.create(QUERY), CSV_TYPE).length()
+        + execute(query(QUERY, CSV_TYPE)).getBytes(Charsets.UTF_8).length;
+    cache = ResultCache.create(2 * weight, Timeout.from(1, TimeUnit.MINUTES));
+    engine.setResultCache(cache);
+    execute(query(QUERY, CSV_TYPE));
+    assertThat(cache.size(), is(1L));
+  }
+
+  @Test
+  public void should_not_retain_results_computed_before_invalidation() throws Exception {
+    try (final Invocation invocation = engine.prepare(query(QUERY, CSV_TYPE))) {
+      invocation.execute();
+      modifyDataset();
+      cache.invalidate();
+      invocation.write(new ByteArrayOutputStream());
+    }
+    assertThat(cache.size(), is(0L));
+    assertThat(execute(query(QUERY, CSV_TYPE)), containsString("second"));
+  }
+
+  @Test
+  public void should_not_cache_federated_queries() throws Exception {
+    final String federated = "SELECT * WHERE { SERVICE <http://example.com> { ?s ?p ?o } }";
+    try (final Invocation invocation = engine.prepare(query(federated, CSV_TYPE))) {
+      assertThat(invocation, instanceOf(SparqlInvocation.class));
+    }
+  }
+
+  @Test
+  public void should_bypass_disabled_cache() throws Exception {
+    engine.setResultCache(ResultCache.disabled());
+    try (final Invocation invocation = engine.prepare(query(QUERY, CSV_TYPE))) {
+      assertThat(invocation, instanceOf(SparqlInvocation.class));
+    }
+  }
+
+  @Test
+  public void key_should_differ_for_different_projections() throws Exception {
+    final String one = ResultCache.keyOf(QueryFactory.create("SELECT ?s WHERE { ?s ?p ?o }"), CSV_TYPE);
+    final String other = ResultCache.keyOf(QueryFactory.create("SELECT ?o WHERE { ?s ?p ?o }"), CSV_TYPE);
+    assertThat(one, not(other));
+  }
+
+  @Test
+  public void should_not_replay_results_of_query_with_other_parameters() throws Exception {
+    model.createResource("http://example.com/other").addProperty(RDF.value, "other");
+    final String sparql = "SELECT ?val WHERE { ?s ?_ ?val }";
+    final String first = execute(CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, sparql).single("$s", "<http://example.com/test>")
+        .accept(CSV_TYPE).build());
+    final String second = execute(CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, sparql).single("$s", "<http://example.com/other>")
+        .accept(CSV_TYPE).build());
+    assertThat(first, containsString("first"));
+    assertThat(second, containsString("other"));
+    assertThat(second, not(containsString("first")));
+  }
+}
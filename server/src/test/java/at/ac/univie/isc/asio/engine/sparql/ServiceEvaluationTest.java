@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.engine.Command;
+import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.sql.ConvertToTable;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.collect.Table;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.op.OpService;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.Rename;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.util.Context;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+public class ServiceEvaluationTest {
+  public static final String NS = "http://example.com/";
+
+  private final Map<String, Model> remotes = new HashMap<>();
+  private final List<String> calls = new CopyOnWriteArrayList<>();
+  private final ExecutorService pool = Executors.newFixedThreadPool(2);
+  private CountDownLatch rendezvous = new CountDownLatch(0);
+
+  private final ServiceEvaluation.Endpoint fake = new ServiceEvaluation.Endpoint() {
+    @Override
+    public QueryIterator call(final OpService service, final Context context) {
+      calls.add(service.toString());
+      rendezvous.countDown();
+      try {
+        if (!rendezvous.await(5, TimeUnit.SECONDS)) {
+          throw new AssertionError("remote calls not concurrent");
+        }
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      final Model remote = remotes.get(service.getService().getURI());
+      if (remote == null) {
+        throw new QueryExecException("unknown service " + service.getService());
+      }
+      return Algebra.exec(Rename.reverseVarRename(service.getSubOp(), true), remote);
+    }
+  };
+
+  private JenaEngine engine;
+
+  @Before
+  public void setUp() throws Exception {
+    final Model people = ModelFactory.createDefaultModel();
+    final Property knows = people.createProperty(NS, "knows");
+    for (int i = 0; i < 5; i++) {
+      people.createResource(NS + "person" + i).addProperty(knows, people.createResource(NS + "friend" + i));
+    }
+    remotes.put(NS + "people", people);
+    final Model names = ModelFactory.createDefaultModel();
+    final Property name = names.createProperty(NS, "name");
+    for (int i = 0; i < 10; i++) {
+      names.createResource(NS + "friend" + i).addProperty(name, "name-" + i);
+    }
+    remotes.put(NS + "names", names);
+    final Model tags = ModelFactory.createDefaultModel();
+    final Resource tag = tags.createResource(NS + "tag");
+    tags.createResource(NS + "thing").addProperty(tags.createProperty(NS, "tagged"), tag);
+    remotes.put(NS + "tags", tags);
+    engine = JenaEngine.create(ModelFactory.createDefaultModel(), Timeout.undefined(), true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    engine.close();
+    pool.shutdownNow();
+  }
+
+  private void use(final int batchSize, final Timeout cacheTtl) {
+    engine.setServiceEvaluation(new ServiceEvaluation(fake, pool, batchSize, 100, cacheTtl));
+  }
+
+  private Table<Integer, String, String> execute(final String sparql) throws Exception {
+    final Command command = CommandBuilder.empty().language(Language.SPARQL)
+        .single(JenaEngine.KEY_QUERY, sparql).accept(MediaType.valueOf("text/csv")).build();
+    try (final Invocation invocation = engine.prepare(command)) {
+      invocation.execute();
+      final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      invocation.write(sink);
+      return ConvertToTable.fromCsv(new ByteArrayInputStream(sink.toByteArray()));
+    }
+  }
+
+  @Test
+  public void should_join_dependent_services_in_batches() throws Exception {
+    use(2, Timeout.undefined());
+    final Table<Integer, String, String> result = execute("PREFIX : <" + NS + "> SELECT ?person ?name WHERE { "
+        + "SERVICE <" + NS + "people> { ?person :knows ?friend } "
+        + "SERVICE <" + NS + "names> { ?friend :name ?name } }");
+    assertThat(result.rowKeySet(), hasSize(5));
+    assertThat(result.column("name").values(), everyItem(containsString("name-")));
+    assertThat(calls, hasSize(1 + 3));
+  }
+
+  @Test
+  public void should_call_independent_services_concurrently() throws Exception {
+    use(2, Timeout.undefined());
+    rendezvous = new CountDownLatch(2);
+    final Table<Integer, String, String> result = execute("PREFIX : <" + NS + "> SELECT * WHERE { "
+        + "SERVICE <" + NS + "people> { ?person :knows ?friend } "
+        + "SERVICE <" + NS + "tags> { ?thing :tagged ?tag } }");
+    assertThat(result.rowKeySet(), hasSize(5));
+    assertThat(calls, hasSize(2));
+  }
+
+  @Test
+  public void should_reuse_cached_remote_results() throws Exception {
+    use(2, Timeout.from(1, TimeUnit.MINUTES));
+    final String query = "PREFIX : <" + NS + "> SELECT * WHERE { SERVICE <" + NS + "tags> { ?thing :tagged ?tag } }";
+    execute(query);
+    final Table<Integer, String, String> result = execute(query);
+    assertThat(result.rowKeySet(), hasSize(1));
+    assertThat(calls, hasSize(1));
+  }
+
+  @Test
+  public void should_call_remote_each_time_if_caching_disabled() throws Exception {
+    use(2, Timeout.undefined());
+    final String query = "PREFIX : <" + NS + "> SELECT * WHERE { SERVICE <" + NS + "tags> { ?thing :tagged ?tag } }";
+    execute(query);
+    execute(query);
+    assertThat(calls, hasSize(2));
+  }
+
+  @Test
+  public void should_yield_empty_solution_if_silent_service_fails() throws Exception {
+    use(2, Timeout.undefined());
+    final Table<Integer, String, String> result = execute("PREFIX : <" + NS + "> SELECT * WHERE { "
+        + "SERVICE <" + NS + "tags> { ?thing :tagged ?tag } "
+        + "SERVICE SILENT <" + NS + "missing> { ?thing :label ?label } }");
+    assertThat(result.rowKeySet(), hasSize(1));
+  }
+
+  @Test
+  public void should_ship_bound_values_inline() throws Exception {
+    use(10, Timeout.undefined());
+    execute("PREFIX : <" + NS + "> SELECT ?person ?name WHERE { "
+        + "SERVICE <" + NS + "people> { ?person :knows ?friend } "
+        + "SERVICE <" + NS + "names> { ?friend :name ?name } }");
+    assertThat(calls, hasSize(2));
+    assertThat(calls.get(1), containsString("table"));
+    assertThat(calls.get(0), not(containsString("table")));
+  }
+
+  @Test
+  public void should_not_install_executor_if_sequential() throws Exception {
+    final Context context = new Context();
+    ServiceEvaluation.sequential().applyTo(context);
+    assertThat(QC.getFactory(context), is(nullValue()));
+  }
+}
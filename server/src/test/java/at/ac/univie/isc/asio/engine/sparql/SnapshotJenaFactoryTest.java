@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Supplier;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.vocabulary.RDF;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import rx.functions.Action0;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SnapshotJenaFactoryTest {
+  private static final String VALUE_QUERY = "SELECT ?val WHERE { <http://example.com/test> ?_ ?val }";
+
+  @Rule
+  public ExpectedException error = ExpectedException.none();
+
+  private final Model source = ModelFactory.createDefaultModel();
+  private final CopySource copy = new CopySource();
+  private SnapshotJenaFactory subject;
+
+  @Before
+  public void setUp() throws Exception {
+    source.createResource("http://example.com/test").addProperty(RDF.value, "first");
+    subject = SnapshotJenaFactory.load(copy, PrefixMapping.Standard, Timeout.undefined());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    subject.close();
+  }
+
+  private String currentValue() {
+    final Query query = subject.parse(VALUE_QUERY);
+    final QueryExecution execution = subject.execution(query, null);
+    try {
+      return execution.execSelect().next().getLiteral("val").getString();
+    } finally {
+      execution.close();
+    }
+  }
+
+  private void modifySource() {
+    source.removeAll();
+    source.createResource("http://example.com/test").addProperty(RDF.value, "second");
+  }
+
+  @Test
+  public void should_serve_materialized_source() throws Exception {
+    assertThat(currentValue(), is("first"));
+    assertThat(subject.size(), is(1L));
+  }
+
+  @Test
+  public void should_not_see_source_modifications_before_refresh() throws Exception {
+    modifySource();
+    assertThat(currentValue(), is("first"));
+  }
+
+  @Test
+  public void should_see_source_modifications_after_refresh() throws Exception {
+    modifySource();
+    subject.refresh();
+    assertThat(currentValue(), is("second"));
+  }
+
+  @Test
+  public void should_close_source_view_after_materializing() throws Exception {
+    assertThat(copy.last.isClosed(), is(true));
+  }
+
+  @Test
+  public void should_notify_listener_after_refresh() throws Exception {
+    final AtomicInteger calls = new AtomicInteger(0);
+    subject.setRefreshListener(new Action0() {
+      @Override
+      public void call() {
+        calls.incrementAndGet();
+      }
+    });
+    subject.refresh();
+    assertThat(calls.get(), is(1));
+  }
+
+  @Test
+  public void should_keep_current_snapshot_if_refresh_fails() throws Exception {
+    copy.failing = true;
+    try {
+      subject.refresh();
+    } catch (final IllegalStateException ignored) {}
+    assertThat(currentValue(), is("first"));
+  }
+
+  @Test
+  public void should_refresh_in_background_on_request() throws Exception {
+    final CountDownLatch refreshed = new CountDownLatch(1);
+    subject.setRefreshListener(new Action0() {
+      @Override
+      public void call() {
+        refreshed.countDown();
+      }
+    });
+    modifySource();
+    subject.requestRefresh();
+    assertThat(refreshed.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(currentValue(), is("second"));
+  }
+
+  @Test
+  public void should_fail_fast_if_initial_snapshot_cannot_be_created() throws Exception {
+    copy.failing = true;
+    error.expect(IllegalStateException.class);
+    SnapshotJenaFactory.load(copy, PrefixMapping.Standard, Timeout.undefined());
+  }
+
+  private class CopySource implements Supplier<Model> {
+    private volatile boolean failing = false;
+    private Model last;
+
+    @Override
+    public Model get() {
+      if (failing) {
+        throw new IllegalStateException("test");
+      }
+      last = ModelFactory.createDefaultModel().add(source);
+      return last;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import com.google.common.base.Charsets;
+import com.google.common.testing.FakeTicker;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class StreamingResultWriterTest {
+  private static final String QUERY =
+      "SELECT ?s ?label ?value WHERE { ?s ?p ?o OPTIONAL { ?s <" + RDFS.label + "> ?label } OPTIONAL { ?s <" + RDF.value + "> ?value } }";
+
+  @Rule
+  public ExpectedException error = ExpectedException.none();
+
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private final FakeTicker time = new FakeTicker();
+  private Model model;
+
+  @Before
+  public void setUp() throws Exception {
+    model = ModelFactory.createDefaultModel();
+    model.createResource("http://example.com/first")
+        .addProperty(RDFS.label, "a \"quoted\", <tagged> & multi\nline label", "en");
+    model.createResource("http://example.com/second").addLiteral(RDF.value, 42L);
+    model.createResource().addProperty(RDFS.label, "anonymous");
+  }
+
+  private ResultSetRewindable expected() {
+    final QueryExecution execution = QueryExecutionFactory.create(QUERY, model);
+    try {
+      return ResultSetFactory.copyResults(execution.execSelect());
+    } finally {
+      execution.close();
+    }
+  }
+
+  private byte[] serialize(final StreamingResultWriter writer, final OutputStream sink) {
+    final QueryExecution execution = QueryExecutionFactory.create(QUERY, model);
+    try {
+      writer.serialize(sink, execution.execSelect(), cancelled);
+    } finally {
+      execution.close();
+    }
+    return sink instanceof ByteArrayOutputStream ? ((ByteArrayOutputStream) sink).toByteArray() : null;
+  }
+
+  private byte[] serialize(final StreamingResultWriter writer) {
+    return serialize(writer, new ByteArrayOutputStream());
+  }
+
+  @Test
+  public void xml_results_are_equivalent_to_jena_results() throws Exception {
+    final byte[] raw = serialize(StreamingResultWriter.xml());
+    final ResultSet parsed = ResultSetFactory.fromXML(new ByteArrayInputStream(raw));
+    assertThat(ResultSetCompare.equalsByTerm(expected(), ResultSetFactory.copyResults(parsed)), is(true));
+  }
+
+  @Test
+  public void json_results_are_equivalent_to_jena_results() throws Exception {
+    final byte[] raw = serialize(StreamingResultWriter.json());
+    final ResultSet parsed = ResultSetFactory.fromJSON(new ByteArrayInputStream(raw));
+    assertThat(ResultSetCompare.equalsByTerm(expected(), ResultSetFactory.copyResults(parsed)), is(true));
+  }
+
+  @Test
+  public void tsv_results_are_equivalent_to_jena_results() throws Exception {
+    final byte[] raw = serialize(StreamingResultWriter.tsv());
+    final ResultSet parsed = ResultSetFactory.fromTSV(new ByteArrayInputStream(raw));
+    assertThat(ResultSetCompare.equalsByTerm(expected(), ResultSetFactory.copyResults(parsed)), is(true));
+  }
+
+  @Test
+  public void csv_results_quote_special_characters() throws Exception {
+    final String csv = new String(serialize(StreamingResultWriter.csv()), Charsets.UTF_8);
+    assertThat(csv, containsString("s,label,value\r\n"));
+    assertThat(csv, containsString("http://example.com/first,\"a \"\"quoted\"\", <tagged> & multi\nline label\",\r\n"));
+    assertThat(csv, containsString("http://example.com/second,,42\r\n"));
+    assertThat(csv, containsString("_:b0,anonymous,\r\n"));
+  }
+
+  @Test
+  public void should_flush_after_first_row() throws Exception {
+    final RecordingSink sink = new RecordingSink();
+    serialize(new StreamingResultWriter.Csv(time, 1024 * 1024, 1000), sink);
+    assertThat(sink.flushes, hasSize(2));
+    assertThat(sink.flushes.get(0), containsString("s,label,value\r\n"));
+    assertThat(sink.flushes.get(1), not(containsString("s,label,value")));
+  }
+
+  @Test
+  public void should_flush_if_buffer_exceeds_threshold() throws Exception {
+    final RecordingSink sink = new RecordingSink();
+    serialize(new StreamingResultWriter.Csv(time, 1, 1000), sink);
+    // first row, each following row and the footer
+    assertThat(sink.flushes, hasSize(3 + 1));
+  }
+
+  @Test
+  public void should_flush_if_delay_exceeded() throws Exception {
+    final RecordingSink sink = new RecordingSink() {
+      @Override
+      public void flush() throws IOException {
+        super.flush();
+        time.advance(1, TimeUnit.SECONDS);
+      }
+    };
+    serialize(new StreamingResultWriter.Csv(time, 1024 * 1024, 500), sink);
+    assertThat(sink.flushes, hasSize(3 + 1));
+  }
+
+  @Test
+  public void should_stop_writing_when_cancelled() throws Exception {
+    final RecordingSink sink = new RecordingSink() {
+      @Override
+      public void flush() throws IOException {
+        super.flush();
+        cancelled.set(true);
+      }
+    };
+    try {
+      serialize(StreamingResultWriter.csv(), sink);
+    } catch (final QueryCancelledException expected) {
+      assertThat(sink.flushes, hasSize(1));
+      return;
+    }
+    throw new AssertionError("not cancelled");
+  }
+
+  @Test
+  public void should_write_nothing_but_header_when_cancelled_before_first_row() throws Exception {
+    cancelled.set(true);
+    error.expect(QueryCancelledException.class);
+    serialize(StreamingResultWriter.csv());
+  }
+
+  private static class RecordingSink extends ByteArrayOutputStream {
+    final List<String> flushes = new ArrayList<>();
+    private int flushedUpTo = 0;
+
+    @Override
+    public void flush() throws IOException {
+      final String all = new String(toByteArray(), Charsets.UTF_8);
+      flushes.add(all.substring(flushedUpTo));
+      flushedUpTo = all.length();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.d2rq.D2rqConfigModel;
+import at.ac.univie.isc.asio.d2rq.D2rqModelSource;
+import at.ac.univie.isc.asio.database.Jdbc;
+import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.sql.Database;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Charsets;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Answer text filters from the index, when the query is evaluated by d2rq.
+ */
+public class TextIndexD2rqTest {
+  private static final String URL = "jdbc:h2:mem:text-index;DB_CLOSE_DELAY=-1";
+  private static final String MAPPING = "@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+      "@prefix ex: <http://example.com/> .\n" +
+      "ex:database a d2rq:Database ;\n" +
+      "  d2rq:jdbcDSN \"" + URL + "\" .\n" +
+      "ex:patient a d2rq:ClassMap ;\n" +
+      "  d2rq:dataStorage ex:database ;\n" +
+      "  d2rq:uriPattern \"http://example.com/patient/@@PUBLIC.PATIENT.ID@@\" ;\n" +
+      "  d2rq:class ex:Patient .\n" +
+      "ex:patient_diagnosis a d2rq:PropertyBridge ;\n" +
+      "  d2rq:belongsToClassMap ex:patient ;\n" +
+      "  d2rq:property ex:diagnosis ;\n" +
+      "  d2rq:column \"PUBLIC.PATIENT.DIAGNOSIS\" .\n";
+  private static final String QUERY = "PREFIX ex: <http://example.com/> "
+      + "SELECT ?s WHERE { ?s ex:diagnosis ?text FILTER regex(?text, \"heart\", \"i\") } ORDER BY ?s";
+
+  private Database db;
+  private Model model;
+  private TextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    db = Database.create(URL).build()
+        .execute("DROP ALL OBJECTS")
+        .execute("CREATE TABLE PATIENT (ID INT PRIMARY KEY, DIAGNOSIS VARCHAR(255))")
+        .execute("INSERT INTO PATIENT VALUES (1, 'Heart disease'), (2, 'Lung cancer')");
+    final Model mapping = ModelFactory.createDefaultModel();
+    mapping.read(new StringReader(MAPPING), null, "TURTLE");
+    final D2rqModelSource source =
+        D2rqModelSource.create(D2rqConfigModel.wrap(mapping), new Jdbc().setUrl(URL));
+    model = source.get();
+    index = TextIndex.load(source,
+        Collections.singleton("http://example.com/diagnosis"), Timeout.undefined());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+    model.close();
+  }
+
+  private String execute(final JenaEngine engine) throws Exception {
+    try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+        .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, QUERY)
+        .accept(MediaType.valueOf("text/csv")).build())) {
+      invocation.execute();
+      final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      invocation.write(sink);
+      return new String(sink.toByteArray(), Charsets.UTF_8);
+    }
+  }
+
+  private JenaEngine indexedEngine() {
+    final JenaEngine engine = JenaEngine.create(model, Timeout.undefined(), false);
+    engine.setTextIndex(index);
+    return engine;
+  }
+
+  @Test
+  public void rewritten_filter_should_yield_original_results() throws Exception {
+    final String expected = execute(JenaEngine.create(model, Timeout.undefined(), false));
+    assertThat(expected, containsString("http://example.com/patient/1"));
+    assertThat(execute(indexedEngine()), equalTo(expected));
+  }
+
+  @Test
+  public void should_answer_filter_from_index() throws Exception {
+    db.execute("INSERT INTO PATIENT VALUES (3, 'heartbeat irregular')");
+    final String result = execute(indexedEngine());
+    assertThat("stale index used", result, not(containsString("http://example.com/patient/3")));
+  }
+
+  @Test
+  public void should_evaluate_filter_in_database_after_refresh_request() throws Exception {
+    db.execute("INSERT INTO PATIENT VALUES (3, 'heartbeat irregular')");
+    index.requestRefresh();
+    final String result = execute(indexedEngine());
+    assertThat(result, containsString("http://example.com/patient/3"));
+  }
+}
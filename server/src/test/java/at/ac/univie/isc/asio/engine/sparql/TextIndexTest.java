@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.engine.sparql;
+
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.TestTicker;
+import at.ac.univie.isc.asio.engine.CommandBuilder;
+import at.ac.univie.isc.asio.engine.Invocation;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TextIndexTest {
+  public static final MediaType CSV_TYPE = MediaType.valueOf("text/csv");
+  private static final Set<Node> INDEXED = ImmutableSet.of(RDFS.label.asNode());
+
+  private final TestTicker time = TestTicker.create(0);
+  private Model model;
+  private TextIndex index;
+  /** fail background refreshes to keep an outdated index */
+  private volatile boolean unavailable = false;
+
+  @Before
+  public void setUp() throws Exception {
+    model = ModelFactory.createDefaultModel();
+    model.createResource("http://example.com/one").addProperty(RDFS.label, "Heart disease");
+    model.createResource("http://example.com/two").addProperty(RDFS.label, "Sweetheart, darling");
+    model.createResource("http://example.com/three").addProperty(RDFS.label, "Lung cancer");
+    model.createResource("http://example.com/three").addProperty(RDFS.comment, "heart");
+    index = TextIndex.load(new Supplier<Model>() {
+      @Override
+      public Model get() {
+        if (unavailable) {
+          throw new IllegalStateException("source unavailable");
+        }
+        final Model copy = ModelFactory.createDefaultModel();
+        copy.add(model);
+        return copy;
+      }
+    }, Collections.singleton(RDFS.label.getURI()), Timeout.from(10, TimeUnit.NANOSECONDS), time);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  private String execute(final JenaEngine engine, final String sparql) throws Exception {
+    try (final Invocation invocation = engine.prepare(CommandBuilder.empty()
+        .language(Language.SPARQL).single(JenaEngine.KEY_QUERY, sparql).accept(CSV_TYPE).build())) {
+      invocation.execute();
+      final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      invocation.write(sink);
+      return new String(sink.toByteArray(), Charsets.UTF_8);
+    }
+  }
+
+  private JenaEngine indexedEngine() {
+    final JenaEngine engine = JenaEngine.create(model, Timeout.undefined(), false);
+    engine.setTextIndex(index);
+    return engine;
+  }
+
+  private OpFilter filterOf(final String sparql) {
+    final Op op = Algebra.compile(QueryFactory.create(sparql));
+    return (OpFilter) ((OpProject) op).getSubOp();
+  }
+
+  // === search ====================================================================================
+
+  @Test
+  public void should_split_text_into_lower_case_words() throws Exception {
+    assertThat(TextIndex.tokenize("Heart-disease, (acute)"),
+        contains("heart", "disease", "acute"));
+  }
+
+  @Test
+  public void should_find_literals_containing_search_word_case_insensitive() throws Exception {
+    final List<Triple> result = index.search("HEART", null);
+    assertThat(result, hasSize(2));
+  }
+
+  @Test
+  public void should_find_search_word_anywhere_within_indexed_words() throws Exception {
+    assertThat(index.search("eart", null), hasSize(2));
+    assertThat(index.search("sweet", null), hasSize(1));
+    assertThat(index.search("darling", null), hasSize(1));
+    assertThat(index.search("hearth", null), empty());
+  }
+
+  @Test
+  public void should_find_search_word_beyond_suffix_length_limit() throws Exception {
+    final String word = "pneumonoultramicroscopicsilicovolcanoconiosis";
+    model.createResource("http://example.com/four").addProperty(RDFS.label, word);
+    index.refresh();
+    assertThat(index.search("coniosis", null), hasSize(1));
+    assertThat(index.search(word, null), hasSize(1));
+  }
+
+  @Test
+  public void should_require_all_search_words() throws Exception {
+    final List<Triple> result = index.search("heart disease", RDFS.label.asNode());
+    assertThat(result, hasSize(1));
+    assertThat(result.get(0).getSubject().getURI(), containsString("one"));
+  }
+
+  @Test
+  public void should_only_index_selected_properties() throws Exception {
+    for (final Triple each : index.search("heart", null)) {
+      assertThat(each.getPredicate(), equalTo(RDFS.label.asNode()));
+    }
+    assertThat(index.search("heart", RDFS.comment.asNode()), empty());
+  }
+
+  @Test
+  public void should_not_match_text_without_words() throws Exception {
+    assertThat(index.search(" ,. ", null), empty());
+  }
+
+  @Test
+  public void should_include_changes_after_refresh() throws Exception {
+    model.createResource("http://example.com/four").addProperty(RDFS.label, "heartbeat");
+    assertThat(index.search("heart", null), hasSize(2));
+    index.refresh();
+    assertThat(index.search("heart", null), hasSize(3));
+  }
+
+  @Test
+  public void disabled_index_should_not_be_enabled() throws Exception {
+    assertThat(TextIndex.disabled().isEnabled(), is(false));
+    assertThat(TextIndex.disabled().isFresh(), is(false));
+  }
+
+  @Test
+  public void should_be_fresh_after_loading() throws Exception {
+    assertThat(index.isFresh(), is(true));
+  }
+
+  @Test
+  public void should_not_be_fresh_after_refresh_request() throws Exception {
+    unavailable = true;
+    index.requestRefresh();
+    assertThat(index.isFresh(), is(false));
+  }
+
+  @Test
+  public void should_not_be_fresh_if_older_than_max_age() throws Exception {
+    unavailable = true;
+    time.advance(10);
+    assertThat(index.isFresh(), is(false));
+  }
+
+  @Test
+  public void should_be_fresh_after_refreshing_expired_index() throws Exception {
+    time.advance(10);
+    index.refresh();
+    assertThat(index.isFresh(), is(true));
+  }
+
+  // === property function =========================================================================
+
+  @Test
+  public void should_search_with_property_function() throws Exception {
+    final String result = execute(indexedEngine(),
+        "PREFIX text: <" + TextIndex.NAMESPACE + "> SELECT ?s WHERE { ?s text:match \"heart\" }");
+    assertThat(result, containsString("http://example.com/one"));
+    assertThat(result, containsString("http://example.com/two"));
+    assertThat(result, not(containsString("http://example.com/three")));
+  }
+
+  @Test
+  public void should_bind_literal_and_restrict_property_in_property_function() throws Exception {
+    final String result = execute(indexedEngine(),
+        "PREFIX text: <" + TextIndex.NAMESPACE + "> PREFIX rdfs: <" + RDFS.getURI() + "> "
+            + "SELECT ?label WHERE { (?s ?label) text:match (\"disease\" rdfs:label) }");
+    assertThat(result, containsString("Heart disease"));
+    assertThat(result, not(containsString("Sweetheart")));
+  }
+
+  // === filter rewrite ============================================================================
+
+  @Test
+  public void should_rewrite_case_insensitive_regex_filter() throws Exception {
+    final OpFilter filter = filterOf("PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"heart\", \"i\") }");
+    final Op rewritten = TextFilterRewrite.rewrite(filter, INDEXED);
+    assertThat(rewritten, not(sameInstance((Op) filter)));
+    assertThat(rewritten.toString(), containsString(TextIndex.MATCH));
+  }
+
+  @Test
+  public void should_rewrite_contains_filter_on_lower_case_literal() throws Exception {
+    final OpFilter filter = filterOf("PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER contains(lcase(?label), \"heart\") }");
+    assertThat(TextFilterRewrite.rewrite(filter, INDEXED).toString(), containsString(TextIndex.MATCH));
+  }
+
+  @Test
+  public void should_not_rewrite_regex_with_special_characters() throws Exception {
+    final OpFilter filter = filterOf("PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"^heart\") }");
+    assertThat(TextFilterRewrite.rewrite(filter, INDEXED), sameInstance((Op) filter));
+  }
+
+  @Test
+  public void should_not_rewrite_filter_on_property_without_index() throws Exception {
+    final OpFilter filter = filterOf("PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:comment ?label FILTER regex(?label, \"heart\", \"i\") }");
+    assertThat(TextFilterRewrite.rewrite(filter, INDEXED), sameInstance((Op) filter));
+  }
+
+  @Test
+  public void should_rewrite_filter_when_optimizing_query_algebra() throws Exception {
+    final Op op = Algebra.compile(QueryFactory.create("PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"heart\", \"i\") }"));
+    final Context context = new Context();
+    index.applyTo(context);
+    assertThat(Algebra.optimize(op, context).toString(), containsString(TextIndex.MATCH));
+  }
+
+  @Test
+  public void rewritten_filter_should_yield_original_results() throws Exception {
+    final String query = "PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"heart\", \"i\") } ORDER BY ?s";
+    final String expected = execute(JenaEngine.create(model, Timeout.undefined(), false), query);
+    assertThat(execute(indexedEngine(), query), equalTo(expected));
+  }
+
+  @Test
+  public void should_apply_exact_filter_to_index_candidates() throws Exception {
+    final String result = execute(indexedEngine(), "PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER contains(?label, \"heart\") }");
+    assertThat(result, containsString("http://example.com/two"));
+    assertThat(result, not(containsString("http://example.com/one")));  // 'Heart' - case differs
+  }
+
+  @Test
+  public void should_answer_rewritten_filter_from_index() throws Exception {
+    model.createResource("http://example.com/four").addProperty(RDFS.label, "heartbeat");
+    final String result = execute(indexedEngine(), "PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"heart\", \"i\") }");
+    assertThat("stale index used", result, not(containsString("http://example.com/four")));
+  }
+
+  @Test
+  public void should_evaluate_filter_on_source_after_refresh_request() throws Exception {
+    model.createResource("http://example.com/four").addProperty(RDFS.label, "heartbeat");
+    unavailable = true;
+    index.requestRefresh();
+    final String result = execute(indexedEngine(), "PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"heart\", \"i\") }");
+    assertThat(result, containsString("http://example.com/four"));
+  }
+
+  @Test
+  public void should_evaluate_filter_on_source_if_index_expired() throws Exception {
+    model.createResource("http://example.com/four").addProperty(RDFS.label, "heartbeat");
+    unavailable = true;
+    time.advance(10);
+    final String result = execute(indexedEngine(), "PREFIX rdfs: <" + RDFS.getURI() + "> "
+        + "SELECT ?s WHERE { ?s rdfs:label ?label FILTER regex(?label, \"heart\", \"i\") }");
+    assertThat(result, containsString("http://example.com/four"));
+  }
+}
@@ -35,7 +35,9 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 import org.springframework.dao.DataAccessException;
+import rx.functions.Action0;
 
 import javax.sql.rowset.RowSetProvider;
 import javax.sql.rowset.WebRowSet;
@@ -194,6 +196,30 @@ public class JooqEngineTest {
     assertThat(result.get(0, "affected"), is("1"));
   }
 
+  @Test
+  public void ddl_update_notifies_schema_listener() throws Exception {
+    final Action0 listener = Mockito.mock(Action0.class);
+    subject.setSchemaListener(listener);
+    final Command params = CommandBuilder.empty().language(Language.SQL)
+        .single(JooqEngine.PARAM_UPDATE, "CREATE TABLE IF NOT EXISTS schema_change(id INT)")
+        .accept(CSV_TYPE)
+        .build();
+    performInvocationWith(params);
+    Mockito.verify(listener).call();
+  }
+
+  @Test
+  public void data_update_does_not_notify_schema_listener() throws Exception {
+    final Action0 listener = Mockito.mock(Action0.class);
+    subject.setSchemaListener(listener);
+    final Command params = CommandBuilder.empty().language(Language.SQL)
+        .single(JooqEngine.PARAM_UPDATE, REFERENCE_UPDATE)
+        .accept(CSV_TYPE)
+        .build();
+    performInvocationWith(params);
+    Mockito.verifyZeroInteractions(listener);
+  }
+
   private byte[] performInvocationWith(final Command params) throws IOException {
     try (final Invocation invocation = subject.prepare(params)) {
       invocation.execute();
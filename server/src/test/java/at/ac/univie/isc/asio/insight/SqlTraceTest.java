@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.insight;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class SqlTraceTest {
+  private final ExecutorService exec = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() throws Exception {
+    exec.shutdownNow();
+  }
+
+  @Test
+  public void should_record_statements_in_order() throws Exception {
+    final Sql.SqlEvent first = Sql.success("first");
+    final Sql.SqlEvent second = Sql.success("second");
+    try (final SqlTrace trace = SqlTrace.begin()) {
+      SqlTrace.record(first);
+      SqlTrace.record(second);
+      assertThat(trace.statements(), contains(first, second));
+    }
+  }
+
+  @Test
+  public void should_ignore_statements_if_no_trace_active() throws Exception {
+    final SqlTrace trace = SqlTrace.begin();
+    trace.close();
+    SqlTrace.record(Sql.success("ignored"));
+    assertThat(trace.statements(), empty());
+  }
+
+  @Test
+  public void should_record_in_innermost_trace_only() throws Exception {
+    final Sql.SqlEvent outer = Sql.success("outer");
+    final Sql.SqlEvent inner = Sql.success("inner");
+    try (final SqlTrace parent = SqlTrace.begin()) {
+      try (final SqlTrace child = SqlTrace.begin()) {
+        SqlTrace.record(inner);
+        assertThat(child.statements(), contains(inner));
+      }
+      SqlTrace.record(outer);
+      assertThat(parent.statements(), contains(outer));
+    }
+  }
+
+  @Test
+  public void should_not_record_statements_from_other_threads() throws Exception {
+    try (final SqlTrace trace = SqlTrace.begin()) {
+      exec.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          SqlTrace.record(Sql.success("foreign"));
+          return null;
+        }
+      }).get();
+      assertThat(trace.statements(), empty());
+    }
+  }
+}
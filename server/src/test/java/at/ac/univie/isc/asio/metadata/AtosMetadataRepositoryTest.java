@@ -209,6 +209,7 @@ public class AtosMetadataRepositoryTest {
     public void should_query_for_given_localid() throws Exception {
       http.with("/", exchanges);
       subject.findByLocalId("http://example.com/test-id").subscribe(subscriber);
+      subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
       final HttpExchange captured = exchanges.single();
       assertThat(captured.getRequestURI().getPath(), is("/metadata/facets/Dataset/localID"));
       assertThat(captured.getRequestURI().getQuery(), containsString("value=http://example.com/test-id"));
@@ -218,6 +219,7 @@ public class AtosMetadataRepositoryTest {
     public void should_send_GET_request() throws Exception {
       http.with("/", exchanges);
       subject.findByLocalId("http://example.com/test-id").subscribe(subscriber);
+      subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
       assertThat(exchanges.single().getRequestMethod(), is("GET"));
     }
 
@@ -225,6 +227,7 @@ public class AtosMetadataRepositoryTest {
     public void should_request_xml_response() throws Exception {
       http.with("/", exchanges);
       subject.findByLocalId("http://example.com/test-id").subscribe(subscriber);
+      subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
       assertThat(exchanges.single().getRequestHeaders(), hasEntry("Accept", Arrays.asList("application/xml")));
     }
 
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.metadata;
+
+import at.ac.univie.isc.asio.TestTicker;
+import at.ac.univie.isc.asio.tool.Timeout;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GuardedDescriptorServiceTest {
+  private static final URI ID = URI.create("urn:asio:test");
+
+  private final DescriptorService remote = Mockito.mock(DescriptorService.class);
+  private final TestTicker time = TestTicker.create(0);
+  private final TestScheduler scheduler = new TestScheduler();
+  private final GuardedDescriptorService subject = new GuardedDescriptorService(remote,
+      Timeout.from(100, TimeUnit.NANOSECONDS), 2, Timeout.from(1000, TimeUnit.NANOSECONDS),
+      time, scheduler);
+
+  private final SchemaDescriptor descriptor = SchemaDescriptor.empty("test").build();
+
+  @Before
+  public void remoteFails() {
+    when(remote.metadata(any(URI.class)))
+        .thenReturn(Observable.<SchemaDescriptor>error(new IllegalStateException("test")));
+  }
+
+  private void failTwice() {
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+  }
+
+  @Test
+  public void should_pass_through_remote_descriptor() throws Exception {
+    when(remote.metadata(ID)).thenReturn(Observable.just(descriptor));
+    final TestSubscriber<SchemaDescriptor> subscriber = new TestSubscriber<>();
+    subject.metadata(ID).subscribe(subscriber);
+    subscriber.assertReceivedOnNext(Collections.singletonList(descriptor));
+    subscriber.assertTerminalEvent();
+  }
+
+  @Test
+  public void should_fail_lookup_after_timeout() throws Exception {
+    when(remote.metadata(ID)).thenReturn(Observable.<SchemaDescriptor>never());
+    final TestSubscriber<SchemaDescriptor> subscriber = new TestSubscriber<>();
+    subject.metadata(ID).subscribe(subscriber);
+    scheduler.advanceTimeBy(100, TimeUnit.NANOSECONDS);
+    assertThat(subscriber.getOnErrorEvents(), contains(instanceOf(TimeoutException.class)));
+  }
+
+  @Test
+  public void should_skip_remote_lookup_after_consecutive_failures() throws Exception {
+    failTwice();
+    final TestSubscriber<SchemaDescriptor> subscriber = new TestSubscriber<>();
+    subject.metadata(ID).subscribe(subscriber);
+    assertThat(subscriber.getOnErrorEvents(),
+        contains(instanceOf(GuardedDescriptorService.Unavailable.class)));
+    verify(remote, times(2)).metadata(ID);
+  }
+
+  @Test
+  public void should_retry_remote_lookup_after_retry_period() throws Exception {
+    failTwice();
+    time.advance(1000);
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    verify(remote, times(3)).metadata(ID);
+  }
+
+  @Test
+  public void should_reopen_circuit_if_retry_fails() throws Exception {
+    failTwice();
+    time.advance(1000);
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    final TestSubscriber<SchemaDescriptor> subscriber = new TestSubscriber<>();
+    subject.metadata(ID).subscribe(subscriber);
+    assertThat(subscriber.getOnErrorEvents(),
+        contains(instanceOf(GuardedDescriptorService.Unavailable.class)));
+  }
+
+  @Test
+  public void should_close_circuit_after_successful_retry() throws Exception {
+    failTwice();
+    time.advance(1000);
+    when(remote.metadata(ID)).thenReturn(Observable.just(descriptor));
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    final TestSubscriber<SchemaDescriptor> subscriber = new TestSubscriber<>();
+    subject.metadata(ID).subscribe(subscriber);
+    subscriber.assertReceivedOnNext(Collections.singletonList(descriptor));
+  }
+
+  @Test
+  public void should_reset_failure_count_on_success() throws Exception {
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    when(remote.metadata(ID)).thenReturn(Observable.just(descriptor));
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    when(remote.metadata(ID))
+        .thenReturn(Observable.<SchemaDescriptor>error(new IllegalStateException("test")));
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    subject.metadata(ID).subscribe(new TestSubscriber<SchemaDescriptor>());
+    verify(remote, times(4)).metadata(ID);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.nest;
+
+import at.ac.univie.isc.asio.engine.sparql.JenaEngine;
+import at.ac.univie.isc.asio.engine.sparql.JenaFactory;
+import at.ac.univie.isc.asio.engine.sparql.ResultCache;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WarmUpTest {
+  private final HikariDataSource pool = mock(HikariDataSource.class);
+  private final Connection connection = mock(Connection.class);
+  private final JenaFactory sparql = mock(JenaFactory.class);
+  private final JenaEngine engine =
+      JenaEngine.create(ModelFactory.createDefaultModel(), Timeout.undefined(), false);
+
+  private WarmUp create(final String... queries) throws Exception {
+    when(pool.getConnection()).thenReturn(connection);
+    when(connection.isValid(anyInt())).thenReturn(true);
+    return new WarmUp(pool, sparql, engine, Arrays.asList(queries), Timeout.from(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void should_hold_minimum_idle_connections_at_once() throws Exception {
+    final WarmUp subject = create();
+    when(pool.getMinimumIdle()).thenReturn(3);
+    subject.run();
+    verify(pool, times(3)).getConnection();
+    verify(connection, times(3)).isValid(5);
+    verify(connection, times(3)).close();
+  }
+
+  @Test
+  public void should_validate_at_least_one_connection() throws Exception {
+    final WarmUp subject = create();
+    when(pool.getMinimumIdle()).thenReturn(0);
+    subject.run();
+    verify(connection).isValid(5);
+  }
+
+  @Test(expected = DataAccessResourceFailureException.class)
+  public void should_fail_on_invalid_connection() throws Exception {
+    final WarmUp subject = create();
+    when(connection.isValid(anyInt())).thenReturn(false);
+    subject.run();
+  }
+
+  @Test
+  public void should_return_connections_if_validation_fails() throws Exception {
+    final WarmUp subject = create();
+    when(pool.getMinimumIdle()).thenReturn(2);
+    when(connection.isValid(anyInt())).thenReturn(false);
+    try {
+      subject.run();
+    } catch (final DataAccessResourceFailureException ignored) {}
+    verify(connection).close();
+  }
+
+  @Test
+  public void should_replay_warm_up_queries() throws Exception {
+    final ResultCache cache = ResultCache.create(1024 * 1024, Timeout.from(1, TimeUnit.MINUTES));
+    engine.setResultCache(cache);
+    create("SELECT * WHERE { ?s ?p ?o }", "ASK {}").run();
+    assertThat(cache.size(), equalTo(2L));
+  }
+
+  @Test
+  public void should_ignore_failing_warm_up_queries() throws Exception {
+    create("SELECT illegal", "DESCRIBE <http://example.com/>").run();
+  }
+
+  @Test
+  public void should_use_default_validation_timeout_if_undefined() throws Exception {
+    when(pool.getConnection()).thenReturn(connection);
+    when(connection.isValid(anyInt())).thenReturn(true);
+    new WarmUp(pool, sparql, engine, Collections.<String>emptyList(), Timeout.undefined()).run();
+    verify(connection).isValid(WarmUp.DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+  }
+}
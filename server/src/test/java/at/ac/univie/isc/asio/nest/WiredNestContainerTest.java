@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * asio server
+ * %%
+ * Copyright (C) 2013 - 2015 Research Group Scientific Computing, University of Vienna
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package at.ac.univie.isc.asio.nest;
+
+import at.ac.univie.isc.asio.Id;
+import at.ac.univie.isc.asio.Language;
+import at.ac.univie.isc.asio.d2rq.D2rqConfigModel;
+import at.ac.univie.isc.asio.database.Jdbc;
+import at.ac.univie.isc.asio.tool.Timeout;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.zaxxer.hikari.HikariConfig;
+import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.inject.Provider;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class WiredNestContainerTest {
+  @Rule
+  public final ExpectedException error = ExpectedException.none();
+
+  private final NestWiring wiring = new NestWiring(new Provider<HikariConfig>() {
+    @Override
+    public HikariConfig get() {
+      return new HikariConfig();
+    }
+  }, Timeout.from(100, TimeUnit.MILLISECONDS), new MockEnvironment().withProperty("asio.nest.warm-up", "false"));
+
+  private final OnClose cleaner = Mockito.mock(OnClose.class);
+  private final NestConfig config = config();
+  private final WiredNestContainer subject =
+      WiredNestContainer.create(config, wiring, Collections.singletonList(cleaner));
+
+  private static NestConfig config() {
+    final Model model = ModelFactory.createDefaultModel();
+    model.createResource(D2RQ.Database);
+    final Dataset dataset = new Dataset()
+        .setName(Id.valueOf("test"))
+        .setIdentifier(URI.create("urn:asio:lightweight"))
+        .setTimeout(Timeout.undefined());
+    final Jdbc jdbc = new Jdbc().setUrl("jdbc:h2:mem:").setSchema("public")
+        .addProperty("INIT", "CREATE TABLE test(id INT NOT NULL)");
+    return NestConfig.create(dataset, jdbc, D2rqConfigModel.wrap(model));
+  }
+
+  @After
+  public void closeContainer() {
+    subject.close();
+  }
+
+  @Test
+  public void should_be_named_after_dataset() throws Exception {
+    assertThat(subject.name(), equalTo(Id.valueOf("test")));
+  }
+
+  @Test
+  public void should_reject_access_before_activation() throws Exception {
+    error.expect(IllegalStateException.class);
+    subject.engines();
+  }
+
+  @Test
+  public void should_provide_sql_and_sparql_engine_after_activation() throws Exception {
+    subject.activate();
+    assertThat(subject.engine(Language.SQL).language(), equalTo(Language.SQL));
+    assertThat(subject.engine(Language.SPARQL).language(), equalTo(Language.SPARQL));
+  }
+
+  @Test
+  public void should_provide_empty_metadata_if_no_descriptor_service_present() throws Exception {
+    subject.activate();
+    assertThat(subject.metadata().isEmpty().toBlocking().single(), equalTo(true));
+  }
+
+  @Test
+  public void should_reject_second_activation() throws Exception {
+    subject.activate();
+    error.expect(IllegalStateException.class);
+    subject.activate();
+  }
+
+  @Test
+  public void should_run_clean_up_actions_when_closing_active_container() throws Exception {
+    subject.activate();
+    subject.close();
+    verify(cleaner).cleanUp(config);
+  }
+
+  @Test
+  public void should_not_clean_up_if_never_activated() throws Exception {
+    subject.close();
+    verifyZeroInteractions(cleaner);
+  }
+
+  @Test
+  public void should_reject_access_after_close() throws Exception {
+    subject.activate();
+    subject.close();
+    error.expect(IllegalStateException.class);
+    subject.engine(Language.SQL);
+  }
+}